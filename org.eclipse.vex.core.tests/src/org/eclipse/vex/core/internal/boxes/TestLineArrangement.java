@@ -11,6 +11,8 @@
 package org.eclipse.vex.core.internal.boxes;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
@@ -20,7 +22,10 @@ import java.util.List;
 import org.eclipse.vex.core.internal.core.Color;
 import org.eclipse.vex.core.internal.core.FontSpec;
 import org.eclipse.vex.core.internal.core.TextAlign;
+import org.eclipse.vex.core.internal.dom.GapContent;
 import org.eclipse.vex.core.internal.layout.FakeGraphics;
+import org.eclipse.vex.core.provisional.dom.ContentRange;
+import org.eclipse.vex.core.provisional.dom.IContent;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -29,6 +34,7 @@ import org.junit.Test;
  */
 public class TestLineArrangement {
 	private final static FontSpec FONT = new FontSpec("fontname", 0, 10.0f);
+	private final static String LONG_TEXT = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip ex ea commodo consequat.";
 	private FakeGraphics graphics;
 	private List<IInlineBox> joinableBoxes;
 	private List<IInlineBox> unjoinableBoxes;
@@ -131,6 +137,69 @@ public class TestLineArrangement {
 		}
 	}
 
+	@Test
+	public void givenArrangedText_whenInsertingTextInTheMiddle_shouldArrangeLikeCompleteArrangement() throws Exception {
+		final IContent content = content(LONG_TEXT);
+		final List<IInlineBox> boxes = boxes(textContent(content));
+		lines.arrangeBoxes(graphics, boxes.listIterator(), 60, TextAlign.LEFT);
+		final Line middleLine = new ArrayList<Line>(lines.getLines()).get(lines.getLines().size() / 2);
+
+		content.insertText(((TextContent) middleLine.getFirstChild()).getStartOffset() + 3, "Lorem ipsum ");
+		lines.arrangeBoxes(graphics, boxes.listIterator(), 60, TextAlign.LEFT);
+
+		final LineArrangement completeArrangement = new LineArrangement();
+		completeArrangement.arrangeBoxes(graphics, boxes(textContent(content)).listIterator(), 60, TextAlign.LEFT);
+		assertEquals(lineTexts(completeArrangement), lineTexts(lines));
+		assertEquals(completeArrangement.getHeight(), lines.getHeight());
+	}
+
+	@Test
+	public void givenArrangedText_whenInsertingTextInTheMiddle_shouldKeepLinesBeforeAndReuseLinesAfterChange() throws Exception {
+		final IContent content = content(LONG_TEXT);
+		final List<IInlineBox> boxes = boxes(textContent(content));
+		lines.arrangeBoxes(graphics, boxes.listIterator(), 60, TextAlign.LEFT);
+		final List<Line> previousLines = new ArrayList<Line>(lines.getLines());
+		final int middleLine = previousLines.size() / 2;
+
+		content.insertText(((TextContent) previousLines.get(middleLine).getFirstChild()).getStartOffset() + 3, "xx");
+		lines.arrangeBoxes(graphics, boxes.listIterator(), 60, TextAlign.LEFT);
+
+		final List<Line> currentLines = new ArrayList<Line>(lines.getLines());
+		assertSame(previousLines.get(0), currentLines.get(0));
+		assertSame(previousLines.get(middleLine - 2), currentLines.get(middleLine - 2));
+		assertNotSame(previousLines.get(middleLine), currentLines.get(middleLine));
+		assertSame(previousLines.get(previousLines.size() - 1), currentLines.get(currentLines.size() - 1));
+	}
+
+	@Test
+	public void givenChangedBoxAlreadyLaidOut_whenInsertingText_shouldArrangeLikeCompleteArrangement() throws Exception {
+		final IContent content = content(LONG_TEXT);
+		final List<IInlineBox> boxes = boxes(textContent(content));
+		lines.arrangeBoxes(graphics, boxes.listIterator(), 60, TextAlign.LEFT);
+		final TextContent middleBox = (TextContent) new ArrayList<Line>(lines.getLines()).get(lines.getLines().size() / 2).getFirstChild();
+
+		content.insertText(middleBox.getStartOffset() + 3, "Lorem ipsum ");
+		middleBox.layout(graphics);
+		lines.arrangeBoxes(graphics, boxes.listIterator(), 60, TextAlign.LEFT);
+
+		final LineArrangement completeArrangement = new LineArrangement();
+		completeArrangement.arrangeBoxes(graphics, boxes(textContent(content)).listIterator(), 60, TextAlign.LEFT);
+		assertEquals(lineTexts(completeArrangement), lineTexts(lines));
+	}
+
+	@Test
+	public void givenArrangedText_whenNothingChanged_shouldKeepAllLines() throws Exception {
+		final List<IInlineBox> boxes = boxes(textContent(content(LONG_TEXT)));
+		lines.arrangeBoxes(graphics, boxes.listIterator(), 60, TextAlign.LEFT);
+		final List<Line> previousLines = new ArrayList<Line>(lines.getLines());
+		final List<IInlineBox> previousBoxes = new ArrayList<IInlineBox>(boxes);
+
+		lines.arrangeBoxes(graphics, boxes.listIterator(), 60, TextAlign.LEFT);
+
+		assertEquals(previousLines, new ArrayList<Line>(lines.getLines()));
+		assertEquals(previousBoxes, boxes);
+	}
+
 	private void layout(final List<IInlineBox> boxes) {
 		for (final IInlineBox box : boxes) {
 			box.layout(graphics);
@@ -156,6 +225,31 @@ public class TestLineArrangement {
 		return staticText;
 	}
 
+	private static IContent content(final String text) {
+		final IContent content = new GapContent(text.length() + 2);
+		content.insertText(0, "X" + text + "X");
+		return content;
+	}
+
+	private static TextContent textContent(final IContent content) {
+		final TextContent textContent = new TextContent();
+		textContent.setContent(content, new ContentRange(1, content.length() - 2));
+		textContent.setFont(FONT);
+		return textContent;
+	}
+
+	private static List<String> lineTexts(final LineArrangement lines) {
+		final ArrayList<String> lineTexts = new ArrayList<String>();
+		for (final Line line : lines.getLines()) {
+			final StringBuilder lineText = new StringBuilder();
+			for (final IInlineBox child : line.getChildren()) {
+				lineText.append(((TextContent) child).getText());
+			}
+			lineTexts.add(lineText.toString());
+		}
+		return lineTexts;
+	}
+
 	private static Square square(final int size) {
 		final Square square = new Square();
 		square.setSize(size);
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.boxes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.vex.core.internal.core.FontSpec;
+import org.eclipse.vex.core.internal.dom.GapContent;
+import org.eclipse.vex.core.internal.layout.FakeGraphics;
+import org.eclipse.vex.core.provisional.dom.ContentRange;
+import org.eclipse.vex.core.provisional.dom.IContent;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class TestTextContent {
+
+	private static final String TEXT = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.";
+
+	private IContent content;
+	private CountingGraphics graphics;
+	private TextContent textContent;
+
+	@Before
+	public void setUp() throws Exception {
+		content = new GapContent(TEXT.length() + 2);
+		content.insertText(0, "X" + TEXT + "X");
+		graphics = new CountingGraphics();
+		textContent = new TextContent();
+		textContent.setContent(content, new ContentRange(1, TEXT.length()));
+		textContent.setFont(new FontSpec("font", FontSpec.PLAIN, 10));
+		textContent.layout(graphics);
+	}
+
+	@Test
+	public void givenCoordinatesWithinCharacter_shouldProvideOffsetOfNearestCharacterBoundary() throws Exception {
+		final int charWidth = graphics.getCharWidth();
+
+		assertEquals(1, textContent.getOffsetForCoordinates(graphics, 0, 0));
+		assertEquals(1, textContent.getOffsetForCoordinates(graphics, charWidth / 2 - 1, 0));
+		assertEquals(2, textContent.getOffsetForCoordinates(graphics, charWidth / 2 + 2, 0));
+		assertEquals(11, textContent.getOffsetForCoordinates(graphics, 10 * charWidth + 1, 0));
+		assertEquals(TEXT.length(), textContent.getOffsetForCoordinates(graphics, textContent.getWidth() - 1, 0));
+		assertEquals(TEXT.length(), textContent.getOffsetForCoordinates(graphics, textContent.getWidth() + 10, 0));
+	}
+
+	@Test
+	public void whenLookingUpOffsetForCoordinates_shouldMeasureLogarithmicNumberOfPrefixes() throws Exception {
+		graphics.resetMeasuredTextCount();
+		textContent.getOffsetForCoordinates(graphics, textContent.getWidth() - 1, 0);
+
+		assertTrue("measured texts: " + graphics.getMeasuredTextCount(), graphics.getMeasuredTextCount() <= 10);
+	}
+
+	@Test
+	public void givenUnchangedLayout_shouldReuseMeasuredPrefixes() throws Exception {
+		textContent.getOffsetForCoordinates(graphics, 20 * graphics.getCharWidth(), 0);
+		graphics.resetMeasuredTextCount();
+
+		textContent.getOffsetForCoordinates(graphics, 20 * graphics.getCharWidth(), 0);
+
+		assertEquals(1, graphics.getMeasuredTextCount());
+	}
+
+	@Test
+	public void givenTextReplacedWithSameLength_whenLayoutIsInvalidated_shouldMeasureTextAgain() throws Exception {
+		content.remove(new ContentRange(5, 5));
+		content.insertText(5, "M");
+		textContent.invalidateLayout();
+		graphics.resetMeasuredTextCount();
+
+		textContent.layout(graphics);
+
+		assertEquals(1, graphics.getMeasuredTextCount());
+	}
+
+	@Test
+	public void shouldProvidePositionAreaOfCharacter() throws Exception {
+		final int charWidth = graphics.getCharWidth();
+
+		assertEquals(0, textContent.getPositionArea(graphics, 1).getX());
+		assertEquals(5 * charWidth, textContent.getPositionArea(graphics, 6).getX());
+		assertEquals(charWidth, textContent.getPositionArea(graphics, 6).getWidth());
+	}
+
+	private static class CountingGraphics extends FakeGraphics {
+		private int measuredTextCount;
+
+		@Override
+		public int stringWidth(final String s) {
+			measuredTextCount += 1;
+			return super.stringWidth(s);
+		}
+
+		public int getMeasuredTextCount() {
+			return measuredTextCount;
+		}
+
+		public void resetMeasuredTextCount() {
+			measuredTextCount = 0;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LruCacheTest {
+
+	private ArrayList<String> evicted;
+	private LruCache<String, String> cache;
+
+	@Before
+	public void setUp() throws Exception {
+		evicted = new ArrayList<String>();
+		cache = new LruCache<String, String>(10) {
+			@Override
+			protected long getSize(final String value) {
+				return value.length();
+			}
+
+			@Override
+			protected void evicted(final String key, final String value) {
+				evicted.add(key);
+			}
+		};
+	}
+
+	@Test
+	public void givenValuesWithinCapacity_shouldProvideAllValues() throws Exception {
+		cache.put("a", "1234");
+		cache.put("b", "123456");
+
+		assertEquals("1234", cache.get("a"));
+		assertEquals("123456", cache.get("b"));
+		assertEquals(10, cache.getSize());
+		assertTrue(evicted.isEmpty());
+	}
+
+	@Test
+	public void whenExceedingCapacity_shouldEvictLeastRecentlyUsedValues() throws Exception {
+		cache.put("a", "1234");
+		cache.put("b", "1234");
+		cache.get("a");
+		cache.put("c", "1234");
+
+		assertNull(cache.get("b"));
+		assertEquals("1234", cache.get("a"));
+		assertEquals("1234", cache.get("c"));
+		assertEquals(Arrays.asList("b"), evicted);
+		assertEquals(8, cache.getSize());
+	}
+
+	@Test
+	public void givenValueBiggerThanCapacity_shouldEvictEverything() throws Exception {
+		cache.put("a", "1234");
+		cache.put("b", "12345678901");
+
+		assertEquals(0, cache.getEntryCount());
+		assertEquals(0, cache.getSize());
+		assertEquals(Arrays.asList("a", "b"), evicted);
+	}
+
+	@Test
+	public void whenReplacingValue_shouldEvictOldValue() throws Exception {
+		cache.put("a", "1234");
+		cache.put("a", "12");
+
+		assertEquals("12", cache.get("a"));
+		assertEquals(2, cache.getSize());
+		assertEquals(Arrays.asList("a"), evicted);
+	}
+
+	@Test
+	public void whenClearing_shouldEvictAllValues() throws Exception {
+		cache.put("a", "1234");
+		cache.put("b", "1234");
+		cache.clear();
+
+		assertEquals(0, cache.getEntryCount());
+		assertEquals(0, cache.getSize());
+		assertEquals(Arrays.asList("a", "b"), evicted);
+	}
+}
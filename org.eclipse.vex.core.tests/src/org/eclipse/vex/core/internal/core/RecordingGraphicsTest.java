@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.eclipse.vex.core.internal.layout.FakeGraphics;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RecordingGraphicsTest {
+
+	private static final FontSpec FONT = new FontSpec("Times", FontSpec.PLAIN, 12.0f);
+	private static final Color SELECTION_BACKGROUND = new Color(51, 153, 255);
+
+	private TracingGraphics measuringGraphics;
+	private RecordingGraphics recording;
+
+	@Before
+	public void setUp() throws Exception {
+		measuringGraphics = new TracingGraphics();
+		recording = new RecordingGraphics(measuringGraphics, 100, 50, Collections.singletonMap(ColorResource.SELECTION_BACKGROUND, SELECTION_BACKGROUND));
+	}
+
+	@Test
+	public void givenMovedOrigin_shouldReplayAbsoluteCoordinates() throws Exception {
+		recording.moveOrigin(10, -20);
+		recording.drawString("Hello", 1, 2);
+		recording.fillRect(3, 4, 5, 6);
+
+		final TracingGraphics target = new TracingGraphics();
+		recording.replay(target);
+
+		assertEquals(Arrays.asList("drawString Hello 11 -18", "fillRect 13 -16 5 6"), target.drawings);
+	}
+
+	@Test
+	public void whenRecording_shouldNotDrawOnMeasuringGraphics() throws Exception {
+		recording.drawLine(0, 0, 10, 10);
+		recording.fillRect(0, 0, 10, 10);
+
+		assertTrue(measuringGraphics.drawings.isEmpty());
+	}
+
+	@Test
+	public void shouldMeasureTextWithCurrentFontOfMeasuringGraphics() throws Exception {
+		final FontResource font = recording.getFont(FONT);
+		recording.setCurrentFont(font);
+
+		assertEquals(5 * measuringGraphics.getCharWidth(), recording.stringWidth("Hello"));
+		assertSame(FONT, measuringGraphics.currentFontSpec);
+		assertSame(font, recording.getCurrentFont());
+	}
+
+	@Test
+	public void whenDisposed_shouldRestoreFontOfMeasuringGraphics() throws Exception {
+		recording.setCurrentFont(recording.getFont(FONT));
+		recording.dispose();
+
+		assertEquals(null, measuringGraphics.currentFontSpec);
+	}
+
+	@Test
+	public void shouldReplayFontsOnTargetGraphics() throws Exception {
+		recording.setCurrentFont(recording.getFont(FONT));
+		recording.drawString("Hello", 0, 0);
+
+		final TracingGraphics target = new TracingGraphics();
+		recording.replay(target);
+
+		assertEquals(Arrays.asList(FONT, null), target.fontHistory);
+	}
+
+	@Test
+	public void givenSystemColor_shouldReplayItsValue() throws Exception {
+		recording.setColor(recording.getSystemColor(ColorResource.SELECTION_BACKGROUND));
+		recording.setColor(recording.getSystemColor(ColorResource.SELECTION_FOREGROUND));
+
+		final TracingGraphics target = new TracingGraphics();
+		recording.replay(target);
+
+		assertEquals(Arrays.asList(SELECTION_BACKGROUND, Color.BLACK), target.colorHistory);
+		assertEquals(0, target.systemColorRequests);
+	}
+
+	@Test
+	public void shouldProvideClipBoundsRelativeToOrigin() throws Exception {
+		recording.moveOrigin(0, -200);
+
+		final Rectangle clipBounds = recording.getClipBounds();
+		assertEquals(0, clipBounds.getX());
+		assertEquals(200, clipBounds.getY());
+		assertEquals(100, clipBounds.getWidth());
+		assertEquals(50, clipBounds.getHeight());
+	}
+
+	@Test
+	public void whenCancelled_shouldNotReplay() throws Exception {
+		recording.drawString("Hello", 0, 0);
+		recording.cancel();
+
+		final TracingGraphics target = new TracingGraphics();
+
+		assertFalse(recording.replay(target));
+		assertTrue(target.drawings.isEmpty());
+	}
+
+	@Test
+	public void whenReplayed_shouldReturnTrue() throws Exception {
+		recording.drawString("Hello", 0, 0);
+
+		assertTrue(recording.replay(new TracingGraphics()));
+	}
+
+	private static class TracingGraphics extends FakeGraphics {
+		public final ArrayList<String> drawings = new ArrayList<String>();
+		public final ArrayList<FontSpec> fontHistory = new ArrayList<FontSpec>();
+		public final ArrayList<Color> colorHistory = new ArrayList<Color>();
+		public FontSpec currentFontSpec;
+		public int systemColorRequests;
+
+		@Override
+		public void drawString(final String s, final int x, final int y) {
+			drawings.add("drawString " + s + " " + asAbsoluteX(x) + " " + asAbsoluteY(y));
+		}
+
+		@Override
+		public void drawLine(final int x1, final int y1, final int x2, final int y2) {
+			drawings.add("drawLine");
+		}
+
+		@Override
+		public void fillRect(final int x, final int y, final int width, final int height) {
+			drawings.add("fillRect " + asAbsoluteX(x) + " " + asAbsoluteY(y) + " " + width + " " + height);
+		}
+
+		@Override
+		public ColorResource getColor(final Color rgb) {
+			return new TracingColor(rgb);
+		}
+
+		@Override
+		public ColorResource getSystemColor(final int id) {
+			systemColorRequests += 1;
+			return super.getSystemColor(id);
+		}
+
+		@Override
+		public ColorResource setColor(final ColorResource color) {
+			colorHistory.add(((TracingColor) color).rgb);
+			return super.setColor(color);
+		}
+
+		@Override
+		public FontResource getFont(final FontSpec fontSpec) {
+			return new TracingFont(fontSpec);
+		}
+
+		@Override
+		public FontResource getCurrentFont() {
+			return new TracingFont(currentFontSpec);
+		}
+
+		@Override
+		public FontResource setCurrentFont(final FontResource font) {
+			final FontResource oldFont = getCurrentFont();
+			currentFontSpec = ((TracingFont) font).fontSpec;
+			fontHistory.add(currentFontSpec);
+			return oldFont;
+		}
+	}
+
+	private static class TracingColor implements ColorResource {
+		public final Color rgb;
+
+		public TracingColor(final Color rgb) {
+			this.rgb = rgb;
+		}
+
+		@Override
+		public void dispose() {
+		}
+	}
+
+	private static class TracingFont implements FontResource {
+		public final FontSpec fontSpec;
+
+		public TracingFont(final FontSpec fontSpec) {
+			this.fontSpec = fontSpec;
+		}
+
+		@Override
+		public void dispose() {
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TextMeasurementTest {
+
+	private static final FontSpec FONT = new FontSpec("Times", FontSpec.PLAIN, 12.0f);
+
+	private static final String[] TEXTS = { "", "Hello", "AVATAR", "Toy Yacht", "LT WAVE Ta", "office", "The quick brown fox jumps over the lazy dog.",
+			"e\u0301te\u0301" };
+
+	private TextMeasurement textMeasurement;
+	private CountingMeasurement measurement;
+
+	@Before
+	public void setUp() throws Exception {
+		textMeasurement = new TextMeasurement();
+		measurement = new CountingMeasurement();
+	}
+
+	@Test
+	public void givenSimpleText_shouldProvideSumOfAdvanceWidths() throws Exception {
+		assertEquals(5 * 7, textMeasurement.stringWidth(FONT, "Hello", measurement));
+	}
+
+	@Test
+	public void givenSimpleText_shouldMeasureEachGlyphOnlyOnce() throws Exception {
+		textMeasurement.stringWidth(FONT, "Hello", measurement);
+		final long glyphMissCount = textMeasurement.getGlyphMissCount();
+		measurement.measuredTexts.clear();
+
+		textMeasurement.stringWidth(FONT, "Hello", measurement);
+
+		assertTrue(measurement.measuredTexts.isEmpty());
+		assertEquals(glyphMissCount, textMeasurement.getGlyphMissCount());
+	}
+
+	@Test
+	public void givenDifferentFonts_shouldMeasureGlyphsPerFont() throws Exception {
+		textMeasurement.stringWidth(FONT, "a", measurement);
+		textMeasurement.stringWidth(FONT.bold(), "a", measurement);
+
+		assertEquals(2, Collections.frequency(measurement.measuredTexts, "a"));
+	}
+
+	@Test
+	public void givenFontWithoutKerning_shouldProvideNativeWidths() throws Exception {
+		assertFalse(textMeasurement.isKerned(FONT, measurement));
+		for (final String text : TEXTS) {
+			assertEquals(text, measurement.stringWidth(text), textMeasurement.stringWidth(FONT, text, measurement));
+		}
+	}
+
+	@Test
+	public void givenKernedFont_shouldProvideNativeWidths() throws Exception {
+		final KerningMeasurement kerningMeasurement = new KerningMeasurement();
+
+		assertTrue(textMeasurement.isKerned(FONT, kerningMeasurement));
+		for (final String text : TEXTS) {
+			assertEquals(text, kerningMeasurement.stringWidth(text), textMeasurement.stringWidth(FONT, text, kerningMeasurement));
+		}
+	}
+
+	@Test
+	public void givenFontWithFractionalAdvanceWidths_shouldProvideNativeWidths() throws Exception {
+		final FractionalMeasurement fractionalMeasurement = new FractionalMeasurement();
+
+		assertTrue(textMeasurement.isKerned(FONT, fractionalMeasurement));
+		for (final String text : TEXTS) {
+			assertEquals(text, fractionalMeasurement.stringWidth(text), textMeasurement.stringWidth(FONT, text, fractionalMeasurement));
+		}
+	}
+
+	@Test
+	public void givenKernedFont_shouldMeasureEachTextOnlyOnce() throws Exception {
+		final KerningMeasurement kerningMeasurement = new KerningMeasurement();
+		textMeasurement.stringWidth(FONT, "AVATAR", kerningMeasurement);
+		kerningMeasurement.measuredTexts.clear();
+
+		textMeasurement.stringWidth(FONT, "AVATAR", kerningMeasurement);
+
+		assertTrue(kerningMeasurement.measuredTexts.isEmpty());
+		assertEquals(1, textMeasurement.getRunHitCount());
+		assertEquals(0.5, textMeasurement.getRunHitRate(), 0.0);
+	}
+
+	@Test
+	public void givenKernedFont_shouldNotUseAdvanceWidthsOfOtherFonts() throws Exception {
+		textMeasurement.stringWidth(FONT, "AV", measurement);
+
+		assertEquals(12, textMeasurement.stringWidth(FONT.bold(), "AV", new KerningMeasurement()));
+	}
+
+	@Test
+	public void givenTextOfComplexScript_shouldMeasureWholeText() throws Exception {
+		final String arabic = "\u0645\u0631\u062D\u0628\u0627";
+
+		assertEquals(7 * arabic.length(), textMeasurement.stringWidth(FONT, arabic, measurement));
+		assertEquals(arabic, measurement.measuredTexts.get(0));
+		assertEquals(1.0, textMeasurement.getFallbackRate(), 0.0);
+	}
+
+	@Test
+	public void givenTextWithCombiningMarks_shouldMeasureWholeText() throws Exception {
+		final String text = "e\u0301te\u0301";
+
+		textMeasurement.stringWidth(FONT, text, measurement);
+
+		assertEquals(text, measurement.measuredTexts.get(0));
+	}
+
+	@Test
+	public void shouldProvideFontMetricsPerFont() throws Exception {
+		final FontMetrics metrics = new FakeFontMetrics();
+		textMeasurement.putFontMetrics(FONT, metrics);
+
+		assertEquals(metrics, textMeasurement.getFontMetrics(new FontSpec("Times", FontSpec.PLAIN, 12.0f)));
+		assertEquals(null, textMeasurement.getFontMetrics(FONT.italic()));
+	}
+
+	private static class CountingMeasurement implements TextMeasurement.IMeasurement {
+		public final ArrayList<String> measuredTexts = new ArrayList<String>();
+
+		@Override
+		public int stringWidth(final String text) {
+			measuredTexts.add(text);
+			return 7 * text.length();
+		}
+	}
+
+	/*
+	 * Reduces the distance between the glyphs of some pairs, like a kerned font does.
+	 */
+	private static class KerningMeasurement extends CountingMeasurement {
+		private static final String[] KERNING_PAIRS = { "AV", "VA", "AT", "TA", "To", "Ya", "LT", "WA", "Ta" };
+
+		@Override
+		public int stringWidth(final String text) {
+			int width = super.stringWidth(text);
+			for (int i = 0; i < text.length() - 1; i += 1) {
+				for (final String pair : KERNING_PAIRS) {
+					if (text.startsWith(pair, i)) {
+						width -= 2;
+					}
+				}
+			}
+			return width;
+		}
+	}
+
+	/*
+	 * Every glyph is 6.6 wide, so the rounded advance widths add up to more than the width of the whole text.
+	 */
+	private static class FractionalMeasurement implements TextMeasurement.IMeasurement {
+		@Override
+		public int stringWidth(final String text) {
+			return Math.round(6.6f * text.length());
+		}
+	}
+
+	private static class FakeFontMetrics implements FontMetrics {
+		@Override
+		public int getAscent() {
+			return 10;
+		}
+
+		@Override
+		public int getDescent() {
+			return 3;
+		}
+
+		@Override
+		public int getHeight() {
+			return 13;
+		}
+
+		@Override
+		public int getLeading() {
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.css;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.vex.core.internal.dom.Document;
+import org.eclipse.vex.core.internal.dom.Element;
+import org.eclipse.vex.core.internal.dom.Namespace;
+import org.eclipse.vex.core.provisional.dom.IComment;
+import org.eclipse.vex.core.provisional.dom.IDocument;
+import org.eclipse.vex.core.provisional.dom.IElement;
+import org.eclipse.vex.core.provisional.dom.INode;
+import org.junit.Test;
+
+public class RuleIndexTest {
+
+	@Test
+	public void givenRulesForDifferentElements_shouldOnlyProvideRulesForTheElementName() throws Exception {
+		final List<Rule> rules = readRules("a { color: red; } b { color: blue; } c b { color: green; } a > b { color: black; }");
+		final RuleIndex index = new RuleIndex(rules);
+
+		assertEquals(rules.subList(1, 4), index.getCandidateRules(new Element("b")));
+	}
+
+	@Test
+	public void givenUniversalRules_shouldProvideThemForEveryElement() throws Exception {
+		final List<Rule> rules = readRules("* { color: red; } a { color: blue; } [color] { color: green; } .foo { color: black; }");
+		final RuleIndex index = new RuleIndex(rules);
+
+		assertEquals(rules, index.getCandidateRules(new Element("a")));
+		assertEquals(Arrays.asList(rules.get(0), rules.get(2), rules.get(3)), index.getCandidateRules(new Element("b")));
+	}
+
+	@Test
+	public void givenPseudoElementRule_shouldProvideItForTheParentElement() throws Exception {
+		final List<Rule> rules = readRules("a:before { content: 'a'; } b:after { content: 'b'; }");
+		final RuleIndex index = new RuleIndex(rules);
+
+		assertEquals(rules.subList(0, 1), index.getCandidateRules(new Element("a")));
+		assertEquals(rules.subList(1, 2), index.getCandidateRules(new Element("b")));
+	}
+
+	@Test
+	public void givenNamespacedRules_shouldProvideThemForTheMatchingNodes() throws Exception {
+		final List<Rule> rules = readRules("vex|comment { color: green; } xi|include { color: blue; } root { color: red; }");
+		final RuleIndex index = new RuleIndex(rules);
+		final IDocument document = new Document(new QualifiedName(null, "root"));
+		final IComment comment = document.insertComment(2);
+		final IElement include = document.insertElement(comment.getEndOffset() + 1, new QualifiedName(Namespace.XINCLUDE_NAMESPACE_URI, "include"));
+
+		assertEquals(rules.subList(0, 1), index.getCandidateRules(comment));
+		assertEquals(rules.subList(1, 2), index.getCandidateRules(include));
+	}
+
+	@Test
+	public void givenRulesOfTestStyleSheet_shouldProvideAllMatchingRulesInStyleSheetOrder() throws Exception {
+		final List<Rule> rules = new StyleSheetReader().read(RuleIndexTest.class.getResource("testRules.css")).getRules();
+		final RuleIndex index = new RuleIndex(rules);
+
+		final IDocument document = new Document(new QualifiedName(null, "a"));
+		final IElement b = document.insertElement(2, new QualifiedName(null, "b"));
+		final IElement c = document.insertElement(3, new QualifiedName(null, "c"));
+		final IElement d = document.insertElement(4, new QualifiedName(null, "d"));
+		final IElement e = document.insertElement(5, new QualifiedName(null, "e"));
+		b.setAttribute("color", "blue");
+		c.setAttribute("class", "foo bar");
+		d.setAttribute("color", "red blue");
+		e.setAttribute("class", "foo");
+
+		for (final INode node : new INode[] { document.getRootElement(), b, c, d, e }) {
+			final List<Rule> candidateRules = index.getCandidateRules(node);
+			assertEquals(matchingRules(rules, node), matchingRules(candidateRules, node));
+			assertTrue(isInOrder(rules, candidateRules));
+		}
+	}
+
+	@Test
+	public void givenManyRules_whenCalculatingStyles_shouldOnlyEvaluateRulesForTheElementName() throws Exception {
+		final StyleSheet styleSheet = new StyleSheetReader().read("a { color: red; } b { color: blue; } c { color: green; } para { color: black; } d { color: yellow; }");
+
+		styleSheet.getStyles(new Element("para"));
+
+		assertEquals(1.0, styleSheet.getEvaluatedRulesPerNode(), 0.0);
+	}
+
+	private static List<Rule> readRules(final String css) throws Exception {
+		return new StyleSheetReader().read(css).getRules();
+	}
+
+	private static List<Rule> matchingRules(final List<Rule> rules, final INode node) {
+		final List<Rule> result = new ArrayList<Rule>();
+		for (final Rule rule : rules) {
+			if (rule.matches(node)) {
+				result.add(rule);
+			}
+		}
+		return result;
+	}
+
+	private static boolean isInOrder(final List<Rule> allRules, final List<Rule> rules) {
+		int lastIndex = -1;
+		for (final Rule rule : rules) {
+			final int index = allRules.indexOf(rule);
+			if (index <= lastIndex) {
+				return false;
+			}
+			lastIndex = index;
+		}
+		return true;
+	}
+}
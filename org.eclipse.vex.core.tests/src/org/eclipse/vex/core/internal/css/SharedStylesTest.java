@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.css;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.vex.core.internal.core.Color;
+import org.eclipse.vex.core.internal.dom.Document;
+import org.eclipse.vex.core.provisional.dom.IDocument;
+import org.eclipse.vex.core.provisional.dom.IElement;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SharedStylesTest {
+
+	private IDocument document;
+	private IElement para1;
+	private IElement para2;
+
+	@Before
+	public void setUp() throws Exception {
+		document = new Document(new QualifiedName(null, "root"));
+		para1 = document.insertElement(2, new QualifiedName(null, "para"));
+		para2 = document.insertElement(para1.getEndOffset() + 1, new QualifiedName(null, "para"));
+	}
+
+	@Test
+	public void givenSiblingsWithSameRules_shouldShareStyles() throws Exception {
+		final StyleSheet styleSheet = readStyleSheet("para { color: red; font-size: 12px; }");
+
+		assertSame(styleSheet.getStyles(para1), styleSheet.getStyles(para2));
+	}
+
+	@Test
+	public void givenSiblingsWithDifferentRules_shouldNotShareStyles() throws Exception {
+		final StyleSheet styleSheet = readStyleSheet("para { color: red; } para[role=note] { color: blue; }");
+		para2.setAttribute("role", "note");
+
+		assertNotSame(styleSheet.getStyles(para1), styleSheet.getStyles(para2));
+		assertEquals(new Color(0, 0, 255), styleSheet.getStyles(para2).getColor());
+	}
+
+	@Test
+	public void givenStylesDependingOnAttributes_shouldNotShareStyles() throws Exception {
+		final StyleSheet styleSheet = readStyleSheet("para:before { content: attr(id); }");
+		para1.setAttribute("id", "first");
+		para2.setAttribute("id", "second");
+
+		final Styles styles1 = styleSheet.getStyles(para1);
+		final Styles styles2 = styleSheet.getStyles(para2);
+
+		assertNotSame(styles1, styles2);
+		assertEquals("first", styles1.getPseudoElementStyles(Styles.PseudoElement.BEFORE).getTextualContent());
+		assertEquals("second", styles2.getPseudoElementStyles(Styles.PseudoElement.BEFORE).getTextualContent());
+	}
+
+	@Test
+	public void givenSharedStyles_shouldProvideOutlineContentOfEachNode() throws Exception {
+		final StyleSheet styleSheet = readStyleSheet("para { color: red; }");
+
+		assertSame(para1, styleSheet.getStyles(para1).getOutlineContent(para1));
+		assertSame(para2, styleSheet.getStyles(para2).getOutlineContent(para2));
+	}
+
+	@Test
+	public void givenSharedStyles_shouldReportHitRate() throws Exception {
+		final StyleSheet styleSheet = readStyleSheet("para { color: red; }");
+
+		styleSheet.getStyles(para1);
+		styleSheet.getStyles(para2);
+
+		// document, root, para1 (misses) and para2 (hit)
+		assertEquals(0.25, styleSheet.getInternedStylesHitRate(), 0.0);
+	}
+
+	@Test
+	public void givenManyParentStylesDependingOnAttributes_shouldLimitNumberOfSharedStyles() throws Exception {
+		final StyleSheet styleSheet = readStyleSheet("para:before { content: attr(id); } emphasis { color: red; }");
+		for (int i = 0; i < StyleSheet.MAX_INTERNED_STYLES + 10; i += 1) {
+			final IElement para = document.insertElement(document.getRootElement().getEndOffset(), new QualifiedName(null, "para"));
+			para.setAttribute("id", "para" + i);
+			final IElement emphasis = document.insertElement(para.getEndOffset(), new QualifiedName(null, "emphasis"));
+
+			styleSheet.getStyles(emphasis);
+		}
+
+		assertEquals(StyleSheet.MAX_INTERNED_STYLES, styleSheet.testGetInternedStylesCount());
+	}
+
+	private static StyleSheet readStyleSheet(final String css) throws Exception {
+		return new StyleSheetReader().read(css);
+	}
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.css;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.vex.core.internal.core.Color;
+import org.eclipse.vex.core.internal.dom.Document;
+import org.eclipse.vex.core.provisional.dom.ContentRange;
+import org.eclipse.vex.core.provisional.dom.IDocument;
+import org.eclipse.vex.core.provisional.dom.IElement;
+import org.eclipse.vex.core.provisional.dom.INode;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StyleInvalidationTest {
+
+	private static final Color RED = new Color(255, 0, 0);
+	private static final Color GREEN = new Color(0, 128, 0);
+	private static final Color BLUE = new Color(0, 0, 255);
+
+	private IDocument document;
+	private IElement para1;
+	private IElement emphasis1;
+	private IElement para2;
+	private IElement emphasis2;
+
+	@Before
+	public void setUp() throws Exception {
+		document = new Document(new QualifiedName(null, "root"));
+		para1 = document.insertElement(2, new QualifiedName(null, "para"));
+		emphasis1 = document.insertElement(para1.getEndOffset(), new QualifiedName(null, "emphasis"));
+		para2 = document.insertElement(para1.getEndOffset() + 1, new QualifiedName(null, "para"));
+		emphasis2 = document.insertElement(para2.getEndOffset(), new QualifiedName(null, "emphasis"));
+	}
+
+	@Test
+	public void givenAttributeNotUsedByRules_whenChangingAttribute_shouldKeepAllStyles() throws Exception {
+		final StyleSheet styleSheet = readStyleSheet("para { color: red; } para[role=note] { color: blue; }");
+		calculateAllStyles(styleSheet);
+
+		para1.setAttribute("id", "first");
+		styleSheet.flushStylesAfterAttributeChange(para1, new QualifiedName(null, "id"));
+
+		assertAllStylesCached(styleSheet);
+	}
+
+	@Test
+	public void givenAttributeUsedInSelector_whenChangingAttribute_shouldRecalculateElementAndDescendants() throws Exception {
+		final StyleSheet styleSheet = readStyleSheet("para { color: red; } para[role=note] { color: blue; }");
+		calculateAllStyles(styleSheet);
+		final Styles stylesOfPara2 = styleSheet.getStyles(para2);
+
+		para1.setAttribute("role", "note");
+		styleSheet.flushStylesAfterAttributeChange(para1, new QualifiedName(null, "role"));
+
+		assertEquals(BLUE, styleSheet.getStyles(para1).getColor());
+		assertEquals(BLUE, styleSheet.getStyles(emphasis1).getColor());
+		assertSame(stylesOfPara2, styleSheet.getStyles(para2));
+	}
+
+	@Test
+	public void givenAttributeUsedInSelector_whenChangingAttributeWithoutChangingStyles_shouldKeepStylesOfDescendants() throws Exception {
+		final StyleSheet styleSheet = readStyleSheet("para { color: red; } para[role=note] { color: blue; }");
+		para1.setAttribute("role", "example");
+		calculateAllStyles(styleSheet);
+
+		para1.setAttribute("role", "warning");
+		styleSheet.flushStylesAfterAttributeChange(para1, new QualifiedName(null, "role"));
+
+		assertAllStylesCached(styleSheet);
+		assertEquals(RED, styleSheet.getStyles(emphasis1).getColor());
+	}
+
+	@Test
+	public void givenAttributeUsedInAncestorSelector_whenChangingAttribute_shouldRecalculateDescendants() throws Exception {
+		final StyleSheet styleSheet = readStyleSheet("emphasis { color: red; } para[role=note] emphasis { color: green; }");
+		calculateAllStyles(styleSheet);
+
+		para1.setAttribute("role", "note");
+		styleSheet.flushStylesAfterAttributeChange(para1, new QualifiedName(null, "role"));
+
+		assertEquals(GREEN, styleSheet.getStyles(emphasis1).getColor());
+		assertEquals(RED, styleSheet.getStyles(emphasis2).getColor());
+	}
+
+	@Test
+	public void givenAttributeUsedInSiblingSelector_whenChangingAttribute_shouldRecalculateFollowingSibling() throws Exception {
+		final StyleSheet styleSheet = readStyleSheet("para { color: red; } para[role=note] + para { color: blue; }");
+		calculateAllStyles(styleSheet);
+
+		para1.setAttribute("role", "note");
+		styleSheet.flushStylesAfterAttributeChange(para1, new QualifiedName(null, "role"));
+
+		assertEquals(RED, styleSheet.getStyles(para1).getColor());
+		assertEquals(BLUE, styleSheet.getStyles(para2).getColor());
+		assertEquals(BLUE, styleSheet.getStyles(emphasis2).getColor());
+	}
+
+	@Test
+	public void givenNoSiblingSelectors_whenInsertingElement_shouldKeepStylesOfSiblings() throws Exception {
+		final StyleSheet styleSheet = readStyleSheet("para { color: red; } title { color: blue; }");
+		calculateAllStyles(styleSheet);
+
+		final IElement title = document.insertElement(para1.getStartOffset(), new QualifiedName(null, "title"));
+		styleSheet.flushStylesAfterInsertion(document.getRootElement(), title.getRange());
+
+		assertAllStylesCached(styleSheet);
+	}
+
+	@Test
+	public void givenSiblingSelector_whenInsertingPrecedingSibling_shouldRecalculateFollowingSibling() throws Exception {
+		final StyleSheet styleSheet = readStyleSheet("para { color: red; } title + para { color: blue; }");
+		calculateAllStyles(styleSheet);
+
+		final IElement title = document.insertElement(para1.getStartOffset(), new QualifiedName(null, "title"));
+		styleSheet.flushStylesAfterInsertion(document.getRootElement(), title.getRange());
+
+		assertEquals(BLUE, styleSheet.getStyles(para1).getColor());
+		assertEquals(BLUE, styleSheet.getStyles(emphasis1).getColor());
+		assertEquals(RED, styleSheet.getStyles(para2).getColor());
+	}
+
+	@Test
+	public void givenSiblingSelector_whenDeletingPrecedingSibling_shouldRecalculateFollowingSibling() throws Exception {
+		final StyleSheet styleSheet = readStyleSheet("para { color: red; } title + para { color: blue; }");
+		final IElement title = document.insertElement(para1.getStartOffset(), new QualifiedName(null, "title"));
+		calculateAllStyles(styleSheet);
+		assertEquals(BLUE, styleSheet.getStyles(para1).getColor());
+
+		final ContentRange range = title.getRange();
+		styleSheet.flushStylesBeforeDeletion(document.getRootElement(), range);
+		document.delete(range);
+		styleSheet.flushStylesAfterDeletion(document.getRootElement(), range);
+
+		assertEquals(RED, styleSheet.getStyles(para1).getColor());
+		assertEquals(RED, styleSheet.getStyles(emphasis1).getColor());
+	}
+
+	@Test
+	public void whenDeletingElement_shouldFlushStylesOfDeletedSubtree() throws Exception {
+		final StyleSheet styleSheet = readStyleSheet("para { color: red; } emphasis { color: blue; }");
+		calculateAllStyles(styleSheet);
+
+		final ContentRange range = para1.getRange();
+		styleSheet.flushStylesBeforeDeletion(document.getRootElement(), range);
+		document.delete(range);
+		styleSheet.flushStylesAfterDeletion(document.getRootElement(), range);
+
+		assertFalse(styleSheet.testGetStylesCache().containsKey(para1));
+		assertFalse(styleSheet.testGetStylesCache().containsKey(emphasis1));
+		assertTrue(styleSheet.testGetStylesCache().containsKey(para2));
+	}
+
+	private void calculateAllStyles(final StyleSheet styleSheet) {
+		for (final INode node : allNodes()) {
+			styleSheet.getStyles(node);
+		}
+	}
+
+	private void assertAllStylesCached(final StyleSheet styleSheet) {
+		for (final INode node : allNodes()) {
+			assertTrue(styleSheet.testGetStylesCache().containsKey(node));
+		}
+		assertFalse(styleSheet.testGetStylesCache().isEmpty());
+	}
+
+	private INode[] allNodes() {
+		return new INode[] { document, document.getRootElement(), para1, emphasis1, para2, emphasis2 };
+	}
+
+	private static StyleSheet readStyleSheet(final String css) throws Exception {
+		return new StyleSheetReader().read(css);
+	}
+}
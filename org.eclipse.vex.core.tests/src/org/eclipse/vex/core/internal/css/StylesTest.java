@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.css;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.vex.core.internal.core.Color;
+import org.junit.Test;
+
+public class StylesTest {
+
+	@Test
+	public void givenKnownProperty_shouldProvideValueByNameAndByOrdinal() throws Exception {
+		final Styles styles = new Styles();
+		styles.put(CSS.COLOR, new Color(1, 2, 3));
+
+		assertEquals(new Color(1, 2, 3), styles.getColor());
+		assertEquals(new Color(1, 2, 3), styles.get(CSS.COLOR));
+		assertEquals(new Color(1, 2, 3), styles.get(Styles.getOrdinal(CSS.COLOR)));
+	}
+
+	@Test
+	public void givenValueSetByOrdinal_shouldProvideValueByName() throws Exception {
+		final Styles styles = new Styles();
+		styles.put(Styles.getOrdinal(CSS.FONT_SIZE), 12.0f);
+
+		assertEquals(12.0f, styles.getFontSize(), 0.0f);
+		assertEquals(12.0f, styles.get(CSS.FONT_SIZE));
+	}
+
+	@Test
+	public void givenUnknownProperty_shouldNotHaveOrdinal() throws Exception {
+		assertEquals(-1, Styles.getOrdinal("unknown-property"));
+	}
+
+	@Test
+	public void givenUnknownProperty_shouldStoreValueByName() throws Exception {
+		final Styles styles = new Styles();
+		styles.put("unknown-property", "value");
+
+		assertEquals("value", styles.get("unknown-property"));
+		assertNull(styles.get("other-unknown-property"));
+	}
+
+	@Test
+	public void givenPropertyWithoutValue_shouldProvideNull() throws Exception {
+		final Styles styles = new Styles();
+
+		assertNull(styles.get(CSS.DISPLAY));
+		assertFalse(styles.isContentDefined());
+	}
+
+	@Test
+	public void givenPseudoElementStyles_shouldProvidePseudoElementStyles() throws Exception {
+		final Styles styles = new Styles();
+		final Styles beforeStyles = new Styles();
+		styles.putPseudoElementStyles(Styles.PseudoElement.BEFORE, beforeStyles);
+
+		assertTrue(styles.hasPseudoElement(Styles.PseudoElement.BEFORE));
+		assertFalse(styles.hasPseudoElement(Styles.PseudoElement.AFTER));
+		assertSame(beforeStyles, styles.getPseudoElementStyles(Styles.PseudoElement.BEFORE));
+		assertSame(styles, styles.getPseudoElementStyles(Styles.PseudoElement.AFTER));
+	}
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.dom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.vex.core.provisional.dom.IContent;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ContentCharSequenceTest {
+
+	private IContent content;
+
+	@Before
+	public void setUp() throws Exception {
+		content = new GapContent(10);
+		content.insertText(0, "Hello World");
+		content.insertTagMarker(6);
+	}
+
+	@Test
+	public void shouldProvideRawTextIncludingTagMarkers() throws Exception {
+		final ContentCharSequence sequence = new ContentCharSequence(content);
+
+		assertEquals(content.length(), sequence.length());
+		assertEquals(content.getRawText(), sequence.toString());
+		for (int i = 0; i < content.length(); i++) {
+			assertEquals(content.charAt(i), sequence.charAt(i));
+		}
+	}
+
+	@Test
+	public void subSequenceShouldBeRelativeToParentSequence() throws Exception {
+		final CharSequence subSequence = new ContentCharSequence(content).subSequence(2, 10).subSequence(1, 6);
+
+		assertEquals(5, subSequence.length());
+		assertEquals("lo \0W", subSequence.toString());
+		assertEquals('W', subSequence.charAt(4));
+	}
+
+	@Test
+	public void emptySubSequence_shouldBeEmptyString() throws Exception {
+		assertEquals("", new ContentCharSequence(content).subSequence(3, 3).toString());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void subSequence_shouldNotExceedParentSequence() throws Exception {
+		new ContentCharSequence(content).subSequence(2, 5).charAt(3);
+	}
+
+	@Test
+	public void canBeUsedWithRegularExpressions() throws Exception {
+		final Matcher matcher = Pattern.compile("W.rld").matcher(new ContentCharSequence(content));
+
+		assertTrue(matcher.find());
+		assertEquals(7, matcher.start());
+		assertEquals("World", matcher.group());
+	}
+}
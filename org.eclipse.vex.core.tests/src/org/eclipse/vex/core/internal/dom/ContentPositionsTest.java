@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.dom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.vex.core.provisional.dom.ContentRange;
+import org.eclipse.vex.core.provisional.dom.IPosition;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ContentPositionsTest {
+
+	private ContentPositions positions;
+
+	@Before
+	public void setUp() throws Exception {
+		positions = new ContentPositions();
+	}
+
+	@Test
+	public void givenPositionAtOffset_whenCreatingPositionAtSameOffset_shouldReturnSameInstance() throws Exception {
+		final IPosition first = positions.createPosition(5);
+		final IPosition second = positions.createPosition(5);
+
+		assertSame(first, second);
+		assertEquals(1, positions.size());
+	}
+
+	@Test
+	public void givenSharedPosition_shouldKeepPositionValidUntilRemovedByAllClients() throws Exception {
+		final IPosition position = positions.createPosition(5);
+		positions.createPosition(5);
+
+		positions.removePosition(position);
+		assertTrue(position.isValid());
+		assertEquals(1, positions.size());
+
+		positions.removePosition(position);
+		assertFalse(position.isValid());
+		assertEquals(0, positions.size());
+	}
+
+	@Test
+	public void shouldMoveOnlyPositionsAtOrAfterStartOffset() throws Exception {
+		final IPosition before = positions.createPosition(4);
+		final IPosition at = positions.createPosition(5);
+		final IPosition after = positions.createPosition(6);
+
+		positions.movePositions(5, 3);
+
+		assertEquals(4, before.getOffset());
+		assertEquals(8, at.getOffset());
+		assertEquals(9, after.getOffset());
+	}
+
+	@Test
+	public void removedPosition_shouldNotBeMovedAnymore() throws Exception {
+		final IPosition position = positions.createPosition(5);
+		positions.removePosition(position);
+
+		positions.movePositions(0, 3);
+
+		assertEquals(5, position.getOffset());
+	}
+
+	@Test
+	public void givenManyPositions_whenModifiedRandomly_shouldBehaveLikeListOfOffsets() throws Exception {
+		final Random random = new Random(42);
+		final List<IPosition> createdPositions = new ArrayList<IPosition>();
+		final List<Integer> expectedOffsets = new ArrayList<Integer>();
+
+		for (int i = 0; i < 5000; i++) {
+			final int operation = random.nextInt(10);
+			if (operation < 5) {
+				final int offset = random.nextInt(10000);
+				final IPosition position = positions.createPosition(offset);
+				if (createdPositions.contains(position)) {
+					positions.removePosition(position);
+				} else {
+					createdPositions.add(position);
+					expectedOffsets.add(offset);
+				}
+			} else if (operation < 7) {
+				final int startOffset = random.nextInt(10000);
+				final int delta = random.nextInt(50) + 1;
+				positions.movePositions(startOffset, delta);
+				for (int j = 0; j < expectedOffsets.size(); j++) {
+					if (expectedOffsets.get(j) >= startOffset) {
+						expectedOffsets.set(j, expectedOffsets.get(j) + delta);
+					}
+				}
+			} else if (operation < 9) {
+				final int startOffset = random.nextInt(10000);
+				final ContentRange range = new ContentRange(startOffset, startOffset + random.nextInt(20));
+				positions.removeRange(range);
+				final Iterator<IPosition> positionIterator = createdPositions.iterator();
+				for (final Iterator<Integer> offsetIterator = expectedOffsets.iterator(); offsetIterator.hasNext();) {
+					final int offset = offsetIterator.next();
+					final IPosition position = positionIterator.next();
+					if (range.contains(offset)) {
+						assertFalse(position.isValid());
+						offsetIterator.remove();
+						positionIterator.remove();
+					}
+				}
+				for (int j = 0; j < expectedOffsets.size(); j++) {
+					if (expectedOffsets.get(j) > range.getEndOffset()) {
+						expectedOffsets.set(j, expectedOffsets.get(j) - range.length());
+					}
+				}
+			} else if (!createdPositions.isEmpty()) {
+				final int index = random.nextInt(createdPositions.size());
+				final IPosition position = createdPositions.remove(index);
+				expectedOffsets.remove(index);
+				positions.removePosition(position);
+				assertFalse(position.isValid());
+			}
+
+			assertEquals(expectedOffsets.size(), positions.size());
+		}
+
+		for (int i = 0; i < createdPositions.size(); i++) {
+			assertTrue(createdPositions.get(i).isValid());
+			assertEquals(expectedOffsets.get(i).intValue(), createdPositions.get(i).getOffset());
+		}
+	}
+}
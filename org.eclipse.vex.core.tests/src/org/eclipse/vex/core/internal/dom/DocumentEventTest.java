@@ -14,6 +14,8 @@ package org.eclipse.vex.core.internal.dom;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import org.eclipse.core.runtime.QualifiedName;
@@ -23,6 +25,7 @@ import org.eclipse.vex.core.provisional.dom.ContentChangeEvent;
 import org.eclipse.vex.core.provisional.dom.ContentRange;
 import org.eclipse.vex.core.provisional.dom.IDocument;
 import org.eclipse.vex.core.provisional.dom.IDocumentFragment;
+import org.eclipse.vex.core.provisional.dom.IComment;
 import org.eclipse.vex.core.provisional.dom.IDocumentListener;
 import org.eclipse.vex.core.provisional.dom.IElement;
 import org.eclipse.vex.core.provisional.dom.NamespaceDeclarationChangeEvent;
@@ -34,6 +37,10 @@ public class DocumentEventTest {
 	private IDocument document;
 	private IElement childNode;
 	private ContentChangeEvent contentChangeEvent = null;
+	private ContentChangeEvent deletionEvent = null;
+	private ContentChangeEvent insertionEvent = null;
+	private ContentChangeEvent replacementEvent = null;
+	private int contentChangeEventCount = 0;
 
 	@Before
 	public void setUp() throws Exception {
@@ -64,11 +71,22 @@ public class DocumentEventTest {
 			@Override
 			public void contentDeleted(final ContentChangeEvent event) {
 				contentChangeEvent = event;
+				deletionEvent = event;
+				contentChangeEventCount++;
 			}
 
 			@Override
 			public void contentInserted(final ContentChangeEvent event) {
 				contentChangeEvent = event;
+				insertionEvent = event;
+				contentChangeEventCount++;
+			}
+
+			@Override
+			public void contentReplaced(final ContentChangeEvent event) {
+				contentChangeEvent = event;
+				replacementEvent = event;
+				contentChangeEventCount++;
 			}
 
 		});
@@ -135,4 +153,90 @@ public class DocumentEventTest {
 		assertEquals(childNode, contentChangeEvent.getParent());
 	}
 
+	@Test
+	public void givenEventBatch_whenModifyingContent_shouldFireEventWhenBatchEnds() throws Exception {
+		document.beginEventBatch();
+		document.insertText(childNode.getEndOffset(), "Hello World");
+		assertEquals(0, contentChangeEventCount);
+
+		document.endEventBatch();
+		assertEquals(1, contentChangeEventCount);
+		assertEquals(childNode, contentChangeEvent.getParent());
+		assertEquals(new ContentRange(childNode.getStartOffset() + 1, childNode.getEndOffset() - 1), contentChangeEvent.getRange());
+	}
+
+	@Test
+	public void givenEventBatch_whenModifyingContentOfDifferentElements_shouldFireOneEventForTheCommonParent() throws Exception {
+		final IElement sibling = document.insertElement(childNode.getEndOffset() + 1, new QualifiedName(null, "sibling"));
+		contentChangeEventCount = 0;
+
+		document.beginEventBatch();
+		document.insertText(childNode.getEndOffset(), "Hello");
+		document.insertText(sibling.getEndOffset(), "World");
+		document.delete(new ContentRange(childNode.getStartOffset() + 1, childNode.getStartOffset() + 2));
+		document.endEventBatch();
+
+		assertEquals(1, contentChangeEventCount);
+		assertSame(replacementEvent, contentChangeEvent);
+		assertEquals(document.getRootElement(), contentChangeEvent.getParent());
+		assertEquals(document.getRootElement().getRange(), contentChangeEvent.getRange());
+		assertTrue("Expecting structural change", contentChangeEvent.isStructuralChange());
+	}
+
+	@Test
+	public void givenEventBatch_whenDeletingOnlyOnce_shouldFireDeletionEvent() throws Exception {
+		document.insertText(childNode.getEndOffset(), "Hello World");
+		contentChangeEventCount = 0;
+
+		document.beginEventBatch();
+		document.delete(new ContentRange(childNode.getStartOffset() + 1, childNode.getStartOffset() + 6));
+		document.endEventBatch();
+
+		assertEquals(1, contentChangeEventCount);
+		assertSame(deletionEvent, contentChangeEvent);
+	}
+
+	@Test
+	public void givenEventBatch_whenDeletingAcrossTopLevelNodes_shouldFireReplacementEventForTheDocument() throws Exception {
+		final IComment comment = document.insertComment(document.getRootElement().getStartOffset());
+		contentChangeEventCount = 0;
+		insertionEvent = null;
+
+		document.beginEventBatch();
+		document.delete(childNode.getRange());
+		document.delete(comment.getRange());
+		document.endEventBatch();
+
+		assertEquals(1, contentChangeEventCount);
+		assertNull("Expecting no insertion", insertionEvent);
+		assertNull("Expecting no deletion", deletionEvent);
+		assertSame(replacementEvent, contentChangeEvent);
+		assertSame(document, contentChangeEvent.getParent());
+		assertEquals(document.getRange(), contentChangeEvent.getRange());
+		assertTrue("Expecting structural change", contentChangeEvent.isStructuralChange());
+	}
+
+	@Test
+	public void givenNestedEventBatches_shouldFireEventWhenOutermostBatchEnds() throws Exception {
+		document.beginEventBatch();
+		document.beginEventBatch();
+		document.insertText(childNode.getEndOffset(), "Hello World");
+		document.endEventBatch();
+		assertEquals(0, contentChangeEventCount);
+
+		document.endEventBatch();
+		assertEquals(1, contentChangeEventCount);
+	}
+
+	@Test
+	public void givenEventBatch_whenDeletingModifiedElement_shouldFireEventForItsParent() throws Exception {
+		document.beginEventBatch();
+		document.insertText(childNode.getEndOffset(), "Hello World");
+		document.delete(childNode.getRange());
+		document.endEventBatch();
+
+		assertEquals(1, contentChangeEventCount);
+		assertEquals(document.getRootElement(), contentChangeEvent.getParent());
+	}
+
 }
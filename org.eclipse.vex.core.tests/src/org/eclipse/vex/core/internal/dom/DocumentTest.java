@@ -40,6 +40,13 @@ public class DocumentTest {
 		assertDocumentConnectedToRootElement(document.getRootElement(), document);
 	}
 
+	@Test
+	public void createDocumentWithRootElementAndRopeContent() throws Exception {
+		final Document document = new Document(new QualifiedName(null, "root"), new RopeContent());
+		assertDocumentConnectedToRootElement(document.getRootElement(), document);
+		assertTrue(document.getContent() instanceof RopeContent);
+	}
+
 	@Test
 	public void createDocumentWithRootElementAndContent() throws Exception {
 		final GapContent content = new GapContent(10);
@@ -13,6 +13,7 @@ package org.eclipse.vex.core.internal.dom;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import org.eclipse.core.runtime.AssertionFailedException;
@@ -71,6 +72,38 @@ public class GapContentTest extends ContentTest {
 		assertEquals(2, content.getPositionCount());
 	}
 
+	@Test
+	public void givenGapInTheMiddle_whenCopyingRange_shouldCopyCharactersOnBothSidesOfTheGap() throws Exception {
+		final GapContent content = new GapContent(10);
+		content.insertText(0, "Hello World");
+		content.insertTagMarker(6);
+		final IPosition position = content.createPosition(7);
+
+		final IContent copy = content.getContent(new ContentRange(3, 9));
+
+		assertEquals(7, copy.length());
+		assertEquals("lo \0Wor", copy.getRawText());
+		assertTrue(copy.isTagMarker(3));
+		assertEquals(7, position.getOffset());
+	}
+
+	@Test
+	public void whenInsertingContent_shouldMovePositionsOnce() throws Exception {
+		final GapContent content = new GapContent(10);
+		content.insertText(0, "Hello World");
+		final IPosition before = content.createPosition(5);
+		final IPosition after = content.createPosition(6);
+
+		final RopeContent other = new RopeContent();
+		other.insertText(0, "New ");
+		other.insertTagMarker(0);
+		content.insertContent(6, other);
+
+		assertEquals("Hello \0New World", content.getRawText());
+		assertEquals(5, before.getOffset());
+		assertEquals(11, after.getOffset());
+	}
+
 	@Test
 	public void testGapContent() throws Exception {
 		//
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.dom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.eclipse.vex.core.provisional.dom.ContentRange;
+import org.eclipse.vex.core.provisional.dom.IContent;
+import org.eclipse.vex.core.provisional.dom.IPosition;
+import org.junit.Test;
+
+public class RopeContentTest extends ContentTest {
+
+	@Override
+	protected IContent createContent() {
+		return new RopeContent();
+	}
+
+	@Test
+	public void givenLargeContent_shouldProvideTextAcrossChunks() throws Exception {
+		final RopeContent content = new RopeContent();
+		final String text = createText(10000);
+		content.insertText(0, text);
+
+		assertEquals(text.length(), content.length());
+		assertEquals(text, content.getRawText());
+		assertEquals(text.substring(1000, 3000), content.getRawText(new ContentRange(1000, 2999)));
+		for (int i = 0; i < text.length(); i += 37) {
+			assertEquals(text.charAt(i), content.charAt(i));
+		}
+	}
+
+	@Test
+	public void givenScatteredEdits_shouldBehaveLikeGapContent() throws Exception {
+		final RopeContent ropeContent = new RopeContent();
+		final GapContent gapContent = new GapContent(100);
+		final String text = createText(5000);
+		ropeContent.insertText(0, text);
+		gapContent.insertText(0, text);
+
+		final Random random = new Random(42);
+		for (int i = 0; i < 2000; i++) {
+			final int offset = random.nextInt(gapContent.length() + 1);
+			switch (offset < gapContent.length() ? random.nextInt(4) : random.nextInt(2)) {
+			case 0:
+				ropeContent.insertTagMarker(offset);
+				gapContent.insertTagMarker(offset);
+				break;
+			case 1:
+				final String insertedText = createText(random.nextInt(700) + 1);
+				ropeContent.insertText(offset, insertedText);
+				gapContent.insertText(offset, insertedText);
+				break;
+			default:
+				final ContentRange range = new ContentRange(offset, Math.min(gapContent.length() - 1, offset + random.nextInt(300)));
+				ropeContent.remove(range);
+				gapContent.remove(range);
+				break;
+			}
+			assertEquals(gapContent.length(), ropeContent.length());
+		}
+		assertEquals(gapContent.getRawText(), ropeContent.getRawText());
+		assertEquals(gapContent.getText(), ropeContent.getText());
+	}
+
+	@Test
+	public void givenPartialCopy_whenModifyingTheCopy_shouldNotModifyOriginal() throws Exception {
+		final RopeContent content = new RopeContent();
+		final String text = createText(5000);
+		content.insertText(0, text);
+
+		final IContent copy = content.getContent(new ContentRange(100, 3999));
+		copy.insertText(0, "Hello");
+		copy.remove(new ContentRange(2000, 2999));
+
+		assertEquals(text, content.getRawText());
+		assertEquals("Hello" + text.substring(100, 2095) + text.substring(3095, 4000), copy.getRawText());
+	}
+
+	@Test
+	public void whenInsertingRopeContent_shouldMovePositions() throws Exception {
+		final RopeContent content = new RopeContent();
+		content.insertText(0, createText(2000));
+		final IPosition before = content.createPosition(999);
+		final IPosition after = content.createPosition(1000);
+
+		final RopeContent other = new RopeContent();
+		other.insertTagMarker(0);
+		other.insertText(1, createText(1000));
+		other.insertTagMarker(1001);
+		content.insertContent(1000, other);
+
+		assertEquals(3002, content.length());
+		assertEquals(999, before.getOffset());
+		assertEquals(2002, after.getOffset());
+		assertTrue(content.isTagMarker(1000));
+		assertTrue(content.isTagMarker(2001));
+		assertFalse(content.isTagMarker(2002));
+	}
+
+	private static String createText(final int length) {
+		final StringBuilder result = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			result.append((char) ('a' + i % 26));
+		}
+		return result.toString();
+	}
+}
@@ -8,16 +8,14 @@
  * Contributors:
  *     John Krasnay - initial API and implementation
  *     Carsten Hiesserich - writeNoWrap(DocumentFragment), DocumentWithInclude
+ *     agent - streaming output
  *******************************************************************************/
 package org.eclipse.vex.core.internal.io;
 
-import static org.eclipse.vex.core.internal.io.RoundTrip.assertDocumentsEqual;
 import static org.junit.Assert.assertEquals;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -92,25 +90,51 @@ public class DocumentWriterTest {
 		assertEquals("<child>a   b</child><child>c   d</child><child>e   f</child>", writtenFragment);
 	}
 
-	private static void assertWriteReadCycleWorks(final URL documentUrl) throws IOException, ParserConfigurationException, SAXException, Exception {
+	@Test
+	public void givenLargeDocument_whenWritingToOutputStream_shouldProvideSameTextAsTextDocument() throws Exception {
+		final IDocument document = createLargeDocument(500);
+		final DocumentWriter documentWriter = createDocumentWriter();
+
+		final org.eclipse.jface.text.Document textDocument = new org.eclipse.jface.text.Document();
+		documentWriter.write(document, textDocument, null);
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		documentWriter.write(document, buffer);
+
+		assertEquals("<?xml version='1.0' encoding='UTF-8'?>" + System.getProperty("line.separator") + textDocument.get(), new String(buffer.toByteArray(), "UTF-8"));
+	}
+
+	@Test
+	public void givenLargeDocument_whenWritingToOutputStream_shouldReadSameDocument() throws Exception {
+		RoundTrip.assertWriteReadCycleWorks(createDocumentWriter(), createLargeDocument(5000), null);
+	}
+
+	private static IDocument createLargeDocument(final int paragraphCount) {
+		final Document document = new Document(new QualifiedName(null, "html"));
+		final IElement body = document.insertElement(document.getRootElement().getEndOffset(), new QualifiedName(null, "body"));
+		for (int i = 0; i < paragraphCount; i += 1) {
+			final IElement p = document.insertElement(body.getEndOffset(), new QualifiedName(null, "p"));
+			document.insertText(p.getEndOffset(), "Paragraph " + i + ": Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor ");
+			final IElement inline = document.insertElement(p.getEndOffset(), new QualifiedName(null, "inline"));
+			inline.setAttribute("id", "inline" + i);
+			document.insertText(inline.getEndOffset(), "incididunt ut labore");
+			document.insertText(p.getEndOffset(), " et dolore magna aliqua & <more>.");
+		}
+		return document;
+	}
+
+	private static DocumentWriter createDocumentWriter() throws IOException {
 		final StyleSheetReader reader = new StyleSheetReader();
 		final StyleSheet styleSheet = reader.read(TestResources.get("test.css"));
 
-		final IDocument expectedDocument = readDocument(new InputSource(documentUrl.toString()));
-
 		final DocumentWriter documentWriter = new DocumentWriter();
 		documentWriter.setWrapColumn(30); // Set a small value to detect wrapping problems
 		documentWriter.setWhitespacePolicy(new CssWhitespacePolicy(styleSheet));
-		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		documentWriter.write(expectedDocument, buffer);
-		System.out.println(buffer.toString());
-
-		final InputStream inputStream = new ByteArrayInputStream(buffer.toByteArray());
-		final InputSource inputSource = new InputSource(inputStream);
-		inputSource.setSystemId(documentUrl.toString());
-		final IDocument actualDocument = readDocument(inputSource);
+		return documentWriter;
+	}
 
-		assertDocumentsEqual(expectedDocument, actualDocument);
+	private static void assertWriteReadCycleWorks(final URL documentUrl) throws IOException, ParserConfigurationException, SAXException, Exception {
+		final IDocument expectedDocument = readDocument(new InputSource(documentUrl.toString()));
+		RoundTrip.assertWriteReadCycleWorks(createDocumentWriter(), expectedDocument, documentUrl.toString());
 	}
 
 	private static IDocument readDocument(final InputSource inputSource) throws IOException, ParserConfigurationException, SAXException {
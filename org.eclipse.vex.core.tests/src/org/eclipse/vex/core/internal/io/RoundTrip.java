@@ -8,6 +8,7 @@
  * Contributors:
  * 		Florian Thienel - initial API and implementation
  * 		Carsten Hiesserich - added support for include nodes
+ * 		agent - write read cycle
  *******************************************************************************/
 package org.eclipse.vex.core.internal.io;
 
@@ -15,6 +16,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.Collection;
 import java.util.Iterator;
 
@@ -27,6 +30,7 @@ import org.eclipse.vex.core.provisional.dom.IIncludeNode;
 import org.eclipse.vex.core.provisional.dom.INode;
 import org.eclipse.vex.core.provisional.dom.IParent;
 import org.eclipse.vex.core.provisional.dom.IText;
+import org.xml.sax.InputSource;
 
 /**
  * This class provides some special assertions for round trip tests.
@@ -35,6 +39,24 @@ import org.eclipse.vex.core.provisional.dom.IText;
  */
 public class RoundTrip {
 
+	/**
+	 * Writes the given document with the given writer to an output stream and reads the written text back into a new
+	 * document. The written document must be equal to the given document.
+	 *
+	 * @param systemId
+	 *            the system ID to resolve the DTD or schema of the written document against, may be null
+	 */
+	public static void assertWriteReadCycleWorks(final DocumentWriter documentWriter, final IDocument expectedDocument, final String systemId) throws Exception {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		documentWriter.write(expectedDocument, buffer);
+
+		final InputSource inputSource = new InputSource(new ByteArrayInputStream(buffer.toByteArray()));
+		inputSource.setSystemId(systemId);
+		final IDocument actualDocument = new DocumentReader().read(inputSource);
+
+		assertDocumentsEqual(expectedDocument, actualDocument);
+	}
+
 	public static void assertDocumentsEqual(final IDocument expected, final IDocument actual) {
 		assertEquals(expected.getPublicID(), actual.getPublicID());
 		assertEquals(expected.getSystemID(), actual.getSystemID());
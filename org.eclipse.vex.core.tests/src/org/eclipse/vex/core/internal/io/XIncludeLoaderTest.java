@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.eclipse.vex.core.internal.css.CssWhitespacePolicy;
+import org.eclipse.vex.core.internal.css.IStyleSheetProvider;
+import org.eclipse.vex.core.internal.css.StyleSheet;
+import org.eclipse.vex.core.internal.css.StyleSheetReader;
+import org.eclipse.vex.core.internal.validator.WTPVEXValidator;
+import org.eclipse.vex.core.provisional.dom.DocumentContentModel;
+import org.eclipse.vex.core.provisional.dom.IDocument;
+import org.eclipse.vex.core.provisional.dom.IElement;
+import org.eclipse.vex.core.provisional.dom.IIncludeNode;
+import org.eclipse.vex.core.provisional.dom.INode;
+import org.eclipse.vex.core.provisional.dom.IText;
+import org.eclipse.vex.core.provisional.dom.IValidator;
+import org.eclipse.vex.core.tests.TestResources;
+import org.junit.Test;
+
+public class XIncludeLoaderTest {
+
+	@Test
+	public void givenDocumentWithInclude_whenLoadingIncludes_shouldResolveIncludedDocument() throws Exception {
+		final IDocument document = new DocumentReader().read(TestResources.get("documentWithInclude.xml"));
+
+		new XIncludeLoader(2).load(document);
+
+		final IIncludeNode include = (IIncludeNode) document.getRootElement().children().get(1);
+		final IDocument includedDocument = (IDocument) include.getResolved();
+		assertEquals("chapter", includedDocument.getRootElement().getLocalName());
+		assertEquals("Title", includedDocument.getRootElement().childElements().first().getText());
+	}
+
+	@Test
+	public void givenTextInclude_whenLoadingIncludes_shouldNotResolveInclude() throws Exception {
+		final IDocument document = new DocumentReader().read(TestResources.get("documentWithInclude.xml"));
+
+		new XIncludeLoader(2).load(document);
+
+		final IElement para = (IElement) document.getRootElement().children().get(2);
+		final IIncludeNode textInclude = (IIncludeNode) para.children().withoutText().first();
+		assertNull(textInclude.getResolved());
+	}
+
+	@Test
+	public void givenNestedIncludes_whenLoadingIncludes_shouldResolveIncludesOfIncludedDocuments() throws Exception {
+		final IDocument document = new DocumentReader().read(TestResources.get("documentWithCyclicInclude.xml"));
+
+		new XIncludeLoader(2).load(document);
+
+		final IIncludeNode include = (IIncludeNode) document.getRootElement().children().get(1);
+		final IDocument includedDocument = (IDocument) include.getResolved();
+		final IIncludeNode nestedInclude = (IIncludeNode) includedDocument.getRootElement().children().withoutText().get(1);
+		assertEquals("Title", ((IDocument) nestedInclude.getResolved()).getRootElement().childElements().first().getText());
+	}
+
+	@Test
+	public void givenCyclicInclude_whenLoadingIncludes_shouldNotResolveCycle() throws Exception {
+		final IDocument document = new DocumentReader().read(TestResources.get("documentWithCyclicInclude.xml"));
+
+		new XIncludeLoader(2).load(document);
+
+		final IIncludeNode cyclicInclude = (IIncludeNode) document.getRootElement().children().get(2);
+		assertTrue(cyclicInclude.getReference().getAttribute("href").getValue().endsWith("documentWithCyclicInclude.xml"));
+		assertNull(cyclicInclude.getResolved());
+	}
+
+	@Test
+	public void givenMissingDocument_whenLoadingIncludes_shouldNotResolveInclude() throws Exception {
+		final IDocument document = new DocumentReader().read(TestResources.get("documentWithCyclicInclude.xml"));
+
+		new XIncludeLoader(2).load(document);
+
+		final IIncludeNode missingInclude = (IIncludeNode) document.getRootElement().children().get(3);
+		assertNull(missingInclude.getResolved());
+	}
+
+	@Test
+	public void givenFailureWhileReadingOneDocument_whenLoadingIncludes_shouldResolveTheOtherIncludes() throws Exception {
+		final IDocument document = new DocumentReader().read(TestResources.get("documentWithDtdAndIncludes.xml"));
+		final XIncludeLoader loader = new XIncludeLoader(2) {
+			@Override
+			protected IValidator createValidator(final DocumentContentModel documentType) {
+				if (documentType.isDtdAssigned()) {
+					throw new IllegalStateException("Cannot load the DTD");
+				}
+				return super.createValidator(documentType);
+			}
+		};
+
+		loader.load(document);
+
+		final List<? extends INode> children = document.getRootElement().children().withoutText().asList();
+		assertNull(((IIncludeNode) children.get(2)).getResolved());
+		assertNull(((IIncludeNode) children.get(3)).getResolved());
+		assertNotNull(((IIncludeNode) children.get(4)).getResolved());
+	}
+
+	@Test
+	public void givenIncludedDocumentsOfSameDocumentType_whenLoadingIncludes_shouldShareOneValidator() throws Exception {
+		final IDocument document = new DocumentReader().read(TestResources.get("documentWithDtdAndIncludes.xml"));
+
+		new XIncludeLoader(2).load(document);
+
+		final List<? extends INode> children = document.getRootElement().children().withoutText().asList();
+		final IDocument documentWithDtdPublic = (IDocument) ((IIncludeNode) children.get(2)).getResolved();
+		final IDocument documentWithDtdSystem = (IDocument) ((IIncludeNode) children.get(3)).getResolved();
+		final IDocument documentWithoutDtd = (IDocument) ((IIncludeNode) children.get(4)).getResolved();
+		assertSame(documentWithDtdPublic.getValidator(), documentWithDtdSystem.getValidator());
+		assertNotSame(documentWithDtdPublic.getValidator(), documentWithoutDtd.getValidator());
+	}
+
+	@Test
+	public void givenStyleSheetAndWhitespacePolicy_whenLoadingIncludes_shouldReadIncludedDocumentsWithThem() throws Exception {
+		final StyleSheet styleSheet = new StyleSheetReader().read(TestResources.get("test.css"));
+		final DocumentReader reader = new DocumentReader();
+		reader.setValidator(new WTPVEXValidator(new DocumentContentModel()));
+		reader.setWhitespacePolicyFactory(CssWhitespacePolicy.FACTORY);
+		reader.setStyleSheetProvider(new IStyleSheetProvider() {
+			@Override
+			public StyleSheet getStyleSheet(final DocumentContentModel documentContentModel) {
+				return styleSheet;
+			}
+		});
+		final IDocument document = reader.read(TestResources.get("documentWithDtdAndIncludes.xml"));
+
+		final XIncludeLoader loader = new XIncludeLoader(2);
+		loader.setStyleSheet(styleSheet);
+		loader.setWhitespacePolicyFactory(CssWhitespacePolicy.FACTORY);
+		loader.load(document);
+
+		final IIncludeNode include = (IIncludeNode) document.getRootElement().children().withoutText().get(2);
+		final IDocument includedDocument = (IDocument) include.getResolved();
+		assertEquals(TestResources.TEST_DTD, includedDocument.getValidator().getDocumentContentModel().getPublicId());
+		assertEquals("para", includedDocument.getRootElement().childElements().last().getLocalName());
+		for (final INode child : includedDocument.getRootElement().children()) {
+			assertTrue("Expecting no whitespace between the blocks of the included document", !(child instanceof IText));
+		}
+		for (final INode child : document.getRootElement().children()) {
+			assertTrue("Expecting no whitespace between the blocks of the including document", !(child instanceof IText));
+		}
+	}
+}
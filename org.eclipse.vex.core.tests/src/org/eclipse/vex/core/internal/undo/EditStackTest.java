@@ -14,6 +14,14 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.vex.core.internal.dom.Document;
+import org.eclipse.vex.core.provisional.dom.AttributeChangeEvent;
+import org.eclipse.vex.core.provisional.dom.ContentRange;
+import org.eclipse.vex.core.provisional.dom.ContentChangeEvent;
+import org.eclipse.vex.core.provisional.dom.IDocument;
+import org.eclipse.vex.core.provisional.dom.IDocumentListener;
+import org.eclipse.vex.core.provisional.dom.NamespaceDeclarationChangeEvent;
 import org.junit.Test;
 
 /**
@@ -276,6 +284,202 @@ public class EditStackTest {
 		assertEquals(123, rolledbackEdit.getOffsetBefore());
 	}
 
+	@Test
+	public void givenEventBatching_whenCommittingWork_shouldNotifyDocumentListenersOnce() throws Exception {
+		final EditStack stack = new EditStack();
+		final IDocument document = new Document(new QualifiedName(null, "root"));
+		final CountingDocumentListener listener = new CountingDocumentListener();
+		document.addDocumentListener(listener);
+		stack.setEventBatching(document);
+
+		stack.beginWork();
+		stack.apply(new InsertTextEdit(document, 2, "Hello"));
+		stack.apply(new InsertTextEdit(document, 7, " World"));
+		assertEquals(0, listener.contentChangeCount);
+
+		stack.commitWork();
+		assertEquals(1, listener.contentChangeCount);
+
+		stack.undo();
+		assertEquals(2, listener.contentChangeCount);
+	}
+
+	@Test
+	public void givenEventBatching_whenRollingBackWork_shouldNotifyDocumentListenersOnce() throws Exception {
+		final EditStack stack = new EditStack();
+		final IDocument document = new Document(new QualifiedName(null, "root"));
+		final CountingDocumentListener listener = new CountingDocumentListener();
+		document.addDocumentListener(listener);
+		stack.setEventBatching(document);
+
+		stack.beginWork();
+		stack.apply(new InsertTextEdit(document, 2, "Hello"));
+		stack.rollbackWork();
+
+		assertEquals(1, listener.contentChangeCount);
+	}
+
+	@Test
+	public void givenMaxRetainedSize_whenExceeded_shouldDiscardOldestEdits() throws Exception {
+		final EditStack stack = new EditStack(250);
+		final MockEdit edit1 = stack.apply(new MockEdit(100));
+		stack.apply(new MockEdit(100));
+		stack.apply(new MockEdit(100));
+
+		assertEquals(200, stack.getRetainedSize());
+		stack.undo();
+		stack.undo();
+		assertFalse("cannot undo discarded edit", stack.canUndo());
+		assertFalse("undo discarded edit", edit1.undoCalled);
+	}
+
+	@Test
+	public void givenMaxRetainedSize_whenSingleEditExceedsMaximum_shouldKeepMostRecentEdit() throws Exception {
+		final EditStack stack = new EditStack(250);
+		stack.apply(new MockEdit(100));
+
+		stack.apply(new MockEdit(1000));
+
+		assertEquals(1000, stack.getRetainedSize());
+		assertTrue("can undo", stack.canUndo());
+	}
+
+	@Test
+	public void givenCleanInitialState_whenFirstEditIsDiscarded_shouldStayDirtyAfterUndoingAllEdits() throws Exception {
+		final EditStack stack = new EditStack(150);
+		stack.markClean();
+		stack.apply(new MockEdit(100));
+		stack.apply(new MockEdit(100));
+
+		stack.undo();
+
+		assertTrue("dirty", stack.isDirty());
+	}
+
+	@Test
+	public void givenCleanMarkerOnDiscardedEdit_whenUndoingAllEdits_shouldBeClean() throws Exception {
+		final EditStack stack = new EditStack(150);
+		stack.apply(new MockEdit(100));
+		stack.markClean();
+		stack.apply(new MockEdit(100));
+
+		stack.undo();
+
+		assertFalse("clean", stack.isDirty());
+	}
+
+	@Test
+	public void whenUndoing_shouldNotCountUndoneEdits() throws Exception {
+		final EditStack stack = new EditStack();
+		stack.apply(new MockEdit(100));
+		stack.apply(new MockEdit(100));
+
+		stack.undo();
+
+		assertEquals(100, stack.getRetainedSize());
+	}
+
+	@Test
+	public void givenMaxRetainedSize_whenRedoneEditExceedsMaximum_shouldNotDiscardEdits() throws Exception {
+		final EditStack stack = new EditStack(250);
+		final MockEdit edit1 = stack.apply(new MockEdit(100));
+		final MockEdit edit2 = stack.apply(new MockEdit(100));
+		stack.undo();
+		edit2.retainedSize = 200;
+
+		stack.redo();
+		stack.undo();
+		stack.undo();
+
+		assertTrue("undo first edit", edit1.undoCalled);
+	}
+
+	@Test
+	public void givenMaxRetainedSize_whenApplyingEditAfterRedo_shouldDiscardOldestEdits() throws Exception {
+		final EditStack stack = new EditStack(250);
+		final MockEdit edit1 = stack.apply(new MockEdit(100));
+		final MockEdit edit2 = stack.apply(new MockEdit(100));
+		stack.undo();
+		edit2.retainedSize = 200;
+		stack.redo();
+
+		stack.apply(new MockEdit(10));
+
+		assertEquals(210, stack.getRetainedSize());
+		stack.undo();
+		stack.undo();
+		assertFalse("cannot undo discarded edit", stack.canUndo());
+		assertFalse("undo discarded edit", edit1.undoCalled);
+	}
+
+	@Test
+	public void whenTypingText_shouldCombineTextAndAccountForItsSize() throws Exception {
+		final EditStack stack = new EditStack();
+		final IDocument document = new Document(new QualifiedName(null, "root"));
+		final String text = "Lorem ipsum dolor sit amet";
+
+		for (int i = 0; i < text.length(); i += 1) {
+			stack.apply(new InsertTextEdit(document, 2 + i, text.substring(i, i + 1)));
+		}
+		final long retainedSize = stack.getRetainedSize();
+		stack.undo();
+
+		assertTrue(retainedSize >= 2 * text.length());
+		assertEquals("", document.getRootElement().getText());
+		assertFalse("single edit", stack.canUndo());
+	}
+
+	@Test
+	public void whenUndoingDeletion_shouldReleaseDeletedFragment() throws Exception {
+		final EditStack stack = new EditStack();
+		final IDocument document = new Document(new QualifiedName(null, "root"));
+		document.insertText(2, "Lorem ipsum dolor sit amet");
+		final long emptySize = stack.getRetainedSize();
+
+		stack.apply(new DeleteEdit(document, new ContentRange(2, 13), 2));
+		final long deletedSize = stack.getRetainedSize();
+		stack.undo();
+
+		assertTrue(deletedSize > emptySize);
+		assertTrue(stack.getRetainedSize() < deletedSize);
+		assertEquals("Lorem ipsum dolor sit amet", document.getRootElement().getText());
+	}
+
+	private static class CountingDocumentListener implements IDocumentListener {
+		public int contentChangeCount = 0;
+
+		@Override
+		public void attributeChanged(final AttributeChangeEvent event) {
+		}
+
+		@Override
+		public void namespaceChanged(final NamespaceDeclarationChangeEvent event) {
+		}
+
+		@Override
+		public void beforeContentDeleted(final ContentChangeEvent event) {
+		}
+
+		@Override
+		public void beforeContentInserted(final ContentChangeEvent event) {
+		}
+
+		@Override
+		public void contentDeleted(final ContentChangeEvent event) {
+			contentChangeCount++;
+		}
+
+		@Override
+		public void contentInserted(final ContentChangeEvent event) {
+			contentChangeCount++;
+		}
+
+		@Override
+		public void contentReplaced(final ContentChangeEvent event) {
+			contentChangeCount++;
+		}
+	}
+
 	private static class MockEdit implements IUndoableEdit {
 
 		public boolean redoCalled;
@@ -286,11 +490,17 @@ public class EditStackTest {
 		public boolean canCombine;
 		public int offsetBefore;
 		public int offsetAfter;
+		public long retainedSize;
 
 		public MockEdit() {
 			this(true, true);
 		}
 
+		public MockEdit(final long retainedSize) {
+			this(true, true);
+			this.retainedSize = retainedSize;
+		}
+
 		public MockEdit(final boolean canUndo, final boolean canRedo) {
 			this.canUndo = canUndo;
 			this.canRedo = canRedo;
@@ -329,5 +539,10 @@ public class EditStackTest {
 		public int getOffsetAfter() {
 			return offsetAfter;
 		}
+
+		@Override
+		public long getRetainedSize() {
+			return retainedSize;
+		}
 	}
 }
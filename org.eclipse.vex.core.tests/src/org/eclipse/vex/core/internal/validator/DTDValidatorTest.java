@@ -10,15 +10,18 @@
  *     Igor Jacy Lino Campista - Java 5 warnings fixed (bug 311325)
  *     Florian Thienel - bug 299999 - completed implementation of validation
  *     Carsten Hiesserich - tests for attribute namespaces
+ *     agent - validate several candidates between the same siblings
  *******************************************************************************/
 package org.eclipse.vex.core.internal.validator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -293,6 +296,48 @@ public class DTDValidatorTest {
 		assertTrue(validator.isValidSequence(new QualifiedName(null, "section"), Collections.<QualifiedName> emptyList(), true));
 	}
 
+	@Test
+	public void givenSameSiblings_whenValidatingSeveralCandidates_shouldValidateEachCandidate() throws Exception {
+		final QualifiedName document = new QualifiedName(null, "document");
+		final List<QualifiedName> prefix = Arrays.asList(new QualifiedName(null, "title"), new QualifiedName(null, "preface"));
+		final List<QualifiedName> suffix = Arrays.asList(new QualifiedName(null, "index"));
+
+		final SequenceValidation validation = SequenceValidation.prepare(validator, document, prefix, suffix);
+
+		assertTrue(validation.isValidBetween(Collections.singletonList(new QualifiedName(null, "section")), false));
+		assertFalse(validation.isValidBetween(Collections.singletonList(new QualifiedName(null, "title")), false));
+		assertFalse(validation.isValidBetween(Collections.singletonList(new QualifiedName(null, "index")), true));
+		assertTrue(validation.isValidBetween(Arrays.asList(new QualifiedName(null, "section"), new QualifiedName(null, "section")), false));
+		assertFalse(validation.isValidBetween(Collections.<QualifiedName> emptyList(), false));
+		assertTrue(validation.isValidBetween(Collections.singletonList(new QualifiedName(null, "section")), true));
+	}
+
+	@Test
+	public void givenPreparedValidation_whenSiblingsAreModified_shouldValidateSiblingsAtPreparation() throws Exception {
+		final QualifiedName section = new QualifiedName(null, "section");
+		final List<QualifiedName> prefix = new ArrayList<QualifiedName>();
+		final List<QualifiedName> para = Collections.singletonList(new QualifiedName(null, "para"));
+
+		final SequenceValidation validation = SequenceValidation.prepare(validator, section, prefix, Collections.<QualifiedName> emptyList());
+		prefix.add(new QualifiedName(null, "para"));
+		prefix.add(new QualifiedName(null, "title"));
+
+		assertTrue(validation.isValidBetween(para, false));
+		assertFalse(validator.isValidSequence(section, prefix, para, Collections.<QualifiedName> emptyList(), false));
+	}
+
+	@Test
+	public void givenModifiedSiblings_whenValidatingAgain_shouldValidateModifiedSiblings() throws Exception {
+		final QualifiedName section = new QualifiedName(null, "section");
+		final List<QualifiedName> prefix = new ArrayList<QualifiedName>();
+		final List<QualifiedName> para = Collections.singletonList(new QualifiedName(null, "para"));
+
+		assertTrue(validator.isValidSequence(section, prefix, para, Collections.<QualifiedName> emptyList(), false));
+		prefix.add(new QualifiedName(null, "para"));
+		prefix.add(new QualifiedName(null, "title"));
+		assertFalse(validator.isValidSequence(section, prefix, para, Collections.<QualifiedName> emptyList(), false));
+	}
+
 	private Map<QualifiedName, AttributeDefinition> getAttributeMap(final IElement element) {
 		final List<AttributeDefinition> atts = validator.getAttributeDefinitions(element);
 		final Map<QualifiedName, AttributeDefinition> adMap = new HashMap<QualifiedName, AttributeDefinition>();
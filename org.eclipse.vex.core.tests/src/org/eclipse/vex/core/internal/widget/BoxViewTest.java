@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.widget;
+
+import static org.eclipse.vex.core.internal.boxes.BoxFactory.image;
+import static org.eclipse.vex.core.internal.boxes.BoxFactory.paragraph;
+import static org.eclipse.vex.core.internal.boxes.BoxFactory.verticalBlock;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.vex.core.internal.boxes.IBox;
+import org.eclipse.vex.core.internal.boxes.IChildBox;
+import org.eclipse.vex.core.internal.boxes.Image;
+import org.eclipse.vex.core.internal.boxes.RootBox;
+import org.eclipse.vex.core.internal.core.Graphics;
+import org.eclipse.vex.core.internal.core.Rectangle;
+import org.eclipse.vex.core.internal.css.StyleSheetReader;
+import org.eclipse.vex.core.internal.cursor.ContentTopology;
+import org.eclipse.vex.core.internal.cursor.Cursor;
+import org.eclipse.vex.core.internal.cursor.CursorMoves;
+import org.eclipse.vex.core.internal.cursor.FakeSelector;
+import org.eclipse.vex.core.internal.dom.Document;
+import org.eclipse.vex.core.internal.layout.FakeGraphics;
+import org.eclipse.vex.core.internal.visualization.CssBasedBoxModelBuilder;
+import org.eclipse.vex.core.provisional.dom.ContentRange;
+import org.eclipse.vex.core.provisional.dom.IDocument;
+import org.eclipse.vex.core.provisional.dom.IElement;
+import org.eclipse.vex.core.provisional.dom.IValidator;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BoxViewTest {
+
+	private static final String CSS = "root { display: block; } section { display: block; } para { display: block; }";
+
+	private IDocument document;
+	private ArrayList<IElement> paras;
+	private InvalidationRecordingRenderer renderer;
+	private Cursor cursor;
+	private RootBox rootBox;
+	private BoxView view;
+	private DOMVisualization visualization;
+
+	@Before
+	public void setUp() throws Exception {
+		document = new Document(new QualifiedName(null, "root"));
+		paras = new ArrayList<IElement>();
+		int offset = 2;
+		for (int i = 0; i < 50; i += 1) {
+			final IElement section = document.insertElement(offset, new QualifiedName(null, "section"));
+			final IElement para = document.insertElement(section.getEndOffset(), new QualifiedName(null, "para"));
+			document.insertText(para.getEndOffset(), "Lorem ipsum dolor sit amet, consectetur adipiscing elit.");
+			paras.add(para);
+			offset = section.getEndOffset() + 1;
+		}
+		document.setValidator(IValidator.NULL);
+
+		renderer = new InvalidationRecordingRenderer();
+		cursor = new Cursor(new FakeSelector(), new FakeViewPort());
+		view = new BoxView(renderer, new FakeViewPort(), cursor) {
+			@Override
+			public void setRootBox(final RootBox rootBox) {
+				BoxViewTest.this.rootBox = rootBox;
+				super.setRootBox(rootBox);
+			}
+		};
+		visualization = new DOMVisualization(cursor, view);
+		view.setPlaceholderExpander(visualization);
+		visualization.setBoxModelBuilder(new CssBasedBoxModelBuilder(new StyleSheetReader().read(CSS)));
+		visualization.setDocument(document);
+		view.invalidateWidth(200);
+		renderer.reset();
+	}
+
+	@Test
+	public void whenMovingCursor_shouldPaintWithoutInvalidatingContent() throws Exception {
+		cursor.move(CursorMoves.toOffset(paras.get(0).getStartOffset() + 3));
+		view.invalidateCursor();
+
+		assertTrue(renderer.invalidatedAreas.isEmpty());
+		assertEquals(0, renderer.invalidatedEverythingCount);
+		assertEquals(1, renderer.paintedContentCount);
+	}
+
+	@Test
+	public void givenUnchangedHeight_whenChangingParagraph_shouldInvalidateOnlyTheParagraph() throws Exception {
+		final int offset = paras.get(0).getStartOffset() + 10;
+		final int oldHeight = rootBox.getHeight();
+
+		insertText(offset, "x");
+		visualization.rebuildContentRange(paras.get(0), new ContentRange(offset, offset));
+
+		assertEquals(oldHeight, rootBox.getHeight());
+		final IChildBox paragraph = getParagraph(offset);
+		assertFalse(renderer.invalidatedAreas.isEmpty());
+		for (final Rectangle area : renderer.invalidatedAreas) {
+			assertTrue(area.getY() >= paragraph.getAbsoluteTop());
+			assertTrue(area.getY() + area.getHeight() <= paragraph.getAbsoluteTop() + paragraph.getHeight());
+		}
+		assertEquals(0, renderer.invalidatedEverythingCount);
+	}
+
+	@Test
+	public void givenChangedHeight_whenChangingParagraph_shouldInvalidateEverythingBelow() throws Exception {
+		final int offset = paras.get(0).getStartOffset() + 10;
+		final int oldHeight = rootBox.getHeight();
+
+		insertText(offset, "Lorem ipsum dolor sit amet, consectetur adipiscing elit.");
+		visualization.rebuildContentRange(paras.get(0), new ContentRange(offset, offset));
+
+		assertTrue(rootBox.getHeight() > oldHeight);
+		final IChildBox paragraph = getParagraph(offset);
+		assertFalse(renderer.invalidatedAreas.isEmpty());
+		for (final Rectangle area : renderer.invalidatedAreas) {
+			assertTrue(area.getY() >= paragraph.getAbsoluteTop());
+			assertTrue(area.getY() + area.getHeight() >= rootBox.getHeight());
+		}
+	}
+
+	@Test
+	public void givenChangedHeight_whenChangingParagraph_shouldReconcileEachAncestorOnlyOnce() throws Exception {
+		final int offset = paras.get(0).getStartOffset() + 10;
+
+		insertText(offset, "Lorem ipsum dolor sit amet, consectetur adipiscing elit.");
+		visualization.rebuildContentRange(paras.get(0), new ContentRange(offset, offset));
+
+		int ancestorCount = 0;
+		for (IBox box = getParagraph(offset); box != null; box = box instanceof IChildBox ? ((IChildBox) box).getParent() : null) {
+			ancestorCount += 1;
+		}
+		assertTrue(view.getReconciledBoxCount() > 0);
+		assertTrue(view.getReconciledBoxCount() <= ancestorCount);
+	}
+
+	/*
+	 * The null validator, which the visualization needs, does not allow any text.
+	 */
+	private void insertText(final int offset, final String text) {
+		document.setValidator(null);
+		document.insertText(offset, text);
+		document.setValidator(IValidator.NULL);
+	}
+
+	private IChildBox getParagraph(final int offset) {
+		final ContentTopology contentTopology = new ContentTopology();
+		contentTopology.setRootBox(rootBox);
+		return (IChildBox) ((IChildBox) contentTopology.findBoxForPosition(offset)).getParent();
+	}
+
+	@Test
+	public void givenImageWithUnchangedSize_whenInvalidatingImage_shouldInvalidateOnlyTheImage() throws Exception {
+		final URL imageUrl = new URL("file:/image.png");
+		final Image image = image(imageUrl);
+		final RootBox imageRootBox = new RootBox();
+		imageRootBox.appendChild(verticalBlock(paragraph(image)));
+		view.setRootBox(imageRootBox);
+		view.invalidateWidth(200);
+		renderer.reset();
+
+		view.invalidateImages(Arrays.asList(imageUrl));
+
+		assertEquals(1, renderer.invalidatedAreas.size());
+		final Rectangle area = renderer.invalidatedAreas.get(0);
+		assertEquals(image.getAbsoluteLeft(), area.getX());
+		assertEquals(image.getAbsoluteTop(), area.getY());
+		assertEquals(image.getWidth(), area.getWidth());
+		assertEquals(image.getHeight(), area.getHeight());
+		assertEquals(0, renderer.invalidatedEverythingCount);
+	}
+
+	private static class InvalidationRecordingRenderer implements IRenderer {
+		private final Graphics graphics = new FakeGraphics();
+		public final ArrayList<Rectangle> invalidatedAreas = new ArrayList<Rectangle>();
+		public int invalidatedEverythingCount;
+		public int paintedContentCount;
+
+		public void reset() {
+			invalidatedAreas.clear();
+			invalidatedEverythingCount = 0;
+			paintedContentCount = 0;
+		}
+
+		@Override
+		public void render(final Rectangle viewPort, final IRenderStep... steps) {
+			for (final IRenderStep step : steps) {
+				if (step instanceof IContentRenderStep) {
+					paintedContentCount += 1;
+				}
+				step.render(graphics);
+			}
+		}
+
+		@Override
+		public void invalidate(final Rectangle area) {
+			invalidatedAreas.add(area);
+		}
+
+		@Override
+		public void invalidateEverything() {
+			invalidatedEverythingCount += 1;
+		}
+	}
+}
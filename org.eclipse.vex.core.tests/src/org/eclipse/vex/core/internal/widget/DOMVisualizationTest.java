@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.vex.core.internal.boxes.IContentBox;
+import org.eclipse.vex.core.internal.boxes.IStructuralBox;
+import org.eclipse.vex.core.internal.boxes.RootBox;
+import org.eclipse.vex.core.internal.boxes.StructuralNodeReference;
+import org.eclipse.vex.core.internal.core.Graphics;
+import org.eclipse.vex.core.internal.core.Rectangle;
+import org.eclipse.vex.core.internal.css.StyleSheetReader;
+import org.eclipse.vex.core.internal.cursor.ContentTopology;
+import org.eclipse.vex.core.internal.cursor.Cursor;
+import org.eclipse.vex.core.internal.cursor.CursorMoves;
+import org.eclipse.vex.core.internal.cursor.FakeSelector;
+import org.eclipse.vex.core.internal.dom.Document;
+import org.eclipse.vex.core.internal.layout.FakeGraphics;
+import org.eclipse.vex.core.internal.visualization.CssBasedBoxModelBuilder;
+import org.eclipse.vex.core.provisional.dom.IDocument;
+import org.eclipse.vex.core.provisional.dom.IElement;
+import org.eclipse.vex.core.provisional.dom.IValidator;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DOMVisualizationTest {
+
+	private static final String CSS = "root { display: block; } section { display: block; } para { display: block; }";
+
+	private IDocument document;
+	private ArrayList<IElement> sections;
+	private CssBasedBoxModelBuilder boxModelBuilder;
+
+	@Before
+	public void setUp() throws Exception {
+		document = new Document(new QualifiedName(null, "root"));
+		sections = new ArrayList<IElement>();
+		int offset = 2;
+		for (int i = 0; i < 50; i += 1) {
+			final IElement section = document.insertElement(offset, new QualifiedName(null, "section"));
+			final IElement para = document.insertElement(section.getEndOffset(), new QualifiedName(null, "para"));
+			document.insertText(para.getEndOffset(), "Lorem ipsum dolor sit amet, consectetur adipiscing elit.");
+			sections.add(section);
+			offset = section.getEndOffset() + 1;
+		}
+		document.setValidator(IValidator.NULL);
+		boxModelBuilder = new CssBasedBoxModelBuilder(new StyleSheetReader().read(CSS));
+	}
+
+	@Test
+	public void whenVisualizingRoot_shouldVisualizeNestedBlocksAsPlaceholders() throws Exception {
+		final ContentTopology contentTopology = new ContentTopology();
+		contentTopology.setRootBox(boxModelBuilder.visualizeRoot(document));
+
+		assertFalse(isPlaceholder(contentTopology, document.getRootElement()));
+		for (final IElement section : sections) {
+			assertTrue(isPlaceholder(contentTopology, section));
+		}
+	}
+
+	@Test
+	public void givenPlaceholder_shouldProvidePlaceholderForPositionsWithinTheNode() throws Exception {
+		final ContentTopology contentTopology = new ContentTopology();
+		contentTopology.setRootBox(boxModelBuilder.visualizeRoot(document));
+		final IElement section = sections.get(10);
+
+		final StructuralNodeReference placeholder = (StructuralNodeReference) contentTopology.findBoxForPosition(section.getStartOffset() + 3);
+
+		assertTrue(placeholder.isPlaceholder());
+		assertEquals(section, placeholder.getNode());
+	}
+
+	@Test
+	public void givenPlaceholder_shouldProvideCaretForPositionsWithinTheNode() throws Exception {
+		final Cursor cursor = new Cursor(new FakeSelector(), new FakeViewPort());
+		final RootBox rootBox = boxModelBuilder.visualizeRoot(document);
+		rootBox.setWidth(200);
+		rootBox.layout(new FakeGraphics());
+		cursor.setRootBox(rootBox);
+		final IElement section = sections.get(10);
+		final IContentBox placeholder = cursor.getContentTopology().findBoxesForNode(section).iterator().next();
+
+		cursor.move(CursorMoves.toOffset(section.getStartOffset() + 3));
+		cursor.applyMoves(new FakeGraphics());
+
+		assertEquals(placeholder.getAbsoluteTop(), cursor.getCaretArea().getY());
+		assertEquals(placeholder.getAbsoluteLeft(), cursor.getCaretArea().getX());
+	}
+
+	@Test
+	public void whenRendering_shouldOnlyExpandVisiblePlaceholders() throws Exception {
+		final Cursor cursor = new Cursor(new FakeSelector(), new FakeViewPort());
+		final BoxView view = new BoxView(new FakeRenderer(), new FakeViewPort(), cursor);
+		final DOMVisualization visualization = createVisualization(cursor, view);
+
+		view.invalidateWidth(200);
+
+		assertTrue(visualization.expandPlaceholders(new FakeViewPort().getVisibleArea()).isEmpty());
+		assertNull(visualization.expandPlaceholderAt(sections.get(0).getStartOffset() + 3));
+		assertNotNull(visualization.expandPlaceholderAt(sections.get(49).getStartOffset() + 3));
+	}
+
+	@Test
+	public void whenMovingCursorIntoPlaceholder_shouldExpandPlaceholder() throws Exception {
+		final Cursor cursor = new Cursor(new FakeSelector(), new FakeViewPort());
+		final BoxView view = new BoxView(new FakeRenderer(), new FakeViewPort(), cursor);
+		final DOMVisualization visualization = createVisualization(cursor, view);
+		view.invalidateWidth(200);
+		final int offset = sections.get(49).getStartOffset() + 5;
+
+		cursor.move(CursorMoves.toOffset(offset));
+		view.invalidateCursor();
+
+		assertEquals(offset, cursor.getOffset());
+		assertNull(visualization.expandPlaceholderAt(offset));
+	}
+
+	@Test
+	public void whenExpandingPlaceholder_shouldProvideExpandedBoxesForPositionsWithinTheNode() throws Exception {
+		final Cursor cursor = new Cursor(new FakeSelector(), new FakeViewPort());
+		final BoxView view = new BoxView(new FakeRenderer(), new FakeViewPort(), cursor);
+		final DOMVisualization visualization = createVisualization(cursor, view);
+		view.invalidateWidth(200);
+		final int offset = sections.get(49).getStartOffset() + 3;
+
+		final IStructuralBox expandedBox = visualization.expandPlaceholderAt(offset);
+
+		IContentBox box = cursor.getContentTopology().findBoxForPosition(offset);
+		while (box != null && box != expandedBox) {
+			box = ContentTopology.getParentContentBox(box);
+		}
+		assertSame(expandedBox, box);
+	}
+
+	@Test
+	public void whenExpandingPlaceholderBetweenPlaceholders_shouldProvideSurroundingPlaceholdersForTheirPositions() throws Exception {
+		final Cursor cursor = new Cursor(new FakeSelector(), new FakeViewPort());
+		final BoxView view = new BoxView(new FakeRenderer(), new FakeViewPort(), cursor);
+		final DOMVisualization visualization = createVisualization(cursor, view);
+		view.invalidateWidth(200);
+
+		final IStructuralBox expandedBox = visualization.expandPlaceholderAt(sections.get(48).getStartOffset() + 3);
+
+		final ContentTopology contentTopology = cursor.getContentTopology();
+		assertSame(expandedBox, contentTopology.findBoxesForNode(sections.get(48)).iterator().next());
+		for (final IElement section : new IElement[] { sections.get(47), sections.get(49) }) {
+			final StructuralNodeReference placeholder = (StructuralNodeReference) contentTopology.findBoxForPosition(section.getStartOffset() + 3);
+			assertTrue(placeholder.isPlaceholder());
+			assertSame(section, placeholder.getNode());
+		}
+	}
+
+	@Test
+	public void whenRebuildingStructureOfDocument_shouldVisualizeWholeDocument() throws Exception {
+		final Cursor cursor = new Cursor(new FakeSelector(), new FakeViewPort());
+		final BoxView view = new BoxView(new FakeRenderer(), new FakeViewPort(), cursor);
+		final DOMVisualization visualization = createVisualization(cursor, view);
+		view.invalidateWidth(200);
+		final IElement section = sections.get(49);
+		final IContentBox boxBefore = cursor.getContentTopology().findBoxesForNode(section).iterator().next();
+
+		visualization.rebuildStructure(document);
+
+		final IContentBox boxAfter = cursor.getContentTopology().findBoxesForNode(section).iterator().next();
+		assertNotSame(boxBefore, boxAfter);
+		assertTrue(isPlaceholder(cursor.getContentTopology(), section));
+	}
+
+	@Test
+	public void whenMovingCursorAwayFromExpandedNode_shouldCollapseNodeToPlaceholderOfSameHeight() throws Exception {
+		final Cursor cursor = new Cursor(new FakeSelector(), new FakeViewPort());
+		final BoxView view = new BoxView(new FakeRenderer(), new FakeViewPort(), cursor);
+		createVisualization(cursor, view);
+		view.invalidateWidth(200);
+		final IElement section = sections.get(49);
+		cursor.move(CursorMoves.toOffset(section.getStartOffset() + 5));
+		view.invalidateCursor();
+		final IContentBox expandedBox = cursor.getContentTopology().findBoxesForNode(section).iterator().next();
+		final int expandedHeight = expandedBox.getHeight();
+		assertFalse(isPlaceholder(cursor.getContentTopology(), section));
+
+		cursor.move(CursorMoves.toOffset(sections.get(0).getStartOffset()));
+		view.invalidateCursor();
+
+		assertTrue(isPlaceholder(cursor.getContentTopology(), section));
+		final IContentBox placeholder = cursor.getContentTopology().findBoxesForNode(section).iterator().next();
+		assertEquals(expandedHeight, placeholder.getHeight());
+		assertEquals(expandedBox.getAbsoluteTop(), placeholder.getAbsoluteTop());
+	}
+
+	@Test
+	public void whenCollapsingPlaceholders_shouldKeepNodeWithCursorExpanded() throws Exception {
+		final Cursor cursor = new Cursor(new FakeSelector(), new FakeViewPort());
+		final BoxView view = new BoxView(new FakeRenderer(), new FakeViewPort(), cursor);
+		final DOMVisualization visualization = createVisualization(cursor, view);
+		view.invalidateWidth(200);
+		final IElement section = sections.get(49);
+		cursor.move(CursorMoves.toOffset(section.getStartOffset() + 5));
+		view.invalidateCursor();
+
+		visualization.collapsePlaceholders(new Rectangle(0, 0, 100, 100));
+
+		assertFalse(isPlaceholder(cursor.getContentTopology(), section));
+	}
+
+	@Test
+	public void whenExpandingPlaceholder_shouldProvideExpandedBoxForTheNode() throws Exception {
+		final Cursor cursor = new Cursor(new FakeSelector(), new FakeViewPort());
+		final BoxView view = new BoxView(new FakeRenderer(), new FakeViewPort(), cursor);
+		final DOMVisualization visualization = createVisualization(cursor, view);
+		view.invalidateWidth(200);
+		final IElement section = sections.get(49);
+
+		final IStructuralBox expandedBox = visualization.expandPlaceholderAt(section.getStartOffset() + 3);
+
+		final Collection<IContentBox> boxes = cursor.getContentTopology().findBoxesForNode(section);
+		assertEquals(1, boxes.size());
+		assertSame(expandedBox, boxes.iterator().next());
+	}
+
+	private DOMVisualization createVisualization(final Cursor cursor, final BoxView view) {
+		final DOMVisualization visualization = new DOMVisualization(cursor, view);
+		view.setPlaceholderExpander(visualization);
+		visualization.setBoxModelBuilder(boxModelBuilder);
+		visualization.setDocument(document);
+		return visualization;
+	}
+
+	private static boolean isPlaceholder(final ContentTopology contentTopology, final IElement element) {
+		return ((StructuralNodeReference) contentTopology.findBoxesForNode(element).iterator().next()).isPlaceholder();
+	}
+
+	private static class FakeRenderer implements IRenderer {
+		private final Graphics graphics = new FakeGraphics();
+
+		@Override
+		public void render(final Rectangle viewPort, final IRenderStep... steps) {
+			for (final IRenderStep step : steps) {
+				step.render(graphics);
+			}
+		}
+
+		@Override
+		public void invalidate(final Rectangle area) {
+		}
+
+		@Override
+		public void invalidateEverything() {
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.widget;
+
+import static org.eclipse.vex.core.internal.boxes.BoxFactory.rootBox;
+import static org.eclipse.vex.core.internal.boxes.BoxFactory.verticalBlock;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.eclipse.vex.core.internal.boxes.RootBox;
+import org.eclipse.vex.core.internal.boxes.VerticalBlock;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LayoutReconciliationQueueTest {
+
+	private VerticalBlock child1;
+	private VerticalBlock child2;
+	private VerticalBlock grandChild;
+	private RootBox root;
+	private LayoutReconciliationQueue queue;
+
+	@Before
+	public void setUp() throws Exception {
+		grandChild = verticalBlock();
+		child1 = verticalBlock(grandChild);
+		child2 = verticalBlock();
+		root = rootBox(child1, child2);
+		queue = new LayoutReconciliationQueue();
+	}
+
+	@Test
+	public void givenBoxesAtDifferentDepths_shouldPollDeepestBoxesFirst() throws Exception {
+		queue.scheduleAll(Arrays.asList(root, child2, grandChild, child1));
+
+		assertSame(grandChild, queue.poll());
+		assertSame(child2, queue.poll());
+		assertSame(child1, queue.poll());
+		assertSame(root, queue.poll());
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void givenBoxesAtSameDepth_shouldPollInScheduledOrder() throws Exception {
+		queue.schedule(child2);
+		queue.schedule(child1);
+
+		assertSame(child2, queue.poll());
+		assertSame(child1, queue.poll());
+	}
+
+	@Test
+	public void whenSchedulingBoxTwice_shouldPollBoxOnlyOnce() throws Exception {
+		queue.schedule(child1);
+		queue.schedule(child1);
+
+		assertSame(child1, queue.poll());
+		assertTrue(queue.isEmpty());
+		assertEquals(1, queue.getScheduledCount());
+	}
+
+	@Test
+	public void whenSchedulingPolledBoxAgain_shouldNotPollBoxAgain() throws Exception {
+		queue.schedule(child1);
+		queue.poll();
+
+		queue.schedule(child1);
+
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void shouldIgnoreNull() throws Exception {
+		queue.schedule(null);
+
+		assertTrue(queue.isEmpty());
+		assertEquals(0, queue.getScheduledCount());
+	}
+}
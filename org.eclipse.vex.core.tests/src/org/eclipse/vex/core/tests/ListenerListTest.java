@@ -19,12 +19,27 @@ import java.util.EventListener;
 import java.util.EventObject;
 
 import org.eclipse.vex.core.internal.core.ListenerList;
+import org.eclipse.vex.core.internal.core.ListenerList.IEventDispatcher;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 public class ListenerListTest {
 
+	private static final IEventDispatcher<MockEventListener, EventObject> HANDLE_EVENT = new IEventDispatcher<MockEventListener, EventObject>() {
+		@Override
+		public void dispatch(final MockEventListener listener, final EventObject event) {
+			listener.handleEvent(event);
+		}
+	};
+
+	private static final IEventDispatcher<MockEventListener, EventObject> THROW_EXCEPTION = new IEventDispatcher<MockEventListener, EventObject>() {
+		@Override
+		public void dispatch(final MockEventListener listener, final EventObject event) {
+			listener.throwException(event);
+		}
+	};
+
 	private ListenerList<MockEventListener, EventObject> listenerList;
 	private Exception handledException;
 
@@ -127,4 +142,57 @@ public class ListenerListTest {
 		assertTrue(handledException.getCause() instanceof MyException);
 	}
 
+	@Test
+	public void testTypedListenerInvocation() throws Exception {
+		final MockEventListener eventListener = new MockEventListener();
+		final MockEventListener anotherListener = new MockEventListener();
+
+		listenerList.add(eventListener);
+		listenerList.add(anotherListener);
+		listenerList.fireEvent(HANDLE_EVENT, new EventObject(""));
+		assertEquals(1, eventListener.invocations);
+		assertEquals(1, anotherListener.invocations);
+
+		listenerList.remove(eventListener);
+		listenerList.fireEvent(HANDLE_EVENT, new EventObject(""));
+		assertEquals(1, eventListener.invocations);
+		assertEquals(2, anotherListener.invocations);
+
+		if (handledException != null) {
+			throw handledException;
+		}
+	}
+
+	@Test
+	public void testRemoveListenerDuringTypedInvocation() throws Exception {
+		final MockEventListener anotherListener = new MockEventListener();
+		final MockEventListener removingListener = new MockEventListener() {
+			@Override
+			public void handleEvent(final EventObject event) {
+				super.handleEvent(event);
+				listenerList.remove(this);
+				listenerList.remove(anotherListener);
+			}
+		};
+
+		listenerList.add(removingListener);
+		listenerList.add(anotherListener);
+		listenerList.fireEvent(HANDLE_EVENT, new EventObject(""));
+		assertEquals("All listeners registered when firing the event should be invoked.", 1, anotherListener.invocations);
+
+		listenerList.fireEvent(HANDLE_EVENT, new EventObject(""));
+		assertEquals(1, removingListener.invocations);
+		assertEquals(1, anotherListener.invocations);
+	}
+
+	@Test
+	public void testExceptionWhileFireTypedEvent() throws Exception {
+		final MockEventListener eventListener = new MockEventListener();
+
+		listenerList.add(eventListener);
+		listenerList.fireEvent(THROW_EXCEPTION, new EventObject(""));
+		assertTrue(eventListener.throwExceptionMethodInvoced);
+		assertTrue(handledException instanceof MyException);
+	}
+
 }
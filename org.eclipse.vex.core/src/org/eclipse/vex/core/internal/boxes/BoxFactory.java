@@ -100,6 +100,14 @@ public class BoxFactory {
 		return structuralNodeReference;
 	}
 
+	public static StructuralNodeReference nodeReferencePlaceholder(final INode node, final boolean canContainText, final int estimatedHeight) {
+		final StructuralNodeReference structuralNodeReference = new StructuralNodeReference();
+		structuralNodeReference.setNode(node);
+		structuralNodeReference.setCanContainText(canContainText);
+		structuralNodeReference.setEstimatedHeight(estimatedHeight);
+		return structuralNodeReference;
+	}
+
 	public static InlineNodeReference nodeReference(final INode node, final IInlineBox component) {
 		final InlineNodeReference inlineNodeReference = new InlineNodeReference();
 		inlineNodeReference.setNode(node);
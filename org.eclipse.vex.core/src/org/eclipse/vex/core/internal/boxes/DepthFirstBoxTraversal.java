@@ -36,6 +36,9 @@ public abstract class DepthFirstBoxTraversal<T> extends BaseBoxVisitorWithResult
 
 	@Override
 	public T visit(final StructuralNodeReference box) {
+		if (box.isPlaceholder()) {
+			return null;
+		}
 		return box.getComponent().accept(this);
 	}
 
@@ -7,6 +7,7 @@
  *
  * Contributors:
  * 		Florian Thienel - initial API and implementation
+ * 		agent - update the layout when the image dimensions change
  *******************************************************************************/
 package org.eclipse.vex.core.internal.boxes;
 
@@ -37,6 +38,8 @@ public class Image extends BaseBox implements IInlineBox {
 	private org.eclipse.vex.core.internal.core.Image image; // TODO use a cache for the actual image data
 
 	private boolean layoutValid;
+	private int layoutImageWidth;
+	private int layoutImageHeight;
 
 	@Override
 	public void setParent(final IBox parent) {
@@ -181,13 +184,18 @@ public class Image extends BaseBox implements IInlineBox {
 		return visitor.visit(this);
 	}
 
+	/*
+	 * The dimensions of an image may become known only after the first layout, see Graphics#getImage(URL).
+	 */
 	@Override
 	public void layout(final Graphics graphics) {
-		if (layoutValid) {
+		if (layoutValid && image.getWidth() == layoutImageWidth && image.getHeight() == layoutImageHeight) {
 			return;
 		}
 
 		image = graphics.getImage(imageUrl);
+		layoutImageWidth = image.getWidth();
+		layoutImageHeight = image.getHeight();
 		final Point dimensions = calculateActualDimensions();
 
 		width = dimensions.getX();
@@ -10,7 +10,9 @@
  *******************************************************************************/
 package org.eclipse.vex.core.internal.boxes;
 
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 
 import org.eclipse.vex.core.internal.core.Graphics;
 import org.eclipse.vex.core.internal.core.Rectangle;
@@ -28,6 +30,11 @@ public class Line {
 
 	private final LinkedList<IInlineBox> children = new LinkedList<IInlineBox>();
 
+	/*
+	 * Width, height and baseline of each child at the time the children were arranged.
+	 */
+	private int[] arrangedLayout = new int[0];
+
 	public void setPosition(final int top, final int left) {
 		translateChildrenToNewPosition(top, left);
 		this.top = top;
@@ -117,10 +124,27 @@ public class Line {
 		return joined;
 	}
 
+	public List<IInlineBox> getChildren() {
+		return Collections.unmodifiableList(children);
+	}
+
+	public IInlineBox getFirstChild() {
+		return children.getFirst();
+	}
+
 	public IInlineBox getLastChild() {
 		return children.getLast();
 	}
 
+	/**
+	 * Replace the first child with an equivalent box, which takes over the position of the replaced child.
+	 */
+	public void replaceFirstChild(final IInlineBox box) {
+		final IInlineBox firstChild = children.removeFirst();
+		box.setPosition(firstChild.getTop(), firstChild.getLeft());
+		children.addFirst(box);
+	}
+
 	public void removeLastChild() {
 		if (children.isEmpty()) {
 			return;
@@ -140,6 +164,30 @@ public class Line {
 	public void arrangeChildren() {
 		calculateBoundsAndBaseline();
 		arrangeChildrenOnBaseline();
+		recordArrangedLayout();
+	}
+
+	private void recordArrangedLayout() {
+		arrangedLayout = new int[children.size() * 3];
+		int i = 0;
+		for (final IInlineBox child : children) {
+			arrangedLayout[i] = child.getWidth();
+			arrangedLayout[i + 1] = child.getHeight();
+			arrangedLayout[i + 2] = child.getBaseline();
+			i += 3;
+		}
+	}
+
+	/**
+	 * @return true if the child at the given index has still the same width, height and baseline as at the time the
+	 *         children were arranged
+	 */
+	public boolean hasArrangedLayout(final int index, final IInlineBox child) {
+		final int i = index * 3;
+		return i + 2 < arrangedLayout.length
+				&& arrangedLayout[i] == child.getWidth()
+				&& arrangedLayout[i + 1] == child.getHeight()
+				&& arrangedLayout[i + 2] == child.getBaseline();
 	}
 
 	private void calculateBoundsAndBaseline() {
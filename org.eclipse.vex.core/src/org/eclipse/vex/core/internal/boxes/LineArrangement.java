@@ -10,44 +10,210 @@
  *******************************************************************************/
 package org.eclipse.vex.core.internal.boxes;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.ListIterator;
 
 import org.eclipse.vex.core.internal.core.Graphics;
 import org.eclipse.vex.core.internal.core.TextAlign;
+import org.eclipse.vex.core.provisional.dom.ContentRange;
 
+/**
+ * Arranges inline boxes on lines. The arrangement is incremental: the lines before the first changed line are kept,
+ * line breaking restarts one line before the first changed line, and the lines after the last changed line are reused
+ * as soon as the line breaks re-synchronise with them.
+ */
 public class LineArrangement {
 
-	private final LinkedList<Line> lines = new LinkedList<Line>();
+	private final ArrayList<Line> lines = new ArrayList<Line>();
 
 	private ListIterator<IInlineBox> boxIterator;
 	private int width;
+	private TextAlign textAlign;
 	private int height;
 	private boolean lastBoxWrappedCompletely;
 	private Line currentLine;
 
+	private List<Line> previousLines = Collections.emptyList();
+	private final HashMap<IInlineBox, Integer> reusableLinesByFirstChild = new HashMap<IInlineBox, Integer>();
+	private final HashMap<ContentRange, Integer> reusableLinesByRangeOfFirstChild = new HashMap<ContentRange, Integer>();
+
 	public void arrangeBoxes(final Graphics graphics, final ListIterator<IInlineBox> boxIterator, final int width, final TextAlign textAlign) {
 		this.boxIterator = boxIterator;
+		if (width != this.width || textAlign != this.textAlign) {
+			lines.clear();
+		}
 		this.width = width;
-		reset();
+		this.textAlign = textAlign;
+
+		if (prepareArrangement(graphics)) {
+			final int firstArrangedLine = lines.size();
+			final int reusableLine = arrangeChangedBoxes(graphics);
+			finalizeCurrentLine();
+			alignLines(graphics, lines.subList(firstArrangedLine, lines.size()));
+			if (reusableLine >= 0) {
+				appendPreviousLines(reusableLine);
+			}
+		}
+
+		previousLines = Collections.emptyList();
+		reusableLinesByFirstChild.clear();
+		reusableLinesByRangeOfFirstChild.clear();
+	}
+
+	/**
+	 * Compares the boxes with the previous arrangement and positions the box iterator at the first box which has to be
+	 * arranged again.
+	 *
+	 * @return false if nothing changed since the previous arrangement
+	 */
+	private boolean prepareArrangement(final Graphics graphics) {
+		previousLines = new ArrayList<Line>(lines);
+		lines.clear();
+		height = 0;
+		lastBoxWrappedCompletely = false;
+		currentLine = new Line();
+
+		final int[] lineStartIndex = new int[previousLines.size() + 1];
+		int firstChangedLine = 0;
+		lineStartIndex[0] = boxIterator.nextIndex();
+		while (firstChangedLine < previousLines.size() && isUnchangedForward(graphics, previousLines.get(firstChangedLine))) {
+			firstChangedLine += 1;
+			lineStartIndex[firstChangedLine] = boxIterator.nextIndex();
+		}
+		if (firstChangedLine == previousLines.size() && !boxIterator.hasNext()) {
+			appendPreviousLines(0);
+			return false;
+		}
+
+		final int firstReusableLine = findFirstReusableLine(graphics, firstChangedLine, lineStartIndex[firstChangedLine]);
+		for (int i = firstReusableLine; i < previousLines.size(); i += 1) {
+			registerReusableLine(i);
+		}
+
+		/*
+		 * A change in the first changed line may allow to put more or less content on the line before.
+		 */
+		final int firstRearrangedLine = Math.max(0, firstChangedLine - 1);
+		for (final Line line : previousLines.subList(0, firstRearrangedLine)) {
+			lines.add(line);
+			height += line.getHeight();
+		}
+		while (boxIterator.nextIndex() > lineStartIndex[firstRearrangedLine]) {
+			boxIterator.previous();
+		}
+		return true;
+	}
+
+	private boolean isUnchangedForward(final Graphics graphics, final Line line) {
+		int index = 0;
+		for (final IInlineBox child : line.getChildren()) {
+			if (!boxIterator.hasNext() || boxIterator.next() != child || !hasUnchangedLayout(graphics, line, index, child)) {
+				return false;
+			}
+			index += 1;
+		}
+		return true;
+	}
 
+	private int findFirstReusableLine(final Graphics graphics, final int firstChangedLine, final int firstChangedBoxIndex) {
+		while (boxIterator.hasNext()) {
+			boxIterator.next();
+		}
+		int firstReusableLine = previousLines.size();
+		while (firstReusableLine - 1 > firstChangedLine && isUnchangedBackward(graphics, previousLines.get(firstReusableLine - 1), firstChangedBoxIndex)) {
+			firstReusableLine -= 1;
+		}
+		return firstReusableLine;
+	}
+
+	private boolean isUnchangedBackward(final Graphics graphics, final Line line, final int firstChangedBoxIndex) {
+		final List<IInlineBox> children = line.getChildren();
+		for (final ListIterator<IInlineBox> iter = children.listIterator(children.size()); iter.hasPrevious();) {
+			final int index = iter.previousIndex();
+			final IInlineBox child = iter.previous();
+			if (boxIterator.previousIndex() < firstChangedBoxIndex || boxIterator.previous() != child || !hasUnchangedLayout(graphics, line, index, child)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * The box may have been laid out already before the arrangement (e.g. by BoxView), therefore the layout is compared
+	 * with the layout at the time the line was arranged.
+	 */
+	private boolean hasUnchangedLayout(final Graphics graphics, final Line line, final int index, final IInlineBox box) {
+		box.setMaxWidth(width);
+		box.layout(graphics);
+		return line.hasArrangedLayout(index, box);
+	}
+
+	private void registerReusableLine(final int lineIndex) {
+		final IInlineBox firstChild = previousLines.get(lineIndex).getFirstChild();
+		reusableLinesByFirstChild.put(firstChild, lineIndex);
+		if (firstChild instanceof IContentBox) {
+			reusableLinesByRangeOfFirstChild.put(((IContentBox) firstChild).getRange(), lineIndex);
+		}
+	}
+
+	/**
+	 * @return the index of the previous line from which on all lines can be reused, or -1 if all boxes were arranged
+	 */
+	private int arrangeChangedBoxes(final Graphics graphics) {
 		while (boxIterator.hasNext()) {
 			final IInlineBox box = boxIterator.next();
 			box.setMaxWidth(width);
 			box.layout(graphics);
+			if (!currentLine.hasChildren()) {
+				final int reusableLine = findReusableLineStartingWith(box);
+				if (reusableLine >= 0) {
+					return reusableLine;
+				}
+			}
 			appendBox(graphics, box);
 		}
-		finalizeCurrentLine();
+		return -1;
+	}
+
+	/*
+	 * Splitting a joined box creates a new tail box. If it is equivalent to the first child of a reusable line, the line
+	 * breaks are re-synchronised as well.
+	 */
+	private int findReusableLineStartingWith(final IInlineBox box) {
+		final Integer lineIndex = reusableLinesByFirstChild.get(box);
+		if (lineIndex != null) {
+			return lineIndex;
+		}
+		if (!(box instanceof IContentBox)) {
+			return -1;
+		}
+		final Integer equivalentLineIndex = reusableLinesByRangeOfFirstChild.get(((IContentBox) box).getRange());
+		if (equivalentLineIndex == null || !isEquivalent(previousLines.get(equivalentLineIndex).getFirstChild(), box)) {
+			return -1;
+		}
+		previousLines.get(equivalentLineIndex).replaceFirstChild(box);
+		return equivalentLineIndex;
+	}
 
-		alignLines(graphics, textAlign);
+	private static boolean isEquivalent(final IInlineBox box, final IInlineBox other) {
+		return box.getClass() == other.getClass()
+				&& box.getWidth() == other.getWidth()
+				&& box.getHeight() == other.getHeight()
+				&& box.getBaseline() == other.getBaseline()
+				&& box.getLineWrappingAtStart() == other.getLineWrappingAtStart()
+				&& box.getLineWrappingAtEnd() == other.getLineWrappingAtEnd();
 	}
 
-	private void reset() {
-		lines.clear();
-		height = 0;
-		lastBoxWrappedCompletely = false;
-		currentLine = new Line();
+	private void appendPreviousLines(final int firstLine) {
+		for (final Line line : previousLines.subList(firstLine, previousLines.size())) {
+			line.setPosition(height, line.getLeft());
+			lines.add(line);
+			height += line.getHeight();
+		}
 	}
 
 	private void appendBox(final Graphics graphics, final IInlineBox box) {
@@ -182,16 +348,16 @@ public class LineArrangement {
 		lines.add(currentLine);
 	}
 
-	private void alignLines(final Graphics graphics, final TextAlign textAlign) {
+	private void alignLines(final Graphics graphics, final List<Line> linesToAlign) {
 		if (textAlign == TextAlign.LEFT) {
 			return;
 		}
-		for (final Line line : lines) {
-			line.shiftBy(alignmentOffset(graphics, line, textAlign));
+		for (final Line line : linesToAlign) {
+			line.shiftBy(alignmentOffset(graphics, line));
 		}
 	}
 
-	private int alignmentOffset(final Graphics graphics, final Line line, final TextAlign textAlign) {
+	private int alignmentOffset(final Graphics graphics, final Line line) {
 		switch (textAlign) {
 		case CENTER:
 			return (width - line.getWidth() + line.getInvisibleGapLeft(graphics) + line.getInvisibleGapRight(graphics)) / 2 - line.getInvisibleGapLeft(graphics);
@@ -12,6 +12,7 @@ package org.eclipse.vex.core.internal.boxes;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.ListIterator;
 
 import org.eclipse.vex.core.internal.core.Graphics;
@@ -112,7 +113,7 @@ public class RootBox extends BaseBox implements IParentBox<IStructuralBox> {
 		}
 	}
 
-	public Iterable<IStructuralBox> getChildren() {
+	public List<IStructuralBox> getChildren() {
 		return children;
 	}
 
@@ -37,6 +37,7 @@ public class StructuralNodeReference extends BaseBox implements IStructuralBox,
 	private int height;
 
 	private IStructuralBox component;
+	private int estimatedHeight;
 
 	private INode node;
 	private boolean canContainText;
@@ -125,6 +126,22 @@ public class StructuralNodeReference extends BaseBox implements IStructuralBox,
 		return component;
 	}
 
+	/**
+	 * A placeholder stands in for the visualization of its node until it is expanded, i.e. until a component is set.
+	 * It takes the estimated height in the layout.
+	 */
+	public boolean isPlaceholder() {
+		return component == null;
+	}
+
+	public void setEstimatedHeight(final int estimatedHeight) {
+		this.estimatedHeight = Math.max(0, estimatedHeight);
+	}
+
+	public int getEstimatedHeight() {
+		return estimatedHeight;
+	}
+
 	public void setNode(final INode node) {
 		this.node = node;
 	}
@@ -152,6 +169,7 @@ public class StructuralNodeReference extends BaseBox implements IStructuralBox,
 	@Override
 	public void layout(final Graphics graphics) {
 		if (component == null) {
+			height = estimatedHeight;
 			return;
 		}
 		component.setPosition(0, 0);
@@ -162,6 +180,10 @@ public class StructuralNodeReference extends BaseBox implements IStructuralBox,
 
 	@Override
 	public Collection<IBox> reconcileLayout(final Graphics graphics) {
+		if (component == null) {
+			return NOTHING_INVALIDATED;
+		}
+
 		final int oldHeight = height;
 		height = component.getHeight();
 
@@ -174,6 +196,9 @@ public class StructuralNodeReference extends BaseBox implements IStructuralBox,
 
 	@Override
 	public void paint(final Graphics graphics) {
+		if (component == null) {
+			return;
+		}
 		ChildBoxPainter.paint(component, graphics);
 	}
 
@@ -13,6 +13,7 @@ package org.eclipse.vex.core.internal.boxes;
 import static org.eclipse.vex.core.internal.core.TextUtils.countWhitespaceAtEnd;
 import static org.eclipse.vex.core.internal.core.TextUtils.countWhitespaceAtStart;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 
@@ -52,8 +53,12 @@ public class TextContent extends BaseBox implements IInlineBox, IContentBox {
 	private final CharSequenceSplitter splitter = new CharSequenceSplitter();
 
 	private boolean layoutValid;
-	private int layoutStartOffset;
-	private int layoutEndOffset;
+	private int layoutTextLength;
+
+	/*
+	 * The rendered width of the text before each position, measured on demand and kept until the next layout.
+	 */
+	private int[] widthsBefore;
 
 	@Override
 	public void setParent(final IBox parent) {
@@ -173,18 +178,31 @@ public class TextContent extends BaseBox implements IInlineBox, IContentBox {
 		return lineWrappingAtStart == LineWrappingRule.REQUIRED || lineWrappingAtEnd == LineWrappingRule.REQUIRED;
 	}
 
-	private void invalidateLayout() {
+	/**
+	 * Invalidates the layout of this box. The layout survives changes of the content outside of this box, but a
+	 * modification of the text within this box has to be announced with this method, because the text might keep its
+	 * length.
+	 */
+	public void invalidateLayout() {
 		layoutValid = false;
 	}
 
 	private void validateLayout() {
-		layoutStartOffset = startPosition.getOffset();
-		layoutEndOffset = endPosition.getOffset();
+		layoutTextLength = textLength();
 		layoutValid = true;
+		widthsBefore = null;
 	}
 
+	/*
+	 * Text which is only moved within the content keeps its layout. Modifications within the text usually change its
+	 * length, all others are announced by invalidateLayout().
+	 */
 	private boolean isLayoutValid() {
-		return layoutValid && layoutStartOffset == startPosition.getOffset() && layoutEndOffset == endPosition.getOffset();
+		return layoutValid && layoutTextLength == textLength();
+	}
+
+	private int textLength() {
+		return endPosition.getOffset() - startPosition.getOffset();
 	}
 
 	public void setContent(final IContent content, final ContentRange range) {
@@ -278,12 +296,11 @@ public class TextContent extends BaseBox implements IInlineBox, IContentBox {
 		final int highlightStartOffset = Math.max(getStartOffset(), Math.min(startOffset, getEndOffset())) - getStartOffset();
 		final int highlightEndOffset = Math.max(getStartOffset(), Math.min(endOffset, getEndOffset() + 1)) - getStartOffset();
 		final String text = getText();
-		final String highlightPrefix = renderText(text.substring(0, highlightStartOffset));
 		final String highlightText = renderText(text.substring(highlightStartOffset, highlightEndOffset));
 
 		applyFont(graphics);
-		final int widthBefore = graphics.stringWidth(highlightPrefix);
-		final int widthHighlight = graphics.stringWidth(highlightText);
+		final int widthBefore = getWidthBefore(graphics, text, highlightStartOffset);
+		final int widthHighlight = getWidthBefore(graphics, text, highlightEndOffset) - widthBefore;
 
 		graphics.setForeground(graphics.getColor(foreground));
 		graphics.setBackground(graphics.getColor(background));
@@ -359,6 +376,7 @@ public class TextContent extends BaseBox implements IInlineBox, IContentBox {
 			return false;
 		}
 		final TextContent otherText = (TextContent) other;
+		final boolean joinedLayoutValid = isLayoutValid() && otherText.isLayoutValid();
 
 		content.removePosition(endPosition);
 		content.removePosition(otherText.startPosition);
@@ -367,6 +385,12 @@ public class TextContent extends BaseBox implements IInlineBox, IContentBox {
 
 		lineWrappingAtEnd = otherText.lineWrappingAtEnd;
 
+		if (joinedLayoutValid) {
+			validateLayout();
+		} else {
+			invalidateLayout();
+		}
+
 		return true;
 	}
 
@@ -408,6 +432,7 @@ public class TextContent extends BaseBox implements IInlineBox, IContentBox {
 		content.removePosition(endPosition);
 		endPosition = content.createPosition(startPosition.getOffset() + headLength - 1);
 		width -= tail.width;
+		validateLayout();
 	}
 
 	private void adjustSplittingRules(final TextContent tail) {
@@ -475,8 +500,7 @@ public class TextContent extends BaseBox implements IInlineBox, IContentBox {
 
 		applyFont(graphics);
 		final char c = content.charAt(offset);
-		final String head = renderText(content.subSequence(startPosition.getOffset(), offset).toString());
-		final int left = graphics.stringWidth(head);
+		final int left = getWidthBefore(graphics, getText(), offset - startPosition.getOffset());
 		final int charWidth = graphics.stringWidth(renderText(Character.toString(c)));
 		return new Rectangle(left, 0, charWidth, height);
 	}
@@ -492,10 +516,7 @@ public class TextContent extends BaseBox implements IInlineBox, IContentBox {
 
 		applyFont(graphics);
 		final String text = getText();
-		int i = 0;
-		while (renderedWidth(graphics, text.substring(0, i)) < x && i < text.length()) {
-			i += 1;
-		}
+		final int i = findPositionAt(graphics, text, x);
 		final int offset = Math.max(getStartOffset(), getStartOffset() + i - 1);
 
 		final Rectangle area = getPositionArea(graphics, offset);
@@ -507,6 +528,35 @@ public class TextContent extends BaseBox implements IInlineBox, IContentBox {
 		}
 	}
 
+	/**
+	 * Binary search for the first position before which the rendered text is at least x wide.
+	 */
+	private int findPositionAt(final Graphics graphics, final String text, final int x) {
+		int begin = 0;
+		int end = text.length();
+		while (begin < end) {
+			final int pivot = (begin + end) / 2;
+			if (getWidthBefore(graphics, text, pivot) < x) {
+				begin = pivot + 1;
+			} else {
+				end = pivot;
+			}
+		}
+		return begin;
+	}
+
+	private int getWidthBefore(final Graphics graphics, final String text, final int position) {
+		if (widthsBefore == null || widthsBefore.length != text.length() + 1 || !isLayoutValid()) {
+			widthsBefore = new int[text.length() + 1];
+			Arrays.fill(widthsBefore, -1);
+			widthsBefore[0] = 0;
+		}
+		if (widthsBefore[position] < 0) {
+			widthsBefore[position] = renderedWidth(graphics, text.substring(0, position));
+		}
+		return widthsBefore[position];
+	}
+
 	private static int renderedWidth(final Graphics graphics, final String text) {
 		return graphics.stringWidth(renderText(text));
 	}
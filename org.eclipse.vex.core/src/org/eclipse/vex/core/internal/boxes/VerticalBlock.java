@@ -13,6 +13,7 @@ package org.eclipse.vex.core.internal.boxes;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.ListIterator;
 
 import org.eclipse.vex.core.internal.core.Graphics;
@@ -138,7 +139,7 @@ public class VerticalBlock extends BaseBox implements IStructuralBox, IParentBox
 		}
 	}
 
-	public Iterable<IStructuralBox> getChildren() {
+	public List<IStructuralBox> getChildren() {
 		return children;
 	}
 
@@ -9,20 +9,23 @@
  *     John Krasnay - initial API and implementation
  *     Florian Thienel - generics inferred
  *     Carsten Hiesserich - allow adding/removing listeners during invocation
+ *     agent - typed event dispatch, copy-on-write listener array
  *******************************************************************************/
 package org.eclipse.vex.core.internal.core;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
 import java.util.EventObject;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
  * A collection of listener objects. The main point of this class is the fireEvent method, which takes care of the
  * tedium of iterating over the collection and catching exceptions generated by listeners.
+ * <p>
+ * The listeners are stored in an array which is copied when a listener is added or removed. Firing an event just
+ * iterates over the current array, so listeners may be added or removed during the invocation without copying the
+ * listeners for each event.
  *
  * @param <L>
  *            the type of listeners maintained by this list
@@ -31,8 +34,10 @@ import java.util.Map;
  */
 public class ListenerList<L, E extends EventObject> {
 
+	private static final Object[] NO_LISTENERS = new Object[0];
+
 	private final Class<L> listenerClass;
-	private final List<L> listeners = new ArrayList<L>();
+	private Object[] listeners = NO_LISTENERS;
 
 	/** Mapping: method name => method object */
 	private final Map<String, Method> methods = new HashMap<String, Method>();
@@ -55,7 +60,10 @@ public class ListenerList<L, E extends EventObject> {
 	 *            Listener to be added.
 	 */
 	public void add(final L listener) {
-		this.listeners.add(listener);
+		final Object[] newListeners = new Object[listeners.length + 1];
+		System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+		newListeners[listeners.length] = listener;
+		listeners = newListeners;
 	}
 
 	/**
@@ -65,7 +73,15 @@ public class ListenerList<L, E extends EventObject> {
 	 *            Listener to remove.
 	 */
 	public void remove(final L listener) {
-		this.listeners.remove(listener);
+		for (int i = 0; i < listeners.length; i += 1) {
+			if (listener == null ? listeners[i] == null : listener.equals(listeners[i])) {
+				final Object[] newListeners = new Object[listeners.length - 1];
+				System.arraycopy(listeners, 0, newListeners, 0, i);
+				System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+				listeners = newListeners;
+				return;
+			}
+		}
 	}
 
 	/**
@@ -80,6 +96,28 @@ public class ListenerList<L, E extends EventObject> {
 		e.printStackTrace();
 	}
 
+	/**
+	 * Calls the given dispatcher for each registered listener. Any exception thrown by the dispatcher is passed to
+	 * handleException. In contrast to {@link #fireEvent(String, EventObject)} this does not involve reflection.
+	 *
+	 * @param dispatcher
+	 *            Calls the listener method.
+	 * @param event
+	 *            Event to be passed to each call.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends E> void fireEvent(final IEventDispatcher<L, T> dispatcher, final T event) {
+		// Listeners may call #remove or #add during invocation, this only replaces the array
+		final Object[] currentListeners = listeners;
+		for (final Object listener : currentListeners) {
+			try {
+				dispatcher.dispatch((L) listener, event);
+			} catch (final RuntimeException e) {
+				handleException(e);
+			}
+		}
+	}
+
 	/**
 	 * Calls the given method on each registered listener. Any exception thrown from one of the called methods is passed
 	 * to handleException, as is any introspection error, e.g. if the given method doesn't exist.
@@ -95,11 +133,9 @@ public class ListenerList<L, E extends EventObject> {
 			return; // Exception handling already done by getMethod
 		}
 
-		// Listeners may call #remove or #add during method invocation, thus the List is copied here
-		// to prevent a ConcurrentModificationException.
-		@SuppressWarnings("unchecked")
-		final L[] l = (L[]) listeners.toArray();
-		for (final L listener : l) {
+		// Listeners may call #remove or #add during method invocation, this only replaces the array
+		final Object[] currentListeners = listeners;
+		for (final Object listener : currentListeners) {
 			try {
 				method.invoke(listener, event);
 			} catch (final IllegalArgumentException e) {
@@ -129,4 +165,16 @@ public class ListenerList<L, E extends EventObject> {
 		return null;
 	}
 
+	/**
+	 * Notifies a single listener about an event by calling the appropriate listener method.
+	 *
+	 * @param <L>
+	 *            the type of listeners
+	 * @param <E>
+	 *            the type of events
+	 */
+	public static interface IEventDispatcher<L, E extends EventObject> {
+		void dispatch(L listener, E event);
+	}
+
 }
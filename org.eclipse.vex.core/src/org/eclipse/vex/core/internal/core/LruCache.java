@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.Assert;
+
+/**
+ * A cache which evicts the least recently used entries when the total size of its values exceeds the capacity. The size
+ * of a value is provided by subclasses, e.g. the number of bytes of decoded image data. This class is thread-safe.
+ *
+ * @author agent
+ */
+public abstract class LruCache<K, V> {
+
+	private final long capacity;
+	private final LinkedHashMap<K, V> entries = new LinkedHashMap<K, V>(16, 0.75f, true);
+	private long size;
+
+	/**
+	 * @param capacity
+	 *            the maximum total size of all values in this cache
+	 */
+	public LruCache(final long capacity) {
+		Assert.isTrue(capacity > 0, "The capacity must be positive.");
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return the value for the given key or null, if the key is not in the cache
+	 */
+	public synchronized V get(final K key) {
+		return entries.get(key);
+	}
+
+	/**
+	 * Puts the given value into the cache and evicts the least recently used entries until the total size fits into
+	 * the capacity again. A value which is bigger than the capacity is evicted immediately.
+	 */
+	public synchronized void put(final K key, final V value) {
+		Assert.isNotNull(value);
+		final V oldValue = entries.put(key, value);
+		if (oldValue != null) {
+			size -= getSize(oldValue);
+			if (oldValue != value) {
+				evicted(key, oldValue);
+			}
+		}
+		size += getSize(value);
+		evictLeastRecentlyUsed();
+	}
+
+	private void evictLeastRecentlyUsed() {
+		for (final Iterator<Map.Entry<K, V>> iter = entries.entrySet().iterator(); size > capacity && iter.hasNext();) {
+			final Map.Entry<K, V> entry = iter.next();
+			iter.remove();
+			size -= getSize(entry.getValue());
+			evicted(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public synchronized void remove(final K key) {
+		final V value = entries.remove(key);
+		if (value != null) {
+			size -= getSize(value);
+			evicted(key, value);
+		}
+	}
+
+	/**
+	 * Evicts all entries.
+	 */
+	public synchronized void clear() {
+		for (final Map.Entry<K, V> entry : entries.entrySet()) {
+			evicted(entry.getKey(), entry.getValue());
+		}
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * @return the total size of all values in this cache
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the size of the given value, must not change while the value is in the cache
+	 */
+	protected abstract long getSize(V value);
+
+	/**
+	 * Called when an entry was removed from the cache, e.g. to release native resources. The default implementation
+	 * does nothing.
+	 */
+	protected void evicted(final K key, final V value) {
+		// ignore
+	}
+}
@@ -0,0 +1,556 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.core;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A Graphics which records all drawing operations, so that they can be replayed on another Graphics later, e.g. in a
+ * dedicated render thread. Everything that is needed for layout (text measurement, font metrics, images) is provided
+ * immediately by the given measuring Graphics. The coordinates are recorded as absolute coordinates.<br/>
+ *
+ * System colors are recorded as plain colors with the values given at construction time, so that the replay does not
+ * depend on the thread in which it happens.
+ *
+ * @author agent
+ */
+public class RecordingGraphics implements Graphics {
+
+	private final Graphics measuringGraphics;
+	private final Map<Integer, Color> systemColors;
+	private final FontResource initialMeasuringFont;
+	private final int width;
+	private final int height;
+
+	private final ArrayList<Operation> operations = new ArrayList<Operation>();
+	private final HashMap<Color, RecordedColor> colors = new HashMap<Color, RecordedColor>();
+	private final HashMap<FontSpec, RecordedFont> fonts = new HashMap<FontSpec, RecordedFont>();
+
+	private int offsetX;
+	private int offsetY;
+	private RecordedColor foreground;
+	private RecordedColor background;
+	private RecordedFont currentFont;
+	private LineStyle lineStyle;
+	private int lineWidth;
+	private boolean antiAliased;
+
+	private volatile boolean cancelled;
+
+	/**
+	 * @param measuringGraphics
+	 *            the Graphics to measure text, provide font metrics and load images
+	 * @param width
+	 *            the width of the recorded area
+	 * @param height
+	 *            the height of the recorded area
+	 * @param systemColors
+	 *            the values of the system colors, keyed by their id (see {@link ColorResource}), unknown system colors
+	 *            are recorded as black
+	 */
+	public RecordingGraphics(final Graphics measuringGraphics, final int width, final int height, final Map<Integer, Color> systemColors) {
+		this.measuringGraphics = measuringGraphics;
+		this.systemColors = systemColors;
+		this.width = width;
+		this.height = height;
+
+		initialMeasuringFont = measuringGraphics.getCurrentFont();
+		currentFont = new RecordedFont(null, initialMeasuringFont);
+		setForeground(getColor(Color.BLACK));
+		setBackground(getColor(Color.WHITE));
+		setLineStyle(LineStyle.SOLID);
+		setLineWidth(measuringGraphics.getLineWidth());
+	}
+
+	/**
+	 * Stops recording and restores the state of the measuring Graphics. The recorded operations can still be replayed.
+	 */
+	@Override
+	public void dispose() {
+		measuringGraphics.setCurrentFont(initialMeasuringFont);
+	}
+
+	/**
+	 * Replays the recorded operations on the given Graphics. The replay stops early if this recording gets cancelled.
+	 *
+	 * @return true if all recorded operations were replayed
+	 */
+	public boolean replay(final Graphics graphics) {
+		final FontResource initialFont = graphics.getCurrentFont();
+		graphics.resetOrigin();
+		try {
+			for (final Operation operation : operations) {
+				if (cancelled) {
+					return false;
+				}
+				operation.replay(graphics, initialFont);
+			}
+			return true;
+		} finally {
+			graphics.setCurrentFont(initialFont);
+		}
+	}
+
+	/**
+	 * Cancels a running or future replay of this recording.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public int getOperationCount() {
+		return operations.size();
+	}
+
+	private void record(final Operation operation) {
+		operations.add(operation);
+	}
+
+	/*
+	 * Origin
+	 */
+
+	@Override
+	public void resetOrigin() {
+		offsetX = 0;
+		offsetY = 0;
+	}
+
+	@Override
+	public void moveOrigin(final int offsetX, final int offsetY) {
+		this.offsetX += offsetX;
+		this.offsetY += offsetY;
+	}
+
+	@Override
+	public int asAbsoluteX(final int relativeX) {
+		return relativeX + offsetX;
+	}
+
+	@Override
+	public int asAbsoluteY(final int relativeY) {
+		return relativeY + offsetY;
+	}
+
+	@Override
+	public int asRelativeX(final int absoluteX) {
+		return absoluteX - offsetX;
+	}
+
+	@Override
+	public int asRelativeY(final int absoluteY) {
+		return absoluteY - offsetY;
+	}
+
+	@Override
+	public Rectangle getClipBounds() {
+		return new Rectangle(-offsetX, -offsetY, width, height);
+	}
+
+	/*
+	 * Drawing
+	 */
+
+	@Override
+	public void drawChars(final char[] chars, final int offset, final int length, final int x, final int y) {
+		drawString(new String(chars, offset, length), x, y);
+	}
+
+	@Override
+	public void drawLine(final int x1, final int y1, final int x2, final int y2) {
+		final int absoluteX1 = asAbsoluteX(x1);
+		final int absoluteY1 = asAbsoluteY(y1);
+		final int absoluteX2 = asAbsoluteX(x2);
+		final int absoluteY2 = asAbsoluteY(y2);
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.drawLine(absoluteX1, absoluteY1, absoluteX2, absoluteY2);
+			}
+		});
+	}
+
+	@Override
+	public void drawString(final String s, final int x, final int y) {
+		final int absoluteX = asAbsoluteX(x);
+		final int absoluteY = asAbsoluteY(y);
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.drawString(s, absoluteX, absoluteY);
+			}
+		});
+	}
+
+	@Override
+	public void drawOval(final int x, final int y, final int width, final int height) {
+		final int absoluteX = asAbsoluteX(x);
+		final int absoluteY = asAbsoluteY(y);
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.drawOval(absoluteX, absoluteY, width, height);
+			}
+		});
+	}
+
+	@Override
+	public void drawRect(final int x, final int y, final int width, final int height) {
+		final int absoluteX = asAbsoluteX(x);
+		final int absoluteY = asAbsoluteY(y);
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.drawRect(absoluteX, absoluteY, width, height);
+			}
+		});
+	}
+
+	@Override
+	public void drawRoundRect(final int x, final int y, final int width, final int height, final int arcWidth, final int arcHeight) {
+		final int absoluteX = asAbsoluteX(x);
+		final int absoluteY = asAbsoluteY(y);
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.drawRoundRect(absoluteX, absoluteY, width, height, arcWidth, arcHeight);
+			}
+		});
+	}
+
+	@Override
+	public void drawPolygon(final int... coordinates) {
+		final int[] absoluteCoordinates = asAbsoluteCoordinates(coordinates);
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.drawPolygon(absoluteCoordinates);
+			}
+		});
+	}
+
+	@Override
+	public void drawImage(final Image image, final int x, final int y, final int width, final int height) {
+		final int absoluteX = asAbsoluteX(x);
+		final int absoluteY = asAbsoluteY(y);
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.drawImage(image, absoluteX, absoluteY, width, height);
+			}
+		});
+	}
+
+	@Override
+	public void fillOval(final int x, final int y, final int width, final int height) {
+		final int absoluteX = asAbsoluteX(x);
+		final int absoluteY = asAbsoluteY(y);
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.fillOval(absoluteX, absoluteY, width, height);
+			}
+		});
+	}
+
+	@Override
+	public void fillRect(final int x, final int y, final int width, final int height) {
+		final int absoluteX = asAbsoluteX(x);
+		final int absoluteY = asAbsoluteY(y);
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.fillRect(absoluteX, absoluteY, width, height);
+			}
+		});
+	}
+
+	@Override
+	public void fillRoundRect(final int x, final int y, final int width, final int height, final int arcWidth, final int arcHeight) {
+		final int absoluteX = asAbsoluteX(x);
+		final int absoluteY = asAbsoluteY(y);
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.fillRoundRect(absoluteX, absoluteY, width, height, arcWidth, arcHeight);
+			}
+		});
+	}
+
+	@Override
+	public void fillPolygon(final int... coordinates) {
+		final int[] absoluteCoordinates = asAbsoluteCoordinates(coordinates);
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.fillPolygon(absoluteCoordinates);
+			}
+		});
+	}
+
+	private int[] asAbsoluteCoordinates(final int... coordinates) {
+		final int[] absoluteCoordinates = new int[coordinates.length];
+		for (int i = 0; i < coordinates.length; i += 1) {
+			if (i % 2 == 0) {
+				absoluteCoordinates[i] = asAbsoluteX(coordinates[i]);
+			} else {
+				absoluteCoordinates[i] = asAbsoluteY(coordinates[i]);
+			}
+		}
+		return absoluteCoordinates;
+	}
+
+	/*
+	 * Colors
+	 */
+
+	@Override
+	public ColorResource getColor(final Color rgb) {
+		RecordedColor color = colors.get(rgb);
+		if (color == null) {
+			color = new RecordedColor(rgb);
+			colors.put(rgb, color);
+		}
+		return color;
+	}
+
+	@Override
+	public ColorResource getSystemColor(final int id) {
+		final Color rgb = systemColors.get(id);
+		if (rgb == null) {
+			return getColor(Color.BLACK);
+		}
+		return getColor(rgb);
+	}
+
+	@Override
+	public ColorResource getColor() {
+		return getForeground();
+	}
+
+	@Override
+	public ColorResource setColor(final ColorResource color) {
+		final ColorResource oldColor = getColor();
+		final RecordedColor recordedColor = (RecordedColor) color;
+		foreground = recordedColor;
+		background = recordedColor;
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.setColor(recordedColor.resolve(graphics));
+			}
+		});
+		return oldColor;
+	}
+
+	@Override
+	public ColorResource getForeground() {
+		return foreground;
+	}
+
+	@Override
+	public ColorResource setForeground(final ColorResource color) {
+		final ColorResource oldColor = getForeground();
+		final RecordedColor recordedColor = (RecordedColor) color;
+		foreground = recordedColor;
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.setForeground(recordedColor.resolve(graphics));
+			}
+		});
+		return oldColor;
+	}
+
+	@Override
+	public ColorResource getBackground() {
+		return background;
+	}
+
+	@Override
+	public ColorResource setBackground(final ColorResource color) {
+		final ColorResource oldColor = getBackground();
+		final RecordedColor recordedColor = (RecordedColor) color;
+		background = recordedColor;
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.setBackground(recordedColor.resolve(graphics));
+			}
+		});
+		return oldColor;
+	}
+
+	@Override
+	public void swapColors() {
+		setForeground(setBackground(getForeground()));
+	}
+
+	/*
+	 * Fonts and text measurement
+	 */
+
+	@Override
+	public FontResource getFont(final FontSpec fontSpec) {
+		RecordedFont font = fonts.get(fontSpec);
+		if (font == null) {
+			font = new RecordedFont(fontSpec, measuringGraphics.getFont(fontSpec));
+			fonts.put(fontSpec, font);
+		}
+		return font;
+	}
+
+	@Override
+	public FontResource getCurrentFont() {
+		return currentFont;
+	}
+
+	@Override
+	public FontResource setCurrentFont(final FontResource font) {
+		if (font == currentFont) {
+			return currentFont;
+		}
+
+		final FontResource oldFont = getCurrentFont();
+		final RecordedFont recordedFont = (RecordedFont) font;
+		currentFont = recordedFont;
+		measuringGraphics.setCurrentFont(recordedFont.measuringFont);
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.setCurrentFont(recordedFont.resolve(graphics, initialFont));
+			}
+		});
+		return oldFont;
+	}
+
+	@Override
+	public FontMetrics getFontMetrics() {
+		return measuringGraphics.getFontMetrics();
+	}
+
+	@Override
+	public int charsWidth(final char[] data, final int offset, final int length) {
+		return measuringGraphics.charsWidth(data, offset, length);
+	}
+
+	@Override
+	public int stringWidth(final String s) {
+		return measuringGraphics.stringWidth(s);
+	}
+
+	@Override
+	public Image getImage(final URL url) {
+		return measuringGraphics.getImage(url);
+	}
+
+	/*
+	 * Lines and rendering hints
+	 */
+
+	@Override
+	public LineStyle getLineStyle() {
+		return lineStyle;
+	}
+
+	@Override
+	public void setLineStyle(final LineStyle style) {
+		lineStyle = style;
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.setLineStyle(style);
+			}
+		});
+	}
+
+	@Override
+	public int getLineWidth() {
+		return lineWidth;
+	}
+
+	@Override
+	public void setLineWidth(final int width) {
+		lineWidth = width;
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.setLineWidth(width);
+			}
+		});
+	}
+
+	@Override
+	public boolean isAntiAliased() {
+		return antiAliased;
+	}
+
+	@Override
+	public void setAntiAliased(final boolean antiAliased) {
+		this.antiAliased = antiAliased;
+		record(new Operation() {
+			@Override
+			public void replay(final Graphics graphics, final FontResource initialFont) {
+				graphics.setAntiAliased(antiAliased);
+			}
+		});
+	}
+
+	private static interface Operation {
+		void replay(Graphics graphics, FontResource initialFont);
+	}
+
+	private static class RecordedColor implements ColorResource {
+		private final Color color;
+
+		public RecordedColor(final Color color) {
+			this.color = color;
+		}
+
+		public ColorResource resolve(final Graphics graphics) {
+			return graphics.getColor(color);
+		}
+
+		@Override
+		public void dispose() {
+			// the resolved color is owned by the Graphics on which the recording is replayed
+		}
+	}
+
+	private static class RecordedFont implements FontResource {
+		private final FontSpec fontSpec;
+		private final FontResource measuringFont;
+
+		public RecordedFont(final FontSpec fontSpec, final FontResource measuringFont) {
+			this.fontSpec = fontSpec;
+			this.measuringFont = measuringFont;
+		}
+
+		public FontResource resolve(final Graphics graphics, final FontResource initialFont) {
+			if (fontSpec == null) {
+				return initialFont;
+			}
+			return graphics.getFont(fontSpec);
+		}
+
+		@Override
+		public void dispose() {
+			// the resolved font is owned by the Graphics on which the recording is replayed
+		}
+	}
+}
@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.core;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the width of text and shares the measurements between all Graphics instances.<br/>
+ *
+ * The width of a text is the sum of the advance widths of its glyphs, if the font has neither kerning nor fractional
+ * advance widths. The advance widths are measured once per font and glyph with the toolkit. Whether a font qualifies
+ * is checked once per font by comparing the sum of the advance widths of some probe texts with their width as measured
+ * by the toolkit.<br/>
+ *
+ * Any other text is measured as a whole by the toolkit, e.g. text in a kerned font or text which contains glyphs of
+ * complex scripts (combining marks, right-to-left scripts, Indic scripts, surrogate pairs etc.). These measurements
+ * are cached per font and text, so each run of text is measured only once.
+ *
+ * @author agent
+ */
+public class TextMeasurement {
+
+	/**
+	 * The toolkit's native measurement of text in a given font.
+	 */
+	public static interface IMeasurement {
+		int stringWidth(String text);
+	}
+
+	/**
+	 * Glyphs below this limit (Latin, Greek, Cyrillic, Armenian) are measured by their advance width, except combining
+	 * diacritical marks.
+	 */
+	private static final char SIMPLE_SCRIPT_LIMIT = '\u0590';
+	private static final char COMBINING_MARKS_START = '\u0300';
+	private static final char COMBINING_MARKS_END = '\u036F';
+
+	/**
+	 * Texts whose width differs from the sum of the advance widths if the font is kerned, uses ligatures or has
+	 * fractional advance widths.
+	 */
+	private static final String[] KERNING_PROBES = { "AV", "AW", "AY", "AT", "LT", "LY", "PA", "TA", "Ta", "Te", "To", "VA", "Va", "WA", "Wa", "YA", "Yo", "F.", "r.", "y.", "ff", "fi", "fl",
+			"The quick brown fox jumps over the lazy dog. 0123456789" };
+
+	/**
+	 * The maximum number of characters of all texts whose measured width is cached.
+	 */
+	public static final int MAX_CACHED_RUN_CHARACTERS = 256 * 1024;
+
+	private static final TextMeasurement SHARED = new TextMeasurement();
+
+	private final ConcurrentHashMap<FontSpec, FontEntry> fonts = new ConcurrentHashMap<FontSpec, FontEntry>();
+
+	private final LruCache<RunKey, MeasuredRun> runs = new LruCache<RunKey, MeasuredRun>(MAX_CACHED_RUN_CHARACTERS) {
+		@Override
+		protected long getSize(final MeasuredRun run) {
+			return run.length;
+		}
+	};
+
+	/*
+	 * Statistics, see #getGlyphHitRate(), #getRunHitRate() and #getFallbackRate()
+	 */
+	private final AtomicLong glyphHitCount = new AtomicLong();
+	private final AtomicLong glyphMissCount = new AtomicLong();
+	private final AtomicLong runHitCount = new AtomicLong();
+	private final AtomicLong measuredTextCount = new AtomicLong();
+	private final AtomicLong fallbackCount = new AtomicLong();
+
+	/**
+	 * @return the process-wide instance
+	 */
+	public static TextMeasurement getShared() {
+		return SHARED;
+	}
+
+	public int stringWidth(final FontSpec font, final String text, final IMeasurement measurement) {
+		measuredTextCount.incrementAndGet();
+		final FontEntry entry = getFontEntry(font);
+		if (isMeasurableByGlyphs(text) && !isKerned(entry, measurement)) {
+			return sumOfAdvances(entry.advances, text, measurement);
+		}
+
+		final RunKey key = new RunKey(font, text);
+		final MeasuredRun cachedRun = runs.get(key);
+		if (cachedRun != null) {
+			runHitCount.incrementAndGet();
+			return cachedRun.width;
+		}
+
+		fallbackCount.incrementAndGet();
+		final int width = measurement.stringWidth(text);
+		runs.put(key, new MeasuredRun(width, text.length()));
+		return width;
+	}
+
+	/**
+	 * @return true if the toolkit does not measure text in the given font as the sum of the advance widths of its
+	 *         glyphs, e.g. because of kerning, ligatures or fractional advance widths
+	 */
+	public boolean isKerned(final FontSpec font, final IMeasurement measurement) {
+		return isKerned(getFontEntry(font), measurement);
+	}
+
+	private boolean isKerned(final FontEntry entry, final IMeasurement measurement) {
+		final Boolean kerned = entry.kerned;
+		if (kerned != null) {
+			return kerned.booleanValue();
+		}
+
+		/*
+		 * Concurrent probes of the same font come to the same result, so there is no need to synchronize.
+		 */
+		boolean probedKerning = false;
+		for (final String probe : KERNING_PROBES) {
+			if (sumOfAdvances(entry.advances, probe, measurement) != measurement.stringWidth(probe)) {
+				probedKerning = true;
+				break;
+			}
+		}
+		entry.kerned = Boolean.valueOf(probedKerning);
+		return probedKerning;
+	}
+
+	private int sumOfAdvances(final int[] advances, final String text, final IMeasurement measurement) {
+		int width = 0;
+		for (int i = 0; i < text.length(); i += 1) {
+			width += getAdvance(advances, text.charAt(i), measurement);
+		}
+		return width;
+	}
+
+	/**
+	 * The metrics of the font as provided by the toolkit, or null if they are not known yet.
+	 */
+	public FontMetrics getFontMetrics(final FontSpec font) {
+		return getFontEntry(font).metrics;
+	}
+
+	public void putFontMetrics(final FontSpec font, final FontMetrics metrics) {
+		getFontEntry(font).metrics = metrics;
+	}
+
+	private FontEntry getFontEntry(final FontSpec font) {
+		final FontEntry entry = fonts.get(font);
+		if (entry != null) {
+			return entry;
+		}
+		final FontEntry newEntry = new FontEntry();
+		final FontEntry concurrentEntry = fonts.putIfAbsent(font, newEntry);
+		if (concurrentEntry != null) {
+			return concurrentEntry;
+		}
+		return newEntry;
+	}
+
+	private int getAdvance(final int[] advances, final char c, final IMeasurement measurement) {
+		final int advance = advances[c];
+		if (advance >= 0) {
+			glyphHitCount.incrementAndGet();
+			return advance;
+		}
+
+		glyphMissCount.incrementAndGet();
+		final int measuredAdvance = measurement.stringWidth(Character.toString(c));
+		/*
+		 * Concurrent measurements of the same glyph store the same value, so there is no need to synchronize.
+		 */
+		advances[c] = measuredAdvance;
+		return measuredAdvance;
+	}
+
+	private static boolean isMeasurableByGlyphs(final String text) {
+		for (int i = 0; i < text.length(); i += 1) {
+			final char c = text.charAt(i);
+			if (c >= SIMPLE_SCRIPT_LIMIT || (c >= COMBINING_MARKS_START && c <= COMBINING_MARKS_END) || Character.isISOControl(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Forget all measured fonts, e.g. when the resolution of the display changed.
+	 */
+	public void clear() {
+		fonts.clear();
+		runs.clear();
+	}
+
+	/**
+	 * The ratio of glyphs whose advance width was already known.
+	 */
+	public double getGlyphHitRate() {
+		final long hitCount = glyphHitCount.get();
+		final long requestCount = hitCount + glyphMissCount.get();
+		if (requestCount == 0) {
+			return 0;
+		}
+		return (double) hitCount / requestCount;
+	}
+
+	/**
+	 * The ratio of texts which were measured as a whole and whose width was already known.
+	 */
+	public double getRunHitRate() {
+		final long hitCount = runHitCount.get();
+		final long requestCount = hitCount + fallbackCount.get();
+		if (requestCount == 0) {
+			return 0;
+		}
+		return (double) hitCount / requestCount;
+	}
+
+	/**
+	 * The ratio of texts which had to be measured with the toolkit, because they contain glyphs of complex scripts or
+	 * their font is kerned.
+	 */
+	public double getFallbackRate() {
+		final long requestCount = measuredTextCount.get();
+		if (requestCount == 0) {
+			return 0;
+		}
+		return (double) fallbackCount.get() / requestCount;
+	}
+
+	public long getGlyphHitCount() {
+		return glyphHitCount.get();
+	}
+
+	public long getGlyphMissCount() {
+		return glyphMissCount.get();
+	}
+
+	public long getRunHitCount() {
+		return runHitCount.get();
+	}
+
+	private static class FontEntry {
+		public final int[] advances = new int[SIMPLE_SCRIPT_LIMIT];
+		public volatile FontMetrics metrics;
+		public volatile Boolean kerned;
+
+		public FontEntry() {
+			Arrays.fill(advances, -1);
+		}
+	}
+
+	private static class RunKey {
+		private final FontSpec font;
+		private final String text;
+
+		public RunKey(final FontSpec font, final String text) {
+			this.font = font;
+			this.text = text;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * font.hashCode() + text.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null || getClass() != obj.getClass()) {
+				return false;
+			}
+			final RunKey other = (RunKey) obj;
+			return font.equals(other.font) && text.equals(other.text);
+		}
+	}
+
+	private static class MeasuredRun {
+		public final int width;
+		public final int length;
+
+		public MeasuredRun(final int width, final int length) {
+			this.width = width;
+			this.length = length;
+		}
+	}
+}
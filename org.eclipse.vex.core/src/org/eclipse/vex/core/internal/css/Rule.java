@@ -233,7 +233,7 @@ public class Rule {
 		return false;
 	}
 
-	private static String getLocalNameOfElement(final INode node) {
+	static String getLocalNameOfElement(final INode node) {
 		return node.accept(new BaseNodeVisitorWithResult<String>("") {
 			@Override
 			public String visit(final IElement element) {
@@ -252,7 +252,7 @@ public class Rule {
 		});
 	}
 
-	private static String getNamespaceURIOfElement(final INode node) {
+	static String getNamespaceURIOfElement(final INode node) {
 		return node.accept(new BaseNodeVisitorWithResult<String>("") {
 			@Override
 			public String visit(final IElement element) {
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.css;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.vex.core.provisional.dom.INode;
+import org.w3c.css.sac.Condition;
+import org.w3c.css.sac.ConditionalSelector;
+import org.w3c.css.sac.DescendantSelector;
+import org.w3c.css.sac.ElementSelector;
+import org.w3c.css.sac.Selector;
+import org.w3c.css.sac.SiblingSelector;
+
+/**
+ * An index of rules by the part of their selector that has to match the node itself (the rightmost simple selector).
+ * Only the rules in the bucket of the node's local name, the bucket of the node's namespace and the universal bucket
+ * are candidates for a node, all other rules can never match.
+ * <p>
+ * Rules of pseudo elements are applied to their parent element (see {@link Rule#matches(INode)}), hence they are
+ * indexed by the selector of the parent element. Rules for comments (<code>:comment</code>) are indexed by
+ * {@link CSS#XML_COMMENT}.
+ */
+class RuleIndex {
+
+	private static final int[] NO_RULES = new int[0];
+
+	private final Rule[] rules;
+	private final Map<String, int[]> rulesByLocalName;
+	private final Map<String, int[]> rulesByNamespace;
+	private final int[] universalRules;
+
+	public RuleIndex(final List<Rule> rules) {
+		this.rules = rules.toArray(new Rule[rules.size()]);
+
+		final Map<String, List<Integer>> byLocalName = new HashMap<String, List<Integer>>();
+		final Map<String, List<Integer>> byNamespace = new HashMap<String, List<Integer>>();
+		final List<Integer> universal = new ArrayList<Integer>();
+		for (int i = 0; i < this.rules.length; i += 1) {
+			index(this.rules[i].getSelector(), i, byLocalName, byNamespace, universal);
+		}
+
+		rulesByLocalName = toArrays(byLocalName);
+		rulesByNamespace = toArrays(byNamespace);
+		universalRules = toArray(universal);
+	}
+
+	/**
+	 * @return all rules which might match the given node, in the same order as in the list the index was created from
+	 */
+	public List<Rule> getCandidateRules(final INode node) {
+		if (node == null) {
+			return Collections.emptyList();
+		}
+
+		final int[] byLocalName = get(rulesByLocalName, Rule.getLocalNameOfElement(node));
+		final int[] byNamespace = get(rulesByNamespace, Rule.getNamespaceURIOfElement(node));
+
+		final List<Rule> result = new ArrayList<Rule>(byLocalName.length + byNamespace.length + universalRules.length);
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		while (i < byLocalName.length || j < byNamespace.length || k < universalRules.length) {
+			final int nextByLocalName = i < byLocalName.length ? byLocalName[i] : Integer.MAX_VALUE;
+			final int nextByNamespace = j < byNamespace.length ? byNamespace[j] : Integer.MAX_VALUE;
+			final int nextUniversal = k < universalRules.length ? universalRules[k] : Integer.MAX_VALUE;
+			if (nextByLocalName < nextByNamespace && nextByLocalName < nextUniversal) {
+				result.add(rules[nextByLocalName]);
+				i += 1;
+			} else if (nextByNamespace < nextUniversal) {
+				result.add(rules[nextByNamespace]);
+				j += 1;
+			} else {
+				result.add(rules[nextUniversal]);
+				k += 1;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Add the rule to the bucket of the simple selector which has to match the node itself. This mirrors the evaluation
+	 * in {@link Rule#matches(INode)}. Rules that cannot be bucketed by name or namespace end up in the universal bucket.
+	 */
+	private static void index(final Selector selector, final int ruleIndex, final Map<String, List<Integer>> byLocalName, final Map<String, List<Integer>> byNamespace, final List<Integer> universal) {
+		switch (selector.getSelectorType()) {
+		case Selector.SAC_CONDITIONAL_SELECTOR:
+			final ConditionalSelector cs = (ConditionalSelector) selector;
+			if (cs.getCondition().getConditionType() == Condition.SAC_PSEUDO_CLASS_CONDITION) {
+				// the simple selector has to match the comment's parent, the comment itself is the subject
+				add(byLocalName, CSS.XML_COMMENT, ruleIndex);
+			} else {
+				index(cs.getSimpleSelector(), ruleIndex, byLocalName, byNamespace, universal);
+			}
+			return;
+		case Selector.SAC_ELEMENT_NODE_SELECTOR:
+			final ElementSelector es = (ElementSelector) selector;
+			if (es.getLocalName() != null) {
+				add(byLocalName, es.getLocalName(), ruleIndex);
+			} else if (es.getNamespaceURI() != null) {
+				add(byNamespace, es.getNamespaceURI(), ruleIndex);
+			} else {
+				universal.add(ruleIndex);
+			}
+			return;
+		case Selector.SAC_DESCENDANT_SELECTOR:
+			index(((DescendantSelector) selector).getSimpleSelector(), ruleIndex, byLocalName, byNamespace, universal);
+			return;
+		case Selector.SAC_CHILD_SELECTOR:
+			final DescendantSelector ds = (DescendantSelector) selector;
+			if (ds.getSimpleSelector().getSelectorType() == Selector.SAC_PSEUDO_ELEMENT_SELECTOR) {
+				index(ds.getAncestorSelector(), ruleIndex, byLocalName, byNamespace, universal);
+			} else {
+				index(ds.getSimpleSelector(), ruleIndex, byLocalName, byNamespace, universal);
+			}
+			return;
+		case Selector.SAC_DIRECT_ADJACENT_SELECTOR:
+			index(((SiblingSelector) selector).getSiblingSelector(), ruleIndex, byLocalName, byNamespace, universal);
+			return;
+		default:
+			universal.add(ruleIndex);
+		}
+	}
+
+	private static void add(final Map<String, List<Integer>> buckets, final String key, final int ruleIndex) {
+		List<Integer> bucket = buckets.get(key);
+		if (bucket == null) {
+			bucket = new ArrayList<Integer>();
+			buckets.put(key, bucket);
+		}
+		bucket.add(ruleIndex);
+	}
+
+	private static int[] get(final Map<String, int[]> buckets, final String key) {
+		final int[] bucket = buckets.get(key);
+		if (bucket == null) {
+			return NO_RULES;
+		}
+		return bucket;
+	}
+
+	private static Map<String, int[]> toArrays(final Map<String, List<Integer>> buckets) {
+		final Map<String, int[]> result = new HashMap<String, int[]>(buckets.size() * 2);
+		for (final Entry<String, List<Integer>> entry : buckets.entrySet()) {
+			result.put(entry.getKey(), toArray(entry.getValue()));
+		}
+		return result;
+	}
+
+	private static int[] toArray(final List<Integer> bucket) {
+		final int[] result = new int[bucket.size()];
+		for (int i = 0; i < result.length; i += 1) {
+			result[i] = bucket.get(i);
+		}
+		return result;
+	}
+}
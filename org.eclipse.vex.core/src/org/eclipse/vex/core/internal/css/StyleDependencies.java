@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.css;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.w3c.css.sac.AttributeCondition;
+import org.w3c.css.sac.CombinatorCondition;
+import org.w3c.css.sac.Condition;
+import org.w3c.css.sac.ConditionalSelector;
+import org.w3c.css.sac.DescendantSelector;
+import org.w3c.css.sac.LexicalUnit;
+import org.w3c.css.sac.Selector;
+import org.w3c.css.sac.SiblingSelector;
+
+/**
+ * Describes which changes of the document can affect the styles calculated from a list of rules. Each attribute used
+ * in a selector or in an <code>attr(...)</code> value is classified by the part of the selector it is used in:
+ * <ul>
+ * <li>the node itself: changing the attribute can change the styles of the element and, by inheritance, the styles of
+ * its descendants</li>
+ * <li>an ancestor (descendant and child selectors): changing the attribute can change which rules match the
+ * descendants of the element</li>
+ * <li>a preceding sibling (adjacent sibling selectors): changing the attribute can change which rules match the
+ * following sibling of the element</li>
+ * </ul>
+ * The evaluation mirrors {@link Rule#matches(org.eclipse.vex.core.provisional.dom.INode)}.
+ */
+class StyleDependencies {
+
+	private static enum Role {
+		NODE, ANCESTOR, SIBLING
+	}
+
+	private final Set<String> nodeAttributes = new HashSet<String>();
+	private final Set<String> ancestorAttributes = new HashSet<String>();
+	private final Set<String> siblingAttributes = new HashSet<String>();
+	private boolean siblingSelectors;
+
+	public StyleDependencies(final List<Rule> rules) {
+		for (final Rule rule : rules) {
+			collect(rule.getSelector(), Role.NODE);
+			for (final PropertyDecl decl : rule.getPropertyDecls()) {
+				collectAttr(decl.getValue());
+			}
+		}
+	}
+
+	/**
+	 * @return true if the styles of an element might change when the given attribute of the element changes
+	 */
+	public boolean isNodeDependingOn(final String attributeName) {
+		return nodeAttributes.contains(attributeName);
+	}
+
+	/**
+	 * @return true if the rules matching the descendants of an element might change when the given attribute of the
+	 *         element changes
+	 */
+	public boolean isDescendantDependingOn(final String attributeName) {
+		return ancestorAttributes.contains(attributeName);
+	}
+
+	/**
+	 * @return true if the rules matching the following sibling of an element might change when the given attribute of
+	 *         the element changes
+	 */
+	public boolean isSiblingDependingOn(final String attributeName) {
+		return siblingAttributes.contains(attributeName);
+	}
+
+	/**
+	 * @return true if there are adjacent sibling selectors, i.e. the rules matching a node might change when its
+	 *         preceding sibling is inserted or deleted
+	 */
+	public boolean hasSiblingSelectors() {
+		return siblingSelectors;
+	}
+
+	private void collect(final Selector selector, final Role role) {
+		switch (selector.getSelectorType()) {
+		case Selector.SAC_CONDITIONAL_SELECTOR:
+			final ConditionalSelector cs = (ConditionalSelector) selector;
+			if (cs.getCondition().getConditionType() == Condition.SAC_PSEUDO_CLASS_CONDITION) {
+				// the simple selector has to match the comment's parent
+				collect(cs.getSimpleSelector(), Role.ANCESTOR);
+			} else {
+				collect(cs.getSimpleSelector(), role);
+				collect(cs.getCondition(), role);
+			}
+			return;
+		case Selector.SAC_DESCENDANT_SELECTOR:
+			final DescendantSelector ds = (DescendantSelector) selector;
+			collect(ds.getSimpleSelector(), role);
+			collect(ds.getAncestorSelector(), Role.ANCESTOR);
+			return;
+		case Selector.SAC_CHILD_SELECTOR:
+			final DescendantSelector cds = (DescendantSelector) selector;
+			if (cds.getSimpleSelector().getSelectorType() == Selector.SAC_PSEUDO_ELEMENT_SELECTOR) {
+				// pseudo element rules are applied to the parent element
+				collect(cds.getAncestorSelector(), role);
+			} else {
+				collect(cds.getSimpleSelector(), role);
+				collect(cds.getAncestorSelector(), Role.ANCESTOR);
+			}
+			return;
+		case Selector.SAC_DIRECT_ADJACENT_SELECTOR:
+			final SiblingSelector ss = (SiblingSelector) selector;
+			siblingSelectors = true;
+			collect(ss.getSiblingSelector(), role);
+			collect(ss.getSelector(), Role.SIBLING);
+			return;
+		default:
+			return;
+		}
+	}
+
+	private void collect(final Condition condition, final Role role) {
+		switch (condition.getConditionType()) {
+		case Condition.SAC_ATTRIBUTE_CONDITION:
+		case Condition.SAC_ONE_OF_ATTRIBUTE_CONDITION:
+			add(((AttributeCondition) condition).getLocalName(), role);
+			return;
+		case Condition.SAC_CLASS_CONDITION:
+			add("class", role);
+			return;
+		case Condition.SAC_AND_CONDITION:
+			final CombinatorCondition ccon = (CombinatorCondition) condition;
+			collect(ccon.getFirstCondition(), role);
+			collect(ccon.getSecondCondition(), role);
+			return;
+		default:
+			return;
+		}
+	}
+
+	private void collectAttr(final LexicalUnit value) {
+		for (LexicalUnit lexicalUnit = value; lexicalUnit != null; lexicalUnit = lexicalUnit.getNextLexicalUnit()) {
+			if (lexicalUnit.getLexicalUnitType() == LexicalUnit.SAC_ATTR) {
+				nodeAttributes.add(lexicalUnit.getStringValue());
+			} else if (lexicalUnit.getLexicalUnitType() == LexicalUnit.SAC_FUNCTION) {
+				collectAttr(lexicalUnit.getParameters());
+			}
+		}
+	}
+
+	private void add(final String attributeName, final Role role) {
+		if (attributeName == null) {
+			return;
+		}
+		switch (role) {
+		case NODE:
+			nodeAttributes.add(attributeName);
+			return;
+		case ANCESTOR:
+			ancestorAttributes.add(attributeName);
+			return;
+		case SIBLING:
+			siblingAttributes.add(attributeName);
+			return;
+		}
+	}
+}
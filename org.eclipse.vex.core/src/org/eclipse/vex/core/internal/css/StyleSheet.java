@@ -19,6 +19,10 @@
  *     Carsten Hiesserich - Added OutlineContent property
  *     Carsten Hiesserich - New handling for pseudo elements
  *     Carsten Hiesserich - Added core styles
+ *     agent - index rules by the selector's element name
+ *     agent - share styles which do not depend on the node
+ *     agent - access style values by property ordinals
+ *     agent - flush only the styles affected by a document change
  *******************************************************************************/
 package org.eclipse.vex.core.internal.css;
 
@@ -31,16 +35,20 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.WeakHashMap;
 
 import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.QualifiedName;
 import org.eclipse.vex.core.internal.core.FontSpec;
+import org.eclipse.vex.core.provisional.dom.ContentRange;
 import org.eclipse.vex.core.provisional.dom.IDocument;
 import org.eclipse.vex.core.provisional.dom.IElement;
 import org.eclipse.vex.core.provisional.dom.INode;
+import org.eclipse.vex.core.provisional.dom.IParent;
 import org.w3c.css.sac.DescendantSelector;
 import org.w3c.css.sac.ElementSelector;
 import org.w3c.css.sac.LexicalUnit;
@@ -86,17 +94,29 @@ public class StyleSheet {
 			new BorderWidthProperty(CSS.BORDER_LEFT_WIDTH, CSS.BORDER_LEFT_STYLE, IProperty.Axis.HORIZONTAL),
 			new BorderWidthProperty(CSS.BORDER_RIGHT_WIDTH, CSS.BORDER_RIGHT_STYLE, IProperty.Axis.HORIZONTAL),
 			new BorderWidthProperty(CSS.BORDER_TOP_WIDTH, CSS.BORDER_TOP_STYLE, IProperty.Axis.VERTICAL), new BorderSpacingProperty(), new LengthProperty(CSS.HEIGHT, IProperty.Axis.VERTICAL),
-			new LengthProperty(CSS.WIDTH, IProperty.Axis.HORIZONTAL), new BackgroundImageProperty(), new OutlineContentProperty(), new InlineMarkerProperty(),
-			new ContentProperty()
+			new LengthProperty(CSS.WIDTH, IProperty.Axis.HORIZONTAL), new BackgroundImageProperty(), new InlineMarkerProperty(), new ContentProperty()
 	};
 
+	/**
+	 * The ordinals of the standard CSS properties in {@link Styles}, in the same order as {@link #CSS_PROPERTIES}.
+	 */
+	private static final int[] CSS_PROPERTY_ORDINALS = getOrdinals(CSS_PROPERTIES);
+
+	/**
+	 * The maximum number of shared styles which are kept, see {@link #internedStyles}.
+	 */
+	public static final int MAX_INTERNED_STYLES = 1000;
+
 	private final List<Rule> rules;
+	private final RuleIndex ruleIndex;
+	private final StyleDependencies dependencies;
 	private final URL baseUrl;
 
 	/**
 	 * The VEX core styles
 	 */
-	private final static List<Rule> coreRules;
+	private final static RuleIndex coreRuleIndex;
+	private final static StyleDependencies coreDependencies;
 
 	static {
 		List<Rule> rules;
@@ -106,7 +126,8 @@ public class StyleSheet {
 			rules = Collections.<Rule> emptyList();
 			e.printStackTrace();
 		}
-		coreRules = rules;
+		coreRuleIndex = new RuleIndex(rules);
+		coreDependencies = new StyleDependencies(rules);
 	}
 
 	/**
@@ -118,6 +139,41 @@ public class StyleSheet {
 	 */
 	private final Map<INode, Styles> styleMap = new WeakHashMap<INode, Styles>(50);
 
+	/**
+	 * Many nodes (e.g. all paragraphs within a section) end up with identical styles. If the styles of a node do not
+	 * depend on the node itself, they are fully determined by the applicable declarations and the parent styles. Those
+	 * styles are calculated only once and shared by all nodes with the same declarations and the same parent styles.
+	 * <p>
+	 * Parent styles which depend on their node are recalculated whenever they are flushed, and each new instance leads
+	 * to new keys for the styles of the children. The shared styles are therefore kept in a map of limited size, which
+	 * discards the least recently used styles. A discarded entry only means that its styles are calculated again.
+	 */
+	private final Map<InternKey, Styles> internedStyles = new LinkedHashMap<InternKey, Styles>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<InternKey, Styles> eldest) {
+			return size() > MAX_INTERNED_STYLES;
+		}
+	};
+
+	/*
+	 * Statistics about the rule matching, see #getEvaluatedRulesPerNode() and #getInternedStylesHitRate()
+	 */
+	private long evaluatedNodeCount;
+	private long evaluatedRuleCount;
+	private long internRequestCount;
+	private long internHitCount;
+
+	private static int[] getOrdinals(final IProperty[] properties) {
+		final int[] ordinals = new int[properties.length];
+		for (int i = 0; i < properties.length; i += 1) {
+			ordinals[i] = Styles.getOrdinal(properties[i].getName());
+			Assert.isTrue(ordinals[i] >= 0, "There is no ordinal for the property " + properties[i].getName());
+		}
+		return ordinals;
+	}
+
 	/**
 	 * Class constructor.
 	 *
@@ -126,6 +182,8 @@ public class StyleSheet {
 	 */
 	public StyleSheet(final Collection<Rule> rules, final URL baseUrl) {
 		this.rules = new ArrayList<Rule>(rules);
+		ruleIndex = new RuleIndex(this.rules);
+		dependencies = new StyleDependencies(this.rules);
 		this.baseUrl = baseUrl;
 	}
 
@@ -156,6 +214,130 @@ public class StyleSheet {
 		styleMap.remove(node);
 	}
 
+	/**
+	 * Flush the cached styles which might be affected by changing the given attribute of the given node. Only the
+	 * styles which depend on the attribute are flushed:
+	 * <ul>
+	 * <li>the styles of the node, if the attribute is used in a selector or an <code>attr(...)</code> value</li>
+	 * <li>the styles of its descendants, if the recalculated styles of the node differ (inheritance) or if the
+	 * attribute is used in the ancestor part of a selector</li>
+	 * <li>the styles of its following sibling, if the attribute is used in an adjacent sibling selector</li>
+	 * </ul>
+	 * Changing an attribute which is not used by any rule does not flush any styles.
+	 *
+	 * @param node
+	 *            the node whose attribute was changed
+	 * @param attributeName
+	 *            the name of the changed attribute
+	 */
+	public void flushStylesAfterAttributeChange(final INode node, final QualifiedName attributeName) {
+		final String localName = attributeName.getLocalName();
+		if (dependencies.isDescendantDependingOn(localName) || coreDependencies.isDescendantDependingOn(localName)) {
+			flushStylesOfSubtree(node);
+		} else if (dependencies.isNodeDependingOn(localName) || coreDependencies.isNodeDependingOn(localName)) {
+			final Styles oldStyles = styleMap.remove(node);
+			// Shared styles are identical if the change did not affect the node's declarations.
+			if (oldStyles == null || oldStyles != getStyles(node)) {
+				flushStylesOfDescendants(node);
+			}
+		}
+
+		if ((dependencies.isSiblingDependingOn(localName) || coreDependencies.isSiblingDependingOn(localName)) && node.getParent() != null) {
+			flushStylesOfSiblingAt(node.getParent(), node.getEndOffset() + 1);
+		}
+	}
+
+	/**
+	 * Flush the cached styles which might be affected by inserting content into the given parent: the styles of the
+	 * inserted nodes and, if there are adjacent sibling selectors, the styles of the node directly following the
+	 * inserted content. The styles of the parent do not depend on its children.
+	 *
+	 * @param parent
+	 *            the parent of the inserted content
+	 * @param range
+	 *            the range of the inserted content
+	 */
+	public void flushStylesAfterInsertion(final IParent parent, final ContentRange range) {
+		for (final INode child : parent.children().withoutText().in(range)) {
+			flushStylesOfSubtree(child);
+		}
+		if (hasSiblingSelectors()) {
+			flushStylesOfSiblingAt(parent, range.getEndOffset() + 1);
+		}
+	}
+
+	/**
+	 * Flush the cached styles of the nodes which are about to be deleted from the given parent, including the styles
+	 * of all their descendants. The deleted nodes cannot be found in the parent after the deletion anymore, therefore
+	 * this has to be done before the deletion. The deleted nodes may still be kept alive elsewhere (e.g. in the undo
+	 * history) and would otherwise retain their stale styles.
+	 *
+	 * @param parent
+	 *            the parent of the content to be deleted
+	 * @param range
+	 *            the range of the content to be deleted
+	 */
+	public void flushStylesBeforeDeletion(final IParent parent, final ContentRange range) {
+		for (final INode child : parent.children().withoutText().in(range)) {
+			flushStylesOfSubtree(child);
+		}
+	}
+
+	/**
+	 * Flush the cached styles which might be affected by deleting content from the given parent: if there are adjacent
+	 * sibling selectors, the styles of the node which now directly follows the deleted content. The styles of the
+	 * deleted nodes themselves have to be flushed before the deletion, see
+	 * {@link #flushStylesBeforeDeletion(IParent, ContentRange)}.
+	 *
+	 * @param parent
+	 *            the parent of the deleted content
+	 * @param range
+	 *            the range of the deleted content
+	 */
+	public void flushStylesAfterDeletion(final IParent parent, final ContentRange range) {
+		if (hasSiblingSelectors()) {
+			flushStylesOfSiblingAt(parent, range.getStartOffset());
+		}
+	}
+
+	private boolean hasSiblingSelectors() {
+		return dependencies.hasSiblingSelectors() || coreDependencies.hasSiblingSelectors();
+	}
+
+	/*
+	 * Only the node starting directly at the given offset can be matched by an adjacent sibling selector together
+	 * with the changed content. If there is text in between, the preceding sibling of the node has not changed.
+	 */
+	private void flushStylesOfSiblingAt(final IParent parent, final int offset) {
+		final Iterator<? extends INode> followingSiblings = parent.children().withoutText().after(offset).iterator();
+		if (followingSiblings.hasNext()) {
+			final INode sibling = followingSiblings.next();
+			if (sibling.getStartOffset() == offset) {
+				flushStylesOfSubtree(sibling);
+			}
+		}
+	}
+
+	private void flushStylesOfSubtree(final INode node) {
+		styleMap.remove(node);
+		flushStylesOfDescendants(node);
+	}
+
+	/*
+	 * The styles of a node are always calculated after the styles of its parent, hence there cannot be any cached
+	 * styles below a node without cached styles.
+	 */
+	private void flushStylesOfDescendants(final INode node) {
+		if (!(node instanceof IParent)) {
+			return;
+		}
+		for (final INode child : ((IParent) node).children().withoutText()) {
+			if (styleMap.remove(child) != null) {
+				flushStylesOfDescendants(child);
+			}
+		}
+	}
+
 	/**
 	 * Flush all styles used by the given document. A StyleSheet may be shared by multiple documents, so we only remove
 	 * elements for the specific document.
@@ -175,6 +357,8 @@ public class StyleSheet {
 				iter.remove();
 			}
 		}
+		// The interned styles do not belong to a specific document, but they keep their parent styles alive.
+		internedStyles.clear();
 	}
 
 	/**
@@ -244,19 +428,40 @@ public class StyleSheet {
 		// getApplicableDeclarations returns the elements styles and also pseudo element styles
 		final Map<String, Map<String, LexicalUnit>> decls = getApplicableDeclarations(node);
 
-		// The null key contains the element's direct styles
 		Styles parentStyles = null;
 		if (node != null && node.getParent() != null) {
 			parentStyles = getStyles(node.getParent());
 		}
+
+		if (dependsOnNode(decls)) {
+			return calculateStyles(node, decls, parentStyles);
+		}
+
+		internRequestCount++;
+		final InternKey key = new InternKey(decls, parentStyles);
+		final Styles sharedStyles = internedStyles.get(key);
+		if (sharedStyles != null) {
+			internHitCount++;
+			return sharedStyles;
+		}
+
+		final Styles styles = calculateStyles(node, decls, parentStyles);
+		internedStyles.put(key, styles);
+		return styles;
+	}
+
+	private Styles calculateStyles(final INode node, final Map<String, Map<String, LexicalUnit>> decls, final Styles parentStyles) {
+		// The null key contains the element's direct styles
 		final Styles styles = calculateNodeStyles(node, decls.get(null), parentStyles);
 		if (styles == null) {
 			return null;
 		}
 
 		// Now calculate the pseudo element styles and store the in the parent's Styles
-		decls.remove(null);
 		for (final Entry<String, Map<String, LexicalUnit>> entry : decls.entrySet()) {
+			if (entry.getKey() == null) {
+				continue;
+			}
 			final String pseudoElement = entry.getKey();
 			final Styles pseudoElementStyles = calculateNodeStyles(node, entry.getValue(), styles);
 			styles.putPseudoElementStyles(org.eclipse.vex.core.internal.css.Styles.PseudoElement.parse(pseudoElement), pseudoElementStyles);
@@ -270,12 +475,16 @@ public class StyleSheet {
 
 		styles.setBaseUrl(baseUrl);
 
-		for (final IProperty property : CSS_PROPERTIES) {
+		for (int i = 0; i < CSS_PROPERTIES.length; i += 1) {
+			final IProperty property = CSS_PROPERTIES[i];
 			final LexicalUnit lexicalUnit = decls.get(property.getName());
 			final Object value = property.calculate(lexicalUnit, parentStyles, styles, node);
-			styles.put(property.getName(), value);
+			styles.put(CSS_PROPERTY_ORDINALS[i], value);
 		}
 
+		// The outline content is calculated on access, see Styles#getOutlineContent(INode)
+		styles.put(CSS.OUTLINE_CONTENT, decls.get(CSS.OUTLINE_CONTENT));
+
 		// Now, map font-family, font-style, font-weight, and font-size onto
 		// an AWT font.
 
@@ -309,6 +518,30 @@ public class StyleSheet {
 		return Collections.unmodifiableList(rules);
 	}
 
+	/**
+	 * Returns the average number of rules (core rules and rules of this style sheet) that had to be matched against a
+	 * node to calculate its styles. Only the rules with a selector that might match the node are evaluated, so this
+	 * number is usually much smaller than the total number of rules.
+	 */
+	public double getEvaluatedRulesPerNode() {
+		if (evaluatedNodeCount == 0) {
+			return 0;
+		}
+		return (double) evaluatedRuleCount / evaluatedNodeCount;
+	}
+
+	/**
+	 * Returns the ratio of style calculations which could reuse styles that were already calculated for another node
+	 * with the same declarations and the same parent styles. Only styles which do not depend on the node itself (e.g.
+	 * by using <code>attr(...)</code> or <code>image(...)</code>) are shared.
+	 */
+	public double getInternedStylesHitRate() {
+		if (internRequestCount == 0) {
+			return 0;
+		}
+		return (double) internHitCount / internRequestCount;
+	}
+
 	/**
 	 * Returns all the declarations that apply to the given element and defined pseudo elements.
 	 *
@@ -316,6 +549,8 @@ public class StyleSheet {
 	 *         for pseudo elements.
 	 */
 	private Map<String, Map<String, LexicalUnit>> getApplicableDeclarations(final INode node) {
+		evaluatedNodeCount++;
+
 		final List<PropertyDecl> coreDeclarationsForElement = findCoreDeclarationsFor(node);
 		Collections.sort(coreDeclarationsForElement, PROPERTY_CASCADE_ORDERING);
 
@@ -363,9 +598,19 @@ public class StyleSheet {
 	}
 
 	private List<PropertyDecl> findAllDeclarationsFor(final INode node) {
+		return findDeclarationsFor(node, ruleIndex);
+	}
+
+	private List<PropertyDecl> findCoreDeclarationsFor(final INode node) {
+		return findDeclarationsFor(node, coreRuleIndex);
+	}
+
+	private List<PropertyDecl> findDeclarationsFor(final INode node, final RuleIndex index) {
 		final List<PropertyDecl> rawDeclarations = new ArrayList<PropertyDecl>();
 
-		for (final Rule rule : rules) {
+		final List<Rule> candidateRules = index.getCandidateRules(node);
+		evaluatedRuleCount += candidateRules.size();
+		for (final Rule rule : candidateRules) {
 			if (rule.matches(node)) {
 				final PropertyDecl[] ruleDecls = rule.getPropertyDecls();
 				for (final PropertyDecl ruleDecl : ruleDecls) {
@@ -376,18 +621,27 @@ public class StyleSheet {
 		return rawDeclarations;
 	}
 
-	private List<PropertyDecl> findCoreDeclarationsFor(final INode node) {
-		final List<PropertyDecl> rawDeclarations = new ArrayList<PropertyDecl>();
-
-		for (final Rule rule : coreRules) {
-			if (rule.matches(node)) {
-				final PropertyDecl[] ruleDecls = rule.getPropertyDecls();
-				for (final PropertyDecl ruleDecl : ruleDecls) {
-					rawDeclarations.add(ruleDecl);
+	/**
+	 * Styles depend on the node, if a value refers to the node's attributes (attr(...)) or location (image(...)).
+	 */
+	private static boolean dependsOnNode(final Map<String, Map<String, LexicalUnit>> decls) {
+		for (final Map<String, LexicalUnit> declsOfElement : decls.values()) {
+			for (final LexicalUnit value : declsOfElement.values()) {
+				if (dependsOnNode(value)) {
+					return true;
 				}
 			}
 		}
-		return rawDeclarations;
+		return false;
+	}
+
+	private static boolean dependsOnNode(final LexicalUnit value) {
+		for (LexicalUnit lexicalUnit = value; lexicalUnit != null; lexicalUnit = lexicalUnit.getNextLexicalUnit()) {
+			if (lexicalUnit.getLexicalUnitType() == LexicalUnit.SAC_ATTR || lexicalUnit.getLexicalUnitType() == LexicalUnit.SAC_FUNCTION) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -399,4 +653,45 @@ public class StyleSheet {
 	public Map<INode, Styles> testGetStylesCache() {
 		return styleMap;
 	}
+
+	/**
+	 * This method is only public to be available for unit testing. It is not meant to be used in an implementation.
+	 */
+	public int testGetInternedStylesCount() {
+		return internedStyles.size();
+	}
+
+	/*
+	 * The declarations only contain LexicalUnits of this style sheet's rules, which are compared by identity. The
+	 * parent styles are compared by identity as well, because equal parent styles are shared anyway. The key must not
+	 * refer to any node, otherwise the interned styles would keep deleted nodes alive.
+	 */
+	private static class InternKey {
+		private final Map<String, Map<String, LexicalUnit>> declarations;
+		private final Styles parentStyles;
+		private final int hashCode;
+
+		public InternKey(final Map<String, Map<String, LexicalUnit>> declarations, final Styles parentStyles) {
+			this.declarations = declarations;
+			this.parentStyles = parentStyles;
+			hashCode = 31 * declarations.hashCode() + System.identityHashCode(parentStyles);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null || getClass() != obj.getClass()) {
+				return false;
+			}
+			final InternKey other = (InternKey) obj;
+			return parentStyles == other.parentStyles && declarations.equals(other.declarations);
+		}
+	}
 }
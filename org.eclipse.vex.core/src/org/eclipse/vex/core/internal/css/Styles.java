@@ -10,6 +10,8 @@
  *     Dave Holroyd - Implement text decoration
  *     Mohamadou Nassourou - Bug 298912 - rudimentary support for images
  *     Carsten Hiesserich - added OutlineContent property
+ *     agent - outline content is calculated on access
+ *     agent - store values in an array indexed by property ordinals
  *******************************************************************************/
 package org.eclipse.vex.core.internal.css;
 
@@ -22,12 +24,66 @@ import java.util.Map;
 import org.eclipse.vex.core.internal.core.Color;
 import org.eclipse.vex.core.internal.core.FontSpec;
 import org.eclipse.vex.core.internal.core.Length;
+import org.eclipse.vex.core.provisional.dom.INode;
+import org.w3c.css.sac.LexicalUnit;
 
 /**
  * Represents the computed style properties for a particular element.
+ * <p>
+ * Styles which do not depend on the element itself (e.g. by using <code>attr(...)</code>) are shared between all
+ * elements with the same matching rules and the same parent styles (see {@link StyleSheet#getStyles(INode)}). Hence
+ * Styles must not be modified once they are calculated.
  */
 public class Styles {
 
+	private static final OutlineContentProperty OUTLINE_CONTENT_PROPERTY = new OutlineContentProperty();
+
+	/*
+	 * Every known property has a fixed ordinal, which is the index of its value in the values array. The getters access
+	 * the array directly, only the access by property name needs a lookup.
+	 */
+	private static final Map<String, Integer> ORDINALS = new HashMap<String, Integer>();
+	private static final int DISPLAY = defineOrdinal(CSS.DISPLAY);
+	private static final int LINE_HEIGHT = defineOrdinal(CSS.LINE_HEIGHT);
+	private static final int LIST_STYLE_TYPE = defineOrdinal(CSS.LIST_STYLE_TYPE);
+	private static final int TEXT_ALIGN = defineOrdinal(CSS.TEXT_ALIGN);
+	private static final int WHITE_SPACE = defineOrdinal(CSS.WHITE_SPACE);
+	private static final int FONT_FAMILY = defineOrdinal(CSS.FONT_FAMILY);
+	private static final int FONT_SIZE = defineOrdinal(CSS.FONT_SIZE);
+	private static final int FONT_STYLE = defineOrdinal(CSS.FONT_STYLE);
+	private static final int FONT_WEIGHT = defineOrdinal(CSS.FONT_WEIGHT);
+	private static final int TEXT_DECORATION = defineOrdinal(CSS.TEXT_DECORATION);
+	private static final int COLOR = defineOrdinal(CSS.COLOR);
+	private static final int BACKGROUND_COLOR = defineOrdinal(CSS.BACKGROUND_COLOR);
+	private static final int MARGIN_BOTTOM = defineOrdinal(CSS.MARGIN_BOTTOM);
+	private static final int MARGIN_LEFT = defineOrdinal(CSS.MARGIN_LEFT);
+	private static final int MARGIN_RIGHT = defineOrdinal(CSS.MARGIN_RIGHT);
+	private static final int MARGIN_TOP = defineOrdinal(CSS.MARGIN_TOP);
+	private static final int PADDING_BOTTOM = defineOrdinal(CSS.PADDING_BOTTOM);
+	private static final int PADDING_LEFT = defineOrdinal(CSS.PADDING_LEFT);
+	private static final int PADDING_RIGHT = defineOrdinal(CSS.PADDING_RIGHT);
+	private static final int PADDING_TOP = defineOrdinal(CSS.PADDING_TOP);
+	private static final int BORDER_BOTTOM_COLOR = defineOrdinal(CSS.BORDER_BOTTOM_COLOR);
+	private static final int BORDER_LEFT_COLOR = defineOrdinal(CSS.BORDER_LEFT_COLOR);
+	private static final int BORDER_RIGHT_COLOR = defineOrdinal(CSS.BORDER_RIGHT_COLOR);
+	private static final int BORDER_TOP_COLOR = defineOrdinal(CSS.BORDER_TOP_COLOR);
+	private static final int BORDER_BOTTOM_STYLE = defineOrdinal(CSS.BORDER_BOTTOM_STYLE);
+	private static final int BORDER_LEFT_STYLE = defineOrdinal(CSS.BORDER_LEFT_STYLE);
+	private static final int BORDER_RIGHT_STYLE = defineOrdinal(CSS.BORDER_RIGHT_STYLE);
+	private static final int BORDER_TOP_STYLE = defineOrdinal(CSS.BORDER_TOP_STYLE);
+	private static final int BORDER_BOTTOM_WIDTH = defineOrdinal(CSS.BORDER_BOTTOM_WIDTH);
+	private static final int BORDER_LEFT_WIDTH = defineOrdinal(CSS.BORDER_LEFT_WIDTH);
+	private static final int BORDER_RIGHT_WIDTH = defineOrdinal(CSS.BORDER_RIGHT_WIDTH);
+	private static final int BORDER_TOP_WIDTH = defineOrdinal(CSS.BORDER_TOP_WIDTH);
+	private static final int BORDER_SPACING = defineOrdinal(CSS.BORDER_SPACING);
+	private static final int HEIGHT = defineOrdinal(CSS.HEIGHT);
+	private static final int WIDTH = defineOrdinal(CSS.WIDTH);
+	private static final int BACKGROUND_IMAGE = defineOrdinal(CSS.BACKGROUND_IMAGE);
+	private static final int OUTLINE_CONTENT = defineOrdinal(CSS.OUTLINE_CONTENT);
+	private static final int INLINE_MARKER = defineOrdinal(CSS.INLINE_MARKER);
+	private static final int CONTENT = defineOrdinal(CSS.CONTENT);
+	private static final int PROPERTY_COUNT = ORDINALS.size();
+
 	public static enum PseudoElement {
 		BEFORE, AFTER;
 
@@ -49,14 +105,34 @@ public class Styles {
 		}
 	}
 
-	/** Maps property name (String) => value (Object) */
-	private final Map<String, Object> values = new HashMap<String, Object>();
+	/** Values of the known properties, indexed by the property's ordinal */
+	private final Object[] values = new Object[PROPERTY_COUNT];
+
+	/** Maps property name (String) => value (Object) for properties without ordinal, created on demand */
+	private Map<String, Object> otherValues;
 
 	/**
-	 * This Map contains the Styles for all pseudo elements of the element that this Style belongs to. Key is the pseudo
-	 * elements name.
+	 * This array contains the Styles for all pseudo elements of the element that this Style belongs to. Index is the
+	 * ordinal of the pseudo element.
 	 */
-	private final Map<String, Styles> pseudoElementStyles = new HashMap<String, Styles>();
+	private final Styles[] pseudoElementStyles = new Styles[PseudoElement.values().length];
+
+	private static int defineOrdinal(final String propertyName) {
+		final int ordinal = ORDINALS.size();
+		ORDINALS.put(propertyName, ordinal);
+		return ordinal;
+	}
+
+	/**
+	 * @return the ordinal of the given property, or -1 if the property is not known
+	 */
+	public static int getOrdinal(final String propertyName) {
+		final Integer ordinal = ORDINALS.get(propertyName);
+		if (ordinal == null) {
+			return -1;
+		}
+		return ordinal.intValue();
+	}
 
 	private FontSpec font;
 	private URL baseUrl;
@@ -89,91 +165,107 @@ public class Styles {
 	 * @return
 	 */
 	public Object get(final String propertyName) {
-		return values.get(propertyName);
+		final int ordinal = getOrdinal(propertyName);
+		if (ordinal >= 0) {
+			return values[ordinal];
+		}
+		if (otherValues == null) {
+			return null;
+		}
+		return otherValues.get(propertyName);
+	}
+
+	/**
+	 * Returns the value of the property with the given ordinal, or null if the property does not have a value.
+	 *
+	 * @see #getOrdinal(String)
+	 */
+	public Object get(final int ordinal) {
+		return values[ordinal];
 	}
 
 	/**
 	 * Returns the value of the <code>backgroundColor</code> property.
 	 */
 	public Color getBackgroundColor() {
-		return (Color) values.get(CSS.BACKGROUND_COLOR);
+		return (Color) values[BACKGROUND_COLOR];
 	}
 
 	/**
 	 * Returns the value of the <code>borderBottomColor</code> property.
 	 */
 	public Color getBorderBottomColor() {
-		return (Color) values.get(CSS.BORDER_BOTTOM_COLOR);
+		return (Color) values[BORDER_BOTTOM_COLOR];
 	}
 
 	/**
 	 * Returns the value of the <code>borderBottomStyle</code> property.
 	 */
 	public String getBorderBottomStyle() {
-		return (String) values.get(CSS.BORDER_BOTTOM_STYLE);
+		return (String) values[BORDER_BOTTOM_STYLE];
 	}
 
 	/**
 	 * Returns the value of the <code>borderLeftColor</code> property.
 	 */
 	public Color getBorderLeftColor() {
-		return (Color) values.get(CSS.BORDER_LEFT_COLOR);
+		return (Color) values[BORDER_LEFT_COLOR];
 	}
 
 	/**
 	 * Returns the value of the <code>borderLeftStyle</code> property.
 	 */
 	public String getBorderLeftStyle() {
-		return (String) values.get(CSS.BORDER_LEFT_STYLE);
+		return (String) values[BORDER_LEFT_STYLE];
 	}
 
 	/**
 	 * Returns the value of the <code>borderRightColor</code> property.
 	 */
 	public Color getBorderRightColor() {
-		return (Color) values.get(CSS.BORDER_RIGHT_COLOR);
+		return (Color) values[BORDER_RIGHT_COLOR];
 	}
 
 	/**
 	 * Returns the value of the <code>borderRightStyle</code> property.
 	 */
 	public String getBorderRightStyle() {
-		return (String) values.get(CSS.BORDER_RIGHT_STYLE);
+		return (String) values[BORDER_RIGHT_STYLE];
 	}
 
 	/**
 	 * Returns the value of the <code>borderSpacing</code> property.
 	 */
 	public BorderSpacingProperty.Value getBorderSpacing() {
-		return (BorderSpacingProperty.Value) values.get(CSS.BORDER_SPACING);
+		return (BorderSpacingProperty.Value) values[BORDER_SPACING];
 	}
 
 	/**
 	 * Returns the value of the <code>borderTopColor</code> property.
 	 */
 	public Color getBorderTopColor() {
-		return (Color) values.get(CSS.BORDER_TOP_COLOR);
+		return (Color) values[BORDER_TOP_COLOR];
 	}
 
 	/**
 	 * Returns the value of the <code>borderTopStyle</code> property.
 	 */
 	public String getBorderTopStyle() {
-		return (String) values.get(CSS.BORDER_TOP_STYLE);
+		return (String) values[BORDER_TOP_STYLE];
 	}
 
 	/**
 	 * Returns the value of the <code>color</code> property.
 	 */
 	public Color getColor() {
-		return (Color) values.get(CSS.COLOR);
+		return (Color) values[COLOR];
 	}
 
 	/**
 	 * @return <code>true</code> if the stylesheet defined content for this element.
 	 */
 	public boolean isContentDefined() {
-		if (!values.containsKey(CSS.CONTENT)) {
+		if (values[CONTENT] == null) {
 			return false;
 		}
 		return !getContent().isEmpty();
@@ -198,14 +290,14 @@ public class Styles {
 
 	@SuppressWarnings("unchecked")
 	public List<IPropertyContent> getContent() {
-		return (List<IPropertyContent>) values.get(CSS.CONTENT);
+		return (List<IPropertyContent>) values[CONTENT];
 	}
 
 	/**
 	 * Returns the value of the <code>display</code> property.
 	 */
 	public String getDisplay() {
-		return (String) values.get(CSS.DISPLAY);
+		return (String) values[DISPLAY];
 	}
 
 	/**
@@ -226,70 +318,70 @@ public class Styles {
 	 * Returns the value of the <code>fontFamily</code> property.
 	 */
 	public String[] getFontFamilies() {
-		return (String[]) values.get(CSS.FONT_FAMILY);
+		return (String[]) values[FONT_FAMILY];
 	}
 
 	/**
 	 * Returns the value of the <code>fontSize</code> property.
 	 */
 	public float getFontSize() {
-		return ((Float) values.get(CSS.FONT_SIZE)).floatValue();
+		return ((Float) values[FONT_SIZE]).floatValue();
 	}
 
 	/**
 	 * Returns the value of the <code>fontStyle</code> property.
 	 */
 	public String getFontStyle() {
-		return (String) values.get(CSS.FONT_STYLE);
+		return (String) values[FONT_STYLE];
 	}
 
 	/**
 	 * Returns the value of the <code>fontWeight</code> property.
 	 */
 	public int getFontWeight() {
-		return ((Integer) values.get(CSS.FONT_WEIGHT)).intValue();
+		return ((Integer) values[FONT_WEIGHT]).intValue();
 	}
 
 	/**
 	 * Returns the value of the <code>_vex-inline-marker</code> property.
 	 */
 	public String getInlineMarker() {
-		return (String) values.get(CSS.INLINE_MARKER);
+		return (String) values[INLINE_MARKER];
 	}
 
 	/**
 	 * Returns the value of the <code>lineHeight</code> property.
 	 */
 	public int getLineHeight() {
-		return ((Length) values.get(CSS.LINE_HEIGHT)).get(Math.round(getFontSize()));
+		return ((Length) values[LINE_HEIGHT]).get(Math.round(getFontSize()));
 	}
 
 	/**
 	 * Returns the value of the <code>listStyleType</code> property.
 	 */
 	public String getListStyleType() {
-		return (String) values.get(CSS.LIST_STYLE_TYPE);
+		return (String) values[LIST_STYLE_TYPE];
 	}
 
 	/**
 	 * Returns the value of the <code>textAlign</code> property.
 	 */
 	public String getTextAlign() {
-		return (String) values.get(CSS.TEXT_ALIGN);
+		return (String) values[TEXT_ALIGN];
 	}
 
 	/**
 	 * Returns the value of the <code>textDecoration</code> property.
 	 */
 	public String getTextDecoration() {
-		return (String) values.get(CSS.TEXT_DECORATION);
+		return (String) values[TEXT_DECORATION];
 	}
 
 	/**
 	 * Returns the value of the <code>whiteSpace</code> property.
 	 */
 	public String getWhiteSpace() {
-		return (String) values.get(CSS.WHITE_SPACE);
+		return (String) values[WHITE_SPACE];
 	}
 
 	/**
@@ -301,16 +393,33 @@ public class Styles {
 	 *            Value of the property.
 	 */
 	public void put(final String propertyName, final Object value) {
-		values.put(propertyName, value);
+		final int ordinal = getOrdinal(propertyName);
+		if (ordinal >= 0) {
+			values[ordinal] = value;
+			return;
+		}
+		if (otherValues == null) {
+			otherValues = new HashMap<String, Object>();
+		}
+		otherValues.put(propertyName, value);
+	}
+
+	/**
+	 * Sets the value of the property with the given ordinal.
+	 *
+	 * @see #getOrdinal(String)
+	 */
+	public void put(final int ordinal, final Object value) {
+		values[ordinal] = value;
 	}
 
 	public void putPseudoElementStyles(final PseudoElement pseudoElement, final Styles styles) {
-		pseudoElementStyles.put(pseudoElement.key(), styles);
+		pseudoElementStyles[pseudoElement.ordinal()] = styles;
 	}
 
 	public Styles getPseudoElementStyles(final PseudoElement pseudoElement) {
 		if (hasPseudoElement(pseudoElement)) {
-			return pseudoElementStyles.get(pseudoElement.key());
+			return pseudoElementStyles[pseudoElement.ordinal()];
 		} else {
 			// There are no styles for the given pseudo element - return this; better save than sorry!
 			return this;
@@ -324,7 +433,7 @@ public class Styles {
 	 * @return <code>true</code> when the given pseudo element is defined.
 	 */
 	public boolean hasPseudoElement(final PseudoElement pseudoElement) {
-		return pseudoElementStyles.containsKey(pseudoElement.key());
+		return pseudoElementStyles[pseudoElement.ordinal()] != null;
 	}
 
 	/**
@@ -338,19 +447,19 @@ public class Styles {
 	}
 
 	public Length getElementWidth() {
-		return (Length) values.get(CSS.WIDTH);
+		return (Length) values[WIDTH];
 	}
 
 	public Length getElementHeight() {
-		return (Length) values.get(CSS.HEIGHT);
+		return (Length) values[HEIGHT];
 	}
 
 	public boolean hasBackgroundImage() {
-		return values.get(CSS.BACKGROUND_IMAGE) != null;
+		return values[BACKGROUND_IMAGE] != null;
 	}
 
 	public String getBackgroundImage() {
-		final Object value = values.get(CSS.BACKGROUND_IMAGE);
+		final Object value = values[BACKGROUND_IMAGE];
 		if (value == null) {
 			return BackgroundImageProperty.DEFAULT;
 		}
@@ -361,35 +470,35 @@ public class Styles {
 	 * @return the value of border-bottom-width
 	 */
 	public int getBorderBottomWidth() {
-		return ((Integer) values.get(CSS.BORDER_BOTTOM_WIDTH)).intValue();
+		return ((Integer) values[BORDER_BOTTOM_WIDTH]).intValue();
 	}
 
 	/**
 	 * @return the value of border-left-width
 	 */
 	public int getBorderLeftWidth() {
-		return ((Integer) values.get(CSS.BORDER_LEFT_WIDTH)).intValue();
+		return ((Integer) values[BORDER_LEFT_WIDTH]).intValue();
 	}
 
 	/**
 	 * @return the value of border-right-width
 	 */
 	public int getBorderRightWidth() {
-		return ((Integer) values.get(CSS.BORDER_RIGHT_WIDTH)).intValue();
+		return ((Integer) values[BORDER_RIGHT_WIDTH]).intValue();
 	}
 
 	/**
 	 * @return the value of border-top-width
 	 */
 	public int getBorderTopWidth() {
-		return ((Integer) values.get(CSS.BORDER_TOP_WIDTH)).intValue();
+		return ((Integer) values[BORDER_TOP_WIDTH]).intValue();
 	}
 
 	/**
 	 * @return the value of margin-bottom
 	 */
 	public Length getMarginBottom() {
-		return (Length) values.get(CSS.MARGIN_BOTTOM);
+		return (Length) values[MARGIN_BOTTOM];
 		// return marginBottom;
 	}
 
@@ -397,56 +506,61 @@ public class Styles {
 	 * @return the value of margin-left
 	 */
 	public Length getMarginLeft() {
-		return (Length) values.get(CSS.MARGIN_LEFT);
+		return (Length) values[MARGIN_LEFT];
 	}
 
 	/**
 	 * @return the value of margin-right
 	 */
 	public Length getMarginRight() {
-		return (Length) values.get(CSS.MARGIN_RIGHT);
+		return (Length) values[MARGIN_RIGHT];
 	}
 
 	/**
 	 * @return the value of margin-top
 	 */
 	public Length getMarginTop() {
-		return (Length) values.get(CSS.MARGIN_TOP);
+		return (Length) values[MARGIN_TOP];
 	}
 
 	/**
 	 * @return the value of padding-bottom
 	 */
 	public Length getPaddingBottom() {
-		return (Length) values.get(CSS.PADDING_BOTTOM);
+		return (Length) values[PADDING_BOTTOM];
 	}
 
 	/**
 	 * @return the value of padding-left
 	 */
 	public Length getPaddingLeft() {
-		return (Length) values.get(CSS.PADDING_LEFT);
+		return (Length) values[PADDING_LEFT];
 	}
 
 	/**
 	 * @return the value of padding-right
 	 */
 	public Length getPaddingRight() {
-		return (Length) values.get(CSS.PADDING_RIGHT);
+		return (Length) values[PADDING_RIGHT];
 	}
 
 	/**
 	 * @return the value of padding-top
 	 */
 	public Length getPaddingTop() {
-		return (Length) values.get(CSS.PADDING_TOP);
+		return (Length) values[PADDING_TOP];
 	}
 
 	/**
-	 * @return the IElement whose text content should be used in the outline view.
+	 * The outline content depends on the attributes and children of the node, therefore it is calculated on every
+	 * access.
+	 *
+	 * @param node
+	 *            the node to which these styles belong
+	 * @return the IElement or IAttribute whose text content should be used in the outline view.
 	 */
-	public Object getOutlineContent() {
-		return values.get(CSS.OUTLINE_CONTENT);
+	public Object getOutlineContent(final INode node) {
+		return OUTLINE_CONTENT_PROPERTY.calculate((LexicalUnit) values[OUTLINE_CONTENT], null, this, node);
 	}
 
 }
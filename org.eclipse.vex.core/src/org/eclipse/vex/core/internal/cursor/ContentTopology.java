@@ -7,28 +7,50 @@
  *
  * Contributors:
  * 		Florian Thienel - initial API and implementation
+ * 		agent - find the structural box of a node in the index
  *******************************************************************************/
 package org.eclipse.vex.core.internal.cursor;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.eclipse.core.runtime.Assert;
 import org.eclipse.vex.core.internal.boxes.BaseBoxVisitorWithResult;
 import org.eclipse.vex.core.internal.boxes.DepthFirstBoxTraversal;
 import org.eclipse.vex.core.internal.boxes.IBox;
+import org.eclipse.vex.core.internal.boxes.IBoxVisitorWithResult;
 import org.eclipse.vex.core.internal.boxes.IContentBox;
+import org.eclipse.vex.core.internal.boxes.IStructuralBox;
 import org.eclipse.vex.core.internal.boxes.InlineNodeReference;
 import org.eclipse.vex.core.internal.boxes.NodeEndOffsetPlaceholder;
+import org.eclipse.vex.core.internal.boxes.Paragraph;
 import org.eclipse.vex.core.internal.boxes.ParentTraversal;
 import org.eclipse.vex.core.internal.boxes.RootBox;
 import org.eclipse.vex.core.internal.boxes.StructuralNodeReference;
 import org.eclipse.vex.core.internal.boxes.TextContent;
+import org.eclipse.vex.core.internal.boxes.VerticalBlock;
+import org.eclipse.vex.core.internal.core.Rectangle;
 import org.eclipse.vex.core.provisional.dom.ContentRange;
 import org.eclipse.vex.core.provisional.dom.INode;
 
 /**
+ * The structural node references of the box tree are kept in an index, ordered by their start offset. Finding the box
+ * for a position or a range starts at the deepest structural node reference which contains the position, which is found
+ * by a binary search in the index. The structural node references are also mapped by their node, so the boxes of a node
+ * are searched only within the box of its closest structural ancestor. When boxes are replaced in the box tree, the
+ * index has to be updated with {@link #boxesReplaced(Collection, IBox)}.<br/>
+ *
+ * The children of RootBox and VerticalBlock are stacked vertically in their order, which is used to find the boxes at
+ * given coordinates with a binary search on each level of the box tree, instead of testing all the boxes.
+ *
  * @author Florian Thienel
  */
 public class ContentTopology {
@@ -36,13 +58,167 @@ public class ContentTopology {
 	private RootBox rootBox;
 	private IContentBox outmostContentBox;
 
+	/*
+	 * The structural node references in depth first order, which is also the order of their start offsets.
+	 */
+	private final ArrayList<StructuralNodeReference> structuralBoxes = new ArrayList<StructuralNodeReference>();
+	private final Map<INode, StructuralNodeReference> structuralBoxesByNode = new HashMap<INode, StructuralNodeReference>();
+
 	public void setRootBox(final RootBox rootBox) {
 		this.rootBox = rootBox;
 		outmostContentBox = findOutmostContentBox(rootBox);
+		structuralBoxes.clear();
+		structuralBoxesByNode.clear();
+		addToIndex(findStructuralBoxes(rootBox), 0);
+	}
+
+	/**
+	 * Updates the index after the given old boxes have been replaced by the given new box in the box tree.
+	 */
+	public void boxesReplaced(final Collection<? extends IBox> oldBoxes, final IBox newBox) {
+		final Set<StructuralNodeReference> removedBoxes = Collections.newSetFromMap(new IdentityHashMap<StructuralNodeReference, Boolean>());
+		for (final IBox oldBox : oldBoxes) {
+			removedBoxes.addAll(findStructuralBoxes(oldBox));
+		}
+		final List<StructuralNodeReference> addedBoxes = findStructuralBoxes(newBox);
+		if (removedBoxes.isEmpty() && addedBoxes.isEmpty()) {
+			return;
+		}
+
+		final int index = findReplacedRange(removedBoxes, newBox);
+		final List<StructuralNodeReference> replacedRange = structuralBoxes.subList(index, index + removedBoxes.size());
+		for (final StructuralNodeReference box : replacedRange) {
+			Assert.isTrue(removedBoxes.contains(box), "The replaced boxes are not contiguous in the index");
+			if (structuralBoxesByNode.get(box.getNode()) == box) {
+				structuralBoxesByNode.remove(box.getNode());
+			}
+		}
+		replacedRange.clear();
+		addToIndex(addedBoxes, index);
+	}
+
+	/*
+	 * The structural boxes of a replaced subtree are contiguous in depth first order. The start of this range is found by
+	 * a binary search with the start offset of the new content: all boxes before the range start before it, all boxes
+	 * after the range start after it. The offsets of the removed boxes are never used, because their nodes may have been
+	 * removed from the document already.
+	 */
+	private int findReplacedRange(final Set<StructuralNodeReference> removedBoxes, final IBox newBox) {
+		final IContentBox newContent = findOutmostContentBox(newBox);
+		if (newContent == null) {
+			return indexOfFirst(removedBoxes);
+		}
+
+		final int offset = newContent.getStartOffset();
+		int low = 0;
+		int high = structuralBoxes.size();
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			final StructuralNodeReference box = structuralBoxes.get(middle);
+			if (removedBoxes.contains(box)) {
+				int start = middle;
+				while (start > 0 && removedBoxes.contains(structuralBoxes.get(start - 1))) {
+					start -= 1;
+				}
+				return start;
+			}
+			if (box.getStartOffset() < offset) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private int indexOfFirst(final Set<StructuralNodeReference> boxes) {
+		for (int i = 0; i < structuralBoxes.size(); i += 1) {
+			if (boxes.contains(structuralBoxes.get(i))) {
+				return i;
+			}
+		}
+		return structuralBoxes.size();
+	}
+
+	private void addToIndex(final List<StructuralNodeReference> boxes, final int index) {
+		structuralBoxes.addAll(index, boxes);
+		for (final StructuralNodeReference box : boxes) {
+			if (box.getNode() != null) {
+				structuralBoxesByNode.put(box.getNode(), box);
+			}
+		}
+	}
+
+	private static List<StructuralNodeReference> findStructuralBoxes(final IBox startBox) {
+		final ArrayList<StructuralNodeReference> result = new ArrayList<StructuralNodeReference>();
+		startBox.accept(new DepthFirstBoxTraversal<Object>() {
+			@Override
+			public Object visit(final StructuralNodeReference box) {
+				result.add(box);
+				return super.visit(box);
+			}
+
+			@Override
+			public Object visit(final Paragraph box) {
+				// inline content does not contain any structural boxes
+				return null;
+			}
+		});
+		return result;
+	}
+
+	private int countStructuralBoxesStartingUpTo(final int offset) {
+		int low = 0;
+		int high = structuralBoxes.size();
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (structuralBoxes.get(middle).getStartOffset() <= offset) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/*
+	 * Structural node references either contain each other or are disjoint. The last box which starts at or before the
+	 * offset is either the deepest box containing the offset, or one of its descendants which ends before the offset.
+	 */
+	private StructuralNodeReference findStructuralBoxForPosition(final int offset) {
+		final int count = countStructuralBoxesStartingUpTo(offset);
+		if (count == 0) {
+			return null;
+		}
+		StructuralNodeReference box = structuralBoxes.get(count - 1);
+		while (box != null && box.getEndOffset() < offset) {
+			box = getParentStructuralBox(box);
+		}
+		return box;
 	}
 
-	private static IContentBox findOutmostContentBox(final RootBox rootBox) {
-		return rootBox.accept(new DepthFirstBoxTraversal<IContentBox>() {
+	private StructuralNodeReference findStructuralBoxForRange(final ContentRange range) {
+		StructuralNodeReference box = findStructuralBoxForPosition(range.getStartOffset());
+		while (box != null && !box.getRange().contains(range)) {
+			box = getParentStructuralBox(box);
+		}
+		return box;
+	}
+
+	private static StructuralNodeReference getParentStructuralBox(final StructuralNodeReference childBox) {
+		return childBox.accept(new ParentTraversal<StructuralNodeReference>() {
+			@Override
+			public StructuralNodeReference visit(final StructuralNodeReference box) {
+				if (box == childBox) {
+					return super.visit(box);
+				}
+				return box;
+			}
+		});
+	}
+
+	private static IContentBox findOutmostContentBox(final IBox startBox) {
+		return startBox.accept(new DepthFirstBoxTraversal<IContentBox>() {
 			@Override
 			public IContentBox visit(final StructuralNodeReference box) {
 				return box;
@@ -77,7 +253,7 @@ public class ContentTopology {
 	}
 
 	public IContentBox findBoxForPosition(final int offset) {
-		return findBoxForPosition(offset, rootBox);
+		return findBoxForPosition(offset, findStructuralBoxForPosition(offset));
 	}
 
 	public IContentBox findBoxForPosition(final int offset, final IBox startBox) {
@@ -91,6 +267,12 @@ public class ContentTopology {
 		return startBox.accept(new DepthFirstBoxTraversal<IContentBox>() {
 			@Override
 			public IContentBox visit(final StructuralNodeReference box) {
+				if (box.isPlaceholder()) {
+					if (box.getStartOffset() <= offset && box.getEndOffset() >= offset) {
+						return box;
+					}
+					return null;
+				}
 				if (box.getStartOffset() == offset || box.getEndOffset() == offset) {
 					final IContentBox childBox = box.getComponent().accept(this);
 					if (childBox != null) {
@@ -138,11 +320,13 @@ public class ContentTopology {
 	}
 
 	public IContentBox findBoxForRange(final ContentRange range) {
-		return rootBox.accept(new DepthFirstBoxTraversal<IContentBox>() {
+		final StructuralNodeReference structuralBox = findStructuralBoxForRange(range);
+		final IBox startBox = structuralBox == null ? rootBox : structuralBox;
+		return startBox.accept(new DepthFirstBoxTraversal<IContentBox>() {
 			@Override
 			public IContentBox visit(final StructuralNodeReference box) {
 				if (box.getRange().contains(range)) {
-					final IContentBox childBox = box.getComponent().accept(this);
+					final IContentBox childBox = super.visit(box);
 					if (childBox == null) {
 						return box;
 					} else {
@@ -190,6 +374,16 @@ public class ContentTopology {
 		}
 
 		return outmostContentBox.accept(new DepthFirstBoxTraversal<IContentBox>() {
+			@Override
+			public IContentBox visit(final RootBox box) {
+				return visitChildContainingY(box.getChildren(), y - box.getAbsoluteTop(), this);
+			}
+
+			@Override
+			public IContentBox visit(final VerticalBlock box) {
+				return visitChildContainingY(box.getChildren(), y - box.getAbsoluteTop(), this);
+			}
+
 			@Override
 			public IContentBox visit(final StructuralNodeReference box) {
 				if (!box.containsCoordinates(x, y)) {
@@ -232,16 +426,23 @@ public class ContentTopology {
 		});
 	}
 
-	public Collection<IContentBox> findBoxesForNode(final INode node) {
-		return rootBox.accept(new DepthFirstBoxTraversal<Collection<IContentBox>>() {
-			private final LinkedList<IContentBox> boxesForNode = new LinkedList<IContentBox>();
+	/**
+	 * @return the structural box which visualizes the given node, or null if the node is not visualized by a structural
+	 *         box of its own, e.g. because it is within a placeholder
+	 */
+	public StructuralNodeReference findStructuralBoxForNode(final INode node) {
+		return structuralBoxesByNode.get(node);
+	}
 
-			@Override
-			public Collection<IContentBox> visit(final RootBox box) {
-				super.visit(box);
-				return boxesForNode;
-			}
+	public Collection<IContentBox> findBoxesForNode(final INode node) {
+		final LinkedList<IContentBox> boxesForNode = new LinkedList<IContentBox>();
+		final StructuralNodeReference structuralBox = structuralBoxesByNode.get(node);
+		if (structuralBox != null) {
+			boxesForNode.add(structuralBox);
+			return boxesForNode;
+		}
 
+		findClosestStructuralAncestorBox(node).accept(new DepthFirstBoxTraversal<Collection<IContentBox>>() {
 			@Override
 			public Collection<IContentBox> visit(final StructuralNodeReference box) {
 				if (node == box.getNode()) {
@@ -273,6 +474,64 @@ public class ContentTopology {
 				return null;
 			}
 		});
+		return boxesForNode;
+	}
+
+	private IBox findClosestStructuralAncestorBox(final INode node) {
+		for (INode ancestor = node.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+			final StructuralNodeReference ancestorBox = structuralBoxesByNode.get(ancestor);
+			if (ancestorBox != null) {
+				return ancestorBox;
+			}
+		}
+		return rootBox;
+	}
+
+	/**
+	 * Find the placeholders which vertically intersect the given area. The area is given in absolute coordinates.
+	 */
+	public Collection<StructuralNodeReference> findPlaceholders(final Rectangle area) {
+		final LinkedList<StructuralNodeReference> placeholders = new LinkedList<StructuralNodeReference>();
+		if (rootBox == null) {
+			return placeholders;
+		}
+
+		rootBox.accept(new DepthFirstBoxTraversal<Object>() {
+			@Override
+			public Object visit(final RootBox box) {
+				return visitChildrenIntersecting(box.getChildren(), area.getY() - box.getAbsoluteTop());
+			}
+
+			@Override
+			public Object visit(final VerticalBlock box) {
+				return visitChildrenIntersecting(box.getChildren(), area.getY() - box.getAbsoluteTop());
+			}
+
+			private Object visitChildrenIntersecting(final List<IStructuralBox> children, final int relativeTop) {
+				for (int i = findIndexOfFirstChildNotAbove(children, relativeTop); i < children.size(); i += 1) {
+					final IStructuralBox child = children.get(i);
+					if (child.getTop() >= relativeTop + area.getHeight()) {
+						break;
+					}
+					child.accept(this);
+				}
+				return null;
+			}
+
+			@Override
+			public Object visit(final StructuralNodeReference box) {
+				final Rectangle absoluteBounds = new Rectangle(box.getAbsoluteLeft(), box.getAbsoluteTop(), box.getWidth(), box.getHeight());
+				if (absoluteBounds.above(area) || absoluteBounds.below(area)) {
+					return null;
+				}
+				if (box.isPlaceholder()) {
+					placeholders.add(box);
+					return null;
+				}
+				return super.visit(box);
+			}
+		});
+		return placeholders;
 	}
 
 	public IContentBox findClosestBoxByCoordinates(final int x, final int y) {
@@ -286,6 +545,16 @@ public class ContentTopology {
 	private static IContentBox findClosestBoxInContainer(final IContentBox container, final int x, final int y) {
 		final LinkedList<IContentBox> candidates = new LinkedList<IContentBox>();
 		container.accept(new DepthFirstBoxTraversal<Object>() {
+			@Override
+			public Object visit(final RootBox box) {
+				return visitChildContainingY(box.getChildren(), y - box.getAbsoluteTop(), this);
+			}
+
+			@Override
+			public Object visit(final VerticalBlock box) {
+				return visitChildContainingY(box.getChildren(), y - box.getAbsoluteTop(), this);
+			}
+
 			@Override
 			public Object visit(final TextContent box) {
 				if (box.containsY(y)) {
@@ -346,6 +615,32 @@ public class ContentTopology {
 		final int[] minVerticalDistance = new int[1];
 		minVerticalDistance[0] = Integer.MAX_VALUE;
 		parent.accept(new DepthFirstBoxTraversal<Object>() {
+			@Override
+			public Object visit(final RootBox box) {
+				return visitChildrenBelow(box.getChildren(), y - box.getAbsoluteTop());
+			}
+
+			@Override
+			public Object visit(final VerticalBlock box) {
+				return visitChildrenBelow(box.getChildren(), y - box.getAbsoluteTop());
+			}
+
+			/*
+			 * The children which end above y do not contain any candidates. The candidates within a child are at least
+			 * as far away as the top of the child, so the children which start farther away than the closest candidate
+			 * so far can be skipped.
+			 */
+			private Object visitChildrenBelow(final List<IStructuralBox> children, final int relativeY) {
+				for (int i = findIndexOfFirstChildNotAbove(children, relativeY); i < children.size(); i += 1) {
+					final IStructuralBox child = children.get(i);
+					if (child.getTop() - relativeY > minVerticalDistance[0]) {
+						break;
+					}
+					child.accept(this);
+				}
+				return null;
+			}
+
 			@Override
 			public Object visit(final StructuralNodeReference box) {
 				if (box == parent) {
@@ -409,6 +704,27 @@ public class ContentTopology {
 		final int[] minVerticalDistance = new int[1];
 		minVerticalDistance[0] = Integer.MAX_VALUE;
 		parent.accept(new DepthFirstBoxTraversal<Object>() {
+			@Override
+			public Object visit(final RootBox box) {
+				return visitChildrenAbove(box.getChildren(), y - box.getAbsoluteTop());
+			}
+
+			@Override
+			public Object visit(final VerticalBlock box) {
+				return visitChildrenAbove(box.getChildren(), y - box.getAbsoluteTop());
+			}
+
+			private Object visitChildrenAbove(final List<IStructuralBox> children, final int relativeY) {
+				final int firstChildNotAbove = findIndexOfFirstChildNotAbove(children, relativeY);
+				for (int i = findIndexOfFirstCloseChildAbove(children, firstChildNotAbove); i < children.size(); i += 1) {
+					final Object result = children.get(i).accept(this);
+					if (result != null) {
+						return result;
+					}
+				}
+				return null;
+			}
+
 			@Override
 			public Object visit(final StructuralNodeReference box) {
 				final int distance = verticalDistance(box, y);
@@ -453,6 +769,54 @@ public class ContentTopology {
 		return candidates;
 	}
 
+	/*
+	 * A node reference which is a child of a vertical block is a candidate above y itself. All candidates within the
+	 * children which end above this candidate are farther away than this candidate.
+	 */
+	private static int findIndexOfFirstCloseChildAbove(final List<IStructuralBox> children, final int firstChildNotAbove) {
+		for (int i = firstChildNotAbove - 1; i >= 0; i -= 1) {
+			if (children.get(i) instanceof IContentBox) {
+				final int bottom = getBottom(children.get(i));
+				int firstCloseChild = i;
+				while (firstCloseChild > 0 && getBottom(children.get(firstCloseChild - 1)) >= bottom) {
+					firstCloseChild -= 1;
+				}
+				return firstCloseChild;
+			}
+		}
+		return 0;
+	}
+
+	/*
+	 * The children of RootBox and VerticalBlock are stacked vertically, so the first child which ends below the given y
+	 * coordinate (relative to the parent) can be found with a binary search.
+	 */
+	private static int findIndexOfFirstChildNotAbove(final List<IStructuralBox> children, final int y) {
+		int low = 0;
+		int high = children.size();
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (getBottom(children.get(middle)) <= y) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private static <T> T visitChildContainingY(final List<IStructuralBox> children, final int y, final IBoxVisitorWithResult<T> visitor) {
+		final int index = findIndexOfFirstChildNotAbove(children, y);
+		if (index < children.size() && children.get(index).getTop() <= y) {
+			return children.get(index).accept(visitor);
+		}
+		return null;
+	}
+
+	private static int getBottom(final IBox box) {
+		return box.getTop() + box.getHeight();
+	}
+
 	public static void removeVerticallyDistantBoxes(final List<? extends IContentBox> boxes, final int y, final int minVerticalDistance) {
 		for (final Iterator<? extends IContentBox> iter = boxes.iterator(); iter.hasNext();) {
 			final IContentBox candidate = iter.next();
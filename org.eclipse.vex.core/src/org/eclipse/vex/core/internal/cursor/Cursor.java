@@ -7,6 +7,7 @@
  *
  * Contributors:
  * 		Florian Thienel - initial API and implementation
+ * 		agent - provide a caret for positions within placeholders
  *******************************************************************************/
 package org.eclipse.vex.core.internal.cursor;
 
@@ -70,6 +71,10 @@ public class Cursor implements ICursor {
 		contentTopology.setRootBox(rootBox);
 	}
 
+	public ContentTopology getContentTopology() {
+		return contentTopology;
+	}
+
 	@Override
 	public int getOffset() {
 		return offset;
@@ -209,6 +214,9 @@ public class Cursor implements ICursor {
 		}
 
 		caret = getCaretForBox(graphics, box, offset);
+		if (caret == null) {
+			return;
+		}
 		if (preferX) {
 			preferredX = caret.getHotArea().getX();
 		}
@@ -293,6 +301,8 @@ public class Cursor implements ICursor {
 			return new AppendNodeWithTextCaret(area, box.getNode(), box.isEmpty());
 		} else if (box.isAtEnd(offset) && !box.canContainText()) {
 			return new AppendStructuralNodeCaret(area, box.getNode());
+		} else if (box.isPlaceholder()) {
+			return new PlaceholderCaret(area);
 		} else {
 			return null;
 		}
@@ -320,6 +330,8 @@ public class Cursor implements ICursor {
 					}
 				} else if (box.isAtEnd(offset)) {
 					return makeAbsolute(box.getPositionArea(graphics, offset), box);
+				} else if (box.isPlaceholder()) {
+					return makeAbsolute(box.getPositionArea(graphics, offset), box);
 				} else {
 					return Rectangle.NULL;
 				}
@@ -652,6 +664,44 @@ public class Cursor implements ICursor {
 		}
 	}
 
+	/*
+	 * The position is within a placeholder which has not been expanded yet. The caret marks the beginning of the
+	 * placeholder until the placeholder is expanded.
+	 */
+	private static class PlaceholderCaret implements Caret {
+		private final Rectangle area;
+
+		public PlaceholderCaret(final Rectangle area) {
+			this.area = area;
+		}
+
+		@Override
+		public Rectangle getHotArea() {
+			return new Rectangle(area.getX(), area.getY(), 1, getHeight());
+		}
+
+		@Override
+		public Rectangle getVisibleArea() {
+			return new Rectangle(area.getX(), area.getY(), area.getWidth(), getHeight());
+		}
+
+		@Override
+		public void paint(final Graphics graphics) {
+			if (area == Rectangle.NULL) {
+				return;
+			}
+
+			graphics.setForeground(graphics.getColor(CARET_FOREGROUND_COLOR));
+			graphics.setBackground(graphics.getColor(CARET_BACKGROUND_COLOR));
+
+			graphics.fillRect(area.getX(), area.getY(), 2, getHeight());
+		}
+
+		private int getHeight() {
+			return Math.min(area.getHeight(), CARET_BUFFER);
+		}
+	}
+
 	private static class TextCaret implements Caret {
 		private final Rectangle area;
 		private final FontSpec font;
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.dom;
+
+import org.eclipse.vex.core.provisional.dom.ContentRange;
+import org.eclipse.vex.core.provisional.dom.IContent;
+
+/**
+ * A read-only view on the raw text of an IContent, including tag markers. In contrast to
+ * {@link IContent#subSequence(int, int)}, sub sequences of this view are views as well, hence neither creating this view
+ * nor creating a sub sequence copies any characters. The characters are only copied in {@link #toString()}.
+ * <p>
+ * This is intended for short-living consumers like regular expressions. The view reflects all changes of the
+ * underlying content, it must not be used while the content is modified.
+ */
+public class ContentCharSequence implements CharSequence {
+
+	private final IContent content;
+	private final int startOffset;
+	private final int length;
+
+	public ContentCharSequence(final IContent content) {
+		this(content, 0, content.length());
+	}
+
+	private ContentCharSequence(final IContent content, final int startOffset, final int length) {
+		this.content = content;
+		this.startOffset = startOffset;
+		this.length = length;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(final int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Bad index " + index + " must be between 0 and " + (length - 1));
+		}
+		return content.charAt(startOffset + index);
+	}
+
+	@Override
+	public CharSequence subSequence(final int start, final int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("Bad range [" + start + ", " + end + ") must be within [0, " + length + ")");
+		}
+		return new ContentCharSequence(content, startOffset + start, end - start);
+	}
+
+	@Override
+	public String toString() {
+		if (length == 0) {
+			return "";
+		}
+		return content.getRawText(new ContentRange(startOffset, startOffset + length - 1));
+	}
+}
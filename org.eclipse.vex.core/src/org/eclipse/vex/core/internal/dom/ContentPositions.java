@@ -0,0 +1,309 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.dom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.vex.core.provisional.dom.ContentRange;
+import org.eclipse.vex.core.provisional.dom.IPosition;
+
+/**
+ * The positions managed by an IContent implementation. There is at most one position instance per offset, it is shared
+ * by all clients which create a position at this offset.
+ * <p>
+ * The positions are the nodes of a randomized balanced search tree (treap) ordered by offset. Each node does not store
+ * its absolute offset, but only the distance to the offset of its parent node. Moving all positions behind a given
+ * offset hence only touches the nodes on one path from the root to a leaf and costs O(log n), independent of the
+ * number of positions that are actually moved. The absolute offset of a position is the sum of the distances on the
+ * path from the position up to the root. It is cached in the position until the next modification.
+ */
+class ContentPositions {
+
+	private final Random random = new Random();
+
+	private TrackedPosition root;
+	private int size;
+	private int modificationCount;
+
+	public IPosition createPosition(final int offset) {
+		final TrackedPosition storedPosition = find(offset);
+		if (storedPosition != null) {
+			storedPosition.increaseUse();
+			return storedPosition;
+		}
+		return insert(offset);
+	}
+
+	public void removePosition(final IPosition position) {
+		if (!(position instanceof TrackedPosition)) {
+			return;
+		}
+		final TrackedPosition storedPosition = (TrackedPosition) position;
+		if (storedPosition.isValid() && storedPosition.owner == this) {
+			storedPosition.decreaseUse();
+			if (!storedPosition.isValid()) {
+				delete(storedPosition);
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Move all positions at or after the given offset by the given delta.
+	 */
+	public void movePositions(final int startOffset, final int delta) {
+		if (delta == 0) {
+			return;
+		}
+		modificationCount++;
+
+		TrackedPosition node = root;
+		int parentOffset = 0;
+		while (node != null) {
+			final int offset = parentOffset + node.relativeOffset;
+			if (offset >= startOffset) {
+				// move the whole subtree, but keep the left subtree (the smaller offsets) in place
+				node.relativeOffset += delta;
+				if (node.left != null) {
+					node.left.relativeOffset -= delta;
+				}
+				parentOffset = offset + delta;
+				node = node.left;
+			} else {
+				parentOffset = offset;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * Invalidate all positions within the given range and move all positions after the range to the front by the length
+	 * of the range.
+	 */
+	public void removeRange(final ContentRange range) {
+		final List<TrackedPosition> positionsInRange = new ArrayList<TrackedPosition>();
+		collect(root, 0, range, positionsInRange);
+		for (final TrackedPosition position : positionsInRange) {
+			position.invalidate();
+			delete(position);
+		}
+
+		movePositions(range.getEndOffset() + 1, -range.length());
+	}
+
+	private TrackedPosition find(final int offset) {
+		TrackedPosition node = root;
+		int parentOffset = 0;
+		while (node != null) {
+			final int nodeOffset = parentOffset + node.relativeOffset;
+			if (offset == nodeOffset) {
+				return node;
+			}
+			parentOffset = nodeOffset;
+			node = offset < nodeOffset ? node.left : node.right;
+		}
+		return null;
+	}
+
+	private static void collect(final TrackedPosition node, final int parentOffset, final ContentRange range, final List<TrackedPosition> result) {
+		if (node == null) {
+			return;
+		}
+		final int offset = parentOffset + node.relativeOffset;
+		if (offset > range.getStartOffset()) {
+			collect(node.left, offset, range, result);
+		}
+		if (range.contains(offset)) {
+			result.add(node);
+		}
+		if (offset < range.getEndOffset()) {
+			collect(node.right, offset, range, result);
+		}
+	}
+
+	private TrackedPosition insert(final int offset) {
+		final TrackedPosition position = new TrackedPosition(this, random.nextInt());
+		size++;
+
+		if (root == null) {
+			position.relativeOffset = offset;
+			root = position;
+			return position;
+		}
+
+		TrackedPosition parent = root;
+		int parentOffset = root.relativeOffset;
+		while (true) {
+			if (offset < parentOffset) {
+				if (parent.left == null) {
+					parent.left = position;
+					break;
+				}
+				parent = parent.left;
+			} else {
+				if (parent.right == null) {
+					parent.right = position;
+					break;
+				}
+				parent = parent.right;
+			}
+			parentOffset += parent.relativeOffset;
+		}
+		position.parent = parent;
+		position.relativeOffset = offset - parentOffset;
+
+		while (position.parent != null && position.priority > position.parent.priority) {
+			rotateUp(position);
+		}
+		return position;
+	}
+
+	private void delete(final TrackedPosition position) {
+		position.detach();
+		size--;
+
+		while (position.left != null && position.right != null) {
+			rotateUp(position.left.priority > position.right.priority ? position.left : position.right);
+		}
+
+		final TrackedPosition child = position.left != null ? position.left : position.right;
+		if (child != null) {
+			child.relativeOffset += position.relativeOffset;
+			child.parent = position.parent;
+		}
+		replaceChild(position.parent, position, child);
+
+		position.parent = null;
+		position.left = null;
+		position.right = null;
+	}
+
+	/**
+	 * Rotate the given node up one level, so it takes the place of its parent. The absolute offsets of all nodes stay
+	 * the same.
+	 */
+	private void rotateUp(final TrackedPosition node) {
+		final TrackedPosition parent = node.parent;
+		final TrackedPosition grandParent = parent.parent;
+		final int nodeRelativeOffset = node.relativeOffset;
+
+		if (node == parent.left) {
+			parent.left = node.right;
+			if (node.right != null) {
+				node.right.parent = parent;
+				node.right.relativeOffset += nodeRelativeOffset;
+			}
+			node.right = parent;
+		} else {
+			parent.right = node.left;
+			if (node.left != null) {
+				node.left.parent = parent;
+				node.left.relativeOffset += nodeRelativeOffset;
+			}
+			node.left = parent;
+		}
+
+		node.relativeOffset = parent.relativeOffset + nodeRelativeOffset;
+		parent.relativeOffset = -nodeRelativeOffset;
+		parent.parent = node;
+		node.parent = grandParent;
+		replaceChild(grandParent, parent, node);
+	}
+
+	private void replaceChild(final TrackedPosition parent, final TrackedPosition oldChild, final TrackedPosition newChild) {
+		if (parent == null) {
+			root = newChild;
+		} else if (parent.left == oldChild) {
+			parent.left = newChild;
+		} else {
+			parent.right = newChild;
+		}
+	}
+
+	/*
+	 * Implementation of the Position interface.
+	 */
+	private static class TrackedPosition implements IPosition {
+
+		private ContentPositions owner;
+		private final int priority;
+
+		private TrackedPosition parent;
+		private TrackedPosition left;
+		private TrackedPosition right;
+		private int relativeOffset;
+
+		private int cachedOffset;
+		private int cachedModificationCount = -1;
+
+		private int useCount = 1;
+
+		public TrackedPosition(final ContentPositions owner, final int priority) {
+			this.owner = owner;
+			this.priority = priority;
+		}
+
+		@Override
+		public int getOffset() {
+			if (owner == null || cachedModificationCount == owner.modificationCount) {
+				return cachedOffset;
+			}
+
+			int offset = 0;
+			for (TrackedPosition node = this; node != null; node = node.parent) {
+				offset += node.relativeOffset;
+			}
+			cachedOffset = offset;
+			cachedModificationCount = owner.modificationCount;
+			return offset;
+		}
+
+		/**
+		 * Remove this position from its owner. The offset of this position is not updated anymore afterwards.
+		 */
+		public void detach() {
+			cachedOffset = getOffset();
+			owner = null;
+		}
+
+		public void increaseUse() {
+			useCount++;
+		}
+
+		public void decreaseUse() {
+			useCount--;
+		}
+
+		@Override
+		public boolean isValid() {
+			return useCount > 0;
+		};
+
+		public void invalidate() {
+			useCount = 0;
+		}
+
+		@Override
+		public String toString() {
+			return Integer.toString(getOffset());
+		}
+
+		@Override
+		public int compareTo(final IPosition other) {
+			return getOffset() - other.getOffset();
+		}
+	}
+}
@@ -12,6 +12,7 @@
  *     Carsten Hiesserich - bug fixes (bug 407801, 410659)
  *     Carsten Hiesserich - added structuralChange flag to ContentChangeEvent
  *     Carsten Hiesserich - added support for processing instructions
+ *     agent - typed event dispatch, batched content change events
  *******************************************************************************/
 package org.eclipse.vex.core.internal.dom;
 
@@ -28,6 +29,8 @@ import org.eclipse.core.runtime.QualifiedName;
 import org.eclipse.vex.core.IValidationResult;
 import org.eclipse.vex.core.XML;
 import org.eclipse.vex.core.internal.core.ListenerList;
+import org.eclipse.vex.core.internal.core.ListenerList.IEventDispatcher;
+import org.eclipse.vex.core.provisional.dom.AttributeChangeEvent;
 import org.eclipse.vex.core.provisional.dom.BaseNodeVisitorWithResult;
 import org.eclipse.vex.core.provisional.dom.ContentChangeEvent;
 import org.eclipse.vex.core.provisional.dom.ContentPosition;
@@ -49,6 +52,7 @@ import org.eclipse.vex.core.provisional.dom.IPosition;
 import org.eclipse.vex.core.provisional.dom.IProcessingInstruction;
 import org.eclipse.vex.core.provisional.dom.IText;
 import org.eclipse.vex.core.provisional.dom.IValidator;
+import org.eclipse.vex.core.provisional.dom.NamespaceDeclarationChangeEvent;
 
 /**
  * A representation of an XML document in the DOM.
@@ -57,9 +61,67 @@ public class Document extends Parent implements IDocument {
 
 	private static final String DEFAULT_NAMESPACE_PREFIX = "ns";
 
+	private static final IEventDispatcher<IDocumentListener, AttributeChangeEvent> ATTRIBUTE_CHANGED = new IEventDispatcher<IDocumentListener, AttributeChangeEvent>() {
+		@Override
+		public void dispatch(final IDocumentListener listener, final AttributeChangeEvent event) {
+			listener.attributeChanged(event);
+		}
+	};
+
+	private static final IEventDispatcher<IDocumentListener, NamespaceDeclarationChangeEvent> NAMESPACE_CHANGED = new IEventDispatcher<IDocumentListener, NamespaceDeclarationChangeEvent>() {
+		@Override
+		public void dispatch(final IDocumentListener listener, final NamespaceDeclarationChangeEvent event) {
+			listener.namespaceChanged(event);
+		}
+	};
+
+	private static final IEventDispatcher<IDocumentListener, ContentChangeEvent> BEFORE_CONTENT_DELETED = new IEventDispatcher<IDocumentListener, ContentChangeEvent>() {
+		@Override
+		public void dispatch(final IDocumentListener listener, final ContentChangeEvent event) {
+			listener.beforeContentDeleted(event);
+		}
+	};
+
+	private static final IEventDispatcher<IDocumentListener, ContentChangeEvent> BEFORE_CONTENT_INSERTED = new IEventDispatcher<IDocumentListener, ContentChangeEvent>() {
+		@Override
+		public void dispatch(final IDocumentListener listener, final ContentChangeEvent event) {
+			listener.beforeContentInserted(event);
+		}
+	};
+
+	private static final IEventDispatcher<IDocumentListener, ContentChangeEvent> CONTENT_DELETED = new IEventDispatcher<IDocumentListener, ContentChangeEvent>() {
+		@Override
+		public void dispatch(final IDocumentListener listener, final ContentChangeEvent event) {
+			listener.contentDeleted(event);
+		}
+	};
+
+	private static final IEventDispatcher<IDocumentListener, ContentChangeEvent> CONTENT_INSERTED = new IEventDispatcher<IDocumentListener, ContentChangeEvent>() {
+		@Override
+		public void dispatch(final IDocumentListener listener, final ContentChangeEvent event) {
+			listener.contentInserted(event);
+		}
+	};
+
+	private static final IEventDispatcher<IDocumentListener, ContentChangeEvent> CONTENT_REPLACED = new IEventDispatcher<IDocumentListener, ContentChangeEvent>() {
+		@Override
+		public void dispatch(final IDocumentListener listener, final ContentChangeEvent event) {
+			listener.contentReplaced(event);
+		}
+	};
+
 	private final Element rootElement;
 	private final ListenerList<IDocumentListener, DocumentEvent> listeners = new ListenerList<IDocumentListener, DocumentEvent>(IDocumentListener.class);
 
+	/*
+	 * Batched content change events, see #beginEventBatch()
+	 */
+	private int eventBatchDepth;
+	private IParent batchedParent;
+	private ContentChangeEvent batchedEvent;
+	private boolean batchedEventIsDeletion;
+	private int batchedEventCount;
+
 	private String publicID;
 	protected String systemID;
 	private String documentURI;
@@ -75,7 +137,23 @@ public class Document extends Parent implements IDocument {
 	 *            the name of the root element of the document
 	 */
 	public Document(final QualifiedName rootElementName) {
-		final GapContent content = new GapContent(100);
+		this(rootElementName, new GapContent(100));
+	}
+
+	/**
+	 * Create a new document with the given root element, which stores its textual content in the given Content object.
+	 * This allows to choose the Content implementation which fits best to the expected size of the document and the
+	 * expected editing patterns.
+	 *
+	 * @param rootElementName
+	 *            the name of the root element of the document
+	 * @param content
+	 *            the empty Content object used to store the document's content
+	 * @see GapContent
+	 * @see RopeContent
+	 */
+	public Document(final QualifiedName rootElementName, final IContent content) {
+		Assert.isTrue(content.length() == 0, "The given content must be empty.");
 		content.insertTagMarker(0);
 		content.insertTagMarker(0);
 		associate(content, content.getRange());
@@ -830,28 +908,96 @@ public class Document extends Parent implements IDocument {
 		listeners.remove(listener);
 	}
 
-	public void fireAttributeChanged(final DocumentEvent e) {
-		listeners.fireEvent("attributeChanged", e);
+	@Override
+	public void beginEventBatch() {
+		eventBatchDepth++;
+	}
+
+	@Override
+	public void endEventBatch() {
+		Assert.isTrue(eventBatchDepth > 0, "There is no event batch to end.");
+		eventBatchDepth--;
+		if (eventBatchDepth > 0 || batchedEvent == null) {
+			return;
+		}
+
+		final ContentChangeEvent event = batchedEvent;
+		final boolean deletion = batchedEventIsDeletion;
+		final boolean replacement = batchedEventCount > 1;
+		final IParent parent = batchedParent;
+		batchedParent = null;
+		batchedEvent = null;
+		batchedEventCount = 0;
+
+		if (replacement) {
+			listeners.fireEvent(CONTENT_REPLACED, new ContentChangeEvent(this, parent, parent.getRange(), true));
+		} else if (deletion) {
+			listeners.fireEvent(CONTENT_DELETED, event);
+		} else {
+			listeners.fireEvent(CONTENT_INSERTED, event);
+		}
+	}
+
+	public void fireAttributeChanged(final AttributeChangeEvent e) {
+		listeners.fireEvent(ATTRIBUTE_CHANGED, e);
 	}
 
-	public void fireNamespaceChanged(final DocumentEvent e) {
-		listeners.fireEvent("namespaceChanged", e);
+	public void fireNamespaceChanged(final NamespaceDeclarationChangeEvent e) {
+		listeners.fireEvent(NAMESPACE_CHANGED, e);
 	}
 
-	private void fireBeforeContentDeleted(final DocumentEvent e) {
-		listeners.fireEvent("beforeContentDeleted", e);
+	private void fireBeforeContentDeleted(final ContentChangeEvent e) {
+		if (eventBatchDepth > 0) {
+			batchedParent = getCommonAncestor(batchedParent, e.getParent());
+		}
+		listeners.fireEvent(BEFORE_CONTENT_DELETED, e);
+	}
+
+	private void fireBeforeContentInserted(final ContentChangeEvent e) {
+		if (eventBatchDepth > 0) {
+			batchedParent = getCommonAncestor(batchedParent, e.getParent());
+		}
+		listeners.fireEvent(BEFORE_CONTENT_INSERTED, e);
+	}
+
+	private void fireContentDeleted(final ContentChangeEvent e) {
+		if (eventBatchDepth > 0) {
+			batch(e, true);
+			return;
+		}
+		listeners.fireEvent(CONTENT_DELETED, e);
 	}
 
-	private void fireBeforeContentInserted(final DocumentEvent e) {
-		listeners.fireEvent("beforeContentInserted", e);
+	private void fireContentInserted(final ContentChangeEvent e) {
+		if (eventBatchDepth > 0) {
+			batch(e, false);
+			return;
+		}
+		listeners.fireEvent(CONTENT_INSERTED, e);
 	}
 
-	private void fireContentDeleted(final DocumentEvent e) {
-		listeners.fireEvent("contentDeleted", e);
+	private void batch(final ContentChangeEvent e, final boolean deletion) {
+		batchedEvent = e;
+		batchedEventIsDeletion = deletion;
+		batchedEventCount++;
 	}
 
-	private void fireContentInserted(final DocumentEvent e) {
-		listeners.fireEvent("contentInserted", e);
+	/*
+	 * The parents are collected before each modification, so the previously collected common ancestor is still part of
+	 * the document. If it is removed later on, its parent is collected before.
+	 */
+	private IParent getCommonAncestor(final IParent parent1, final IParent parent2) {
+		if (parent1 == null) {
+			return parent2;
+		}
+		for (IParent ancestor = parent1; ancestor != null; ancestor = ancestor.getParent()) {
+			for (IParent candidate = parent2; candidate != null; candidate = candidate.getParent()) {
+				if (candidate == ancestor) {
+					return ancestor;
+				}
+			}
+		}
+		return this;
 	}
 
 	/*
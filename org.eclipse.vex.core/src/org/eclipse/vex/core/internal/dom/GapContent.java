@@ -14,10 +14,7 @@
 package org.eclipse.vex.core.internal.dom;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.vex.core.provisional.dom.ContentRange;
@@ -38,12 +35,13 @@ public class GapContent implements IContent {
 	private static final float GROWTH_RATE_SLOW = 1.1f;
 
 	private static final char TAG_MARKER = '\0';
+	private static final String TAG_MARKER_STRING = Character.toString(TAG_MARKER);
 	private static final char LINE_BREAK = '\n';
 
 	private char[] content;
 	private int gapStart;
 	private int gapEnd;
-	private final TreeSet<GapContentPosition> positions = new TreeSet<GapContentPosition>();
+	private final ContentPositions positions = new ContentPositions();
 
 	/**
 	 * Create a GapContent with the given initial capacity.
@@ -61,34 +59,13 @@ public class GapContent implements IContent {
 
 	@Override
 	public IPosition createPosition(final int offset) {
-
 		assertOffset(offset, 0, length());
-
-		final GapContentPosition newPosition = new GapContentPosition(offset);
-		if (positions.contains(newPosition)) {
-			final SortedSet<GapContentPosition> tailSet = positions.tailSet(newPosition);
-			final GapContentPosition storedPosition = tailSet.first();
-			storedPosition.increaseUse();
-			return storedPosition;
-		}
-		positions.add(newPosition);
-		return newPosition;
+		return positions.createPosition(offset);
 	}
 
 	@Override
 	public void removePosition(final IPosition position) {
-		if (position.isValid() && positions.contains(position)) {
-			/*
-			 * This cast is save: if the position can be removed, this instance must have created it, hence it is a
-			 * GapContentPosition.
-			 */
-			final SortedSet<GapContentPosition> tailSet = positions.tailSet((GapContentPosition) position);
-			final GapContentPosition storedPosition = tailSet.first();
-			storedPosition.decreaseUse();
-			if (!storedPosition.isValid()) {
-				positions.remove(storedPosition);
-			}
-		}
+		positions.removePosition(position);
 	}
 
 	public int getPositionCount() {
@@ -117,13 +94,7 @@ public class GapContent implements IContent {
 		gapStart += text.length();
 
 		if (!atEnd) {
-			movePositions(offset, text.length());
-		}
-	}
-
-	private void movePositions(final int startOffset, final int delta) {
-		for (final GapContentPosition position : positions.tailSet(new GapContentPosition(startOffset))) {
-			position.setOffset(position.getOffset() + delta);
+			positions.movePositions(offset, text.length());
 		}
 	}
 
@@ -131,7 +102,7 @@ public class GapContent implements IContent {
 	public void insertTagMarker(final int offset) {
 		assertOffset(offset, 0, length());
 
-		insertText(offset, Character.toString(TAG_MARKER));
+		insertText(offset, TAG_MARKER_STRING);
 	}
 
 	@Override
@@ -174,17 +145,7 @@ public class GapContent implements IContent {
 		moveGap(range.getEndOffset() + 1);
 		gapStart -= range.length();
 
-		final SortedSet<GapContentPosition> tail = positions.tailSet(new GapContentPosition(range.getStartOffset()));
-		for (final Iterator<GapContentPosition> iterator = tail.iterator(); iterator.hasNext();) {
-			final GapContentPosition position = iterator.next();
-
-			if (position.getOffset() <= range.getEndOffset()) {
-				position.invalidate();
-				iterator.remove();
-			} else {
-				position.setOffset(position.getOffset() - range.length());
-			}
-		}
+		positions.removeRange(range);
 	}
 
 	@Override
@@ -291,7 +252,20 @@ public class GapContent implements IContent {
 	public void insertContent(final int offset, final IContent content) {
 		assertOffset(offset, 0, length());
 
-		copyContent(content, this, content.getRange(), offset);
+		final int length = content.length();
+		if (length == 0) {
+			return;
+		}
+
+		if (length > gapEnd - gapStart) {
+			expandContent(length() + length);
+		}
+
+		moveGap(offset);
+		copyRawChars(content, content.getRange(), this.content, offset);
+		gapStart += length;
+
+		positions.movePositions(offset, length);
 	}
 
 	@Override
@@ -304,19 +278,28 @@ public class GapContent implements IContent {
 		Assert.isTrue(getRange().contains(range));
 
 		final GapContent result = new GapContent(range.length());
-		copyContent(this, result, range, 0);
+		copyRawChars(range, result.content, 0);
+		result.gapStart = range.length();
 		return result;
 	}
 
-	private static void copyContent(final IContent source, final IContent destination, final ContentRange sourceRange, final int destinationStartOffset) {
-		for (int i = 0; i < sourceRange.length(); i++) {
-			final int sourceOffset = sourceRange.getStartOffset() + i;
-			final int destinationOffset = destinationStartOffset + i;
-			if (source.isTagMarker(sourceOffset)) {
-				destination.insertTagMarker(destinationOffset);
-			} else {
-				destination.insertText(destinationOffset, Character.toString(source.charAt(sourceOffset)));
-			}
+	/**
+	 * Copy the raw characters of the given range of the source content into the given array. For GapContent this copies
+	 * whole blocks around the gap, for all other implementations it has to go through the raw text.
+	 */
+	private static void copyRawChars(final IContent source, final ContentRange sourceRange, final char[] destination, final int destinationOffset) {
+		if (source instanceof GapContent) {
+			((GapContent) source).copyRawChars(sourceRange, destination, destinationOffset);
+		} else {
+			source.getRawText(sourceRange).getChars(0, sourceRange.length(), destination, destinationOffset);
+		}
+	}
+
+	private void copyRawChars(final ContentRange range, final char[] destination, final int destinationOffset) {
+		int nextDestinationOffset = destinationOffset;
+		for (final ContentRange affectedRange : expandAroundGap(range)) {
+			System.arraycopy(content, affectedRange.getStartOffset(), destination, nextDestinationOffset, affectedRange.length());
+			nextDestinationOffset += affectedRange.length();
 		}
 	}
 
@@ -365,82 +348,6 @@ public class GapContent implements IContent {
 		return getRawText(new ContentRange(startOffset, endOffset - 1));
 	}
 
-	/*
-	 * Implementation of the Position interface.
-	 */
-	private static class GapContentPosition implements IPosition {
-
-		private int offset;
-
-		private int useCount = 1;
-
-		public GapContentPosition(final int offset) {
-			this.offset = offset;
-		}
-
-		@Override
-		public int getOffset() {
-			return offset;
-		}
-
-		public void setOffset(final int offset) {
-			this.offset = offset;
-		}
-
-		public void increaseUse() {
-			useCount++;
-		}
-
-		public void decreaseUse() {
-			useCount--;
-		}
-
-		@Override
-		public boolean isValid() {
-			return useCount > 0;
-		};
-
-		public void invalidate() {
-			useCount = 0;
-		}
-
-		@Override
-		public int hashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + offset;
-			return result;
-		}
-
-		@Override
-		public boolean equals(final Object obj) {
-			if (this == obj) {
-				return true;
-			}
-			if (obj == null) {
-				return false;
-			}
-			if (getClass() != obj.getClass()) {
-				return false;
-			}
-			final GapContentPosition other = (GapContentPosition) obj;
-			if (offset != other.offset) {
-				return false;
-			}
-			return true;
-		}
-
-		@Override
-		public String toString() {
-			return Integer.toString(offset);
-		}
-
-		@Override
-		public int compareTo(final IPosition other) {
-			return offset - other.getOffset();
-		}
-	}
-
 	/**
 	 * Assert that the given offset is within the given range, throwing IllegalArgumentException if not.
 	 */
@@ -7,6 +7,7 @@
  *
  * Contributors:
  *     Carsten Hiesserich - initial API and implementation
+ *     agent - provide the resolved document
  *******************************************************************************/
 package org.eclipse.vex.core.internal.dom;
 
@@ -25,6 +26,7 @@ import org.eclipse.vex.core.provisional.dom.INodeVisitorWithResult;
 public class IncludeNode extends Node implements IIncludeNode {
 
 	private Element reference;
+	private INode resolved;
 
 	/**
 	 * Create a new include node that wraps the given Element. The Include node bypasses the element hierarchy, so the
@@ -122,10 +124,17 @@ public class IncludeNode extends Node implements IIncludeNode {
 		return reference;
 	}
 
+	/**
+	 * @return the included document, or null if the include is not resolved
+	 * @see org.eclipse.vex.core.internal.io.XIncludeLoader
+	 */
 	@Override
 	public INode getResolved() {
-		// TODO Auto-generated method stub
-		return null;
+		return resolved;
+	}
+
+	public void setResolved(final INode resolved) {
+		this.resolved = resolved;
 	}
 
 	@Override
@@ -0,0 +1,571 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.dom;
+
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.vex.core.provisional.dom.ContentRange;
+import org.eclipse.vex.core.provisional.dom.IContent;
+import org.eclipse.vex.core.provisional.dom.IPosition;
+import org.eclipse.vex.core.provisional.dom.MultilineText;
+
+/**
+ * Implementation of the <code>Content</code> interface based on a rope: a height balanced binary tree whose leafs hold
+ * short chunks of immutable text. Insertions and deletions at any offset only rebuild the path from the root to the
+ * affected leafs, hence they cost O(log n) independent of the distance to the last change. Since the chunks are never
+ * modified, copies of a range share their chunks with this content and are created in O(log n) as well.
+ * <p>
+ * GapContent is the better choice for small documents and for edits which are clustered around one location. This
+ * implementation pays off for large documents which are edited at scattered locations.
+ */
+public class RopeContent implements IContent {
+
+	private static final int MAX_LEAF_LENGTH = 512;
+
+	private static final char TAG_MARKER = '\0';
+	private static final char LINE_BREAK = '\n';
+
+	private static final RopeNode EMPTY = new Leaf(new char[0]);
+
+	private RopeNode root;
+	private final ContentPositions positions = new ContentPositions();
+
+	/*
+	 * Sequential access through charAt is very common (e.g. in regular expressions), hence we remember the last leaf
+	 * that was used to look up a character.
+	 */
+	private Leaf lastLeaf;
+	private int lastLeafStartOffset;
+
+	public RopeContent() {
+		this(EMPTY);
+	}
+
+	private RopeContent(final RopeNode root) {
+		this.root = root;
+	}
+
+	@Override
+	public IPosition createPosition(final int offset) {
+		assertOffset(offset, 0, length());
+		return positions.createPosition(offset);
+	}
+
+	@Override
+	public void removePosition(final IPosition position) {
+		positions.removePosition(position);
+	}
+
+	public int getPositionCount() {
+		return positions.size();
+	}
+
+	@Override
+	public void insertText(final int offset, final String text) {
+		assertOffset(offset, 0, length());
+
+		if (text.length() == 0) {
+			return;
+		}
+
+		final RopeNode extendedLeafs = insertIntoLeaf(root, offset, text);
+		if (extendedLeafs != null) {
+			setRoot(extendedLeafs);
+		} else {
+			insertNode(offset, build(text.toCharArray(), 0, text.length()));
+		}
+
+		positions.movePositions(offset, text.length());
+	}
+
+	private void insertNode(final int offset, final RopeNode node) {
+		final RopeNode[] parts = split(root, offset);
+		setRoot(join(join(parts[0], node), parts[1]));
+	}
+
+	@Override
+	public void insertTagMarker(final int offset) {
+		assertOffset(offset, 0, length());
+
+		insertText(offset, Character.toString(TAG_MARKER));
+	}
+
+	@Override
+	public boolean isTagMarker(final int offset) {
+		if (offset < 0 || offset >= length()) {
+			return false;
+		}
+
+		return isTagMarker(charAt(offset));
+	}
+
+	private static boolean isTagMarker(final char c) {
+		return c == TAG_MARKER;
+	}
+
+	@Override
+	public boolean isLineBreak(final int offset) {
+		if (offset < 0 || offset >= length()) {
+			return false;
+		}
+
+		return isLineBreak(charAt(offset));
+	}
+
+	private static boolean isLineBreak(final char c) {
+		return c == LINE_BREAK;
+	}
+
+	@Override
+	public void insertLineBreak(final int offset) {
+		insertText(offset, Character.toString(LINE_BREAK));
+	}
+
+	@Override
+	public void remove(final ContentRange range) {
+		assertOffset(range.getStartOffset(), 0, length() - range.length());
+		assertPositive(range.length());
+
+		final RopeNode shortenedLeaf = removeFromLeaf(root, range.getStartOffset(), range.getEndOffset() + 1);
+		if (shortenedLeaf != null) {
+			setRoot(shortenedLeaf);
+		} else {
+			final RopeNode[] tail = split(root, range.getEndOffset() + 1);
+			final RopeNode[] head = split(tail[0], range.getStartOffset());
+			setRoot(join(head[0], tail[1]));
+		}
+
+		positions.removeRange(range);
+	}
+
+	@Override
+	public String getText() {
+		return getText(getRange());
+	}
+
+	@Override
+	public String getText(final ContentRange range) {
+		Assert.isTrue(getRange().contains(range));
+
+		final char[] chars = getChars(range);
+		int length = 0;
+		for (int i = 0; i < chars.length; i++) {
+			if (!isTagMarker(chars[i])) {
+				chars[length++] = chars[i];
+			}
+		}
+		return new String(chars, 0, length);
+	}
+
+	@Override
+	public String getRawText() {
+		return getRawText(getRange());
+	}
+
+	@Override
+	public String getRawText(final ContentRange range) {
+		Assert.isTrue(getRange().contains(range));
+
+		return new String(getChars(range));
+	}
+
+	private char[] getChars(final ContentRange range) {
+		final char[] result = new char[range.length()];
+		root.getChars(range.getStartOffset(), range.getEndOffset() + 1, result, 0);
+		return result;
+	}
+
+	@Override
+	public MultilineText getMultilineText(final ContentRange range) {
+		Assert.isTrue(getRange().contains(range));
+		final MultilineText result = new MultilineText();
+
+		final char[] chars = getChars(range);
+		StringBuilder currentLine = new StringBuilder();
+		int lineStart = range.getStartOffset();
+		for (int i = 0; i < chars.length; i += 1) {
+			final char c = chars[i];
+			if (isTagMarker(c)) {
+				// ignore tag markers
+			} else if (isLineBreak(c)) {
+				currentLine.append(c);
+				final int offset = range.getStartOffset() + i;
+				result.appendLine(currentLine.toString(), new ContentRange(lineStart, offset));
+				currentLine = new StringBuilder();
+				lineStart = offset + 1;
+			} else {
+				currentLine.append(c);
+			}
+		}
+
+		if (currentLine.length() > 0) {
+			result.appendLine(currentLine.toString(), new ContentRange(lineStart, range.getEndOffset()));
+		}
+
+		return result;
+	}
+
+	@Override
+	public void insertContent(final int offset, final IContent content) {
+		assertOffset(offset, 0, length());
+
+		if (content.length() == 0) {
+			return;
+		}
+
+		final RopeNode node;
+		if (content instanceof RopeContent) {
+			node = ((RopeContent) content).root;
+		} else {
+			final String rawText = content.getRawText();
+			node = build(rawText.toCharArray(), 0, rawText.length());
+		}
+		insertNode(offset, node);
+
+		positions.movePositions(offset, content.length());
+	}
+
+	@Override
+	public IContent getContent() {
+		return new RopeContent(root);
+	}
+
+	@Override
+	public IContent getContent(final ContentRange range) {
+		Assert.isTrue(getRange().contains(range));
+
+		final RopeNode[] tail = split(root, range.getStartOffset());
+		final RopeNode[] copy = split(tail[1], range.length());
+		return new RopeContent(copy[0]);
+	}
+
+	/**
+	 * @see CharSequence#length()
+	 * @return the length of the raw textual content, including tag markers.
+	 */
+	@Override
+	public int length() {
+		return root.length;
+	}
+
+	@Override
+	public ContentRange getRange() {
+		return new ContentRange(0, length() - 1);
+	}
+
+	/**
+	 * @see CharSequence#charAt(int)
+	 * @param offset
+	 *            the offset of the character within the raw textual content
+	 * @return the character at the given offset (tag markers included)
+	 */
+	@Override
+	public char charAt(final int offset) {
+		if (lastLeaf == null || offset < lastLeafStartOffset || offset >= lastLeafStartOffset + lastLeaf.length) {
+			if (offset < 0 || offset >= length()) {
+				throw new IndexOutOfBoundsException("Bad offset " + offset + " must be between 0 and " + (length() - 1));
+			}
+			findLeaf(offset);
+		}
+		return lastLeaf.chars[offset - lastLeafStartOffset];
+	}
+
+	private void findLeaf(final int offset) {
+		RopeNode node = root;
+		int nodeStartOffset = 0;
+		while (node instanceof Concat) {
+			final Concat concat = (Concat) node;
+			if (offset < nodeStartOffset + concat.left.length) {
+				node = concat.left;
+			} else {
+				nodeStartOffset += concat.left.length;
+				node = concat.right;
+			}
+		}
+		lastLeaf = (Leaf) node;
+		lastLeafStartOffset = nodeStartOffset;
+	}
+
+	/**
+	 * Get the raw text of a region of this content. The plain text does also contain the tag markers in this content.
+	 *
+	 * @see CharSequence#subSequence(int, int)
+	 * @param startOffset
+	 *            Offset at which the substring begins.
+	 * @param endOffset
+	 *            Offset at which the substring ends.
+	 * @return the text of the given region including tag markers
+	 */
+	@Override
+	public CharSequence subSequence(final int startOffset, final int endOffset) {
+		Assert.isTrue(startOffset <= endOffset);
+		if (startOffset == endOffset) {
+			return "";
+		}
+
+		return getRawText(new ContentRange(startOffset, endOffset - 1));
+	}
+
+	@Override
+	public String toString() {
+		return getRawText();
+	}
+
+	private void setRoot(final RopeNode root) {
+		this.root = root;
+		lastLeaf = null;
+	}
+
+	/**
+	 * Assert that the given offset is within the given range, throwing IllegalArgumentException if not.
+	 */
+	private static void assertOffset(final int offset, final int min, final int max) {
+		if (offset < min || offset > max) {
+			throw new IllegalArgumentException("Bad offset " + offset + " must be between " + min + " and " + max);
+		}
+	}
+
+	/**
+	 * Assert that the given value is zero or positive. throwing IllegalArgumentException if not.
+	 */
+	private static void assertPositive(final int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Value should be zero or positive, but it was " + value);
+		}
+	}
+
+	/*
+	 * Rope operations. All of them leave the given nodes untouched and return new nodes instead, which share as much
+	 * structure as possible with the given nodes.
+	 */
+
+	/**
+	 * Build a balanced rope from the given characters.
+	 */
+	private static RopeNode build(final char[] chars, final int start, final int end) {
+		final int length = end - start;
+		if (length <= MAX_LEAF_LENGTH) {
+			final char[] leafChars = new char[length];
+			System.arraycopy(chars, start, leafChars, 0, length);
+			return new Leaf(leafChars);
+		}
+		final int middle = start + length / 2;
+		return new Concat(build(chars, start, middle), build(chars, middle, end));
+	}
+
+	/**
+	 * Insert the given text into the leaf at the given offset if the leaf has enough room for it. This is the common
+	 * case while typing and it does not change the shape of the tree.
+	 *
+	 * @return the new node or null if the leaf at the given offset cannot take the text
+	 */
+	private static RopeNode insertIntoLeaf(final RopeNode node, final int offset, final String text) {
+		if (node instanceof Leaf) {
+			final Leaf leaf = (Leaf) node;
+			if (leaf.length + text.length() > MAX_LEAF_LENGTH) {
+				return null;
+			}
+			final char[] chars = new char[leaf.length + text.length()];
+			System.arraycopy(leaf.chars, 0, chars, 0, offset);
+			text.getChars(0, text.length(), chars, offset);
+			System.arraycopy(leaf.chars, offset, chars, offset + text.length(), leaf.length - offset);
+			return new Leaf(chars);
+		}
+
+		final Concat concat = (Concat) node;
+		if (offset <= concat.left.length) {
+			final RopeNode left = insertIntoLeaf(concat.left, offset, text);
+			if (left == null) {
+				return null;
+			}
+			return new Concat(left, concat.right);
+		}
+		final RopeNode right = insertIntoLeaf(concat.right, offset - concat.left.length, text);
+		if (right == null) {
+			return null;
+		}
+		return new Concat(concat.left, right);
+	}
+
+	/**
+	 * Remove the characters between the given offsets if they are all in the same leaf and the leaf does not get empty.
+	 * Like {@link #insertIntoLeaf(RopeNode, int, String)} this does not change the shape of the tree.
+	 *
+	 * @return the new node or null if the characters span more than one leaf
+	 */
+	private static RopeNode removeFromLeaf(final RopeNode node, final int start, final int end) {
+		if (node instanceof Leaf) {
+			final Leaf leaf = (Leaf) node;
+			final int removedLength = end - start;
+			if (removedLength >= leaf.length) {
+				return null;
+			}
+			final char[] chars = new char[leaf.length - removedLength];
+			System.arraycopy(leaf.chars, 0, chars, 0, start);
+			System.arraycopy(leaf.chars, end, chars, start, leaf.length - end);
+			return new Leaf(chars);
+		}
+
+		final Concat concat = (Concat) node;
+		if (end <= concat.left.length) {
+			final RopeNode left = removeFromLeaf(concat.left, start, end);
+			if (left == null) {
+				return null;
+			}
+			return new Concat(left, concat.right);
+		}
+		if (start >= concat.left.length) {
+			final RopeNode right = removeFromLeaf(concat.right, start - concat.left.length, end - concat.left.length);
+			if (right == null) {
+				return null;
+			}
+			return new Concat(concat.left, right);
+		}
+		return null;
+	}
+
+	/**
+	 * Split the given rope at the given offset.
+	 *
+	 * @return an array with the part before the offset at index 0 and the part starting at the offset at index 1
+	 */
+	private static RopeNode[] split(final RopeNode node, final int offset) {
+		if (offset <= 0) {
+			return new RopeNode[] { EMPTY, node };
+		}
+		if (offset >= node.length) {
+			return new RopeNode[] { node, EMPTY };
+		}
+
+		if (node instanceof Leaf) {
+			final Leaf leaf = (Leaf) node;
+			final char[] head = new char[offset];
+			final char[] tail = new char[leaf.length - offset];
+			System.arraycopy(leaf.chars, 0, head, 0, head.length);
+			System.arraycopy(leaf.chars, offset, tail, 0, tail.length);
+			return new RopeNode[] { new Leaf(head), new Leaf(tail) };
+		}
+
+		final Concat concat = (Concat) node;
+		if (offset == concat.left.length) {
+			return new RopeNode[] { concat.left, concat.right };
+		}
+		if (offset < concat.left.length) {
+			final RopeNode[] parts = split(concat.left, offset);
+			return new RopeNode[] { parts[0], join(parts[1], concat.right) };
+		}
+		final RopeNode[] parts = split(concat.right, offset - concat.left.length);
+		return new RopeNode[] { join(concat.left, parts[0]), parts[1] };
+	}
+
+	/**
+	 * Concatenate the given ropes and keep the result balanced. The height of the result is at most one more than the
+	 * height of the higher rope.
+	 */
+	private static RopeNode join(final RopeNode left, final RopeNode right) {
+		if (left.length == 0) {
+			return right;
+		}
+		if (right.length == 0) {
+			return left;
+		}
+		if (left instanceof Leaf && right instanceof Leaf && left.length + right.length <= MAX_LEAF_LENGTH) {
+			final char[] chars = new char[left.length + right.length];
+			System.arraycopy(((Leaf) left).chars, 0, chars, 0, left.length);
+			System.arraycopy(((Leaf) right).chars, 0, chars, left.length, right.length);
+			return new Leaf(chars);
+		}
+
+		if (left.height > right.height + 1) {
+			final Concat concat = (Concat) left;
+			return balance(concat.left, join(concat.right, right));
+		}
+		if (right.height > left.height + 1) {
+			final Concat concat = (Concat) right;
+			return balance(join(left, concat.left), concat.right);
+		}
+		return new Concat(left, right);
+	}
+
+	/**
+	 * Create a node from the given children, which differ by at most two in height, and rotate as necessary to keep the
+	 * difference of the heights of the children at most one.
+	 */
+	private static RopeNode balance(final RopeNode left, final RopeNode right) {
+		if (left.height > right.height + 1) {
+			final Concat concat = (Concat) left;
+			if (concat.left.height >= concat.right.height) {
+				return new Concat(concat.left, new Concat(concat.right, right));
+			}
+			final Concat inner = (Concat) concat.right;
+			return new Concat(new Concat(concat.left, inner.left), new Concat(inner.right, right));
+		}
+		if (right.height > left.height + 1) {
+			final Concat concat = (Concat) right;
+			if (concat.right.height >= concat.left.height) {
+				return new Concat(new Concat(left, concat.left), concat.right);
+			}
+			final Concat inner = (Concat) concat.left;
+			return new Concat(new Concat(left, inner.left), new Concat(inner.right, concat.right));
+		}
+		return new Concat(left, right);
+	}
+
+	private static abstract class RopeNode {
+		public final int length;
+		public final int height;
+
+		public RopeNode(final int length, final int height) {
+			this.length = length;
+			this.height = height;
+		}
+
+		/**
+		 * Copy the characters between the given offsets into the given array.
+		 */
+		public abstract void getChars(int start, int end, char[] destination, int destinationOffset);
+	}
+
+	private static class Leaf extends RopeNode {
+		public final char[] chars;
+
+		public Leaf(final char[] chars) {
+			super(chars.length, 0);
+			this.chars = chars;
+		}
+
+		@Override
+		public void getChars(final int start, final int end, final char[] destination, final int destinationOffset) {
+			System.arraycopy(chars, start, destination, destinationOffset, end - start);
+		}
+	}
+
+	private static class Concat extends RopeNode {
+		public final RopeNode left;
+		public final RopeNode right;
+
+		public Concat(final RopeNode left, final RopeNode right) {
+			super(left.length + right.length, Math.max(left.height, right.height) + 1);
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public void getChars(final int start, final int end, final char[] destination, final int destinationOffset) {
+			if (start < left.length) {
+				left.getChars(start, Math.min(end, left.length), destination, destinationOffset);
+			}
+			if (end > left.length) {
+				final int rightStart = Math.max(start, left.length);
+				right.getChars(rightStart - left.length, end - left.length, destination, destinationOffset + rightStart - start);
+			}
+		}
+	}
+}
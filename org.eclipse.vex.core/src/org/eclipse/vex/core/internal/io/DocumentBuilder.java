@@ -10,13 +10,16 @@
  *     Igor Jacy Lino Campista - Java 5 warnings fixed (bug 311325)
  *     Carsten Hiesserich - do not add text nodes containing only whitespace when reading the document (bug 407803)
  *     Carsten Hiesserich - added processing instructions support
+ *     agent - reduce copying and validation while loading large documents
  *******************************************************************************/
 package org.eclipse.vex.core.internal.io;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.QualifiedName;
@@ -34,16 +37,12 @@ import org.eclipse.vex.core.internal.dom.IncludeNode;
 import org.eclipse.vex.core.internal.dom.Namespace;
 import org.eclipse.vex.core.internal.dom.Node;
 import org.eclipse.vex.core.internal.dom.ProcessingInstruction;
-import org.eclipse.vex.core.provisional.dom.BaseNodeVisitorWithResult;
 import org.eclipse.vex.core.provisional.dom.ContentRange;
 import org.eclipse.vex.core.provisional.dom.DocumentContentModel;
 import org.eclipse.vex.core.provisional.dom.DocumentValidationException;
-import org.eclipse.vex.core.provisional.dom.IComment;
 import org.eclipse.vex.core.provisional.dom.IContent;
 import org.eclipse.vex.core.provisional.dom.IDocument;
-import org.eclipse.vex.core.provisional.dom.IElement;
 import org.eclipse.vex.core.provisional.dom.INode;
-import org.eclipse.vex.core.provisional.dom.IText;
 import org.eclipse.vex.core.provisional.dom.IValidator;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
@@ -65,8 +64,15 @@ import org.xml.sax.ext.LexicalHandler;
  */
 public class DocumentBuilder implements ContentHandler, LexicalHandler {
 
+	private static final QualifiedName XINCLUDE_ELEMENT = new QualifiedName(Namespace.XINCLUDE_NAMESPACE_URI, "include");
+	private static final List<QualifiedName> TEXT_SEQUENCE = Arrays.asList(IValidator.PCDATA);
+
 	private final IValidator validator;
 
+	// The content model does not change while the document is built, hence
+	// the validator is asked only once per element name whether text is allowed.
+	private final Map<QualifiedName, Boolean> textAllowed = new HashMap<QualifiedName, Boolean>();
+
 	private final IStyleSheetProvider styleSheetProvider;
 
 	private final IWhitespacePolicyFactory whitespacePolicyFactory;
@@ -82,10 +88,10 @@ public class DocumentBuilder implements ContentHandler, LexicalHandler {
 	private boolean trimLeading = false;
 
 	// Content object to hold document content
-	private final IContent content = new GapContent(100);
+	private final IContent content;
 
 	// Stack of StackElement objects
-	private final LinkedList<StackEntry> stack = new LinkedList<StackEntry>();
+	private final ArrayDeque<StackEntry> stack = new ArrayDeque<StackEntry>();
 
 	private final NamespaceStack namespaceStack = new NamespaceStack();
 
@@ -106,6 +112,16 @@ public class DocumentBuilder implements ContentHandler, LexicalHandler {
 	private INode nodeAtCaret = null;
 
 	public DocumentBuilder(final String baseUri, final IValidator validator, final IStyleSheetProvider styleSheetProvider, final IWhitespacePolicyFactory whitespacePolicyFactory) {
+		this(baseUri, validator, styleSheetProvider, whitespacePolicyFactory, new GapContent(100));
+	}
+
+	/**
+	 * @param content
+	 *            the empty Content object which will hold the content of the new document
+	 */
+	public DocumentBuilder(final String baseUri, final IValidator validator, final IStyleSheetProvider styleSheetProvider, final IWhitespacePolicyFactory whitespacePolicyFactory, final IContent content) {
+		Assert.isTrue(content.length() == 0, "The given content must be empty.");
+		this.content = content;
 		this.baseUri = baseUri;
 		this.validator = validator;
 		this.styleSheetProvider = styleSheetProvider;
@@ -132,13 +148,16 @@ public class DocumentBuilder implements ContentHandler, LexicalHandler {
 
 	private void appendPendingCharsFiltered(final char[] ch, final int start, final int length) {
 		// Convert control characters to spaces, since we use nulls for element delimiters
-		for (int i = start; i < start + length; i++) {
+		final int end = start + length;
+		int runStart = start;
+		for (int i = start; i < end; i++) {
 			if (isControlCharacter(ch[i])) {
+				pendingChars.append(ch, runStart, i - runStart);
 				pendingChars.append(' ');
-			} else {
-				pendingChars.append(ch[i]);
+				runStart = i + 1;
 			}
 		}
+		pendingChars.append(ch, runStart, end - runStart);
 	}
 
 	private static boolean isControlCharacter(final char ch) {
@@ -234,33 +253,10 @@ public class DocumentBuilder implements ContentHandler, LexicalHandler {
 		} else {
 			elementName = new QualifiedName(namespaceURI, localName);
 		}
-		Element element;
-		if (stack.isEmpty()) {
-			rootElement = new Element(elementName);
-			element = rootElement;
-		} else {
-			element = new Element(elementName);
-
-			final Element parent = stack.getLast().element;
-
-			// We have to set the parent before accessing the CSS the first time to enable cascading.
-			element.setParent(parent);
-			if (isInclude(element)) {
-				// Wrap the xml element in an include node
-				final Node include = new IncludeNode(element);
-				parent.addChild(include);
-			} else {
-				parent.addChild(element);
-			}
-		}
-
-		if (nodeAtCaret == null && caretPosition != null) {
-			// Sax line number start with 1, document line number start with 0
-			if (locator.getLineNumber() >= caretPosition.getLine() + 1 && locator.getColumnNumber() >= caretPosition.getColumn()) {
-				nodeAtCaret = element;
-			}
-		}
+		final Element element = new Element(elementName);
 
+		// Namespaces and attributes are set before the element is attached to its parent,
+		// because a detached element does not have to look up its document to fire change events.
 		final String defaultNamespaceUri = namespaceStack.peekDefault();
 		if (defaultNamespaceUri != null) {
 			element.declareDefaultNamespace(defaultNamespaceUri);
@@ -288,6 +284,29 @@ public class DocumentBuilder implements ContentHandler, LexicalHandler {
 			}
 		}
 
+		if (stack.isEmpty()) {
+			rootElement = element;
+		} else {
+			final Element parent = stack.getLast().element;
+
+			// We have to set the parent before accessing the CSS the first time to enable cascading.
+			element.setParent(parent);
+			if (isInclude(element)) {
+				// Wrap the xml element in an include node
+				final Node include = new IncludeNode(element);
+				parent.addChild(include);
+			} else {
+				parent.addChild(element);
+			}
+		}
+
+		if (nodeAtCaret == null && caretPosition != null) {
+			// Sax line number start with 1, document line number start with 0
+			if (locator.getLineNumber() >= caretPosition.getLine() + 1 && locator.getColumnNumber() >= caretPosition.getColumn()) {
+				nodeAtCaret = element;
+			}
+		}
+
 		final DocumentContentModel documentContentModel = validator.getDocumentContentModel();
 		if (stack.isEmpty() && documentContentModel != null) {
 			final String previousDocTypeID = documentContentModel.getMainDocumentTypeIdentifier();
@@ -431,15 +450,13 @@ public class DocumentBuilder implements ContentHandler, LexicalHandler {
 	// Append any pending characters to the content
 	private void appendChars(final boolean trimTrailing) {
 
-		StringBuilder sb;
-
-		sb = cleanUpTextContent(trimTrailing);
+		final String text = cleanUpTextContent(trimTrailing);
 
-		if (!stack.isEmpty()) {
+		if (!stack.isEmpty() && text.length() > 0) {
 			final Element parent = stack.getLast().element;
-			if (canInsertText(parent, 0) || sb.toString().trim().length() > 0) {
+			if (!isBlank(text) || canInsertText(parent)) {
 				// Whitespace only is ignored if element does not allow text
-				content.insertText(content.length(), sb.toString());
+				content.insertText(content.length(), text);
 			}
 		}
 
@@ -449,30 +466,36 @@ public class DocumentBuilder implements ContentHandler, LexicalHandler {
 
 	// Append any pending characters without validation
 	private void appendCharsNoValidation(final boolean trimTrailing) {
-		StringBuilder sb;
+		final String text = cleanUpTextContent(trimTrailing);
 
-		sb = cleanUpTextContent(trimTrailing);
-
-		content.insertText(content.length(), sb.toString());
+		content.insertText(content.length(), text);
 
 		pendingChars.setLength(0);
 		trimLeading = false;
 	}
 
-	private StringBuilder cleanUpTextContent(final boolean trimTrailing) {
-		StringBuilder sb;
+	private String cleanUpTextContent(final boolean trimTrailing) {
+		if (pendingChars.length() == 0) {
+			return "";
+		}
+
 		final StackEntry entry = stack.isEmpty() ? null : stack.getLast();
 
+		// pendingChars is reset after its content is appended, so it can be normalized in place
+		XML.normalizeNewlines(pendingChars);
 		if (entry != null && entry.pre) {
-			sb = pendingChars;
-			XML.normalizeNewlines(sb);
-		} else {
-			sb = new StringBuilder(pendingChars);
-			XML.normalizeNewlines(sb);
-			sb = XML.compressWhitespace(sb, trimLeading, trimTrailing, false);
+			return pendingChars.toString();
 		}
+		return XML.compressWhitespace(pendingChars, trimLeading, trimTrailing, false).toString();
+	}
 
-		return sb;
+	private static boolean isBlank(final String text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) > ' ') {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	private boolean isBlock(final Node node) {
@@ -484,32 +507,17 @@ public class DocumentBuilder implements ContentHandler, LexicalHandler {
 	}
 
 	private boolean isInclude(final Element element) {
-		return element.getQualifiedName().equals(new QualifiedName(Namespace.XINCLUDE_NAMESPACE_URI, "include"));
+		return XINCLUDE_ELEMENT.equals(element.getQualifiedName());
 	}
 
-	private boolean canInsertText(final INode insertionNode, final int offset) {
-
-		final List<QualifiedName> textNode = Arrays.asList(IValidator.PCDATA);
-
-		if (insertionNode == null) {
-			return false;
+	private boolean canInsertText(final Element element) {
+		final QualifiedName elementName = element.getQualifiedName();
+		Boolean result = textAllowed.get(elementName);
+		if (result == null) {
+			result = validator.isValidSequence(elementName, TEXT_SEQUENCE, null, null, true);
+			textAllowed.put(elementName, result);
 		}
-		return insertionNode.accept(new BaseNodeVisitorWithResult<Boolean>(false) {
-			@Override
-			public Boolean visit(final IElement element) {
-				return validator.isValidSequence(element.getQualifiedName(), textNode, null, null, true);
-			}
-
-			@Override
-			public Boolean visit(final IComment comment) {
-				return true;
-			}
-
-			@Override
-			public Boolean visit(final IText text) {
-				return true;
-			}
-		});
+		return result;
 	}
 
 	private static class StackEntry {
@@ -8,16 +8,19 @@
  * Contributors:
  *     John Krasnay - initial API and implementation
  *     Carsten Hiesserich - added caret position tracking
+ *     agent - size the content of the document according to the input
  *******************************************************************************/
 package org.eclipse.vex.core.internal.io;
 
 import java.io.CharArrayReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.net.URISyntaxException;
 import java.net.URL;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -27,6 +30,7 @@ import org.eclipse.vex.core.internal.css.IStyleSheetProvider;
 import org.eclipse.vex.core.internal.css.IWhitespacePolicy;
 import org.eclipse.vex.core.internal.css.IWhitespacePolicyFactory;
 import org.eclipse.vex.core.internal.dom.DocumentTextPosition;
+import org.eclipse.vex.core.internal.dom.GapContent;
 import org.eclipse.vex.core.provisional.dom.IDocument;
 import org.eclipse.vex.core.provisional.dom.INode;
 import org.eclipse.vex.core.provisional.dom.IValidator;
@@ -42,6 +46,8 @@ import org.xml.sax.ext.LexicalHandler;
  */
 public class DocumentReader {
 
+	private static final int MIN_CONTENT_CAPACITY = 100;
+
 	private boolean debugging;
 
 	private IValidator validator = IValidator.NULL;
@@ -87,7 +93,20 @@ public class DocumentReader {
 	 *            URL from which to load the document.
 	 */
 	public IDocument read(final URL url) throws IOException, ParserConfigurationException, SAXException {
-		return read(new InputSource(url.toString()));
+		return read(new InputSource(url.toString()), getFileLength(url));
+	}
+
+	private static int getFileLength(final URL url) {
+		if (!"file".equals(url.getProtocol())) {
+			return 0;
+		}
+		try {
+			return (int) Math.min(new File(url.toURI()).length(), Integer.MAX_VALUE);
+		} catch (final URISyntaxException e) {
+			return 0;
+		} catch (final IllegalArgumentException e) {
+			return 0;
+		}
 	}
 
 	/**
@@ -98,7 +117,7 @@ public class DocumentReader {
 	 */
 	public IDocument read(final String s) throws IOException, ParserConfigurationException, SAXException {
 		final Reader reader = new CharArrayReader(s.toCharArray());
-		return this.read(new InputSource(reader));
+		return this.read(new InputSource(reader), s.length());
 	}
 
 	/**
@@ -108,12 +127,26 @@ public class DocumentReader {
 	 *            SAX InputSource from which to load the document.
 	 */
 	public IDocument read(final InputSource is) throws IOException, ParserConfigurationException, SAXException {
+		return read(is, 0);
+	}
+
+	/**
+	 * Reads a document given a SAX InputSource. The content of the new document is allocated up front for the expected
+	 * number of characters, which avoids repeated copying of the content while reading large documents.
+	 *
+	 * @param is
+	 *            SAX InputSource from which to load the document.
+	 * @param expectedLength
+	 *            the number of characters of the input, or 0 if it is unknown
+	 */
+	public IDocument read(final InputSource is, final int expectedLength) throws IOException, ParserConfigurationException, SAXException {
 		final SAXParserFactory factory = SAXParserFactory.newInstance();
 		factory.setValidating(false);
 		factory.setNamespaceAware(true);
 
 		final XMLReader xmlReader = factory.newSAXParser().getXMLReader();
-		final DocumentBuilder builder = new DocumentBuilder(is.getSystemId(), validator, styleSheetProvider, whitespacePolicyFactory);
+		final GapContent content = new GapContent(Math.max(expectedLength, MIN_CONTENT_CAPACITY));
+		final DocumentBuilder builder = new DocumentBuilder(is.getSystemId(), validator, styleSheetProvider, whitespacePolicyFactory, content);
 		builder.setCaretPosition(caretPosition);
 
 		ContentHandler contentHandler = builder;
@@ -11,13 +11,15 @@
  *     Carsten Hiesserich - writeNoWrap(DocumentFragment) method
  *     Carsten Hiesserich - added processing instructions support
  *     Carsten Hiesserich - use org.eclipse.jface.text.IDOcument as intermediate
+ *     agent - write directly to output streams
  *******************************************************************************/
 package org.eclipse.vex.core.internal.io;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.Writer;
 import java.util.Arrays;
 
 import org.eclipse.jface.text.BadLocationException;
@@ -153,30 +155,34 @@ public class DocumentWriter {
 		this.wrapColumn = wrapColumn;
 	}
 
+	/**
+	 * Write the document to the given output stream. The formatted text is written straight to the stream, it is not
+	 * collected in memory before.
+	 */
 	public void write(final IDocument document, final OutputStream out) throws IOException {
-		final org.eclipse.jface.text.Document doc = new org.eclipse.jface.text.Document();
-		docPrintln(doc, "<?xml version='1.0' encoding='UTF-8'?>");
-		writeNode(document, doc, "");
+		final WriterOutput output = new WriterOutput(out);
+		println(output, "<?xml version='1.0' encoding='UTF-8'?>");
+		writeNode(document, output, "");
 
-		writeToOutputStream(out, doc);
+		output.flush();
 	}
 
 	public void write(final IDocumentFragment fragment, final OutputStream out) throws IOException {
-		final org.eclipse.jface.text.Document doc = new org.eclipse.jface.text.Document();
-		docPrintln(doc, "<?xml version='1.0' encoding='UTF-8'?>");
-		writeNode(fragment, doc, "");
+		final WriterOutput output = new WriterOutput(out);
+		println(output, "<?xml version='1.0' encoding='UTF-8'?>");
+		writeNode(fragment, output, "");
 
-		writeToOutputStream(out, doc);
+		output.flush();
 	}
 
 	public void writeNoWrap(final IDocumentFragment fragment, final OutputStream out) throws IOException {
-		final org.eclipse.jface.text.Document doc = new org.eclipse.jface.text.Document();
+		final WriterOutput output = new WriterOutput(out);
 
 		for (final INode child : fragment.children()) {
-			writeNodeNoWrap(child, doc);
+			writeNodeNoWrap(child, output);
 		}
 
-		writeToOutputStream(out, doc);
+		output.flush();
 	}
 
 	/**
@@ -193,20 +199,14 @@ public class DocumentWriter {
 	public DocumentTextPosition write(final IDocument document, final org.eclipse.jface.text.IDocument doc, final INode nodeAtCaret) {
 		this.nodeAtCaret = nodeAtCaret;
 		doc.set("");
-		writeNode(document, doc, "");
+		writeNode(document, new TextDocumentOutput(doc), "");
 		return new DocumentTextPosition(startOffsetOfCaretNode);
 	}
 
 	// ====================================================== PRIVATE
 
-	private void writeToOutputStream(final OutputStream out, final org.eclipse.jface.text.Document doc) throws IOException {
-		final PrintWriter printWriter = new PrintWriter(new OutputStreamWriter(out, "UTF-8"));
-		printWriter.print(doc.get());
-		printWriter.flush();
-	}
-
-	private void writeNode(final INode node, final org.eclipse.jface.text.IDocument doc, final String indent) {
-		checkCaretPosition(node, doc);
+	private void writeNode(final INode node, final IOutput out, final String indent) {
+		checkCaretPosition(node, out);
 
 		node.accept(new BaseNodeVisitor() {
 			@Override
@@ -226,29 +226,29 @@ public class DocumentWriter {
 					buffer.append(" \"");
 					buffer.append(document.getSystemID());
 					buffer.append("\">");
-					docPrintln(doc, buffer.toString());
+					println(out, buffer.toString());
 				}
 
 				for (final INode child : document.children()) {
-					writeNode(child, doc, indent);
+					writeNode(child, out, indent);
 				}
 			}
 
 			@Override
 			public void visit(final IDocumentFragment fragment) {
-				docPrint(doc, "<vex_fragment>");
+				out.print("<vex_fragment>");
 				for (final INode child : fragment.children()) {
-					writeNodeNoWrap(child, doc);
+					writeNodeNoWrap(child, out);
 				}
-				docPrintln(doc, "</vex_fragment>");
+				println(out, "</vex_fragment>");
 			}
 
 			@Override
 			public void visit(final IElement element) {
 				if (whitespacePolicy.isPre(element)) {
-					docPrint(doc, indent);
-					writeNodeNoWrap(node, doc);
-					docPrintln(doc, "");
+					out.print(indent);
+					writeNodeNoWrap(node, out);
+					println(out, "");
 					return;
 				}
 
@@ -261,9 +261,9 @@ public class DocumentWriter {
 				}
 
 				if (hasBlockChild) {
-					docPrint(doc, indent);
-					docPrint(doc, "<");
-					docPrint(doc, element.getPrefixedName());
+					out.print(indent);
+					out.print("<");
+					out.print(element.getPrefixedName());
 
 					final TextWrapper wrapper = new TextWrapper();
 					wrapper.addNoSplit(getNamespaceDeclarationsString(element));
@@ -275,38 +275,38 @@ public class DocumentWriter {
 					final String bigIndentString = new String(bigIndent);
 					for (int i = 0; i < lines.length; i++) {
 						if (i > 0) {
-							docPrint(doc, new String(bigIndentString));
+							out.print(new String(bigIndentString));
 						}
-						docPrint(doc, lines[i]);
+						out.print(lines[i]);
 						if (i < lines.length - 1) {
-							docPrintln(doc, "");
+							println(out, "");
 						}
 					}
-					docPrintln(doc, ">");
+					println(out, ">");
 
 					final String childIndent = indent + DocumentWriter.this.indent;
 					for (final INode child : element.children()) {
-						writeNode(child, doc, childIndent);
+						writeNode(child, out, childIndent);
 					}
-					docPrint(doc, indent);
-					docPrint(doc, "</");
-					docPrint(doc, element.getPrefixedName());
-					docPrintln(doc, ">");
+					out.print(indent);
+					out.print("</");
+					out.print(element.getPrefixedName());
+					println(out, ">");
 				} else {
 					final TextWrapper wrapper = new TextWrapper();
-					addNode(element, wrapper, doc);
+					addNode(element, wrapper, out);
 					final String[] lines = wrapper.wrap(wrapColumn - indent.length());
 					for (final String line : lines) {
-						docPrint(doc, indent);
-						docPrintln(doc, line);
+						out.print(indent);
+						println(out, line);
 					}
 				}
 			}
 
 			@Override
 			public void visit(final IComment comment) {
-				docPrint(doc, indent);
-				docPrintln(doc, "<!--");
+				out.print(indent);
+				println(out, "<!--");
 
 				final String childIndent = indent + DocumentWriter.this.indent;
 				final TextWrapper wrapper = new TextWrapper();
@@ -314,21 +314,21 @@ public class DocumentWriter {
 				final String[] lines = wrapper.wrap(wrapColumn - childIndent.length());
 
 				for (final String line : lines) {
-					docPrint(doc, childIndent);
-					docPrintln(doc, line);
+					out.print(childIndent);
+					println(out, line);
 				}
 
-				docPrint(doc, indent);
-				docPrintln(doc, "-->");
+				out.print(indent);
+				println(out, "-->");
 			}
 
 			@Override
 			public void visit(final IProcessingInstruction pi) {
 				// Text in PI's is written as is with no wrapping
-				docPrint(doc, indent);
-				docPrint(doc, "<?");
-				docPrint(doc, pi.getTarget() + " " + node.getText());
-				docPrintln(doc, "?>");
+				out.print(indent);
+				out.print("<?");
+				out.print(pi.getTarget() + " " + node.getText());
+				println(out, "?>");
 			}
 
 			@Override
@@ -345,47 +345,47 @@ public class DocumentWriter {
 				final String[] lines = wrapper.wrap(wrapColumn - indent.length());
 
 				for (final String line : lines) {
-					docPrint(doc, indent);
-					docPrintln(doc, line);
+					out.print(indent);
+					println(out, line);
 				}
 			}
 		});
 	}
 
-	private void writeNodeNoWrap(final INode node, final org.eclipse.jface.text.IDocument doc) {
+	private void writeNodeNoWrap(final INode node, final IOutput out) {
 
-		checkCaretPosition(node, doc);
+		checkCaretPosition(node, out);
 
 		node.accept(new BaseNodeVisitor() {
 			@Override
 			public void visit(final IElement element) {
-				docPrint(doc, "<");
-				docPrint(doc, element.getPrefixedName());
-				docPrint(doc, getNamespaceDeclarationsString(element));
-				docPrint(doc, getAttributeString(element));
-				docPrint(doc, ">");
+				out.print("<");
+				out.print(element.getPrefixedName());
+				out.print(getNamespaceDeclarationsString(element));
+				out.print(getAttributeString(element));
+				out.print(">");
 
 				for (final INode child : element.children()) {
-					writeNodeNoWrap(child, doc);
+					writeNodeNoWrap(child, out);
 				}
 
-				docPrint(doc, "</");
-				docPrint(doc, element.getPrefixedName());
-				docPrint(doc, ">");
+				out.print("</");
+				out.print(element.getPrefixedName());
+				out.print(">");
 			}
 
 			@Override
 			public void visit(final IComment comment) {
-				docPrint(doc, "<!--");
-				docPrint(doc, escape(node.getText()));
-				docPrint(doc, "-->");
+				out.print("<!--");
+				out.print(escape(node.getText()));
+				out.print("-->");
 			}
 
 			@Override
 			public void visit(final IProcessingInstruction pi) {
-				docPrint(doc, "<?");
-				docPrint(doc, pi.getTarget() + " " + node.getText());
-				docPrint(doc, "?>");
+				out.print("<?");
+				out.print(pi.getTarget() + " " + node.getText());
+				out.print("?>");
 			}
 
 			@Override
@@ -396,7 +396,7 @@ public class DocumentWriter {
 
 			@Override
 			public void visit(final IText text) {
-				docPrint(doc, escape(node.getText()));
+				out.print(escape(node.getText()));
 			}
 		});
 	}
@@ -413,9 +413,9 @@ public class DocumentWriter {
 		return result.toString();
 	}
 
-	private void addNode(final INode node, final TextWrapper wrapper, final org.eclipse.jface.text.IDocument doc) {
+	private void addNode(final INode node, final TextWrapper wrapper, final IOutput out) {
 
-		checkCaretPosition(node, doc);
+		checkCaretPosition(node, out);
 
 		node.accept(new BaseNodeVisitor() {
 			@Override
@@ -435,7 +435,7 @@ public class DocumentWriter {
 				wrapper.addNoSplit(buffer.toString());
 
 				for (final INode child : element.children()) {
-					addNode(child, wrapper, doc);
+					addNode(child, wrapper, out);
 				}
 
 				if (elementHasChildren) {
@@ -498,7 +498,7 @@ public class DocumentWriter {
 		return false;
 	}
 
-	private void checkCaretPosition(final INode node, final org.eclipse.jface.text.IDocument doc) {
+	private void checkCaretPosition(final INode node, final IOutput out) {
 		if (startOffsetOfCaretNode > 0) {
 			// Offset already found
 			return;
@@ -513,23 +513,84 @@ public class DocumentWriter {
 
 		if (nodeToCheck.equals(nodeAtCaret)) {
 			// Store the start offset of the found node
-			startOffsetOfCaretNode = doc.getLength();
+			startOffsetOfCaretNode = out.getLength();
 		}
 	}
 
-	private void docPrint(final org.eclipse.jface.text.IDocument doc, final String text) {
-		try {
-			doc.replace(doc.getLength(), 0, text);
-		} catch (final BadLocationException e) {
-			e.printStackTrace();
+	private void println(final IOutput out, final String text) {
+		out.print(text + newLine);
+	}
+
+	/**
+	 * The target the formatted text is written to.
+	 */
+	private static interface IOutput {
+		void print(String text);
+
+		/**
+		 * @return the number of characters written so far
+		 */
+		int getLength();
+	}
+
+	private static class TextDocumentOutput implements IOutput {
+		private final org.eclipse.jface.text.IDocument doc;
+
+		public TextDocumentOutput(final org.eclipse.jface.text.IDocument doc) {
+			this.doc = doc;
+		}
+
+		@Override
+		public void print(final String text) {
+			try {
+				doc.replace(doc.getLength(), 0, text);
+			} catch (final BadLocationException e) {
+				e.printStackTrace();
+			}
+		}
+
+		@Override
+		public int getLength() {
+			return doc.getLength();
 		}
 	}
 
-	private void docPrintln(final org.eclipse.jface.text.IDocument doc, final String text) {
-		try {
-			doc.replace(doc.getLength(), 0, text + newLine);
-		} catch (final BadLocationException e) {
-			e.printStackTrace();
+	/**
+	 * Writes UTF-8 encoded text through a buffer to an output stream. Like PrintWriter, print does not throw an
+	 * IOException. The first IOException is kept and thrown by flush.
+	 */
+	private static class WriterOutput implements IOutput {
+		private final Writer writer;
+		private int length;
+		private IOException exception;
+
+		public WriterOutput(final OutputStream out) throws IOException {
+			writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+		}
+
+		@Override
+		public void print(final String text) {
+			if (exception != null) {
+				return;
+			}
+			try {
+				writer.write(text);
+				length += text.length();
+			} catch (final IOException e) {
+				exception = e;
+			}
+		}
+
+		@Override
+		public int getLength() {
+			return length;
+		}
+
+		public void flush() throws IOException {
+			if (exception != null) {
+				throw exception;
+			}
+			writer.flush();
 		}
 	}
 }
@@ -12,6 +12,7 @@ package org.eclipse.vex.core.internal.io;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -84,6 +85,9 @@ public class NamespaceStack {
 	}
 
 	public Collection<String> getPrefixes() {
+		if (stacks.isEmpty()) {
+			return Collections.emptyList();
+		}
 		final ArrayList<String> result = new ArrayList<String>();
 		for (final String key : stacks.keySet()) {
 			if (key != DEFAULT_PREFIX) {
@@ -0,0 +1,373 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.io;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.MalformedURLException;
+import java.text.MessageFormat;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.vex.core.internal.VEXCorePlugin;
+import org.eclipse.vex.core.internal.css.IStyleSheetProvider;
+import org.eclipse.vex.core.internal.css.IWhitespacePolicyFactory;
+import org.eclipse.vex.core.internal.css.StyleSheet;
+import org.eclipse.vex.core.internal.dom.DepthFirstNodeTraversal;
+import org.eclipse.vex.core.internal.dom.IncludeNode;
+import org.eclipse.vex.core.internal.validator.WTPVEXValidator;
+import org.eclipse.vex.core.provisional.dom.DocumentContentModel;
+import org.eclipse.vex.core.provisional.dom.IAttribute;
+import org.eclipse.vex.core.provisional.dom.IDocument;
+import org.eclipse.vex.core.provisional.dom.IElement;
+import org.eclipse.vex.core.provisional.dom.IIncludeNode;
+import org.eclipse.vex.core.provisional.dom.IValidator;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+
+/**
+ * Loads the documents which are referenced by the XInclude elements of a document.<br/>
+ *
+ * The included documents are parsed concurrently by a bounded pool of threads, each one into an independent document
+ * with its own content. A loaded document is attached to its include node (see {@link IIncludeNode#getResolved()}) and
+ * the includes within the loaded document are loaded as well. Includes of plain text, includes with an xpointer and
+ * includes which would include one of their including documents again are not resolved. An include is also not
+ * resolved if its document cannot be read for any reason, the fallback of the include applies in this case. The failure
+ * is logged and does not affect the other includes.<br/>
+ *
+ * All included documents of the same document type (DTD or XML Schema) share one validator, so each content model is
+ * loaded only once. The document type of an included document is determined from its prolog before it is read.
+ *
+ * @author agent
+ */
+public class XIncludeLoader {
+
+	private final int threadCount;
+
+	private final ConcurrentHashMap<String, IValidator> validators = new ConcurrentHashMap<String, IValidator>();
+
+	private StyleSheet styleSheet = StyleSheet.NULL;
+	private IWhitespacePolicyFactory whitespacePolicyFactory = IWhitespacePolicyFactory.NULL;
+
+	public XIncludeLoader() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threadCount
+	 *            the maximum number of documents which are parsed concurrently
+	 */
+	public XIncludeLoader(final int threadCount) {
+		Assert.isTrue(threadCount > 0, "The thread count must be positive.");
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * The included documents are read with the given style sheet, usually the style sheet of the including document.
+	 * Style sheets cannot be used concurrently, so each document is read with its own copy of the style sheet.
+	 */
+	public void setStyleSheet(final StyleSheet styleSheet) {
+		Assert.isNotNull(styleSheet);
+		this.styleSheet = styleSheet;
+	}
+
+	public void setWhitespacePolicyFactory(final IWhitespacePolicyFactory whitespacePolicyFactory) {
+		Assert.isNotNull(whitespacePolicyFactory);
+		this.whitespacePolicyFactory = whitespacePolicyFactory;
+	}
+
+	/**
+	 * Loads all documents which are included by the given document, directly or by one of the included documents. The
+	 * include nodes are only modified in the calling thread.
+	 */
+	public void load(final IDocument document) throws InterruptedException {
+		final ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "Vex XInclude Loader");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			final CompletionService<LoadedDocument> loadedDocuments = new ExecutorCompletionService<LoadedDocument>(executor);
+			int pendingCount = submitIncludes(document, Collections.singleton(document.getDocumentURI()), loadedDocuments);
+			while (pendingCount > 0) {
+				final LoadedDocument loadedDocument = getResult(loadedDocuments);
+				pendingCount--;
+				if (loadedDocument.document != null) {
+					loadedDocument.include.setResolved(loadedDocument.document);
+					pendingCount += submitIncludes(loadedDocument.document, loadedDocument.includingUrls, loadedDocuments);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static LoadedDocument getResult(final CompletionService<LoadedDocument> loadedDocuments) throws InterruptedException {
+		try {
+			return loadedDocuments.take().get();
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private int submitIncludes(final IDocument document, final Set<String> includingUrls, final CompletionService<LoadedDocument> loadedDocuments) {
+		int submittedCount = 0;
+		for (final IncludeNode include : findIncludes(document)) {
+			final URL url = getIncludedUrl(include);
+			if (url == null || includingUrls.contains(url.toString())) {
+				continue;
+			}
+
+			final Set<String> urls = new HashSet<String>(includingUrls);
+			urls.add(url.toString());
+			loadedDocuments.submit(new Callable<LoadedDocument>() {
+				@Override
+				public LoadedDocument call() {
+					return new LoadedDocument(include, urls, read(url));
+				}
+			});
+			submittedCount++;
+		}
+		return submittedCount;
+	}
+
+	private static List<IncludeNode> findIncludes(final IDocument document) {
+		final ArrayList<IncludeNode> result = new ArrayList<IncludeNode>();
+		document.accept(new DepthFirstNodeTraversal<Object>() {
+			@Override
+			public Object visit(final IIncludeNode include) {
+				if (include instanceof IncludeNode) {
+					result.add((IncludeNode) include);
+				}
+				return null;
+			}
+		});
+		return result;
+	}
+
+	private static URL getIncludedUrl(final IIncludeNode include) {
+		final IElement reference = include.getReference();
+		final IAttribute href = reference.getAttribute("href");
+		final IAttribute parse = reference.getAttribute("parse");
+		if (href == null || "".equals(href.getValue()) || reference.getAttribute("xpointer") != null) {
+			return null;
+		}
+		if (parse != null && !"xml".equals(parse.getValue())) {
+			return null;
+		}
+
+		final String baseUri = reference.getBaseURI();
+		try {
+			if (baseUri == null) {
+				return new URL(href.getValue());
+			}
+			return new URL(new URL(baseUri), href.getValue());
+		} catch (final MalformedURLException e) {
+			return null;
+		}
+	}
+
+	private IDocument read(final URL url) {
+		try {
+			final IValidator validator = getSharedValidator(readDocumentType(url));
+
+			final DocumentReader reader = new DocumentReader();
+			reader.setValidator(validator);
+			reader.setWhitespacePolicyFactory(whitespacePolicyFactory);
+			reader.setStyleSheetProvider(new IStyleSheetProvider() {
+				@Override
+				public StyleSheet getStyleSheet(final DocumentContentModel documentContentModel) {
+					return new StyleSheet(styleSheet.getRules(), styleSheet.getBaseUrl());
+				}
+			});
+
+			final IDocument document = reader.read(url);
+			if (document != null) {
+				document.setValidator(validator);
+			}
+			return document;
+		} catch (final IOException e) {
+			logReadFailure(url, e);
+			return null;
+		} catch (final ParserConfigurationException e) {
+			logReadFailure(url, e);
+			return null;
+		} catch (final SAXException e) {
+			logReadFailure(url, e);
+			return null;
+		} catch (final RuntimeException e) {
+			logReadFailure(url, e);
+			return null;
+		}
+	}
+
+	private static void logReadFailure(final URL url, final Exception e) {
+		VEXCorePlugin.getInstance().getLog().log(new Status(IStatus.WARNING, VEXCorePlugin.ID, MessageFormat.format("Cannot read included document: {0}", url), e));
+	}
+
+	private IValidator getSharedValidator(final SharedDocumentContentModel documentType) {
+		final String key = documentType.getKey();
+		final IValidator validator = validators.get(key);
+		if (validator != null) {
+			return validator;
+		}
+		final IValidator newValidator = createValidator(documentType);
+		final IValidator concurrentValidator = validators.putIfAbsent(key, newValidator);
+		if (concurrentValidator != null) {
+			return concurrentValidator;
+		}
+		return newValidator;
+	}
+
+	/**
+	 * Creates the validator for all included documents of the given document type. The validator is used concurrently
+	 * by several threads, so it has to be thread-safe.
+	 */
+	protected IValidator createValidator(final DocumentContentModel documentType) {
+		return new WTPVEXValidator(documentType);
+	}
+
+	/*
+	 * Reads only the prolog and the start of the root element, without loading the DTD.
+	 */
+	private static SharedDocumentContentModel readDocumentType(final URL url) throws IOException, ParserConfigurationException, SAXException {
+		final SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setValidating(false);
+		factory.setNamespaceAware(true);
+		final XMLReader xmlReader = factory.newSAXParser().getXMLReader();
+
+		final DocumentTypeHandler handler = new DocumentTypeHandler();
+		xmlReader.setContentHandler(handler);
+		xmlReader.setProperty("http://xml.org/sax/properties/lexical-handler", handler);
+		xmlReader.setEntityResolver(handler);
+		try {
+			xmlReader.parse(new InputSource(url.toString()));
+		} catch (final RootElementReached e) {
+			// the document type is known now
+		}
+		return new SharedDocumentContentModel(url, handler.publicId, handler.systemId, handler.rootNamespace);
+	}
+
+	private static class DocumentTypeHandler extends DefaultHandler2 {
+		public String publicId;
+		public String systemId;
+		public String rootNamespace;
+
+		@Override
+		public void startDTD(final String name, final String publicId, final String systemId) {
+			this.publicId = publicId;
+			this.systemId = systemId;
+		}
+
+		@Override
+		public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) throws SAXException {
+			if (uri != null && !"".equals(uri)) {
+				rootNamespace = uri;
+			}
+			throw new RootElementReached();
+		}
+
+		@Override
+		public InputSource resolveEntity(final String name, final String publicId, final String baseURI, final String systemId) {
+			return new InputSource(new StringReader(""));
+		}
+
+		@Override
+		public InputSource resolveEntity(final String publicId, final String systemId) {
+			return new InputSource(new StringReader(""));
+		}
+	}
+
+	private static class RootElementReached extends SAXException {
+		private static final long serialVersionUID = 1L;
+	}
+
+	/*
+	 * The content model of a document type which is shared by several documents. It keeps the document type it was
+	 * created for, because the documents are read concurrently and would otherwise initialize it again and again.
+	 */
+	private static class SharedDocumentContentModel extends DocumentContentModel {
+		private final String key;
+
+		public SharedDocumentContentModel(final URL url, final String publicId, final String systemId, final String rootNamespace) {
+			if (publicId != null || systemId != null) {
+				super.initialize(url.toString(), publicId, systemId, null);
+				key = "DTD " + resolveDtdUrl(url, publicId, systemId);
+			} else {
+				setSchemaId(url.toString(), rootNamespace);
+				key = "Schema " + rootNamespace;
+			}
+		}
+
+		private String resolveDtdUrl(final URL url, final String publicId, final String systemId) {
+			try {
+				final String resolvedUrl = resolveResourceURI(publicId, systemId);
+				if (resolvedUrl != null) {
+					return resolvedUrl;
+				}
+				if (systemId != null) {
+					return new URL(url, systemId).toString();
+				}
+			} catch (final IOException e) {
+				// use the identifier of the document type
+			}
+			return getMainDocumentTypeIdentifier();
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		@Override
+		public void initialize(final String baseUri, final String publicId, final String systemId, final IElement rootElement) {
+			// keep the document type
+		}
+	}
+
+	private static class LoadedDocument {
+		public final IncludeNode include;
+		public final Set<String> includingUrls;
+		public final IDocument document;
+
+		public LoadedDocument(final IncludeNode include, final Set<String> includingUrls, final IDocument document) {
+			this.include = include;
+			this.includingUrls = includingUrls;
+			this.document = document;
+		}
+	}
+}
@@ -7,9 +7,13 @@
  *
  * Contributors:
  *     Carsten Hiesserich - initial API and implementation
+ *     agent - estimate the retained size
  *******************************************************************************/
 package org.eclipse.vex.core.internal.undo;
 
+import org.eclipse.vex.core.provisional.dom.IContent;
+import org.eclipse.vex.core.provisional.dom.IDocumentFragment;
+
 /**
  * A default implementation of <code>IUndoableEdit</code> that can be used as a base for implementing editing
  * operations.
@@ -17,6 +21,16 @@ package org.eclipse.vex.core.internal.undo;
  */
 public abstract class AbstractUndoableEdit implements IUndoableEdit {
 
+	/**
+	 * The estimated number of bytes of an edit object with its fields.
+	 */
+	protected static final long EDIT_SIZE = 64;
+
+	/**
+	 * The estimated number of bytes of a node with its positions and attributes.
+	 */
+	private static final long NODE_SIZE = 128;
+
 	/**
 	 * Indicates whether this editing action has been executed. A value of <code>true</code> means that the action was
 	 * performed, or that a redo operation was successful.
@@ -95,4 +109,43 @@ public abstract class AbstractUndoableEdit implements IUndoableEdit {
 	public boolean canRedo() {
 		return !hasBeenDone;
 	}
+
+	/**
+	 * The default implementation returns the size of the edit object itself. Subclasses which keep text or fragments
+	 * have to add their size.
+	 */
+	@Override
+	public long getRetainedSize() {
+		return EDIT_SIZE;
+	}
+
+	/**
+	 * @return the estimated number of bytes of the given text, or 0 if the text is null
+	 */
+	protected static long getRetainedSize(final CharSequence text) {
+		if (text == null) {
+			return 0;
+		}
+		return 2L * text.length();
+	}
+
+	/**
+	 * Each node of a fragment is delimited by two tag markers in the content of the fragment, so the nodes are counted
+	 * without traversing them.
+	 *
+	 * @return the estimated number of bytes of the given fragment, or 0 if the fragment is null
+	 */
+	protected static long getRetainedSize(final IDocumentFragment fragment) {
+		if (fragment == null) {
+			return 0;
+		}
+		final IContent content = fragment.getContent();
+		long tagMarkerCount = 0;
+		for (int offset = 0; offset < content.length(); offset += 1) {
+			if (content.isTagMarker(offset)) {
+				tagMarkerCount += 1;
+			}
+		}
+		return 2L * content.length() + tagMarkerCount / 2 * NODE_SIZE;
+	}
 }
\ No newline at end of file
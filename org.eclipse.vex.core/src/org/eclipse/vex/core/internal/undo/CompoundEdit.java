@@ -9,6 +9,7 @@
  *     John Krasnay - initial API and implementation
  *     Igor Jacy Lino Campista - Java 5 warnings fixed (bug 311325)
  *	   Carsten Hiesserich - Refactored to use AbstractUndoableEdit
+ *	   agent - estimate the retained size
  *******************************************************************************/
 package org.eclipse.vex.core.internal.undo;
 
@@ -22,6 +23,12 @@ public class CompoundEdit extends AbstractUndoableEdit {
 
 	private final List<IUndoableEdit> edits = new ArrayList<IUndoableEdit>();
 
+	/*
+	 * The sum of the retained sizes of the edits, calculated once after the edits were added, done or undone. A
+	 * negative value indicates that the sum has to be calculated.
+	 */
+	private long retainedSize = -1;
+
 	/**
 	 * Adds an edit to the list.
 	 *
@@ -30,6 +37,7 @@ public class CompoundEdit extends AbstractUndoableEdit {
 	 */
 	public void addEdit(final IUndoableEdit edit) {
 		edits.add(edit);
+		retainedSize = -1;
 	}
 
 	/**
@@ -43,6 +51,7 @@ public class CompoundEdit extends AbstractUndoableEdit {
 				edit.redo();
 			}
 		}
+		retainedSize = -1;
 	}
 
 	/**
@@ -56,6 +65,7 @@ public class CompoundEdit extends AbstractUndoableEdit {
 				edit.undo();
 			}
 		}
+		retainedSize = -1;
 	}
 
 	@Override
@@ -81,4 +91,16 @@ public class CompoundEdit extends AbstractUndoableEdit {
 		}
 		return edits.get(edits.size() - 1).getOffsetAfter();
 	}
+
+	@Override
+	public long getRetainedSize() {
+		if (retainedSize < 0) {
+			long result = EDIT_SIZE;
+			for (final IUndoableEdit edit : edits) {
+				result += edit.getRetainedSize();
+			}
+			retainedSize = result;
+		}
+		return retainedSize;
+	}
 }
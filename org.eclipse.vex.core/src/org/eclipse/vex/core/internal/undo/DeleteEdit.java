@@ -8,6 +8,7 @@
  * Contributors:
  * 		John Krasnay - initial API and implementation
  *		Carsten Hiesserich - Refactored to use AbstractUndoableEdit
+ *		agent - estimate the retained size
  *******************************************************************************/
 package org.eclipse.vex.core.internal.undo;
 
@@ -22,6 +23,7 @@ public class DeleteEdit extends AbstractUndoableEdit {
 	private final ContentRange range;
 	private final int offsetToRestore;
 	private IDocumentFragment fragment = null;
+	private long fragmentSize = 0;
 
 	public DeleteEdit(final IDocument document, final ContentRange range, final int offsetToRestore) {
 		super();
@@ -35,6 +37,7 @@ public class DeleteEdit extends AbstractUndoableEdit {
 		try {
 			document.insertFragment(range.getStartOffset(), fragment);
 			fragment = null;
+			fragmentSize = 0;
 		} catch (final DocumentValidationException e) {
 			throw new CannotUndoException(e);
 		}
@@ -44,6 +47,7 @@ public class DeleteEdit extends AbstractUndoableEdit {
 	protected void performRedo() throws CannotApplyException {
 		try {
 			fragment = document.getFragment(range);
+			fragmentSize = getRetainedSize(fragment);
 			document.delete(range);
 		} catch (final DocumentValidationException e) {
 			throw new CannotApplyException(e);
@@ -57,4 +61,9 @@ public class DeleteEdit extends AbstractUndoableEdit {
 	public int getOffsetAfter() {
 		return range.getStartOffset();
 	}
+
+	@Override
+	public long getRetainedSize() {
+		return EDIT_SIZE + fragmentSize;
+	}
 }
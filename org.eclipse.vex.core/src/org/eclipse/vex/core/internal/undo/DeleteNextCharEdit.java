@@ -79,4 +79,9 @@ public class DeleteNextCharEdit extends AbstractUndoableEdit {
 		return offset;
 	}
 
+	@Override
+	public long getRetainedSize() {
+		return EDIT_SIZE + getRetainedSize(textToRestore);
+	}
+
 }
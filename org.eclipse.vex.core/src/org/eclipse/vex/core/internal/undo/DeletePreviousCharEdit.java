@@ -79,4 +79,9 @@ public class DeletePreviousCharEdit extends AbstractUndoableEdit {
 		return offset - count;
 	}
 
+	@Override
+	public long getRetainedSize() {
+		return EDIT_SIZE + getRetainedSize(textToRestore);
+	}
+
 }
@@ -12,26 +12,73 @@ package org.eclipse.vex.core.internal.undo;
 
 import java.util.LinkedList;
 
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.vex.core.provisional.dom.IDocument;
+
 /**
+ * The history of the edits of a document, which can be undone and redone.<br/>
+ *
+ * The memory retained by the edits in the history is bounded (see {@link IUndoableEdit#getRetainedSize()}). If the
+ * retained size exceeds the maximum when an edit is applied, the oldest edits are discarded and cannot be undone
+ * anymore. The most recent edit is always kept. Only the edits which can be undone count towards the maximum: the edits
+ * which can be redone are discarded anyway with the next applied edit. Undo and redo never discard any edits.
+ *
  * @author Florian Thienel
  */
 public class EditStack {
 
+	public static final long DEFAULT_MAX_RETAINED_SIZE = 32 * 1024 * 1024;
+
+	private final long maxRetainedSize;
+	private long retainedSize;
+
 	private final LinkedList<IUndoableEdit> doneEdits = new LinkedList<IUndoableEdit>();
 	private final LinkedList<IUndoableEdit> undoneEdits = new LinkedList<IUndoableEdit>();
 
 	private final LinkedList<CompoundEdit> pendingEdits = new LinkedList<CompoundEdit>();
 
 	private IUndoableEdit cleanMarker = null;
+	private boolean cleanStateDiscarded = false;
+
+	private IDocument batchedDocument = null;
+
+	public EditStack() {
+		this(DEFAULT_MAX_RETAINED_SIZE);
+	}
+
+	/**
+	 * @param maxRetainedSize
+	 *            the maximum number of bytes retained by the edits in the history
+	 */
+	public EditStack(final long maxRetainedSize) {
+		Assert.isTrue(maxRetainedSize > 0, "The maximum retained size must be positive.");
+		this.maxRetainedSize = maxRetainedSize;
+	}
+
+	/**
+	 * Collect the content change events of the given document during each unit of work (from {@link #beginWork()} to
+	 * {@link #commitWork()} or {@link #rollbackWork()}) and during undo and redo, so that the document's listeners are
+	 * notified only once per unit of work.
+	 *
+	 * @param document
+	 *            the document whose events should be batched, or null to disable batching
+	 * @see IDocument#beginEventBatch()
+	 */
+	public void setEventBatching(final IDocument document) {
+		Assert.isTrue(pendingEdits.isEmpty(), "Cannot change the event batching while work is pending.");
+		batchedDocument = document;
+	}
 
 	public <T extends IUndoableEdit> T apply(final T edit) throws CannotApplyException {
 		edit.redo();
 
 		if (pendingEdits.isEmpty()) {
-			if (doneEdits.isEmpty() || !doneEdits.peek().combine(edit)) {
+			if (!combineWithLastDoneEdit(edit)) {
 				doneEdits.push(edit);
+				retainedSize += edit.getRetainedSize();
 			}
-			undoneEdits.clear();
+			discardUndoneEdits();
+			discardOldestDoneEdits();
 		} else {
 			pendingEdits.peek().addEdit(edit);
 		}
@@ -45,9 +92,16 @@ public class EditStack {
 		}
 
 		final IUndoableEdit undoneEdit = doneEdits.peek();
-		undoneEdit.undo();
+		final long doneSize = undoneEdit.getRetainedSize();
+		beginEventBatch();
+		try {
+			undoneEdit.undo();
+		} finally {
+			endEventBatch();
+		}
 
 		undoneEdits.push(doneEdits.pop());
+		retainedSize -= doneSize;
 
 		return undoneEdit;
 	}
@@ -58,9 +112,15 @@ public class EditStack {
 		}
 
 		final IUndoableEdit redoneEdit = undoneEdits.peek();
-		redoneEdit.redo();
+		beginEventBatch();
+		try {
+			redoneEdit.redo();
+		} finally {
+			endEventBatch();
+		}
 
 		doneEdits.push(undoneEdits.pop());
+		retainedSize += redoneEdit.getRetainedSize();
 
 		return redoneEdit;
 	}
@@ -75,6 +135,7 @@ public class EditStack {
 
 	public void beginWork() {
 		pendingEdits.push(new CompoundEdit());
+		beginEventBatch();
 	}
 
 	public IUndoableEdit commitWork() {
@@ -82,7 +143,11 @@ public class EditStack {
 			throw new CannotApplyException("No edit pending, cannot commit!");
 		}
 
-		return apply(pendingEdits.pop());
+		try {
+			return apply(pendingEdits.pop());
+		} finally {
+			endEventBatch();
+		}
 	}
 
 	public IUndoableEdit rollbackWork() {
@@ -91,7 +156,11 @@ public class EditStack {
 		}
 
 		final CompoundEdit work = pendingEdits.pop();
-		work.undo();
+		try {
+			work.undo();
+		} finally {
+			endEventBatch();
+		}
 		return work;
 	}
 
@@ -100,10 +169,64 @@ public class EditStack {
 	}
 
 	public boolean isDirty() {
-		return doneEdits.peek() != cleanMarker;
+		return cleanStateDiscarded || doneEdits.peek() != cleanMarker;
 	}
 
 	public void markClean() {
 		cleanMarker = doneEdits.peek();
+		cleanStateDiscarded = false;
+	}
+
+	/**
+	 * @return the estimated number of bytes retained by the edits in the history which can be undone
+	 */
+	public long getRetainedSize() {
+		return retainedSize;
+	}
+
+	private boolean combineWithLastDoneEdit(final IUndoableEdit edit) {
+		if (doneEdits.isEmpty()) {
+			return false;
+		}
+		final IUndoableEdit lastDoneEdit = doneEdits.peek();
+		final long sizeBefore = lastDoneEdit.getRetainedSize();
+		if (!lastDoneEdit.combine(edit)) {
+			return false;
+		}
+		retainedSize += lastDoneEdit.getRetainedSize() - sizeBefore;
+		return true;
+	}
+
+	private void discardUndoneEdits() {
+		undoneEdits.clear();
+	}
+
+	/*
+	 * The clean state is the state after the edit in the clean marker, or the initial state if the clean marker is
+	 * null. When the edit in the clean marker is discarded, the clean state becomes the state before the oldest
+	 * remaining edit. When the initial state is the clean state, it cannot be reached anymore.
+	 */
+	private void discardOldestDoneEdits() {
+		while (retainedSize > maxRetainedSize && doneEdits.size() > 1) {
+			final IUndoableEdit discardedEdit = doneEdits.removeLast();
+			retainedSize -= discardedEdit.getRetainedSize();
+			if (cleanMarker == null) {
+				cleanStateDiscarded = true;
+			} else if (cleanMarker == discardedEdit) {
+				cleanMarker = null;
+			}
+		}
+	}
+
+	private void beginEventBatch() {
+		if (batchedDocument != null) {
+			batchedDocument.beginEventBatch();
+		}
+	}
+
+	private void endEventBatch() {
+		if (batchedDocument != null) {
+			batchedDocument.endEventBatch();
+		}
 	}
 }
@@ -8,6 +8,7 @@
  * Contributors:
  *     John Krasnay - initial API and implementation
  *     Carsten Hiesserich - Added methods to support AbstractUndoableEdit
+ *     agent - estimate the retained size
  *******************************************************************************/
 package org.eclipse.vex.core.internal.undo;
 
@@ -55,4 +56,12 @@ public interface IUndoableEdit {
 	public int getOffsetBefore();
 
 	public int getOffsetAfter();
+
+	/**
+	 * Estimates the memory which this edit keeps in its current state to be undone or redone, like the text or the
+	 * fragment it removed from the document.
+	 *
+	 * @return the estimated number of bytes retained by this edit
+	 */
+	public long getRetainedSize();
 }
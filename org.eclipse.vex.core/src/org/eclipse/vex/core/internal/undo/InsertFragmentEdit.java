@@ -7,6 +7,7 @@
  *
  * Contributors:
  * 		John Krasnay - initial API and implementation
+ * 		agent - estimate the retained size
  *		Carsten Hiesserich - Refactored to use AbstractUndoableEdit
  *******************************************************************************/
 package org.eclipse.vex.core.internal.undo;
@@ -20,12 +21,14 @@ public class InsertFragmentEdit extends AbstractUndoableEdit {
 	private final IDocument document;
 	private final int offset;
 	private final IDocumentFragment fragment;
+	private final long fragmentSize;
 
 	public InsertFragmentEdit(final IDocument document, final int offset, final IDocumentFragment fragment) {
 		super();
 		this.document = document;
 		this.offset = offset;
 		this.fragment = fragment;
+		fragmentSize = getRetainedSize(fragment);
 	}
 
 	@Override
@@ -53,4 +56,9 @@ public class InsertFragmentEdit extends AbstractUndoableEdit {
 	public int getOffsetAfter() {
 		return fragment.getContent().getRange().moveBy(offset).getEndOffset();
 	}
+
+	@Override
+	public long getRetainedSize() {
+		return EDIT_SIZE + fragmentSize;
+	}
 }
@@ -8,6 +8,7 @@
  * Contributors:
  * 		John Krasnay - initial API and implementation
  *		Carsten Hiesserich - Refactored to use AbstractUndoableEdit
+ *		agent - collect combined text in a StringBuilder
  *******************************************************************************/
 package org.eclipse.vex.core.internal.undo;
 
@@ -19,13 +20,17 @@ public class InsertTextEdit extends AbstractUndoableEdit {
 
 	private final IDocument document;
 	private final int offset;
-	private String text;
+	/*
+	 * Typing combines one edit per character, so the text is collected in a StringBuilder to avoid copying the whole
+	 * text for each character.
+	 */
+	private final StringBuilder text;
 
 	public InsertTextEdit(final IDocument document, final int offset, final String text) {
 		super();
 		this.document = document;
 		this.offset = offset;
-		this.text = text;
+		this.text = new StringBuilder(text);
 	}
 
 	@Override
@@ -33,7 +38,7 @@ public class InsertTextEdit extends AbstractUndoableEdit {
 		if (edit instanceof InsertTextEdit) {
 			final InsertTextEdit ite = (InsertTextEdit) edit;
 			if (ite.offset == offset + text.length()) {
-				text = text + ite.text;
+				text.append(ite.text);
 				return true;
 			}
 		}
@@ -52,7 +57,7 @@ public class InsertTextEdit extends AbstractUndoableEdit {
 	@Override
 	protected void performRedo() throws CannotApplyException {
 		try {
-			document.insertText(offset, text);
+			document.insertText(offset, text.toString());
 		} catch (final DocumentValidationException e) {
 			throw new CannotApplyException(e);
 		}
@@ -65,4 +70,9 @@ public class InsertTextEdit extends AbstractUndoableEdit {
 	public int getOffsetAfter() {
 		return offset + text.length();
 	}
+
+	@Override
+	public long getRetainedSize() {
+		return EDIT_SIZE + getRetainedSize(text);
+	}
 }
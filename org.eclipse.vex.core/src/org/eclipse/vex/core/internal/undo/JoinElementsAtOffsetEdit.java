@@ -25,6 +25,7 @@ public class JoinElementsAtOffsetEdit extends AbstractUndoableEdit {
 	private final int offset;
 	private ContentRange rangeToRestore = null;
 	private IDocumentFragment fragmentToRestore = null;
+	private long fragmentToRestoreSize = 0;
 	private int offsetAfter;
 
 	public JoinElementsAtOffsetEdit(final IDocument document, final int offset) {
@@ -59,6 +60,7 @@ public class JoinElementsAtOffsetEdit extends AbstractUndoableEdit {
 
 		offsetAfter = headElement.getEndOffset();
 		fragmentToRestore = document.getFragment(headElement.getRange().union(tailElement.getRange()));
+		fragmentToRestoreSize = getRetainedSize(fragmentToRestore);
 
 		try {
 			document.delete(tailElement.getRange());
@@ -87,6 +89,7 @@ public class JoinElementsAtOffsetEdit extends AbstractUndoableEdit {
 			document.insertFragment(rangeToRestore.getStartOffset(), fragmentToRestore);
 			rangeToRestore = null;
 			fragmentToRestore = null;
+			fragmentToRestoreSize = 0;
 		} catch (final DocumentValidationException e) {
 			throw new CannotUndoException(e);
 		}
@@ -102,4 +105,9 @@ public class JoinElementsAtOffsetEdit extends AbstractUndoableEdit {
 		return offsetAfter;
 	}
 
+	@Override
+	public long getRetainedSize() {
+		return EDIT_SIZE + fragmentToRestoreSize;
+	}
+
 }
@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.validator;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.wst.xml.core.internal.contentmodel.CMContent;
+import org.eclipse.wst.xml.core.internal.contentmodel.CMElementDeclaration;
+import org.eclipse.wst.xml.core.internal.contentmodel.CMGroup;
+import org.eclipse.wst.xml.core.internal.contentmodel.CMNode;
+import org.eclipse.wst.xml.core.internal.contentmodel.CMNodeList;
+
+/**
+ * The content model of an element declaration, compiled into a deterministic finite automaton over the local names of
+ * the child elements.<br/>
+ *
+ * The content model is first translated into a nondeterministic automaton. Its states are combined into deterministic
+ * states lazily, when a transition is used for the first time, and the transitions are kept for the next time. Stepping
+ * through a sequence of child elements hence costs one map lookup per child.<br/>
+ *
+ * Text is accepted anywhere in mixed content and rejected in element content. Only element and mixed content is
+ * compiled, and only if it contains neither 'all' groups, wildcards, substitution groups nor large occurrence bounds,
+ * see {@link #compile(CMElementDeclaration)}.<br/>
+ *
+ * The automaton follows the partial validation of the CMValidator: a sequence which leads to a state is a prefix of a
+ * valid content, i.e. all of its elements would be counted by {@code getPartialValidationCount()}. A sequence which
+ * leads to an accepting state is a valid content.
+ *
+ * @author agent
+ */
+public class ContentModelAutomaton {
+
+	public static final String PCDATA = "#PCDATA";
+
+	private static final int MAX_EXPANDED_OCCURRENCES = 32;
+	private static final int MAX_NFA_STATES = 5000;
+
+	private static final String SUBSTITUTION_GROUP = "SubstitutionGroup";
+
+	private final boolean textAllowed;
+
+	private final List<List<Integer>> epsilonTransitions = new ArrayList<List<Integer>>();
+	private final List<List<Transition>> transitions = new ArrayList<List<Transition>>();
+	private int finalNfaState;
+
+	private final Map<BitSet, State> states = new HashMap<BitSet, State>();
+	private State startState;
+
+	/**
+	 * The CMValidator does not walk a content model graph for ANY, EMPTY and PCDATA content, so there is nothing to gain
+	 * and these content types are not compiled. Neither are wildcards and substitution groups, because the CMValidator
+	 * matches them by namespace and by the members of the group, which are not known from the local name alone.
+	 *
+	 * @return the automaton for the content model of the given element declaration, or null if the content model is
+	 *         not compiled
+	 */
+	public static ContentModelAutomaton compile(final CMElementDeclaration elementDeclaration) {
+		final ContentModelAutomaton automaton;
+		switch (elementDeclaration.getContentType()) {
+		case CMElementDeclaration.ELEMENT:
+			automaton = new ContentModelAutomaton(false);
+			break;
+		case CMElementDeclaration.MIXED:
+			automaton = new ContentModelAutomaton(true);
+			break;
+		default:
+			return null;
+		}
+
+		final int start = automaton.createNfaState();
+		final CMContent content = elementDeclaration.getContent();
+		if (content != null) {
+			final int[] fragment = automaton.buildWithOccurrences(content);
+			if (fragment == null) {
+				return null;
+			}
+			automaton.addEpsilonTransition(start, fragment[0]);
+			automaton.finalNfaState = fragment[1];
+		} else {
+			automaton.finalNfaState = start;
+		}
+
+		final BitSet startStates = new BitSet();
+		startStates.set(start);
+		automaton.startState = automaton.createState(startStates);
+		return automaton;
+	}
+
+	private ContentModelAutomaton(final boolean textAllowed) {
+		this.textAllowed = textAllowed;
+	}
+
+	public State getStartState() {
+		return startState;
+	}
+
+	/**
+	 * @param state
+	 *            the current state
+	 * @param name
+	 *            the local name of the next child element or {@link #PCDATA} for text
+	 * @return the next state, or null if the given child is not allowed in the current state
+	 */
+	public State step(final State state, final String name) {
+		if (PCDATA.equals(name)) {
+			return textAllowed ? state : null;
+		}
+
+		if (state.transitions.containsKey(name)) {
+			return state.transitions.get(name);
+		}
+		final State nextState = computeNextState(state, name);
+		state.transitions.put(name, nextState);
+		return nextState;
+	}
+
+	private State computeNextState(final State state, final String name) {
+		final BitSet nextNfaStates = new BitSet();
+		for (int nfaState = state.nfaStates.nextSetBit(0); nfaState >= 0; nfaState = state.nfaStates.nextSetBit(nfaState + 1)) {
+			for (final Transition transition : transitions.get(nfaState)) {
+				if (transition.name.equals(name)) {
+					nextNfaStates.set(transition.target);
+				}
+			}
+		}
+		if (nextNfaStates.isEmpty()) {
+			return null;
+		}
+		return createState(nextNfaStates);
+	}
+
+	private State createState(final BitSet nfaStates) {
+		final BitSet closure = (BitSet) nfaStates.clone();
+		final ArrayList<Integer> pending = new ArrayList<Integer>();
+		for (int nfaState = closure.nextSetBit(0); nfaState >= 0; nfaState = closure.nextSetBit(nfaState + 1)) {
+			pending.add(nfaState);
+		}
+		while (!pending.isEmpty()) {
+			final int nfaState = pending.remove(pending.size() - 1);
+			for (final Integer target : epsilonTransitions.get(nfaState)) {
+				if (!closure.get(target)) {
+					closure.set(target);
+					pending.add(target);
+				}
+			}
+		}
+		final State knownState = states.get(closure);
+		if (knownState != null) {
+			return knownState;
+		}
+		final State state = new State(closure, closure.get(finalNfaState));
+		states.put(closure, state);
+		return state;
+	}
+
+	/*
+	 * Building the nondeterministic automaton: each fragment has a start and an end state.
+	 */
+
+	private int[] buildWithOccurrences(final CMContent content) {
+		final int minOccur = Math.max(content.getMinOccur(), 0);
+		final int maxOccur = content.getMaxOccur();
+		if (minOccur > MAX_EXPANDED_OCCURRENCES || maxOccur > MAX_EXPANDED_OCCURRENCES || maxOccur >= 0 && maxOccur < minOccur) {
+			return null;
+		}
+
+		final int start = createNfaState();
+		int current = start;
+		for (int i = 0; i < minOccur; i++) {
+			final int[] fragment = buildOnce(content);
+			if (fragment == null) {
+				return null;
+			}
+			addEpsilonTransition(current, fragment[0]);
+			current = fragment[1];
+		}
+
+		if (maxOccur < 0) {
+			final int loop = createNfaState();
+			final int[] fragment = buildOnce(content);
+			if (fragment == null) {
+				return null;
+			}
+			addEpsilonTransition(current, loop);
+			addEpsilonTransition(loop, fragment[0]);
+			addEpsilonTransition(fragment[1], loop);
+			current = loop;
+		} else {
+			for (int i = minOccur; i < maxOccur; i++) {
+				final int[] fragment = buildOnce(content);
+				if (fragment == null) {
+					return null;
+				}
+				final int next = createNfaState();
+				addEpsilonTransition(current, fragment[0]);
+				addEpsilonTransition(current, next);
+				addEpsilonTransition(fragment[1], next);
+				current = next;
+			}
+		}
+
+		return new int[] { start, current };
+	}
+
+	private int[] buildOnce(final CMContent content) {
+		if (transitions.size() > MAX_NFA_STATES) {
+			return null;
+		}
+		switch (content.getNodeType()) {
+		case CMNode.ELEMENT_DECLARATION:
+			if (hasSubstitutionGroup(content)) {
+				return null;
+			}
+			return buildElement(((CMElementDeclaration) content).getElementName());
+		case CMNode.GROUP:
+			return buildGroup((CMGroup) content);
+		default:
+			return null;
+		}
+	}
+
+	private static boolean hasSubstitutionGroup(final CMContent elementDeclaration) {
+		final Object substitutionGroup = elementDeclaration.getProperty(SUBSTITUTION_GROUP);
+		return substitutionGroup instanceof CMNodeList && ((CMNodeList) substitutionGroup).getLength() > 1;
+	}
+
+	private int[] buildElement(final String name) {
+		final int start = createNfaState();
+		final int end = createNfaState();
+		transitions.get(start).add(new Transition(name, end));
+		return new int[] { start, end };
+	}
+
+	private int[] buildGroup(final CMGroup group) {
+		final CMNodeList children = group.getChildNodes();
+		final int start = createNfaState();
+		final int end = createNfaState();
+		switch (group.getOperator()) {
+		case CMGroup.SEQUENCE:
+			int current = start;
+			for (int i = 0; i < children.getLength(); i++) {
+				final int[] fragment = buildChild(children.item(i));
+				if (fragment == null) {
+					return null;
+				}
+				addEpsilonTransition(current, fragment[0]);
+				current = fragment[1];
+			}
+			addEpsilonTransition(current, end);
+			return new int[] { start, end };
+		case CMGroup.CHOICE:
+			if (children.getLength() == 0) {
+				addEpsilonTransition(start, end);
+			}
+			for (int i = 0; i < children.getLength(); i++) {
+				final int[] fragment = buildChild(children.item(i));
+				if (fragment == null) {
+					return null;
+				}
+				addEpsilonTransition(start, fragment[0]);
+				addEpsilonTransition(fragment[1], end);
+			}
+			return new int[] { start, end };
+		default:
+			return null;
+		}
+	}
+
+	private int[] buildChild(final CMNode child) {
+		if (child instanceof CMElementDeclaration || child instanceof CMGroup) {
+			return buildWithOccurrences((CMContent) child);
+		}
+		return null;
+	}
+
+	private int createNfaState() {
+		epsilonTransitions.add(new ArrayList<Integer>(2));
+		transitions.add(new ArrayList<Transition>(1));
+		return transitions.size() - 1;
+	}
+
+	private void addEpsilonTransition(final int from, final int to) {
+		epsilonTransitions.get(from).add(to);
+	}
+
+	/**
+	 * A deterministic state: the set of nondeterministic states which are reachable by the same sequence of child
+	 * elements.
+	 */
+	public static class State {
+		private final BitSet nfaStates;
+		private final boolean accepting;
+		private final Map<String, State> transitions = new HashMap<String, State>();
+
+		private State(final BitSet nfaStates, final boolean accepting) {
+			this.nfaStates = nfaStates;
+			this.accepting = accepting;
+		}
+
+		/**
+		 * @return true if the sequence of children which leads to this state is a complete content of the element
+		 */
+		public boolean isAccepting() {
+			return accepting;
+		}
+	}
+
+	private static class Transition {
+		public final String name;
+		public final int target;
+
+		public Transition(final String name, final int target) {
+			this.name = name;
+			this.target = target;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.validator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.vex.core.provisional.dom.IValidator;
+
+/**
+ * The validation of several sequences between the same nodes before and after them, e.g. of the candidates for an
+ * insertion. A validator which supports it does its work on the nodes before and after only once for all sequences.<br/>
+ *
+ * The nodes before and after are copied when the validation is prepared, so later modifications of the given lists do
+ * not affect the validation.
+ *
+ * @author agent
+ */
+public abstract class SequenceValidation {
+
+	/**
+	 * @param validator
+	 *            the validator to use
+	 * @param element
+	 *            the name of the parent element
+	 * @param nodesBefore
+	 *            the element names and {@link IValidator#PCDATA} before the validated sequences
+	 * @param nodesAfter
+	 *            the element names and {@link IValidator#PCDATA} after the validated sequences
+	 */
+	public static SequenceValidation prepare(final IValidator validator, final QualifiedName element, final List<QualifiedName> nodesBefore, final List<QualifiedName> nodesAfter) {
+		if (validator instanceof WTPVEXValidator) {
+			final SequenceValidation validation = ((WTPVEXValidator) validator).prepareSequenceValidation(element, nodesBefore, nodesAfter);
+			if (validation != null) {
+				return validation;
+			}
+		}
+		return new JoinedSequenceValidation(validator, element, nodesBefore, nodesAfter);
+	}
+
+	/**
+	 * Returns true if the given sequence is valid between the nodes before and after.
+	 *
+	 * @param nodes
+	 *            the element names and {@link IValidator#PCDATA} to validate
+	 * @param partial
+	 *            if true, a valid but incomplete sequence is acceptable
+	 */
+	public abstract boolean isValidBetween(List<QualifiedName> nodes, boolean partial);
+
+	private static class JoinedSequenceValidation extends SequenceValidation {
+		private final IValidator validator;
+		private final QualifiedName element;
+		private final List<QualifiedName> nodesBefore;
+		private final List<QualifiedName> nodesAfter;
+
+		public JoinedSequenceValidation(final IValidator validator, final QualifiedName element, final List<QualifiedName> nodesBefore, final List<QualifiedName> nodesAfter) {
+			this.validator = validator;
+			this.element = element;
+			this.nodesBefore = new ArrayList<QualifiedName>(nodesBefore);
+			this.nodesAfter = new ArrayList<QualifiedName>(nodesAfter);
+		}
+
+		@Override
+		public boolean isValidBetween(final List<QualifiedName> nodes, final boolean partial) {
+			return validator.isValidSequence(element, nodesBefore, nodes, nodesAfter, partial);
+		}
+	}
+}
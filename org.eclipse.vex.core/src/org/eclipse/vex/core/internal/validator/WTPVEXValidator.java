@@ -10,6 +10,8 @@
  *    Holger Voormann - bug 283646 - Document wizard throws NPW with DITA is selected
  *	  Igor Jacy Lino Campista - Java 5 warnings fixed (bug 311325)
  *    Florian Thienel - bug 299999 - completed implementation of validation
+ *    agent - validate sequences with compiled content models
+ *    agent - thread-safe to be shared by documents of the same document type
  *******************************************************************************/
 package org.eclipse.vex.core.internal.validator;
 
@@ -47,6 +49,10 @@ import org.eclipse.wst.xml.core.internal.contentmodel.internal.util.CMValidator.
 import org.eclipse.wst.xml.core.internal.contentmodel.internal.util.CMValidator.StringElementContentComparator;
 import org.eclipse.xsd.XSDAttributeUse;
 
+/**
+ * A validator based on the content models of the WTP. This class is thread-safe, so all documents of the same document
+ * type can share one instance and its cached content models.
+ */
 public class WTPVEXValidator implements IValidator {
 
 	private static final ElementContentComparator ELEMENT_CONTENT_COMPARATOR = new StringElementContentComparator() {
@@ -67,6 +73,12 @@ public class WTPVEXValidator implements IValidator {
 
 	private final CMValidator validator = new CMValidator();
 
+	/*
+	 * The compiled content models of the element declarations of the cached CMDocuments. Element declarations which
+	 * cannot be compiled are mapped to null and validated with the CMValidator.
+	 */
+	private final Map<CMElementDeclaration, ContentModelAutomaton> automata = new HashMap<CMElementDeclaration, ContentModelAutomaton>();
+
 	public WTPVEXValidator() {
 		this(new DocumentContentModel());
 	}
@@ -112,7 +124,7 @@ public class WTPVEXValidator implements IValidator {
 	}
 
 	@Override
-	public AttributeDefinition getAttributeDefinition(final IAttribute attribute) {
+	public synchronized AttributeDefinition getAttributeDefinition(final IAttribute attribute) {
 		final String attributeName = attribute.getLocalName();
 		final CMElementDeclaration cmElement = getElementDeclaration(attribute.getParent());
 		/*
@@ -143,7 +155,7 @@ public class WTPVEXValidator implements IValidator {
 	}
 
 	@Override
-	public List<AttributeDefinition> getAttributeDefinitions(final IElement element) {
+	public synchronized List<AttributeDefinition> getAttributeDefinitions(final IElement element) {
 		final CMElementDeclaration cmElement = getElementDeclaration(element);
 		/*
 		 * #342320: If we do not find the element, it is acutally not valid. But we are benevolent here since we do not
@@ -261,7 +273,7 @@ public class WTPVEXValidator implements IValidator {
 	}
 
 	@Override
-	public Set<QualifiedName> getValidItems(final IElement element) {
+	public synchronized Set<QualifiedName> getValidItems(final IElement element) {
 		return getValidItems(getElementDeclaration(element));
 	}
 
@@ -341,7 +353,7 @@ public class WTPVEXValidator implements IValidator {
 	}
 
 	@Override
-	public Set<QualifiedName> getValidRootElements() {
+	public synchronized Set<QualifiedName> getValidRootElements() {
 		final HashSet<QualifiedName> result = new HashSet<QualifiedName>();
 		for (final CMElementDeclaration element : getValidRootElements(null)) {
 			result.add(createQualifiedElementName(element));
@@ -350,11 +362,19 @@ public class WTPVEXValidator implements IValidator {
 	}
 
 	@Override
-	public boolean isValidSequence(final QualifiedName element, final List<QualifiedName> nodes, final boolean partial) {
+	public synchronized boolean isValidSequence(final QualifiedName element, final List<QualifiedName> nodes, final boolean partial) {
 		if (partial && nodes.isEmpty()) {
 			return true;
 		}
 
+		final ContentModelAutomaton automaton = getAutomaton(element);
+		if (automaton == null) {
+			return validateWithCMValidator(element, nodes, partial);
+		}
+		return isValid(step(automaton, automaton.getStartState(), nodes), countElements(nodes), partial);
+	}
+
+	private boolean validateWithCMValidator(final QualifiedName element, final List<QualifiedName> nodes, final boolean partial) {
 		if (Namespace.XINCLUDE_NAMESPACE_URI.equals(element.getQualifier())) {
 			return isValidSequenceXInclude(nodes, partial);
 		}
@@ -394,7 +414,36 @@ public class WTPVEXValidator implements IValidator {
 	}
 
 	@Override
-	public boolean isValidSequence(final QualifiedName element, final List<QualifiedName> seq1, final List<QualifiedName> seq2, final List<QualifiedName> seq3, final boolean partial) {
+	public synchronized boolean isValidSequence(final QualifiedName element, final List<QualifiedName> seq1, final List<QualifiedName> seq2, final List<QualifiedName> seq3, final boolean partial) {
+		final ContentModelAutomaton automaton = getAutomaton(element);
+		if (automaton == null) {
+			return isValidJoinedSequence(element, seq1, seq2, seq3, partial);
+		}
+		return new AutomatonSequenceValidation(automaton, emptyIfNull(seq1), emptyIfNull(seq3)).isValidBetween(seq2, partial);
+	}
+
+	/**
+	 * Prepares the validation of several sequences between the same nodes before and after them, see
+	 * {@link SequenceValidation#prepare(IValidator, QualifiedName, List, List)}.
+	 *
+	 * @return the prepared validation, or null if the content model of the given element is not compiled
+	 */
+	public synchronized SequenceValidation prepareSequenceValidation(final QualifiedName element, final List<QualifiedName> nodesBefore, final List<QualifiedName> nodesAfter) {
+		final ContentModelAutomaton automaton = getAutomaton(element);
+		if (automaton == null) {
+			return null;
+		}
+		return new AutomatonSequenceValidation(automaton, new ArrayList<QualifiedName>(nodesBefore), new ArrayList<QualifiedName>(nodesAfter));
+	}
+
+	private static List<QualifiedName> emptyIfNull(final List<QualifiedName> nodes) {
+		if (nodes == null) {
+			return Collections.emptyList();
+		}
+		return nodes;
+	}
+
+	private boolean isValidJoinedSequence(final QualifiedName element, final List<QualifiedName> seq1, final List<QualifiedName> seq2, final List<QualifiedName> seq3, final boolean partial) {
 		final List<QualifiedName> joinedSequence = new ArrayList<QualifiedName>();
 		if (seq1 != null) {
 			joinedSequence.addAll(seq1);
@@ -408,13 +457,76 @@ public class WTPVEXValidator implements IValidator {
 		return isValidSequence(element, joinedSequence, partial);
 	}
 
+	private ContentModelAutomaton getAutomaton(final QualifiedName element) {
+		if (Namespace.XINCLUDE_NAMESPACE_URI.equals(element.getQualifier())) {
+			return null;
+		}
+		final CMDocument document = getContentModelDoc(element.getQualifier());
+		if (document == null) {
+			return null;
+		}
+		final CMNode declaration = document.getElements().getNamedItem(element.getLocalName());
+		if (!(declaration instanceof CMElementDeclaration)) {
+			return null;
+		}
+
+		final CMElementDeclaration elementDeclaration = (CMElementDeclaration) declaration;
+		if (automata.containsKey(elementDeclaration)) {
+			return automata.get(elementDeclaration);
+		}
+		final ContentModelAutomaton automaton = ContentModelAutomaton.compile(elementDeclaration);
+		automata.put(elementDeclaration, automaton);
+		return automaton;
+	}
+
+	/*
+	 * XInclude elements are skipped like in the CMValidator based validation.
+	 */
+	private static ContentModelAutomaton.State step(final ContentModelAutomaton automaton, final ContentModelAutomaton.State state, final List<QualifiedName> nodes) {
+		ContentModelAutomaton.State currentState = state;
+		for (final QualifiedName node : nodes) {
+			if (currentState == null) {
+				return null;
+			}
+			if (!Namespace.XINCLUDE_NAMESPACE_URI.equals(node.getQualifier())) {
+				currentState = automaton.step(currentState, node.getLocalName());
+			}
+		}
+		return currentState;
+	}
+
+	private static int countElements(final List<QualifiedName> nodes) {
+		int elementCount = 0;
+		for (final QualifiedName node : nodes) {
+			if (!Namespace.XINCLUDE_NAMESPACE_URI.equals(node.getQualifier()) && ELEMENT_CONTENT_COMPARATOR.isElement(node.getLocalName())) {
+				elementCount++;
+			}
+		}
+		return elementCount;
+	}
+
+	/*
+	 * Like the CMValidator based validation: a partial sequence with elements is valid if all of its elements are
+	 * matched (partialValidationCount >= elementCount), which is the case if there is an end state. Otherwise the
+	 * sequence has to be complete.
+	 */
+	private static boolean isValid(final ContentModelAutomaton.State endState, final int elementCount, final boolean partial) {
+		if (endState == null) {
+			return false;
+		}
+		if (partial && elementCount > 0) {
+			return true;
+		}
+		return endState.isAccepting();
+	}
+
 	@Override
 	public boolean isValidSequenceXInclude(final List<QualifiedName> nodes, final boolean partial) {
 		return false;
 	}
 
 	@Override
-	public Set<String> getRequiredNamespaces() {
+	public synchronized Set<String> getRequiredNamespaces() {
 		if (documentContentModel.isDtdAssigned()) {
 			return Collections.emptySet();
 		}
@@ -493,4 +605,52 @@ public class WTPVEXValidator implements IValidator {
 				|| "##targetNamespace".equals(namespaceUri);
 	}
 
+	/*
+	 * Steps through the prefix once and through the suffix once per distinct state after the validated sequence. The
+	 * automaton is not thread-safe, so it is only used while holding the lock of this validator.
+	 */
+	private class AutomatonSequenceValidation extends SequenceValidation {
+		private final ContentModelAutomaton automaton;
+		private final List<QualifiedName> suffix;
+		private final boolean empty;
+		private final ContentModelAutomaton.State prefixEnd;
+		private final int prefixElementCount;
+		private final int suffixElementCount;
+		private final Map<ContentModelAutomaton.State, ContentModelAutomaton.State> suffixEnds = new HashMap<ContentModelAutomaton.State, ContentModelAutomaton.State>();
+
+		public AutomatonSequenceValidation(final ContentModelAutomaton automaton, final List<QualifiedName> prefix, final List<QualifiedName> suffix) {
+			this.automaton = automaton;
+			this.suffix = suffix;
+			empty = prefix.isEmpty() && suffix.isEmpty();
+			prefixEnd = step(automaton, automaton.getStartState(), prefix);
+			prefixElementCount = countElements(prefix);
+			suffixElementCount = countElements(suffix);
+		}
+
+		@Override
+		public boolean isValidBetween(final List<QualifiedName> nodes, final boolean partial) {
+			final List<QualifiedName> middle = emptyIfNull(nodes);
+			if (partial && empty && middle.isEmpty()) {
+				return true;
+			}
+			synchronized (WTPVEXValidator.this) {
+				final ContentModelAutomaton.State middleEnd = step(automaton, prefixEnd, middle);
+				final int elementCount = prefixElementCount + countElements(middle) + suffixElementCount;
+				return isValid(getSuffixEnd(middleEnd), elementCount, partial);
+			}
+		}
+
+		private ContentModelAutomaton.State getSuffixEnd(final ContentModelAutomaton.State state) {
+			if (state == null) {
+				return null;
+			}
+			if (suffixEnds.containsKey(state)) {
+				return suffixEnds.get(state);
+			}
+			final ContentModelAutomaton.State suffixEnd = step(automaton, state, suffix);
+			suffixEnds.put(state, suffixEnd);
+			return suffixEnd;
+		}
+	}
+
 }
@@ -13,6 +13,7 @@ package org.eclipse.vex.core.internal.visualization;
 import static org.eclipse.vex.core.internal.boxes.BoxFactory.inlineContainer;
 import static org.eclipse.vex.core.internal.boxes.BoxFactory.listItem;
 import static org.eclipse.vex.core.internal.boxes.BoxFactory.nodeReference;
+import static org.eclipse.vex.core.internal.boxes.BoxFactory.nodeReferencePlaceholder;
 import static org.eclipse.vex.core.internal.boxes.BoxFactory.nodeReferenceWithInlineContent;
 import static org.eclipse.vex.core.internal.boxes.BoxFactory.nodeReferenceWithText;
 import static org.eclipse.vex.core.internal.boxes.BoxFactory.rootBox;
@@ -90,6 +91,8 @@ import org.eclipse.vex.core.provisional.dom.MultilineText;
  */
 public class CssBasedBoxModelBuilder implements IBoxModelBuilder {
 
+	private static final int ESTIMATED_CHARACTERS_PER_LINE = 80;
+
 	private final StyleSheet styleSheet;
 
 	public CssBasedBoxModelBuilder(final StyleSheet styleSheet) {
@@ -151,6 +154,9 @@ public class CssBasedBoxModelBuilder implements IBoxModelBuilder {
 			@Override
 			public VisualizeResult visit(final IElement element) {
 				final Styles styles = styleSheet.getStyles(element);
+				if (element != node && isVisualizedAsPlaceholder(element, styles)) {
+					return new VisualizeResult(element, styles, Collections.<VisualizeResult> emptyList(), visualizeAsPlaceholder(element, styles));
+				}
 				final Collection<VisualizeResult> childrenResults = traverseChildren(element);
 				if (isNestedTable(styles, element)) {
 					return new VisualizeResult(element, styles, childrenResults, visualizeAsNestedTable(element, styles, childrenResults));
@@ -208,6 +214,33 @@ public class CssBasedBoxModelBuilder implements IBoxModelBuilder {
 		});
 	}
 
+	/*
+	 * Placeholders: nested blocks are only visualized when they are expanded, see DOMVisualization
+	 */
+
+	private boolean isVisualizedAsPlaceholder(final IElement element, final Styles styles) {
+		if (!isPlainBlock(styles) || isTableColumnSpec(styles, element)) {
+			return false;
+		}
+		final INode parent = element.getParent();
+		return parent instanceof IElement && isPlainBlock(styleSheet.getStyles(parent));
+	}
+
+	private static boolean isPlainBlock(final Styles styles) {
+		return isDisplayedAsBlock(styles)
+				&& !isListRoot(styles)
+				&& !isListItem(styles)
+				&& !isTable(styles)
+				&& !isTableRowGroup(styles)
+				&& !isTableRow(styles)
+				&& !isTableCell(styles);
+	}
+
+	private static IStructuralBox visualizeAsPlaceholder(final IElement element, final Styles styles) {
+		final int estimatedLines = 1 + (element.getEndOffset() - element.getStartOffset()) / ESTIMATED_CHARACTERS_PER_LINE;
+		return nodeReferencePlaceholder(element, mayContainText(element), estimatedLines * styles.getLineHeight());
+	}
+
 	private static boolean isListRoot(final Styles styles) {
 		final String listStyleType = styles.getListStyleType();
 		return listStyleType != null && !CSS.NONE.equals(listStyleType);
@@ -15,6 +15,10 @@
  *     Carsten Hiesserich - handling of preformatted elements, XML insertion(bug 407827, bug 408501 )
  *     Carsten Hiesserich - added dispose()
  *     Carsten Hiesserich - flushing StyleSheet when content structure is changed
+ *     agent - flush only the styles affected by a document change
+ *     agent - validate the candidates for insertion between the same siblings
+ *     agent - relayout when image dimensions are known
+ *     agent - content replaced by a batch of modifications
  *******************************************************************************/
 package org.eclipse.vex.core.internal.widget;
 
@@ -65,6 +69,7 @@ import org.eclipse.vex.core.internal.undo.InsertFragmentEdit;
 import org.eclipse.vex.core.internal.undo.InsertLineBreakEdit;
 import org.eclipse.vex.core.internal.undo.InsertProcessingInstructionEdit;
 import org.eclipse.vex.core.internal.undo.InsertTextEdit;
+import org.eclipse.vex.core.internal.validator.SequenceValidation;
 import org.eclipse.vex.core.provisional.dom.AttributeChangeEvent;
 import org.eclipse.vex.core.provisional.dom.BaseNodeVisitor;
 import org.eclipse.vex.core.provisional.dom.BaseNodeVisitorWithResult;
@@ -162,10 +167,8 @@ public class BaseVexWidget implements IVexWidget {
 
 			/*
 			 * Flush cached styles, since they might depend attribute values via conditional selectors.
-			 *
-			 * This cast is save because this event is only fired due to the attribute changes of elements.
 			 */
-			getStyleSheet().flushStyles(e.getParent());
+			getStyleSheet().flushStylesAfterAttributeChange(e.getParent(), e.getAttributeName());
 
 			BaseVexWidget.this.relayout();
 
@@ -176,10 +179,7 @@ public class BaseVexWidget implements IVexWidget {
 		public void beforeContentDeleted(final ContentChangeEvent e) {
 			// Clean-up stylesheet cache
 			if (e.isStructuralChange()) {
-				final Iterator<? extends INode> childrenToDelete = e.getParent().children().withoutText().in(e.getRange()).iterator();
-				while (childrenToDelete.hasNext()) {
-					getStyleSheet().flushStyles(childrenToDelete.next());
-				}
+				getStyleSheet().flushStylesBeforeDeletion(e.getParent(), e.getRange());
 			}
 		}
 
@@ -189,7 +189,7 @@ public class BaseVexWidget implements IVexWidget {
 
 		@Override
 		public void contentDeleted(final ContentChangeEvent e) {
-			flushStyles(e);
+			getStyleSheet().flushStylesAfterDeletion(e.getParent(), e.getRange());
 			invalidateElementBox(e.getParent());
 
 			BaseVexWidget.this.relayout();
@@ -197,32 +197,31 @@ public class BaseVexWidget implements IVexWidget {
 
 		@Override
 		public void contentInserted(final ContentChangeEvent e) {
-			flushStyles(e);
+			getStyleSheet().flushStylesAfterInsertion(e.getParent(), e.getRange());
 			invalidateElementBox(e.getParent());
 
 			BaseVexWidget.this.relayout();
 		}
 
 		@Override
-		public void namespaceChanged(final NamespaceDeclarationChangeEvent e) {
+		public void contentReplaced(final ContentChangeEvent e) {
+			getStyleSheet().flushStylesAfterInsertion(e.getParent(), e.getRange());
+			if (e.getParent() instanceof IDocument) {
+				relayoutAll(layoutWidth, styleSheet);
+				return;
+			}
 			invalidateElementBox(e.getParent());
 
 			BaseVexWidget.this.relayout();
-
-			fireSelectionChanged();
 		}
 
-		private void flushStyles(final ContentChangeEvent e) {
-			if (e.isStructuralChange()) {
-				final StyleSheet styleSheet = getStyleSheet();
-				styleSheet.flushStyles(e.getParent());
+		@Override
+		public void namespaceChanged(final NamespaceDeclarationChangeEvent e) {
+			invalidateElementBox(e.getParent());
 
-				// Flush styles of children before and after the changed content
-				final Iterator<? extends INode> childs = e.getParent().children().withoutText().in(e.getRange().resizeBy(-2, 2)).iterator();
-				while (childs.hasNext()) {
-					styleSheet.flushStyles(childs.next());
-				}
-			}
+			BaseVexWidget.this.relayout();
+
+			fireSelectionChanged();
 		}
 
 	};
@@ -716,14 +715,10 @@ public class BaseVexWidget implements IVexWidget {
 	}
 
 	private static void filterInvalidSequences(final IValidator validator, final IElement parent, final List<QualifiedName> nodesBefore, final List<QualifiedName> nodesAfter, final List<QualifiedName> candidates) {
-		final int sequenceLength = nodesBefore.size() + 1 + nodesAfter.size();
+		final SequenceValidation validation = SequenceValidation.prepare(validator, parent.getQualifiedName(), nodesBefore, nodesAfter);
 		for (final Iterator<QualifiedName> iterator = candidates.iterator(); iterator.hasNext();) {
 			final QualifiedName candidate = iterator.next();
-			final List<QualifiedName> sequence = new ArrayList<QualifiedName>(sequenceLength);
-			sequence.addAll(nodesBefore);
-			sequence.add(candidate);
-			sequence.addAll(nodesAfter);
-			if (!canContainContent(validator, parent.getQualifiedName(), sequence)) {
+			if (!validation.isValidBetween(Collections.singletonList(candidate), true)) {
 				iterator.remove();
 			}
 		}
@@ -1759,6 +1754,16 @@ public class BaseVexWidget implements IVexWidget {
 		}
 	}
 
+	/**
+	 * Lays out the whole document again, e.g. because the dimensions of images, which are loaded in the background,
+	 * became known.
+	 */
+	public void relayoutAll() {
+		if (document != null) {
+			relayoutAll(layoutWidth, styleSheet);
+		}
+	}
+
 	public void setStyleSheet(final URL ssUrl) throws IOException {
 		final StyleSheetReader reader = new StyleSheetReader();
 		final StyleSheet ss = reader.read(ssUrl);
@@ -7,19 +7,28 @@
  *
  * Contributors:
  * 		Florian Thienel - initial API and implementation
+ * 		agent - expand and collapse placeholders when reconciling the layout
+ * 		agent - invalidate only the boxes of loaded images
+ * 		agent - reconcile the layout of each box at most once
  *******************************************************************************/
 package org.eclipse.vex.core.internal.widget;
 
+import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.Collections;
+import java.util.HashSet;
 
+import org.eclipse.vex.core.internal.boxes.DepthFirstBoxTraversal;
 import org.eclipse.vex.core.internal.boxes.IBox;
 import org.eclipse.vex.core.internal.boxes.IChildBox;
+import org.eclipse.vex.core.internal.boxes.Image;
+import org.eclipse.vex.core.internal.boxes.IStructuralBox;
 import org.eclipse.vex.core.internal.boxes.RootBox;
 import org.eclipse.vex.core.internal.core.Graphics;
 import org.eclipse.vex.core.internal.core.Rectangle;
 import org.eclipse.vex.core.internal.cursor.Cursor;
+import org.eclipse.vex.core.internal.widget.IRenderer.IContentRenderStep;
 import org.eclipse.vex.core.internal.widget.IRenderer.IRenderStep;
 
 /**
@@ -29,11 +38,18 @@ public class BoxView {
 
 	private final int SCROLL_PADDING = Cursor.CARET_BUFFER * 2;
 
+	/*
+	 * Expanded nodes are kept as long as they are within this many heights of the visible area above or below it.
+	 */
+	private static final int EXPANDED_VIEWPORTS_AROUND_VISIBLE_AREA = 2;
+
 	private final IRenderer renderer;
 	private final IViewPort viewPort;
 	private final Cursor cursor;
 	private RootBox rootBox;
+	private IPlaceholderExpander placeholderExpander;
 	private int width;
+	private int reconciledBoxCount;
 
 	public BoxView(final IRenderer renderer, final IViewPort viewPort, final Cursor cursor) {
 		this.renderer = renderer;
@@ -48,22 +64,43 @@ public class BoxView {
 
 	public void setRootBox(final RootBox rootBox) {
 		this.rootBox = rootBox;
+		renderer.invalidateEverything();
+	}
+
+	public void setPlaceholderExpander(final IPlaceholderExpander placeholderExpander) {
+		this.placeholderExpander = placeholderExpander;
 	}
 
 	public void setWidth(final int width) {
 		this.width = width;
 	}
 
+	/**
+	 * @return the number of boxes whose layout was reconciled since the layout was invalidated the last time, including
+	 *         the boxes of expanded placeholders
+	 */
+	public int getReconciledBoxCount() {
+		return reconciledBoxCount;
+	}
+
 	public void invalidateLayout(final IBox box) {
-		render(reconcileLayout(box), paintContent());
+		render(reconcileLayout(box), paintContent(), paintCursor());
+	}
+
+	/**
+	 * Updates the boxes which show one of the given images, because their dimensions or their image data became
+	 * available. Only the layout of the boxes whose size changed is reconciled, all others are just painted again.
+	 */
+	public void invalidateImages(final Collection<URL> imageUrls) {
+		render(reconcileImages(imageUrls), paintContent(), paintCursor());
 	}
 
 	public void invalidateViewport() {
-		render(paintContent());
+		render(reconcileVisibleArea(), paintContent(), paintCursor());
 	}
 
 	public void invalidateCursor() {
-		render(renderCursorMovement(), paintContent());
+		render(renderCursorMovement(), paintContent(), paintCursor());
 	}
 
 	public void invalidateWidth(final int width) {
@@ -81,18 +118,39 @@ public class BoxView {
 			}
 		};
 
-		render(invalidateWidth, layoutContent(), paintContent());
+		render(invalidateWidth, layoutContent(), paintContent(), paintCursor());
 	}
 
 	private void render(final IRenderStep... steps) {
 		renderer.render(viewPort.getVisibleArea(), steps);
 	}
 
-	private IRenderStep paintContent() {
+	private IRenderStep reconcileVisibleArea() {
 		return new IRenderStep() {
+			@Override
+			public void render(final Graphics graphics) {
+				reconcileVisibleArea(graphics);
+			}
+		};
+	}
+
+	private IRenderStep paintContent() {
+		return new IContentRenderStep() {
 			@Override
 			public void render(final Graphics graphics) {
 				rootBox.paint(graphics);
+			}
+		};
+	}
+
+	/*
+	 * The caret and the selection are painted as overlay on top of the content, so moving the cursor does not
+	 * invalidate the content.
+	 */
+	private IRenderStep paintCursor() {
+		return new IRenderStep() {
+			@Override
+			public void render(final Graphics graphics) {
 				cursor.paint(graphics);
 			}
 		};
@@ -103,8 +161,10 @@ public class BoxView {
 			@Override
 			public void render(final Graphics graphics) {
 				rootBox.layout(graphics);
+				renderer.invalidateEverything();
+				expandPlaceholderAtCursor(graphics);
 				cursor.reconcile(graphics);
-				reconcileViewPort();
+				reconcileVisibleArea(graphics);
 			}
 		};
 	}
@@ -113,57 +173,158 @@ public class BoxView {
 		return new IRenderStep() {
 			@Override
 			public void render(final Graphics graphics) {
+				reconciledBoxCount = 0;
 				reconcileBoxLayout(graphics, box);
-				reconcileViewPort();
+				expandPlaceholderAtCursor(graphics);
+				reconcileVisibleArea(graphics);
+			}
+		};
+	}
+
+	private IRenderStep reconcileImages(final Collection<URL> imageUrls) {
+		return new IRenderStep() {
+			@Override
+			public void render(final Graphics graphics) {
+				final ArrayList<Image> resizedImages = new ArrayList<Image>();
+				for (final Image image : findImages(imageUrls)) {
+					final int oldWidth = image.getWidth();
+					final int oldHeight = image.getHeight();
+					image.layout(graphics);
+					if (image.getWidth() != oldWidth || image.getHeight() != oldHeight) {
+						resizedImages.add(image);
+					} else {
+						renderer.invalidate(new Rectangle(image.getAbsoluteLeft(), image.getAbsoluteTop(), image.getWidth(), image.getHeight()));
+					}
+				}
+				if (!resizedImages.isEmpty()) {
+					reconciledBoxCount = 0;
+					reconcileBoxLayout(graphics, resizedImages);
+					reconcileVisibleArea(graphics);
+				}
 			}
 		};
 	}
 
-	private static void reconcileBoxLayout(final Graphics graphics, final IBox box) {
-		box.layout(graphics);
+	private Collection<Image> findImages(final Collection<URL> imageUrls) {
+		final HashSet<String> urls = new HashSet<String>();
+		for (final URL imageUrl : imageUrls) {
+			urls.add(imageUrl.toString());
+		}
+		final ArrayList<Image> images = new ArrayList<Image>();
+		rootBox.accept(new DepthFirstBoxTraversal<Object>() {
+			@Override
+			public Object visit(final Image box) {
+				if (box.getImageUrl() != null && urls.contains(box.getImageUrl().toString())) {
+					images.add(box);
+				}
+				return null;
+			}
+		});
+		return images;
+	}
+
+	/*
+	 * Only the surroundings of the visible area are visualized completely: the placeholders within the visible area are
+	 * expanded, the expanded nodes far outside of it are collapsed to placeholders again. The collapsed placeholders
+	 * keep their height, so collapsing does not move any content.
+	 */
+	private void reconcileVisibleArea(final Graphics graphics) {
+		if (placeholderExpander != null) {
+			reconcileBoxLayout(graphics, placeholderExpander.collapsePlaceholders(getExpandedArea(viewPort.getVisibleArea())));
+			expandVisiblePlaceholders(graphics);
+		}
+		reconcileViewPort();
+	}
 
-		final LinkedList<IBox> invalidatedBoxes = new LinkedList<IBox>();
-		invalidatedBoxes.add(getParent(box));
+	private static Rectangle getExpandedArea(final Rectangle visibleArea) {
+		final int distance = visibleArea.getHeight() * EXPANDED_VIEWPORTS_AROUND_VISIBLE_AREA;
+		return new Rectangle(visibleArea.getX(), visibleArea.getY() - distance, visibleArea.getWidth(), visibleArea.getHeight() + 2 * distance);
+	}
 
-		while (!invalidatedBoxes.isEmpty()) {
-			final IBox invalidatedBox = invalidatedBoxes.pollFirst();
-			final Collection<IBox> nextBoxes = invalidatedBox.reconcileLayout(graphics);
-			cover(invalidatedBoxes, nextBoxes);
+	private void expandVisiblePlaceholders(final Graphics graphics) {
+		Collection<IStructuralBox> expandedBoxes = placeholderExpander.expandPlaceholders(viewPort.getVisibleArea());
+		while (!expandedBoxes.isEmpty()) {
+			reconcileBoxLayout(graphics, expandedBoxes);
+			/*
+			 * The expanded boxes may contain placeholders themselves, and their real height may uncover more
+			 * placeholders.
+			 */
+			expandedBoxes = placeholderExpander.expandPlaceholders(viewPort.getVisibleArea());
 		}
 	}
 
-	private static void cover(final LinkedList<IBox> queue, final Collection<IBox> newBoxes) {
-		for (final IBox box : newBoxes) {
-			cover(queue, box);
+	private boolean expandPlaceholderAtCursor(final Graphics graphics) {
+		if (placeholderExpander == null) {
+			return false;
+		}
+
+		boolean expanded = false;
+		IStructuralBox expandedBox = placeholderExpander.expandPlaceholderAt(cursor.getOffset());
+		while (expandedBox != null) {
+			reconcileBoxLayout(graphics, expandedBox);
+			expanded = true;
+			expandedBox = placeholderExpander.expandPlaceholderAt(cursor.getOffset());
 		}
+		return expanded;
 	}
 
-	private static void cover(final LinkedList<IBox> queue, final IBox box) {
-		final ListIterator<IBox> iterator = queue.listIterator();
-		while (iterator.hasNext()) {
-			final IBox queuedBox = iterator.next();
-			if (isCovered(queuedBox, box)) {
-				iterator.set(box);
-				return;
-			} else if (isCovered(box, queuedBox)) {
-				return;
+	private void reconcileBoxLayout(final Graphics graphics, final IBox box) {
+		reconcileBoxLayout(graphics, Collections.singleton(box));
+	}
+
+	/*
+	 * The boxes are laid out first, then the layout of their parents and of all the boxes which are invalidated in turn
+	 * is reconciled, the deepest boxes first. This way each box is reconciled only once, even if many of its children
+	 * changed.
+	 */
+	private void reconcileBoxLayout(final Graphics graphics, final Collection<? extends IBox> boxes) {
+		final int oldHeight = rootBox.getHeight();
+		final LayoutReconciliationQueue queue = new LayoutReconciliationQueue();
+		final HashSet<IBox> parents = new HashSet<IBox>();
+		for (final IBox box : boxes) {
+			box.layout(graphics);
+
+			final IBox parent = getParent(box);
+			if (parent == null) {
+				renderer.invalidateEverything();
+			} else {
+				queue.schedule(parent);
+				parents.add(parent);
 			}
 		}
-		queue.add(box);
-	}
+		if (parents.isEmpty()) {
+			return;
+		}
+
+		boolean heightChanged = false;
+		while (!queue.isEmpty()) {
+			final IBox invalidatedBox = queue.poll();
+			final Collection<IBox> nextBoxes = invalidatedBox.reconcileLayout(graphics);
+			if (!nextBoxes.isEmpty() && parents.contains(invalidatedBox)) {
+				heightChanged = true;
+			}
+			queue.scheduleAll(nextBoxes);
+		}
+		reconciledBoxCount += queue.getScheduledCount();
 
-	private static boolean isCovered(final IBox box, final IBox cover) {
-		return isAncestor(box, cover);
+		renderer.invalidate(getDirtyArea(parents, heightChanged, oldHeight));
 	}
 
-	private static boolean isAncestor(final IBox box, final IBox ancestor) {
-		if (ancestor == null) {
-			return false;
+	/*
+	 * The parents contain all boxes which are affected by the new layout of their children. If the height of one of
+	 * the parents changed, all the content below this parent moved as well.
+	 */
+	private Rectangle getDirtyArea(final Collection<IBox> parents, final boolean heightChanged, final int oldHeight) {
+		int top = Integer.MAX_VALUE;
+		int bottom = 0;
+		for (final IBox parent : parents) {
+			top = Math.min(top, parent.getAbsoluteTop());
+			bottom = Math.max(bottom, parent.getAbsoluteTop() + parent.getHeight());
 		}
-		if (box == ancestor) {
-			return true;
+		if (heightChanged) {
+			return new Rectangle(0, top, rootBox.getWidth(), Math.max(oldHeight, rootBox.getHeight()) + Cursor.CARET_BUFFER - top);
 		}
-		return isAncestor(box, getParent(ancestor));
+		return new Rectangle(0, top, rootBox.getWidth(), bottom - top);
 	}
 
 	private static IBox getParent(final IBox box) {
@@ -182,7 +343,11 @@ public class BoxView {
 			@Override
 			public void render(final Graphics graphics) {
 				cursor.applyMoves(graphics);
+				if (expandPlaceholderAtCursor(graphics)) {
+					cursor.reconcile(graphics);
+				}
 				moveViewPortToCursor(graphics);
+				reconcileVisibleArea(graphics);
 			}
 		};
 	}
@@ -7,18 +7,30 @@
  *
  * Contributors:
  * 		Florian Thienel - initial API and implementation
+ * 		agent - rebuild the structure of the whole document
+ * 		agent - collapse expanded nodes outside of the visible area
+ * 		agent - update the index of the content topology
  *******************************************************************************/
 package org.eclipse.vex.core.internal.widget;
 
+import static org.eclipse.vex.core.internal.boxes.BoxFactory.nodeReferencePlaceholder;
+
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.Set;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.vex.core.internal.boxes.BaseBoxVisitor;
+import org.eclipse.vex.core.internal.boxes.BaseBoxVisitorWithResult;
 import org.eclipse.vex.core.internal.boxes.IBox;
+import org.eclipse.vex.core.internal.boxes.IChildBox;
 import org.eclipse.vex.core.internal.boxes.IContentBox;
 import org.eclipse.vex.core.internal.boxes.IHeightAdjustableBox;
+import org.eclipse.vex.core.internal.boxes.IInlineBox;
 import org.eclipse.vex.core.internal.boxes.IStructuralBox;
 import org.eclipse.vex.core.internal.boxes.InlineContainer;
 import org.eclipse.vex.core.internal.boxes.InlineFrame;
@@ -38,6 +50,7 @@ import org.eclipse.vex.core.internal.boxes.TableRow;
 import org.eclipse.vex.core.internal.boxes.TableRowGroup;
 import org.eclipse.vex.core.internal.boxes.TextContent;
 import org.eclipse.vex.core.internal.boxes.VerticalBlock;
+import org.eclipse.vex.core.internal.core.Rectangle;
 import org.eclipse.vex.core.internal.cursor.ContentTopology;
 import org.eclipse.vex.core.internal.cursor.Cursor;
 import org.eclipse.vex.core.internal.visualization.IBoxModelBuilder;
@@ -46,13 +59,18 @@ import org.eclipse.vex.core.provisional.dom.IDocument;
 import org.eclipse.vex.core.provisional.dom.INode;
 
 /**
+ * The box model builder may visualize parts of the document as placeholders. They are expanded on demand, so only the
+ * visible parts of a large document have to be visualized. Expanded nodes which are far away from the visible area are
+ * collapsed to placeholders again, so the box tree does not grow with each part of the document that was visible once.
+ *
  * @author Florian Thienel
  */
-public class DOMVisualization {
+public class DOMVisualization implements IPlaceholderExpander {
 
-	private final ContentTopology contentTopology = new ContentTopology();
+	private final ContentTopology contentTopology;
 	private final Cursor cursor;
 	private final BoxView view;
+	private final HashSet<INode> expandedNodes = new HashSet<INode>();
 
 	private IBoxModelBuilder boxModelBuilder;
 	private IDocument document;
@@ -60,6 +78,7 @@ public class DOMVisualization {
 	public DOMVisualization(final Cursor cursor, final BoxView view) {
 		this.cursor = cursor;
 		this.view = view;
+		contentTopology = cursor.getContentTopology();
 	}
 
 	public void setDocument(final IDocument document) {
@@ -82,14 +101,23 @@ public class DOMVisualization {
 		}
 
 		final RootBox rootBox = boxModelBuilder.visualizeRoot(document);
+		expandedNodes.clear();
 
-		contentTopology.setRootBox(rootBox);
 		cursor.setRootBox(rootBox);
 		view.setRootBox(rootBox);
 	}
 
 	public void rebuildStructure(final INode node) {
+		if (node instanceof IDocument) {
+			buildAll();
+			view.invalidateEverything();
+			return;
+		}
 		final Collection<IContentBox> boxesToReplace = contentTopology.findBoxesForNode(node);
+		if (boxesToReplace.isEmpty()) {
+			// the node is within a placeholder, it will be visualized when the placeholder is expanded
+			return;
+		}
 		final Collection<IBox> affectedParents = parents(boxesToReplace);
 		if (affectedParents.size() > 1) {
 			rebuildStructure(node.getParent());
@@ -112,85 +140,244 @@ public class DOMVisualization {
 		return parents;
 	}
 
-	private void replaceModifiedBoxesWithRebuiltVisualization(final IBox parent, final Collection<IContentBox> modifiedBoxes, final INode node) {
-		parent.accept(new BaseBoxVisitor() {
+	private IBox replaceModifiedBoxesWithRebuiltVisualization(final IBox parent, final Collection<IContentBox> modifiedBoxes, final INode node) {
+		final IBox newBox = parent.accept(new BaseBoxVisitorWithResult<IBox>() {
 			@Override
-			public void visit(final RootBox box) {
-				box.replaceChildren(modifiedBoxes, boxModelBuilder.visualizeStructure(node));
+			public IBox visit(final RootBox box) {
+				final IStructuralBox rebuiltBox = boxModelBuilder.visualizeStructure(node);
+				box.replaceChildren(modifiedBoxes, rebuiltBox);
+				return rebuiltBox;
 			}
 
 			@Override
-			public void visit(final VerticalBlock box) {
-				box.replaceChildren(modifiedBoxes, boxModelBuilder.visualizeStructure(node));
+			public IBox visit(final VerticalBlock box) {
+				final IStructuralBox rebuiltBox = boxModelBuilder.visualizeStructure(node);
+				box.replaceChildren(modifiedBoxes, rebuiltBox);
+				return rebuiltBox;
 			}
 
 			@Override
-			public void visit(final StructuralFrame box) {
-				box.setComponent(boxModelBuilder.visualizeStructure(node));
+			public IBox visit(final StructuralFrame box) {
+				final IStructuralBox rebuiltBox = boxModelBuilder.visualizeStructure(node);
+				box.setComponent(rebuiltBox);
+				return rebuiltBox;
 			}
 
 			@Override
-			public void visit(final StructuralNodeReference box) {
-				box.setComponent(boxModelBuilder.visualizeStructure(node));
+			public IBox visit(final StructuralNodeReference box) {
+				final IStructuralBox rebuiltBox = boxModelBuilder.visualizeStructure(node);
+				box.setComponent(rebuiltBox);
+				return rebuiltBox;
 			}
 
 			@Override
-			public void visit(final ListItem box) {
-				box.setComponent(boxModelBuilder.visualizeStructure(node));
+			public IBox visit(final ListItem box) {
+				final IStructuralBox rebuiltBox = boxModelBuilder.visualizeStructure(node);
+				box.setComponent(rebuiltBox);
+				return rebuiltBox;
 			}
 
 			@Override
-			public void visit(final List box) {
-				box.setComponent(boxModelBuilder.visualizeStructure(node));
+			public IBox visit(final List box) {
+				final IStructuralBox rebuiltBox = boxModelBuilder.visualizeStructure(node);
+				box.setComponent(rebuiltBox);
+				return rebuiltBox;
 			}
 
 			@Override
-			public void visit(final Table box) {
-				box.replaceChildren(modifiedBoxes, boxModelBuilder.visualizeStructure(node));
+			public IBox visit(final Table box) {
+				final IStructuralBox rebuiltBox = boxModelBuilder.visualizeStructure(node);
+				box.replaceChildren(modifiedBoxes, rebuiltBox);
+				return rebuiltBox;
 			}
 
 			@Override
-			public void visit(final TableRowGroup box) {
-				box.replaceChildren(modifiedBoxes, boxModelBuilder.visualizeStructure(node));
+			public IBox visit(final TableRowGroup box) {
+				final IStructuralBox rebuiltBox = boxModelBuilder.visualizeStructure(node);
+				box.replaceChildren(modifiedBoxes, rebuiltBox);
+				return rebuiltBox;
 			}
 
 			@Override
-			public void visit(final TableColumnSpec box) {
-				box.setComponent(boxModelBuilder.visualizeStructure(node));
+			public IBox visit(final TableColumnSpec box) {
+				final IStructuralBox rebuiltBox = boxModelBuilder.visualizeStructure(node);
+				box.setComponent(rebuiltBox);
+				return rebuiltBox;
 			}
 
 			@Override
-			public void visit(final TableRow box) {
-				box.replaceChildren(modifiedBoxes, boxModelBuilder.visualizeStructure(node));
+			public IBox visit(final TableRow box) {
+				final IStructuralBox rebuiltBox = boxModelBuilder.visualizeStructure(node);
+				box.replaceChildren(modifiedBoxes, rebuiltBox);
+				return rebuiltBox;
 			}
 
 			@Override
-			public void visit(final TableCell box) {
+			public IBox visit(final TableCell box) {
 				final IStructuralBox component = boxModelBuilder.visualizeStructure(node);
 				Assert.isTrue(component instanceof IHeightAdjustableBox);
 				box.setComponent((IHeightAdjustableBox) component);
+				return component;
 			}
 
 			@Override
-			public void visit(final Paragraph box) {
-				box.replaceChildren(modifiedBoxes, boxModelBuilder.visualizeInline(node));
+			public IBox visit(final Paragraph box) {
+				final IInlineBox rebuiltBox = boxModelBuilder.visualizeInline(node);
+				box.replaceChildren(modifiedBoxes, rebuiltBox);
+				return rebuiltBox;
 			}
 
 			@Override
-			public void visit(final InlineNodeReference box) {
-				box.setComponent(boxModelBuilder.visualizeInline(node));
+			public IBox visit(final InlineNodeReference box) {
+				final IInlineBox rebuiltBox = boxModelBuilder.visualizeInline(node);
+				box.setComponent(rebuiltBox);
+				return rebuiltBox;
+			}
+
+			@Override
+			public IBox visit(final InlineContainer box) {
+				final IInlineBox rebuiltBox = boxModelBuilder.visualizeInline(node);
+				box.replaceChildren(modifiedBoxes, rebuiltBox);
+				return rebuiltBox;
 			}
 
 			@Override
-			public void visit(final InlineContainer box) {
-				box.replaceChildren(modifiedBoxes, boxModelBuilder.visualizeInline(node));
+			public IBox visit(final InlineFrame box) {
+				final IInlineBox rebuiltBox = boxModelBuilder.visualizeInline(node);
+				box.setComponent(rebuiltBox);
+				return rebuiltBox;
 			}
+		});
+		if (newBox != null) {
+			contentTopology.boxesReplaced(modifiedBoxes, newBox);
+		}
+		return newBox;
+	}
 
+	@Override
+	public Collection<IStructuralBox> expandPlaceholders(final Rectangle area) {
+		final ArrayList<IStructuralBox> expandedBoxes = new ArrayList<IStructuralBox>();
+		for (final StructuralNodeReference placeholder : contentTopology.findPlaceholders(area)) {
+			expandedBoxes.add(expand(placeholder));
+		}
+		return expandedBoxes;
+	}
+
+	@Override
+	public IStructuralBox expandPlaceholderAt(final int offset) {
+		final IContentBox box = contentTopology.findBoxForPosition(offset);
+		if (box == null) {
+			return null;
+		}
+		final StructuralNodeReference placeholder = box.accept(new BaseBoxVisitorWithResult<StructuralNodeReference>() {
 			@Override
-			public void visit(final InlineFrame box) {
-				box.setComponent(boxModelBuilder.visualizeInline(node));
+			public StructuralNodeReference visit(final StructuralNodeReference box) {
+				if (box.isPlaceholder()) {
+					return box;
+				}
+				return null;
 			}
 		});
+		if (placeholder == null) {
+			return null;
+		}
+		return expand(placeholder);
+	}
+
+	private IStructuralBox expand(final StructuralNodeReference placeholder) {
+		final INode node = placeholder.getNode();
+		final IBox parentBox = placeholder.getParent();
+		Assert.isNotNull(parentBox, "Placeholder for " + node + " is not part of the box tree");
+
+		final IStructuralBox expandedBox = (IStructuralBox) replaceModifiedBoxesWithRebuiltVisualization(parentBox, Collections.singleton(placeholder), node);
+		expandedBox.setPosition(placeholder.getTop(), placeholder.getLeft());
+		expandedBox.setWidth(placeholder.getWidth());
+		expandedNodes.add(node);
+		return expandedBox;
+	}
+
+	@Override
+	public Collection<IStructuralBox> collapsePlaceholders(final Rectangle area) {
+		final Set<StructuralNodeReference> collapsibleBoxes = Collections.newSetFromMap(new IdentityHashMap<StructuralNodeReference, Boolean>());
+		for (final Iterator<INode> iter = expandedNodes.iterator(); iter.hasNext();) {
+			final StructuralNodeReference box = contentTopology.findStructuralBoxForNode(iter.next());
+			if (box == null || box.isPlaceholder()) {
+				// the node was removed, or it is within a collapsed node
+				iter.remove();
+			} else if (!intersectsVertically(box, area) && !containsCursor(box)) {
+				collapsibleBoxes.add(box);
+			}
+		}
+
+		final ArrayList<IStructuralBox> placeholders = new ArrayList<IStructuralBox>();
+		for (final StructuralNodeReference box : collapsibleBoxes) {
+			if (hasAncestorIn(box, collapsibleBoxes)) {
+				continue;
+			}
+			final IStructuralBox placeholder = collapse(box);
+			if (placeholder != null) {
+				placeholders.add(placeholder);
+				expandedNodes.remove(box.getNode());
+			}
+		}
+		return placeholders;
+	}
+
+	private static boolean intersectsVertically(final IBox box, final Rectangle area) {
+		final int top = box.getAbsoluteTop();
+		return top < area.getY() + area.getHeight() && top + box.getHeight() > area.getY();
+	}
+
+	private boolean containsCursor(final IContentBox box) {
+		final int offset = cursor.getOffset();
+		return box.getStartOffset() <= offset && offset <= box.getEndOffset();
+	}
+
+	private static boolean hasAncestorIn(final IChildBox box, final Set<? extends IBox> boxes) {
+		for (IBox ancestor = box.getParent(); ancestor instanceof IChildBox; ancestor = ((IChildBox) ancestor).getParent()) {
+			if (boxes.contains(ancestor)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private IStructuralBox collapse(final StructuralNodeReference expandedBox) {
+		final StructuralNodeReference placeholder = nodeReferencePlaceholder(expandedBox.getNode(), expandedBox.canContainText(), expandedBox.getHeight());
+		final Collection<StructuralNodeReference> expandedBoxes = Collections.singleton(expandedBox);
+		final boolean replaced = expandedBox.getParent().accept(new BaseBoxVisitorWithResult<Boolean>(false) {
+			@Override
+			public Boolean visit(final RootBox box) {
+				box.replaceChildren(expandedBoxes, placeholder);
+				return true;
+			}
+
+			@Override
+			public Boolean visit(final VerticalBlock box) {
+				box.replaceChildren(expandedBoxes, placeholder);
+				return true;
+			}
+
+			@Override
+			public Boolean visit(final StructuralFrame box) {
+				box.setComponent(placeholder);
+				return true;
+			}
+
+			@Override
+			public Boolean visit(final StructuralNodeReference box) {
+				box.setComponent(placeholder);
+				return true;
+			}
+		});
+		if (!replaced) {
+			return null;
+		}
+
+		contentTopology.boxesReplaced(expandedBoxes, placeholder);
+		placeholder.setPosition(expandedBox.getTop(), expandedBox.getLeft());
+		placeholder.setWidth(expandedBox.getWidth());
+		return placeholder;
 	}
 
 	public void rebuildContentRange(final INode node, final ContentRange modifiedRange) {
@@ -213,6 +400,7 @@ public class DOMVisualization {
 				if (modifiedRange.getStartOffset() == modifiedBox.getStartOffset() || modifiedRange.getEndOffset() == modifiedBox.getEndOffset()) {
 					rebuildStructure(node);
 				} else {
+					box.invalidateLayout();
 					view.invalidateLayout(modifiedBox);
 				}
 			}
@@ -59,6 +59,7 @@ import org.eclipse.vex.core.internal.undo.InsertLineBreakEdit;
 import org.eclipse.vex.core.internal.undo.InsertProcessingInstructionEdit;
 import org.eclipse.vex.core.internal.undo.InsertTextEdit;
 import org.eclipse.vex.core.internal.undo.JoinElementsAtOffsetEdit;
+import org.eclipse.vex.core.internal.validator.SequenceValidation;
 import org.eclipse.vex.core.provisional.dom.BaseNodeVisitor;
 import org.eclipse.vex.core.provisional.dom.BaseNodeVisitorWithResult;
 import org.eclipse.vex.core.provisional.dom.ContentPosition;
@@ -117,6 +118,7 @@ public class DocumentEditor implements IDocumentEditor {
 	@Override
 	public void setDocument(final IDocument document) {
 		this.document = document;
+		editStack.setEventBatching(document);
 		cursor.move(toOffset(document.getRootElement().getStartOffset() + 1));
 	}
 
@@ -945,14 +947,10 @@ public class DocumentEditor implements IDocumentEditor {
 	}
 
 	private static void filterInvalidSequences(final IValidator validator, final IElement parent, final List<QualifiedName> nodesBefore, final List<QualifiedName> nodesAfter, final List<QualifiedName> candidates) {
-		final int sequenceLength = nodesBefore.size() + 1 + nodesAfter.size();
+		final SequenceValidation validation = SequenceValidation.prepare(validator, parent.getQualifiedName(), nodesBefore, nodesAfter);
 		for (final Iterator<QualifiedName> iterator = candidates.iterator(); iterator.hasNext();) {
 			final QualifiedName candidate = iterator.next();
-			final List<QualifiedName> sequence = new ArrayList<QualifiedName>(sequenceLength);
-			sequence.addAll(nodesBefore);
-			sequence.add(candidate);
-			sequence.addAll(nodesAfter);
-			if (!canContainContent(validator, parent.getQualifiedName(), sequence)) {
+			if (!validation.isValidBetween(Collections.singletonList(candidate), true)) {
 				iterator.remove();
 			}
 		}
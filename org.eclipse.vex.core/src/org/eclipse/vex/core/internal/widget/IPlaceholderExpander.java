@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.widget;
+
+import java.util.Collection;
+
+import org.eclipse.vex.core.internal.boxes.IStructuralBox;
+import org.eclipse.vex.core.internal.core.Rectangle;
+
+/**
+ * Replaces the placeholders of a partially built box tree with the visualization of their nodes, and the visualization
+ * of nodes that are not needed anymore with placeholders again. The replacing boxes are not laid out yet and may
+ * contain placeholders themselves.
+ *
+ * @author agent
+ */
+public interface IPlaceholderExpander {
+
+	/**
+	 * @return the boxes which replaced the placeholders within the given area
+	 */
+	Collection<IStructuralBox> expandPlaceholders(Rectangle area);
+
+	/**
+	 * @return the box which replaced the placeholder at the given offset, or null if there is no placeholder at this
+	 *         offset
+	 */
+	IStructuralBox expandPlaceholderAt(int offset);
+
+	/**
+	 * Replaces the expanded nodes which lie completely outside of the given area with placeholders. The node containing
+	 * the cursor is kept expanded. The placeholders take the height of the replaced boxes, so the layout does not change.
+	 *
+	 * @return the placeholders which replaced the expanded nodes outside of the given area
+	 */
+	Collection<IStructuralBox> collapsePlaceholders(Rectangle area);
+}
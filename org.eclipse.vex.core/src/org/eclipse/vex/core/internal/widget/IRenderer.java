@@ -18,10 +18,31 @@ import org.eclipse.vex.core.internal.core.Rectangle;
  */
 public interface IRenderer {
 
+	/**
+	 * Executes the given render steps. The steps are executed before this method returns, but the rendered image may
+	 * become visible later.
+	 */
 	void render(final Rectangle viewPort, final IRenderStep... steps);
 
+	/**
+	 * Marks the given area of the content as dirty. The area is given in absolute coordinates.
+	 */
+	void invalidate(final Rectangle area);
+
+	/**
+	 * Marks the whole content as dirty.
+	 */
+	void invalidateEverything();
+
 	static interface IRenderStep {
 		void render(Graphics graphics);
 	}
 
+	/**
+	 * A render step which paints the content. The renderer may cache the painted content and execute this step only for
+	 * the dirty parts of the visible content. The clip bounds of the given Graphics are restricted to the dirty part.
+	 */
+	static interface IContentRenderStep extends IRenderStep {
+	}
+
 }
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.widget;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.eclipse.vex.core.internal.boxes.IBox;
+import org.eclipse.vex.core.internal.boxes.IChildBox;
+
+/**
+ * The boxes whose layout has to be reconciled, ordered by their depth in the box tree. The deepest boxes are polled
+ * first, so a box is polled only after all the scheduled boxes within it, whose reconciliation may in turn invalidate
+ * the box itself.<br/>
+ *
+ * A box is scheduled at most once during the lifetime of the queue, even if it is scheduled again after it was polled.
+ * Use a new queue for each reconciliation.
+ *
+ * @author agent
+ */
+public class LayoutReconciliationQueue {
+
+	private final PriorityQueue<ScheduledBox> queue = new PriorityQueue<ScheduledBox>();
+	private final Set<IBox> scheduledBoxes = Collections.newSetFromMap(new IdentityHashMap<IBox, Boolean>());
+
+	public void schedule(final IBox box) {
+		if (box == null || !scheduledBoxes.add(box)) {
+			return;
+		}
+		queue.add(new ScheduledBox(box, getDepth(box), scheduledBoxes.size()));
+	}
+
+	public void scheduleAll(final Collection<? extends IBox> boxes) {
+		for (final IBox box : boxes) {
+			schedule(box);
+		}
+	}
+
+	public boolean isEmpty() {
+		return queue.isEmpty();
+	}
+
+	/**
+	 * @return the deepest of the scheduled boxes, or null if the queue is empty
+	 */
+	public IBox poll() {
+		final ScheduledBox scheduledBox = queue.poll();
+		if (scheduledBox == null) {
+			return null;
+		}
+		return scheduledBox.box;
+	}
+
+	/**
+	 * @return the number of boxes which were scheduled so far, including the boxes which were already polled
+	 */
+	public int getScheduledCount() {
+		return scheduledBoxes.size();
+	}
+
+	private static int getDepth(final IBox box) {
+		int depth = 0;
+		IBox ancestor = box;
+		while (ancestor instanceof IChildBox) {
+			ancestor = ((IChildBox) ancestor).getParent();
+			depth += 1;
+		}
+		return depth;
+	}
+
+	private static class ScheduledBox implements Comparable<ScheduledBox> {
+		public final IBox box;
+		public final int depth;
+		public final int order;
+
+		public ScheduledBox(final IBox box, final int depth, final int order) {
+			this.box = box;
+			this.depth = depth;
+			this.order = order;
+		}
+
+		/*
+		 * Deeper boxes first, boxes at the same depth in the order in which they were scheduled.
+		 */
+		@Override
+		public int compareTo(final ScheduledBox other) {
+			if (depth != other.depth) {
+				return depth > other.depth ? -1 : 1;
+			}
+			if (order != other.order) {
+				return order < other.order ? -1 : 1;
+			}
+			return 0;
+		}
+	}
+}
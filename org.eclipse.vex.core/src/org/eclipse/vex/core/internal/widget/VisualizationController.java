@@ -7,9 +7,13 @@
  *
  * Contributors:
  * 		Florian Thienel - initial API and implementation
+ * 		agent - content replaced by a batch of modifications
  *******************************************************************************/
 package org.eclipse.vex.core.internal.widget;
 
+import java.net.URL;
+import java.util.Collection;
+
 import org.eclipse.vex.core.internal.cursor.Cursor;
 import org.eclipse.vex.core.internal.cursor.ICursorPositionListener;
 import org.eclipse.vex.core.internal.visualization.IBoxModelBuilder;
@@ -63,6 +67,11 @@ public class VisualizationController {
 				visualization.rebuildContentRange(event.getParent(), event.getRange());
 			}
 		}
+
+		@Override
+		public void contentReplaced(final ContentChangeEvent event) {
+			visualization.rebuildStructure(event.getParent());
+		}
 	};
 
 	private final ICursorPositionListener cursorListener = new ICursorPositionListener() {
@@ -81,6 +90,7 @@ public class VisualizationController {
 		cursor.addPositionListener(cursorListener);
 		view = new BoxView(renderer, viewPort, cursor);
 		visualization = new DOMVisualization(cursor, view);
+		view.setPlaceholderExpander(visualization);
 	}
 
 	public void dispose() {
@@ -116,6 +126,10 @@ public class VisualizationController {
 		view.invalidateEverything();
 	}
 
+	public void refreshImages(final Collection<URL> imageUrls) {
+		view.invalidateImages(imageUrls);
+	}
+
 	public void refreshViewport() {
 		view.invalidateViewport();
 	}
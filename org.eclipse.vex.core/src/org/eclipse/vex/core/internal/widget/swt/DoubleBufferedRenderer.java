@@ -7,13 +7,23 @@
  *
  * Contributors:
  * 		Florian Thienel - initial API and implementation
+ * 		agent - measure the time spent in the UI thread and in the render thread
+ * 		agent - resolve system colors while recording
+ * 		agent - cache the content in tiles, rasterize all tiles with one graphics
  *******************************************************************************/
 package org.eclipse.vex.core.internal.widget.swt;
 
-import java.net.URL;
+import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.DisposeEvent;
 import org.eclipse.swt.events.DisposeListener;
@@ -22,16 +32,35 @@ import org.eclipse.swt.events.PaintListener;
 import org.eclipse.swt.graphics.Device;
 import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Scrollable;
+import org.eclipse.vex.core.internal.VEXCorePlugin;
 import org.eclipse.vex.core.internal.core.Color;
 import org.eclipse.vex.core.internal.core.Graphics;
 import org.eclipse.vex.core.internal.core.Rectangle;
+import org.eclipse.vex.core.internal.core.RecordingGraphics;
 import org.eclipse.vex.core.internal.widget.IRenderer;
 
 /**
  * This class implements double buffering with a dedicated render thread for SWT. This prevents flickering and keeps the
  * UI responsive.<br/>
  *
+ * Only the rasterization is asynchronous. The render steps are executed in the UI thread, because they access the
+ * document and the box model, which are not thread-safe. So layout, placeholder expansion and cursor reconciliation
+ * still block the UI thread for the duration of {@link #render(Rectangle, IRenderStep...)}. The drawing operations of
+ * the render steps are recorded as a frame, which is replayed into the back buffer by the render thread. A frame that
+ * is still waiting for the render thread when the next frame arrives is stale and gets cancelled, so that the render
+ * thread always works on the latest state. Everything that needs the UI thread, like the system colors, is resolved
+ * while recording.<br/>
+ *
+ * The time spent per frame in the UI thread and in the render thread is measured separately, see
+ * {@link #getLatestUiThreadTime()} and {@link #getLatestReplayTime()}.<br/>
+ *
+ * The content is cached in tiles, which are horizontal bands of the content in absolute coordinates. Only the tiles
+ * that are dirty and visible are painted again, all other visible tiles are just copied into the back buffer. The
+ * render steps after the content (e.g. caret and selection) are painted as overlay on top of the tiles. The tiles are
+ * just images, they are all rasterized with the same graphics and fonts and copied into their image afterwards.<br/>
+ *
  * <b>CAUTION:</b> The prevention of flickering works only in conjunction with the style bit SWT.NO_BACKGROUND.
  *
  * @see http://git.eclipse.org/c/platform/eclipse.platform.swt.git/tree/examples/org.eclipse.swt.snippets/src/org
@@ -40,16 +69,55 @@ import org.eclipse.vex.core.internal.widget.IRenderer;
  */
 public class DoubleBufferedRenderer implements IRenderer {
 
+	private static final int TILE_HEIGHT = 256;
+	private static final int RETAINED_TILES_AROUND_VIEWPORT = 4;
+
 	private final Scrollable control;
+	private final Display display;
 
 	private final Object bufferMonitor = new Object();
 	private final RenderBuffer[] buffer = new RenderBuffer[2];
 	private int visibleIndex = 0;
 
-	private final Map<URL, SwtImage> imageCache = new HashMap<URL, SwtImage>();
+	private final SwtImageCache imageCache = SwtImageCache.getDefault();
+	private final RenderBuffer measuringBuffer;
+
+	private final Object frameMonitor = new Object();
+	private final Thread renderThread;
+	private Frame pendingFrame;
+	private Frame replayingFrame;
+	private boolean disposed;
+
+	/*
+	 * The tiles which are valid in the UI thread, i.e. their latest recording matches the current content.
+	 */
+	private final HashSet<Integer> validTiles = new HashSet<Integer>();
+	private int tileWidth = -1;
+	private Map<Integer, Color> systemColors;
+
+	/*
+	 * The tile images and the buffer to rasterize them, only accessed by the render thread.
+	 */
+	private final HashMap<Integer, Image> tiles = new HashMap<Integer, Image>();
+	private RenderBuffer tileRaster;
+
+	/*
+	 * Statistics, see #getLatestLatency() etc.
+	 */
+	private final AtomicLong latestLatency = new AtomicLong();
+	private final AtomicLong maximumLatency = new AtomicLong();
+	private final AtomicLong visibleFrameCount = new AtomicLong();
+	private final AtomicLong cancelledFrameCount = new AtomicLong();
+	private final AtomicLong repaintedTileCount = new AtomicLong();
+	private final AtomicLong latestUiThreadTime = new AtomicLong();
+	private final AtomicLong maximumUiThreadTime = new AtomicLong();
+	private final AtomicLong latestReplayTime = new AtomicLong();
+	private final AtomicLong maximumReplayTime = new AtomicLong();
 
 	public DoubleBufferedRenderer(final Scrollable control) {
 		this.control = control;
+		display = control.getDisplay();
+		measuringBuffer = new RenderBuffer(display, 1, 1, imageCache);
 		control.addDisposeListener(new DisposeListener() {
 			@Override
 			public void widgetDisposed(final DisposeEvent e) {
@@ -62,9 +130,19 @@ public class DoubleBufferedRenderer implements IRenderer {
 				DoubleBufferedRenderer.this.paintControl(e);
 			}
 		});
+
+		renderThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				renderFrames();
+			}
+		}, "Vex Render Thread");
+		renderThread.setDaemon(true);
+		renderThread.start();
 	}
 
 	private void widgetDisposed(final DisposeEvent e) {
+		stopRenderThread();
 		synchronized (bufferMonitor) {
 			for (int i = 0; i < buffer.length; i += 1) {
 				if (buffer[i] != null) {
@@ -73,10 +151,43 @@ public class DoubleBufferedRenderer implements IRenderer {
 				buffer[i] = null;
 			}
 		}
+		for (final Image tile : tiles.values()) {
+			tile.dispose();
+		}
+		tiles.clear();
+		if (tileRaster != null) {
+			tileRaster.dispose();
+			tileRaster = null;
+		}
+		measuringBuffer.dispose();
+	}
+
+	private void stopRenderThread() {
+		synchronized (frameMonitor) {
+			disposed = true;
+			if (pendingFrame != null) {
+				pendingFrame.cancel();
+				pendingFrame = null;
+			}
+			if (replayingFrame != null) {
+				replayingFrame.cancel();
+			}
+			frameMonitor.notifyAll();
+		}
+		try {
+			renderThread.join();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 
 	private void paintControl(final PaintEvent event) {
-		event.gc.drawImage(getVisibleImage(), 0, 0);
+		/*
+		 * The render thread must not draw into the visible image while it is copied to the control.
+		 */
+		synchronized (bufferMonitor) {
+			event.gc.drawImage(getVisibleImage(), 0, 0);
+		}
 	}
 
 	private Image getVisibleImage() {
@@ -105,60 +216,436 @@ public class DoubleBufferedRenderer implements IRenderer {
 		return image.getBounds().contains(viewPort.getWidth() - 1, viewPort.getHeight() - 1);
 	}
 
+	/**
+	 * Executes the render steps in the calling thread and hands the recorded frame over to the render thread.
+	 */
 	@Override
 	public void render(final Rectangle viewPort, final IRenderStep... steps) {
-		final RenderBuffer buffer = getRenderBuffer(viewPort);
+		final long startTime = System.nanoTime();
+		systemColors = SwtGraphics.getSystemColors(display);
+		final Frame frame = new Frame(viewPort);
+		RecordingGraphics graphics = startRecording(frame);
 
-		buffer.graphics.resetOrigin();
-		clearViewPort(viewPort, buffer.graphics);
-		moveOriginToViewPort(viewPort, buffer.graphics);
+		clear(graphics, viewPort.getWidth(), viewPort.getHeight());
+		moveOriginToViewPort(viewPort, graphics);
 
 		for (final IRenderStep step : steps) {
 			try {
-				step.render(buffer.graphics);
+				if (step instanceof IContentRenderStep) {
+					paintContent(frame, (IContentRenderStep) step, graphics.getClipBounds());
+					graphics = continueRecording(frame, graphics);
+				} else {
+					step.render(graphics);
+				}
+			} catch (final Throwable t) {
+				logRenderFailure(step, t);
+			}
+		}
+		graphics.dispose();
+		recordDuration(latestUiThreadTime, maximumUiThreadTime, startTime);
+
+		submit(frame);
+	}
+
+	@Override
+	public void invalidate(final Rectangle area) {
+		final int firstTile = getTileIndex(area.getY());
+		final int lastTile = getTileIndex(area.getY() + area.getHeight() - 1);
+		for (final Iterator<Integer> iter = validTiles.iterator(); iter.hasNext();) {
+			final int index = iter.next();
+			if (index >= firstTile && index <= lastTile) {
+				iter.remove();
+			}
+		}
+	}
+
+	@Override
+	public void invalidateEverything() {
+		validTiles.clear();
+	}
+
+	private RecordingGraphics startRecording(final Frame frame) {
+		final RecordingGraphics graphics = new RecordingGraphics(measuringBuffer.graphics, frame.viewPort.getWidth(), frame.viewPort.getHeight(), systemColors);
+		frame.layers.add(new RecordingLayer(graphics));
+		return graphics;
+	}
+
+	private RecordingGraphics continueRecording(final Frame frame, final RecordingGraphics previousGraphics) {
+		previousGraphics.dispose();
+		final RecordingGraphics graphics = startRecording(frame);
+		graphics.moveOrigin(previousGraphics.asAbsoluteX(0), previousGraphics.asAbsoluteY(0));
+		return graphics;
+	}
+
+	private void paintContent(final Frame frame, final IContentRenderStep step, final Rectangle visibleArea) {
+		if (visibleArea.getWidth() != tileWidth) {
+			validTiles.clear();
+			tileWidth = visibleArea.getWidth();
+		}
+
+		final int firstTile = getTileIndex(visibleArea.getY());
+		final int lastTile = getTileIndex(visibleArea.getY() + visibleArea.getHeight() - 1);
+		frame.retainTiles(tileWidth, firstTile - RETAINED_TILES_AROUND_VIEWPORT, lastTile + RETAINED_TILES_AROUND_VIEWPORT);
+		for (final Iterator<Integer> iter = validTiles.iterator(); iter.hasNext();) {
+			if (!frame.isTileRetained(iter.next())) {
+				iter.remove();
+			}
+		}
+
+		for (int i = firstTile; i <= lastTile; i += 1) {
+			if (!validTiles.contains(i)) {
+				frame.tileUpdates.put(i, recordTile(step, i));
+				validTiles.add(i);
+			}
+		}
+		frame.layers.add(new TileLayer(firstTile, lastTile, visibleArea.getY()));
+	}
+
+	private RecordingGraphics recordTile(final IContentRenderStep step, final int index) {
+		final RecordingGraphics graphics = new RecordingGraphics(measuringBuffer.graphics, tileWidth, TILE_HEIGHT, systemColors);
+		clear(graphics, tileWidth, TILE_HEIGHT);
+		graphics.moveOrigin(0, -index * TILE_HEIGHT);
+		try {
+			step.render(graphics);
+		} catch (final Throwable t) {
+			logRenderFailure(step, t);
+		}
+		graphics.dispose();
+		return graphics;
+	}
+
+	private static void logRenderFailure(final IRenderStep step, final Throwable t) {
+		VEXCorePlugin.getInstance().getLog().log(new Status(IStatus.ERROR, VEXCorePlugin.ID, MessageFormat.format("Cannot render step {0}", step), t));
+	}
+
+	private static int getTileIndex(final int y) {
+		return Math.max(0, y) / TILE_HEIGHT;
+	}
+
+	private void submit(final Frame frame) {
+		synchronized (frameMonitor) {
+			if (disposed) {
+				return;
+			}
+			if (pendingFrame != null) {
+				frame.inherit(pendingFrame);
+				cancelledFrameCount.incrementAndGet();
+			}
+			pendingFrame = frame;
+			frameMonitor.notifyAll();
+		}
+	}
+
+	private void renderFrames() {
+		while (true) {
+			final Frame frame = takePendingFrame();
+			if (frame == null) {
+				return;
+			}
+
+			try {
+				final long startTime = System.nanoTime();
+				if (replay(frame)) {
+					recordDuration(latestReplayTime, maximumReplayTime, startTime);
+					makeRenderedImageVisible(frame);
+				} else {
+					cancelledFrameCount.incrementAndGet();
+				}
 			} catch (final Throwable t) {
-				t.printStackTrace(); //TODO proper logging
+				VEXCorePlugin.getInstance().getLog().log(new Status(IStatus.ERROR, VEXCorePlugin.ID, "Cannot replay frame", t));
+			} finally {
+				synchronized (frameMonitor) {
+					replayingFrame = null;
+				}
 			}
 		}
+	}
 
-		makeRenderedImageVisible(buffer.image);
+	private Frame takePendingFrame() {
+		synchronized (frameMonitor) {
+			while (pendingFrame == null && !disposed) {
+				try {
+					frameMonitor.wait();
+				} catch (final InterruptedException e) {
+					return null;
+				}
+			}
+			if (disposed) {
+				return null;
+			}
+			replayingFrame = pendingFrame;
+			pendingFrame = null;
+			return replayingFrame;
+		}
+	}
+
+	private boolean replay(final Frame frame) {
+		for (final Map.Entry<Integer, RecordingGraphics> tileUpdate : frame.tileUpdates.entrySet()) {
+			final RenderBuffer raster = getTileRaster(frame.tileWidth);
+			if (!tileUpdate.getValue().replay(raster.graphics)) {
+				return false;
+			}
+			raster.gc.copyArea(getTile(tileUpdate.getKey(), frame.tileWidth), 0, 0);
+			repaintedTileCount.incrementAndGet();
+		}
+		disposeTilesNotRetainedBy(frame);
+
+		final RenderBuffer buffer = getRenderBuffer(frame.viewPort);
+		for (final ILayer layer : frame.layers) {
+			if (!layer.paint(buffer)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private RenderBuffer getTileRaster(final int width) {
+		if (tileRaster != null && tileRaster.image.getBounds().width == Math.max(1, width)) {
+			return tileRaster;
+		}
+		if (tileRaster != null) {
+			tileRaster.dispose();
+		}
+		tileRaster = new RenderBuffer(display, width, TILE_HEIGHT, imageCache);
+		return tileRaster;
+	}
+
+	private Image getTile(final int index, final int width) {
+		final Image tile = tiles.get(index);
+		if (tile != null && tile.getBounds().width == Math.max(1, width)) {
+			return tile;
+		}
+		if (tile != null) {
+			tile.dispose();
+		}
+		final Image newTile = new Image(display, Math.max(1, width), TILE_HEIGHT);
+		tiles.put(index, newTile);
+		return newTile;
+	}
+
+	private void disposeTilesNotRetainedBy(final Frame frame) {
+		for (final Iterator<Map.Entry<Integer, Image>> iter = tiles.entrySet().iterator(); iter.hasNext();) {
+			final Map.Entry<Integer, Image> tile = iter.next();
+			if (!frame.isTileRetained(tile.getKey())) {
+				tile.getValue().dispose();
+				iter.remove();
+			}
+		}
 	}
 
 	private RenderBuffer createRenderBuffer(final Rectangle viewPort) {
-		return new RenderBuffer(control.getDisplay(), viewPort.getWidth(), viewPort.getHeight(), imageCache);
+		return new RenderBuffer(display, viewPort.getWidth(), viewPort.getHeight(), imageCache);
 	}
 
 	private void moveOriginToViewPort(final Rectangle viewPort, final Graphics graphics) {
 		graphics.moveOrigin(0, -viewPort.getY());
 	}
 
-	private void clearViewPort(final Rectangle viewPort, final Graphics graphics) {
+	private static void clear(final Graphics graphics, final int width, final int height) {
 		graphics.setColor(graphics.getColor(Color.WHITE));
-		graphics.fillRect(0, 0, viewPort.getWidth(), viewPort.getHeight());
+		graphics.fillRect(0, 0, width, height);
 	}
 
-	private void makeRenderedImageVisible(final Image newImage) {
-		swapBufferImage(newImage);
-		control.getDisplay().syncExec(new Runnable() {
+	private void makeRenderedImageVisible(final Frame frame) {
+		swapBufferImage();
+		display.asyncExec(new Runnable() {
 			@Override
 			public void run() {
+				if (control.isDisposed()) {
+					return;
+				}
 				control.redraw();
+				recordLatency(System.currentTimeMillis() - frame.requestTime);
 			}
 		});
 	}
 
-	private void swapBufferImage(final Image newImage) {
+	private void swapBufferImage() {
 		synchronized (bufferMonitor) {
 			visibleIndex = (visibleIndex + 1) % 2;
 		}
 	}
 
+	private void recordLatency(final long latency) {
+		visibleFrameCount.incrementAndGet();
+		latestLatency.set(latency);
+		recordMaximum(maximumLatency, latency);
+	}
+
+	private static void recordDuration(final AtomicLong latest, final AtomicLong maximum, final long startTime) {
+		final long duration = (System.nanoTime() - startTime) / 1000;
+		latest.set(duration);
+		recordMaximum(maximum, duration);
+	}
+
+	private static void recordMaximum(final AtomicLong maximum, final long value) {
+		long current = maximum.get();
+		while (value > current && !maximum.compareAndSet(current, value)) {
+			current = maximum.get();
+		}
+	}
+
+	/**
+	 * The time in milliseconds between the render request and the redraw of the control for the latest visible frame.
+	 * If stale frames were cancelled in between, the time is measured from the first of those render requests, i.e.
+	 * this is the latency from keystroke to pixels.
+	 */
+	public long getLatestLatency() {
+		return latestLatency.get();
+	}
+
+	public long getMaximumLatency() {
+		return maximumLatency.get();
+	}
+
+	public long getVisibleFrameCount() {
+		return visibleFrameCount.get();
+	}
+
+	public long getCancelledFrameCount() {
+		return cancelledFrameCount.get();
+	}
+
+	/**
+	 * The number of tiles which were painted again, because they were dirty.
+	 */
+	public long getRepaintedTileCount() {
+		return repaintedTileCount.get();
+	}
+
+	/**
+	 * The time in microseconds which the latest frame blocked the UI thread, i.e. the time to execute its render steps
+	 * including layout, placeholder expansion, cursor reconciliation and recording.
+	 */
+	public long getLatestUiThreadTime() {
+		return latestUiThreadTime.get();
+	}
+
+	public long getMaximumUiThreadTime() {
+		return maximumUiThreadTime.get();
+	}
+
+	/**
+	 * The time in microseconds which the render thread needed to replay the latest visible frame into the back buffer.
+	 * This is the part of the work that does not block the UI thread anymore.
+	 */
+	public long getLatestReplayTime() {
+		return latestReplayTime.get();
+	}
+
+	public long getMaximumReplayTime() {
+		return maximumReplayTime.get();
+	}
+
+	private static class Frame {
+		public final Rectangle viewPort;
+		public final ArrayList<ILayer> layers = new ArrayList<ILayer>();
+		public final LinkedHashMap<Integer, RecordingGraphics> tileUpdates = new LinkedHashMap<Integer, RecordingGraphics>();
+		public int tileWidth;
+		public int firstRetainedTile = 0;
+		public int lastRetainedTile = Integer.MAX_VALUE;
+		public long requestTime = System.currentTimeMillis();
+
+		public Frame(final Rectangle viewPort) {
+			this.viewPort = viewPort;
+		}
+
+		public void retainTiles(final int tileWidth, final int firstTile, final int lastTile) {
+			this.tileWidth = tileWidth;
+			firstRetainedTile = Math.max(0, firstTile);
+			lastRetainedTile = lastTile;
+		}
+
+		public boolean isTileRetained(final int index) {
+			return index >= firstRetainedTile && index <= lastRetainedTile;
+		}
+
+		/**
+		 * Takes over the request time and the tile updates of a stale frame, because the UI thread already considers
+		 * the updated tiles as valid.
+		 */
+		public void inherit(final Frame staleFrame) {
+			requestTime = staleFrame.requestTime;
+			if (tileWidth == 0) {
+				retainTiles(staleFrame.tileWidth, staleFrame.firstRetainedTile, staleFrame.lastRetainedTile);
+			} else if (tileWidth != staleFrame.tileWidth) {
+				return;
+			}
+			for (final Map.Entry<Integer, RecordingGraphics> tileUpdate : staleFrame.tileUpdates.entrySet()) {
+				if (isTileRetained(tileUpdate.getKey()) && !tileUpdates.containsKey(tileUpdate.getKey())) {
+					tileUpdates.put(tileUpdate.getKey(), tileUpdate.getValue());
+				}
+			}
+		}
+
+		public void cancel() {
+			for (final RecordingGraphics tileUpdate : tileUpdates.values()) {
+				tileUpdate.cancel();
+			}
+			for (final ILayer layer : layers) {
+				layer.cancel();
+			}
+		}
+	}
+
+	private static interface ILayer {
+		boolean paint(RenderBuffer buffer);
+
+		void cancel();
+	}
+
+	private static class RecordingLayer implements ILayer {
+		private final RecordingGraphics graphics;
+
+		public RecordingLayer(final RecordingGraphics graphics) {
+			this.graphics = graphics;
+		}
+
+		@Override
+		public boolean paint(final RenderBuffer buffer) {
+			return graphics.replay(buffer.graphics);
+		}
+
+		@Override
+		public void cancel() {
+			graphics.cancel();
+		}
+	}
+
+	private class TileLayer implements ILayer {
+		private final int firstTile;
+		private final int lastTile;
+		private final int top;
+
+		public TileLayer(final int firstTile, final int lastTile, final int top) {
+			this.firstTile = firstTile;
+			this.lastTile = lastTile;
+			this.top = top;
+		}
+
+		@Override
+		public boolean paint(final RenderBuffer buffer) {
+			for (int i = firstTile; i <= lastTile; i += 1) {
+				final Image tile = tiles.get(i);
+				if (tile != null) {
+					buffer.gc.drawImage(tile, 0, i * TILE_HEIGHT - top);
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void cancel() {
+			// copying the tiles is not interruptible
+		}
+	}
+
 	private static class RenderBuffer {
 		public final Image image;
 		public final GC gc;
 		public final SwtGraphics graphics;
 
-		public RenderBuffer(final Device device, final int width, final int height, final Map<URL, SwtImage> imageCache) {
+		public RenderBuffer(final Device device, final int width, final int height, final SwtImageCache imageCache) {
 			image = new Image(device, Math.max(1, width), Math.max(1, height));
 			gc = new GC(image);
 			gc.setAdvanced(true);
@@ -7,10 +7,12 @@
  *
  * Contributors:
  *     John Krasnay - initial API and implementation
+ *     agent - font specification for the shared text measurement
  *******************************************************************************/
 package org.eclipse.vex.core.internal.widget.swt;
 
 import org.eclipse.vex.core.internal.core.FontResource;
+import org.eclipse.vex.core.internal.core.FontSpec;
 
 /**
  * Wrapper for the SWT Font class.
@@ -18,15 +20,28 @@ import org.eclipse.vex.core.internal.core.FontResource;
 public class SwtFont implements FontResource {
 
 	private final org.eclipse.swt.graphics.Font swtFont;
+	private final FontSpec fontSpec;
 
 	public SwtFont(final org.eclipse.swt.graphics.Font swtFont) {
+		this(swtFont, null);
+	}
+
+	public SwtFont(final org.eclipse.swt.graphics.Font swtFont, final FontSpec fontSpec) {
 		this.swtFont = swtFont;
+		this.fontSpec = fontSpec;
 	}
 
 	org.eclipse.swt.graphics.Font getSwtFont() {
 		return swtFont;
 	}
 
+	/**
+	 * @return the specification this font was created from, or null if it is a toolkit font
+	 */
+	FontSpec getFontSpec() {
+		return fontSpec;
+	}
+
 	@Override
 	public void dispose() {
 		swtFont.dispose();
@@ -9,27 +9,22 @@
  *     John Krasnay - initial API and implementation
  *     Mohamadou Nassourou - Bug 298912 - rudimentary support for images
  *     Florian Thienel - font cache, color cache
+ *     agent - shared text measurement
+ *     agent - shared image cache with asynchronous decoding
  *******************************************************************************/
 package org.eclipse.vex.core.internal.widget.swt;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
-import java.text.MessageFormat;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.eclipse.core.runtime.Assert;
-import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.Status;
 import org.eclipse.swt.SWT;
-import org.eclipse.swt.SWTException;
 import org.eclipse.swt.graphics.FontData;
 import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.ImageLoader;
+import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.widgets.Display;
-import org.eclipse.vex.core.internal.VEXCorePlugin;
 import org.eclipse.vex.core.internal.core.Color;
 import org.eclipse.vex.core.internal.core.ColorResource;
 import org.eclipse.vex.core.internal.core.FontMetrics;
@@ -38,41 +33,70 @@ import org.eclipse.vex.core.internal.core.FontSpec;
 import org.eclipse.vex.core.internal.core.Graphics;
 import org.eclipse.vex.core.internal.core.Image;
 import org.eclipse.vex.core.internal.core.LineStyle;
+import org.eclipse.vex.core.internal.core.LruCache;
 import org.eclipse.vex.core.internal.core.Rectangle;
+import org.eclipse.vex.core.internal.core.TextMeasurement;
 
 /**
  * Implementation of the Vex Graphics interface, mapping it to a org.eclipse.swt.graphics.GC object.
  */
 public class SwtGraphics implements Graphics {
 
+	private static final Color IMAGE_PLACEHOLDER_COLOR = new Color(230, 230, 230);
+	private static final long NATIVE_IMAGES_CAPACITY = 4 * 1024 * 1024;
+
 	private final GC gc;
-	private final Map<URL, SwtImage> imageCache;
+	private final SwtImageCache imageCache;
 
 	private int offsetX;
 	private int offsetY;
 
 	private final HashMap<FontSpec, FontResource> fonts = new HashMap<FontSpec, FontResource>();
 	private final HashMap<Color, ColorResource> colors = new HashMap<Color, ColorResource>();
-	private final HashMap<URL, org.eclipse.swt.graphics.Image> images = new HashMap<URL, org.eclipse.swt.graphics.Image>();
+
+	/*
+	 * The native images of this graphics, keyed by the identity of the image data they are created from.
+	 */
+	private final LruCache<ImageData, org.eclipse.swt.graphics.Image> images = new LruCache<ImageData, org.eclipse.swt.graphics.Image>(NATIVE_IMAGES_CAPACITY) {
+		@Override
+		protected long getSize(final org.eclipse.swt.graphics.Image image) {
+			final org.eclipse.swt.graphics.Rectangle bounds = image.getBounds();
+			return 4L * bounds.width * bounds.height;
+		}
+
+		@Override
+		protected void evicted(final ImageData imageData, final org.eclipse.swt.graphics.Image image) {
+			image.dispose();
+		}
+	};
 
 	private SwtFont currentFont;
-	private SwtFontMetrics currentFontMetrics;
+	private FontMetrics currentFontMetrics;
 	private LineStyle lineStyle = LineStyle.SOLID;
 
+	private final TextMeasurement.IMeasurement nativeMeasurement = new TextMeasurement.IMeasurement() {
+		@Override
+		public int stringWidth(final String text) {
+			return gc.stringExtent(text).x;
+		}
+	};
+
 	/**
 	 * @param gc
 	 *            SWT GC to which we are drawing.
 	 */
 	@Deprecated
 	public SwtGraphics(final GC gc) {
-		this(gc, new HashMap<URL, SwtImage>());
+		this(gc, SwtImageCache.getDefault());
 	}
 
 	/**
 	 * @param gc
 	 *            SWT GC to which we are drawing.
+	 * @param imageCache
+	 *            the cache which provides the decoded image data
 	 */
-	public SwtGraphics(final GC gc, final Map<URL, SwtImage> imageCache) {
+	public SwtGraphics(final GC gc, final SwtImageCache imageCache) {
 		this.gc = gc;
 		this.imageCache = imageCache;
 
@@ -89,9 +113,6 @@ public class SwtGraphics implements Graphics {
 			color.dispose();
 		}
 		colors.clear();
-		for (final org.eclipse.swt.graphics.Image image : images.values()) {
-			image.dispose();
-		}
 		images.clear();
 
 		// TODO should not dispose something that comes from outside!
@@ -180,17 +201,28 @@ public class SwtGraphics implements Graphics {
 	@Override
 	public void drawImage(final Image image, final int x, final int y, final int width, final int height) {
 		Assert.isTrue(image instanceof SwtImage);
-		final org.eclipse.swt.graphics.Image swtImage = toSWT((SwtImage) image);
-		gc.drawImage(swtImage, 0, 0, image.getWidth(), image.getHeight(), x + offsetX, y + offsetY, width, height);
+		final ImageData imageData = ((SwtImage) image).getImageData(width, height);
+		if (imageData == null) {
+			drawImagePlaceholder(x, y, width, height);
+			return;
+		}
+		final org.eclipse.swt.graphics.Image swtImage = toSWT(imageData);
+		gc.drawImage(swtImage, 0, 0, imageData.width, imageData.height, x + offsetX, y + offsetY, width, height);
 	}
 
-	private org.eclipse.swt.graphics.Image toSWT(final SwtImage image) {
-		final org.eclipse.swt.graphics.Image cachedImage = images.get(image.url);
+	private void drawImagePlaceholder(final int x, final int y, final int width, final int height) {
+		final ColorResource oldBackground = setBackground(getColor(IMAGE_PLACEHOLDER_COLOR));
+		fillRect(x, y, width, height);
+		setBackground(oldBackground);
+	}
+
+	private org.eclipse.swt.graphics.Image toSWT(final ImageData imageData) {
+		final org.eclipse.swt.graphics.Image cachedImage = images.get(imageData);
 		if (cachedImage != null) {
 			return cachedImage;
 		}
-		final org.eclipse.swt.graphics.Image newImage = new org.eclipse.swt.graphics.Image(gc.getDevice(), image.imageData);
-		images.put(image.url, newImage);
+		final org.eclipse.swt.graphics.Image newImage = new org.eclipse.swt.graphics.Image(gc.getDevice(), imageData);
+		images.put(imageData, newImage);
 		return newImage;
 	}
 
@@ -242,10 +274,25 @@ public class SwtGraphics implements Graphics {
 		final FontResource oldFont = getCurrentFont();
 		currentFont = (SwtFont) font;
 		gc.setFont(currentFont.getSwtFont());
-		currentFontMetrics = new SwtFontMetrics(gc.getFontMetrics());
+		currentFontMetrics = getMetricsOfCurrentFont();
 		return oldFont;
 	}
 
+	private FontMetrics getMetricsOfCurrentFont() {
+		final FontSpec fontSpec = currentFont.getFontSpec();
+		if (fontSpec == null) {
+			return new SwtFontMetrics(gc.getFontMetrics());
+		}
+
+		final FontMetrics cachedMetrics = TextMeasurement.getShared().getFontMetrics(fontSpec);
+		if (cachedMetrics != null) {
+			return cachedMetrics;
+		}
+		final FontMetrics metrics = new SwtFontMetrics(gc.getFontMetrics());
+		TextMeasurement.getShared().putFontMetrics(fontSpec, metrics);
+		return metrics;
+	}
+
 	@Override
 	public FontMetrics getFontMetrics() {
 		return currentFontMetrics;
@@ -263,41 +310,7 @@ public class SwtGraphics implements Graphics {
 
 	@Override
 	public Image getImage(final URL url) {
-		final SwtImage cachedImage = imageCache.get(url);
-		if (cachedImage != null) {
-			return cachedImage;
-		}
-
-		final ImageData[] imageData = loadImageData(url);
-		if (imageData != null && imageData.length > 0) {
-			final SwtImage loadedImage = new SwtImage(url, imageData[0]);
-			imageCache.put(url, loadedImage);
-			return loadedImage;
-		}
-
-		return new SwtImage(url, Display.getDefault().getSystemImage(SWT.ICON_ERROR).getImageData());
-	}
-
-	private static ImageData[] loadImageData(final URL url) {
-		if (url == null) {
-			return null;
-		}
-
-		final ImageLoader imageLoader = new ImageLoader();
-		try {
-			final InputStream in = url.openStream();
-			try {
-				return imageLoader.load(in);
-			} finally {
-				in.close();
-			}
-		} catch (final SWTException e) {
-			VEXCorePlugin.getInstance().getLog().log(new Status(IStatus.ERROR, VEXCorePlugin.ID, MessageFormat.format("Cannot load image from url: {0}", url), e));
-			return null;
-		} catch (final IOException e) {
-			VEXCorePlugin.getInstance().getLog().log(new Status(IStatus.ERROR, VEXCorePlugin.ID, MessageFormat.format("Cannot load image from url: {0}", url), e));
-			return null;
-		}
+		return imageCache.getImage(url);
 	}
 
 	@Override
@@ -388,7 +401,7 @@ public class SwtGraphics implements Graphics {
 	}
 
 	private SwtColor createColor(final Color rgb) {
-		return new SwtColor(new org.eclipse.swt.graphics.Color(null, rgb.getRed(), rgb.getGreen(), rgb.getBlue()));
+		return new SwtColor(new org.eclipse.swt.graphics.Color(gc.getDevice(), rgb.getRed(), rgb.getGreen(), rgb.getBlue()));
 	}
 
 	@Override
@@ -416,24 +429,44 @@ public class SwtGraphics implements Graphics {
 		for (int i = 0; i < names.length; i++) {
 			fd[i] = new FontData(names[i], size, style);
 		}
-		return new SwtFont(new org.eclipse.swt.graphics.Font(null, fd));
+		return new SwtFont(new org.eclipse.swt.graphics.Font(gc.getDevice(), fd), fontSpec);
 	}
 
 	@Override
 	public ColorResource getSystemColor(final int id) {
+		return new SwtColor(Display.getCurrent().getSystemColor(getSwtSystemColorId(id)));
+	}
 
+	/**
+	 * Provides the values of the system colors (see {@link ColorResource}) of the given display. This has to be called
+	 * in the UI thread.
+	 */
+	public static Map<Integer, Color> getSystemColors(final Display display) {
+		final HashMap<Integer, Color> systemColors = new HashMap<Integer, Color>();
+		for (final int id : new int[] { ColorResource.SELECTION_BACKGROUND, ColorResource.SELECTION_FOREGROUND }) {
+			final RGB rgb = display.getSystemColor(getSwtSystemColorId(id)).getRGB();
+			systemColors.put(id, new Color(rgb.red, rgb.green, rgb.blue));
+		}
+		return systemColors;
+	}
+
+	private static int getSwtSystemColorId(final int id) {
 		if (id == ColorResource.SELECTION_BACKGROUND) {
-			return new SwtColor(Display.getCurrent().getSystemColor(SWT.COLOR_LIST_SELECTION));
+			return SWT.COLOR_LIST_SELECTION;
 		} else if (id == ColorResource.SELECTION_FOREGROUND) {
-			return new SwtColor(Display.getCurrent().getSystemColor(SWT.COLOR_LIST_SELECTION_TEXT));
+			return SWT.COLOR_LIST_SELECTION_TEXT;
 		} else {
-			return new SwtColor(Display.getCurrent().getSystemColor(-1));
+			return -1;
 		}
 	}
 
 	@Override
 	public int stringWidth(final String s) {
-		return gc.stringExtent(s).x;
+		final FontSpec fontSpec = currentFont.getFontSpec();
+		if (fontSpec == null) {
+			return nativeMeasurement.stringWidth(s);
+		}
+		return TextMeasurement.getShared().stringWidth(fontSpec, s, nativeMeasurement);
 	}
 
 }
@@ -12,29 +12,83 @@ package org.eclipse.vex.core.internal.widget.swt;
 
 import java.net.URL;
 
+import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.vex.core.internal.core.Image;
 
 /**
+ * An image from the SwtImageCache. The dimensions of the image are read in the background, until then the image has
+ * the size of a placeholder. The decoded image data is provided by the SwtImageCache. If the image cannot be loaded, the
+ * error icon is shown instead.
+ *
  * @author Florian Thienel
  */
 public class SwtImage implements Image {
 
+	/**
+	 * The width and height of an image whose dimensions are not known yet, or which cannot be loaded.
+	 */
+	public static final int PLACEHOLDER_SIZE = 32;
+
 	public final URL url;
-	public final ImageData imageData;
+	private final SwtImageCache cache;
+
+	private volatile int width = PLACEHOLDER_SIZE;
+	private volatile int height = PLACEHOLDER_SIZE;
+	private volatile boolean loaded;
+	private volatile boolean failed;
+	private ImageData errorImageData;
 
-	public SwtImage(final URL url, final ImageData imageData) {
+	public SwtImage(final URL url, final SwtImageCache cache) {
 		this.url = url;
-		this.imageData = imageData;
+		this.cache = cache;
 	}
 
 	@Override
 	public int getHeight() {
-		return imageData.height;
+		return height;
 	}
 
 	@Override
 	public int getWidth() {
-		return imageData.width;
+		return width;
+	}
+
+	/**
+	 * @return true if the dimensions of this image are known or the image cannot be loaded
+	 */
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	void setDimensions(final int width, final int height) {
+		this.width = width;
+		this.height = height;
+		loaded = true;
+	}
+
+	void setFailed() {
+		failed = true;
+		loaded = true;
+	}
+
+	/**
+	 * Must be called in the display thread, because the error icon is provided by the display.
+	 *
+	 * @return the image data scaled down to the given size, or null if it is not decoded yet
+	 * @see SwtImageCache#getImageData(SwtImage, int, int)
+	 */
+	public ImageData getImageData(final int width, final int height) {
+		if (failed) {
+			if (errorImageData == null) {
+				errorImageData = Display.getCurrent().getSystemImage(SWT.ICON_ERROR).getImageData();
+			}
+			return errorImageData;
+		}
+		if (!loaded) {
+			return null;
+		}
+		return cache.getImageData(this, width, height);
 	}
 }
@@ -0,0 +1,395 @@
+/*******************************************************************************
+ * Copyright (c) 2016 agent and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		agent - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.vex.core.internal.widget.swt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.text.MessageFormat;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageLoader;
+import org.eclipse.vex.core.internal.VEXCorePlugin;
+import org.eclipse.vex.core.internal.core.LruCache;
+import org.eclipse.vex.core.internal.core.Point;
+
+/**
+ * A cache for images, shared by all editors.<br/>
+ *
+ * All image files are read by a pool of worker threads. When an image is requested for layout, only its dimensions are
+ * read, which just needs the header of the image file. Until the dimensions are known, the image has the size of a
+ * placeholder. The image data is decoded when the image is painted for the first time. Until then, SwtGraphics paints a
+ * placeholder. The listeners of this cache are notified when the dimensions or the image data are available.<br/>
+ *
+ * The decoded image data is scaled down to the size in which the image is displayed. The cache is bounded by the number
+ * of bytes of the decoded image data and evicts the least recently used image data.
+ *
+ * @author agent
+ */
+public class SwtImageCache {
+
+	private static final long DEFAULT_CAPACITY = 64 * 1024 * 1024;
+	private static final int MAX_IMAGES = 4096;
+	private static final int DECODER_THREADS = 2;
+	private static final long FAILED_DECODE_BACKOFF = 30 * 1000;
+
+	private static SwtImageCache defaultCache;
+
+	/*
+	 * The images are keyed by the string representation of their URL, because URL.equals resolves the host name.
+	 */
+	private final LruCache<String, SwtImage> images = new LruCache<String, SwtImage>(MAX_IMAGES) {
+		@Override
+		protected long getSize(final SwtImage image) {
+			return 1;
+		}
+	};
+
+	private final LruCache<ImageKey, ImageData> imageData;
+
+	/*
+	 * The keys of the image data which is requested from the decoder threads.
+	 */
+	private final HashSet<ImageKey> requestedImageData = new HashSet<ImageKey>();
+
+	/*
+	 * The time of the last failed decode for each key. A failed decode is only retried after a backoff, otherwise each
+	 * repaint would read the file again.
+	 */
+	private final LruCache<ImageKey, Long> failedImageData = new LruCache<ImageKey, Long>(MAX_IMAGES) {
+		@Override
+		protected long getSize(final Long failureTime) {
+			return 1;
+		}
+	};
+
+	private final ExecutorService decoder;
+	private final CopyOnWriteArrayList<IImageDecodedListener> listeners = new CopyOnWriteArrayList<IImageDecodedListener>();
+
+	/**
+	 * @return the image cache which is shared by all editors
+	 */
+	public static synchronized SwtImageCache getDefault() {
+		if (defaultCache == null) {
+			defaultCache = new SwtImageCache(DEFAULT_CAPACITY);
+		}
+		return defaultCache;
+	}
+
+	/**
+	 * @param capacity
+	 *            the maximum number of bytes of decoded image data in this cache
+	 */
+	public SwtImageCache(final long capacity) {
+		imageData = new LruCache<ImageKey, ImageData>(capacity) {
+			@Override
+			protected long getSize(final ImageData value) {
+				return getByteCount(value);
+			}
+		};
+		decoder = Executors.newFixedThreadPool(DECODER_THREADS, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "Vex Image Decoder");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+	}
+
+	public void addImageDecodedListener(final IImageDecodedListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeImageDecodedListener(final IImageDecodedListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Provides the image for the given URL. If the image is requested for the first time, its dimensions are read in
+	 * the background and the listeners are notified when they are known. The image data is not decoded yet.
+	 */
+	public SwtImage getImage(final URL url) {
+		if (url == null) {
+			final SwtImage image = new SwtImage(null, this);
+			image.setFailed();
+			return image;
+		}
+
+		final SwtImage cachedImage = images.get(url.toString());
+		if (cachedImage != null) {
+			return cachedImage;
+		}
+
+		final SwtImage image = new SwtImage(url, this);
+		images.put(url.toString(), image);
+		decoder.execute(new Runnable() {
+			@Override
+			public void run() {
+				load(image);
+			}
+		});
+		return image;
+	}
+
+	private void load(final SwtImage image) {
+		try {
+			final Point dimensions = readDimensions(image.url);
+			if (dimensions != null) {
+				image.setDimensions(dimensions.getX(), dimensions.getY());
+				return;
+			}
+
+			/*
+			 * The image format is not supported by ImageIO, so we have to decode the image to get its dimensions.
+			 */
+			final ImageData[] loadedImageData = loadImageData(image.url);
+			if (loadedImageData != null && loadedImageData.length > 0) {
+				final ImageData fullImageData = loadedImageData[0];
+				imageData.put(new ImageKey(image.url, fullImageData.width, fullImageData.height), fullImageData);
+				image.setDimensions(fullImageData.width, fullImageData.height);
+			}
+		} finally {
+			if (!image.isLoaded()) {
+				image.setFailed();
+			}
+			for (final IImageDecodedListener listener : listeners) {
+				try {
+					listener.imageLoaded(image);
+				} catch (final Throwable t) {
+					logListenerFailure(image, t);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Provides the image data of the given image, scaled down to the given size. If the image data is not decoded yet,
+	 * it is decoded in the background and the listeners are notified when it is available.
+	 *
+	 * @return the image data or null, if the image data is not decoded yet
+	 */
+	public ImageData getImageData(final SwtImage image, final int width, final int height) {
+		final ImageKey key = new ImageKey(image.url, Math.max(1, Math.min(width, image.getWidth())), Math.max(1, Math.min(height, image.getHeight())));
+		final ImageData cachedImageData = imageData.get(key);
+		if (cachedImageData != null) {
+			return cachedImageData;
+		}
+
+		synchronized (requestedImageData) {
+			if (hasRecentlyFailed(key) || !requestedImageData.add(key)) {
+				return null;
+			}
+		}
+		decoder.execute(new Runnable() {
+			@Override
+			public void run() {
+				decode(image, key);
+			}
+		});
+		return null;
+	}
+
+	private boolean hasRecentlyFailed(final ImageKey key) {
+		final Long failureTime = failedImageData.get(key);
+		if (failureTime == null) {
+			return false;
+		}
+		if (System.currentTimeMillis() - failureTime.longValue() < FAILED_DECODE_BACKOFF) {
+			return true;
+		}
+		failedImageData.remove(key);
+		return false;
+	}
+
+	private void decode(final SwtImage image, final ImageKey key) {
+		boolean decoded = false;
+		try {
+			decoded = decodeAndScale(image, key);
+		} finally {
+			synchronized (requestedImageData) {
+				requestedImageData.remove(key);
+				if (!decoded) {
+					failedImageData.put(key, Long.valueOf(System.currentTimeMillis()));
+				}
+			}
+		}
+		if (!decoded) {
+			return;
+		}
+
+		for (final IImageDecodedListener listener : listeners) {
+			try {
+				listener.imageDecoded(image);
+			} catch (final Throwable t) {
+				logListenerFailure(image, t);
+			}
+		}
+	}
+
+	private static void logListenerFailure(final SwtImage image, final Throwable t) {
+		VEXCorePlugin.getInstance().getLog().log(new Status(IStatus.ERROR, VEXCorePlugin.ID, MessageFormat.format("Cannot notify about image: {0}", image.url), t));
+	}
+
+	private boolean decodeAndScale(final SwtImage image, final ImageKey key) {
+		final ImageData[] loadedImageData = loadImageData(image.url);
+		if (loadedImageData == null || loadedImageData.length == 0) {
+			return false;
+		}
+
+		final ImageData fullImageData = loadedImageData[0];
+		final ImageData scaledImageData;
+		if (fullImageData.width == key.width && fullImageData.height == key.height) {
+			scaledImageData = fullImageData;
+		} else {
+			scaledImageData = fullImageData.scaledTo(key.width, key.height);
+		}
+		if (getByteCount(scaledImageData) > imageData.getCapacity()) {
+			// would be evicted immediately, so painting it again would just request it again
+			return false;
+		}
+		imageData.put(key, scaledImageData);
+		return true;
+	}
+
+	/**
+	 * @return the number of bytes of decoded image data in this cache
+	 */
+	public long getSize() {
+		return imageData.getSize();
+	}
+
+	private static long getByteCount(final ImageData imageData) {
+		long result = imageData.data.length;
+		if (imageData.alphaData != null) {
+			result += imageData.alphaData.length;
+		}
+		if (imageData.maskData != null) {
+			result += imageData.maskData.length;
+		}
+		return result;
+	}
+
+	private static Point readDimensions(final URL url) {
+		try {
+			final InputStream in = url.openStream();
+			try {
+				final ImageInputStream imageIn = new MemoryCacheImageInputStream(in);
+				try {
+					final Iterator<ImageReader> readers = ImageIO.getImageReaders(imageIn);
+					if (!readers.hasNext()) {
+						return null;
+					}
+					final ImageReader reader = readers.next();
+					try {
+						reader.setInput(imageIn, true, true);
+						return new Point(reader.getWidth(0), reader.getHeight(0));
+					} finally {
+						reader.dispose();
+					}
+				} finally {
+					imageIn.close();
+				}
+			} finally {
+				in.close();
+			}
+		} catch (final IOException e) {
+			return null;
+		}
+	}
+
+	private static ImageData[] loadImageData(final URL url) {
+		final ImageLoader imageLoader = new ImageLoader();
+		try {
+			final InputStream in = url.openStream();
+			try {
+				return imageLoader.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (final SWTException e) {
+			VEXCorePlugin.getInstance().getLog().log(new Status(IStatus.ERROR, VEXCorePlugin.ID, MessageFormat.format("Cannot load image from url: {0}", url), e));
+			return null;
+		} catch (final IOException e) {
+			VEXCorePlugin.getInstance().getLog().log(new Status(IStatus.ERROR, VEXCorePlugin.ID, MessageFormat.format("Cannot load image from url: {0}", url), e));
+			return null;
+		}
+	}
+
+	/**
+	 * Is notified in a decoder thread when the dimensions of an image are known and when the image data of an image is
+	 * decoded.
+	 */
+	public static interface IImageDecodedListener {
+		/**
+		 * The dimensions of the given image are known now, or the image cannot be loaded. The layout of the image has
+		 * to be updated.
+		 */
+		void imageLoaded(SwtImage image);
+
+		/**
+		 * The image data of the given image is available now. The image has to be painted again.
+		 */
+		void imageDecoded(SwtImage image);
+	}
+
+	private static class ImageKey {
+		public final URL url;
+		public final int width;
+		public final int height;
+
+		public ImageKey(final URL url, final int width, final int height) {
+			this.url = url;
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + url.toString().hashCode();
+			result = prime * result + width;
+			result = prime * result + height;
+			return result;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null) {
+				return false;
+			}
+			if (getClass() != obj.getClass()) {
+				return false;
+			}
+			final ImageKey other = (ImageKey) obj;
+			return width == other.width && height == other.height && url.toString().equals(other.url.toString());
+		}
+	}
+}
@@ -10,6 +10,8 @@
  *     Igor Jacy Lino Campista - Java 5 warnings fixed (bug 311325)
  *     Carsten Hiesserich - changed fragment pasting to allow XML content
  *     Carsten Hiesserich - replaced dispose override by disposeListener
+ *     agent - redraw when images are decoded
+ *     agent - relayout when image dimensions are known
  *******************************************************************************/
 package org.eclipse.vex.core.internal.widget.swt;
 
@@ -20,6 +22,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
@@ -111,6 +114,7 @@ public class VexWidget extends BaseXmlDocumentEditor implements IVexWidget, ISel
 		addMouseMoveListener(mouseMoveListener);
 		addPaintListener(painter);
 		addDisposeListener(disposeListener);
+		SwtImageCache.getDefault().addImageDecodedListener(imageDecodedListener);
 	}
 
 	public Object getInput() {
@@ -877,6 +881,43 @@ public class VexWidget extends BaseXmlDocumentEditor implements IVexWidget, ISel
 		}
 	};
 
+	private final AtomicBoolean relayoutPending = new AtomicBoolean();
+	private final SwtImageCache.IImageDecodedListener imageDecodedListener = new SwtImageCache.IImageDecodedListener() {
+		/*
+		 * Several images loaded in a row are laid out at once.
+		 */
+		@Override
+		public void imageLoaded(final SwtImage image) {
+			if (isDisposed() || relayoutPending.getAndSet(true)) {
+				return;
+			}
+			getDisplay().asyncExec(new Runnable() {
+				@Override
+				public void run() {
+					relayoutPending.set(false);
+					if (!isDisposed()) {
+						impl.relayoutAll();
+					}
+				}
+			});
+		}
+
+		@Override
+		public void imageDecoded(final SwtImage image) {
+			if (isDisposed()) {
+				return;
+			}
+			getDisplay().asyncExec(new Runnable() {
+				@Override
+				public void run() {
+					if (!isDisposed()) {
+						redraw();
+					}
+				}
+			});
+		}
+	};
+
 	private final SelectionListener selectionListener = new SelectionListener() {
 		@Override
 		public void widgetSelected(final SelectionEvent e) {
@@ -903,6 +944,7 @@ public class VexWidget extends BaseXmlDocumentEditor implements IVexWidget, ISel
 		public void widgetDisposed(final DisposeEvent e) {
 			impl.dispose();
 			caretTimer.stop();
+			SwtImageCache.getDefault().removeImageDecodedListener(imageDecodedListener);
 		}
 	};
 
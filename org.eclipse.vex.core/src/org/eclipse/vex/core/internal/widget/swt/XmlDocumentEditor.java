@@ -13,9 +13,13 @@ package org.eclipse.vex.core.internal.widget.swt;
 import static org.eclipse.vex.core.internal.cursor.CursorMoves.toAbsoluteCoordinates;
 import static org.eclipse.vex.core.internal.cursor.CursorMoves.toOffset;
 
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.core.commands.ExecutionEvent;
 import org.eclipse.core.commands.ExecutionException;
@@ -83,6 +87,7 @@ public class XmlDocumentEditor extends BaseXmlDocumentEditor implements ISelecti
 
 	private final Cursor cursor;
 	private final BalancingSelector selector;
+	private final DoubleBufferedRenderer renderer;
 	private final VisualizationController controller;
 	private final SwtClipboard clipboard;
 	private final DocumentEditor editor;
@@ -90,6 +95,20 @@ public class XmlDocumentEditor extends BaseXmlDocumentEditor implements ISelecti
 	private final ListenerList selectionChangedListeners = new ListenerList();
 	private Runnable lastSelectionChangeNotification = null;
 
+	private final AtomicBoolean imageRefreshPending = new AtomicBoolean();
+	private final Collection<URL> imagesToRefresh = new ArrayList<URL>();
+	private final SwtImageCache.IImageDecodedListener imageDecodedListener = new SwtImageCache.IImageDecodedListener() {
+		@Override
+		public void imageLoaded(final SwtImage image) {
+			scheduleImageRefresh(image);
+		}
+
+		@Override
+		public void imageDecoded(final SwtImage image) {
+			scheduleImageRefresh(image);
+		}
+	};
+
 	public XmlDocumentEditor(final Composite parent, final int style) {
 		super(parent, style | SWT.NO_BACKGROUND);
 
@@ -110,7 +129,9 @@ public class XmlDocumentEditor extends BaseXmlDocumentEditor implements ISelecti
 		cursor = new Cursor(selector, viewPort);
 		connectCursor();
 
-		controller = new VisualizationController(new DoubleBufferedRenderer(this), viewPort, cursor);
+		renderer = new DoubleBufferedRenderer(this);
+		controller = new VisualizationController(renderer, viewPort, cursor);
+		SwtImageCache.getDefault().addImageDecodedListener(imageDecodedListener);
 		clipboard = new SwtClipboard(parent.getDisplay());
 		editor = new DocumentEditor(cursor, IWhitespacePolicy.NULL, clipboard);
 	}
@@ -126,6 +147,10 @@ public class XmlDocumentEditor extends BaseXmlDocumentEditor implements ISelecti
 		return document;
 	}
 
+	public DoubleBufferedRenderer getRenderer() {
+		return renderer;
+	}
+
 	@Override
 	public void setBoxModelBuilder(final IBoxModelBuilder boxModelBuilder) {
 		controller.setBoxModelBuilder(boxModelBuilder);
@@ -202,11 +227,43 @@ public class XmlDocumentEditor extends BaseXmlDocumentEditor implements ISelecti
 	}
 
 	private void widgetDisposed() {
+		SwtImageCache.getDefault().removeImageDecodedListener(imageDecodedListener);
 		controller.dispose();
 		mouseCursor.dispose();
 		clipboard.dispose();
 	}
 
+	/*
+	 * Several images loaded or decoded in a row are refreshed at once.
+	 */
+	private void scheduleImageRefresh(final SwtImage image) {
+		synchronized (imagesToRefresh) {
+			imagesToRefresh.add(image.url);
+		}
+		if (isDisposed() || imageRefreshPending.getAndSet(true)) {
+			return;
+		}
+		getDisplay().asyncExec(new Runnable() {
+			@Override
+			public void run() {
+				imageRefreshPending.set(false);
+				refreshImages();
+			}
+		});
+	}
+
+	private void refreshImages() {
+		final Collection<URL> imageUrls;
+		synchronized (imagesToRefresh) {
+			imageUrls = new ArrayList<URL>(imagesToRefresh);
+			imagesToRefresh.clear();
+		}
+		if (isDisposed()) {
+			return;
+		}
+		controller.refreshImages(imageUrls);
+	}
+
 	private void resize(final ControlEvent event) {
 		controller.resize(getClientArea().width);
 	}
@@ -322,4 +322,21 @@ public interface IDocument extends IParent {
 	 */
 	void removeDocumentListener(IDocumentListener listener);
 
+	/**
+	 * Start a batch of modifications. Until the outermost batch is ended, the listeners are still notified before each
+	 * modification, but the notifications after the modifications are collected. When the outermost batch ends, the
+	 * listeners receive only one notification about the modified content. If there was more than one modification,
+	 * the listeners are notified by {@link IDocumentListener#contentReplaced(ContentChangeEvent)} about the whole
+	 * content of the innermost common parent of all modifications. Batches can be nested.
+	 *
+	 * @see #endEventBatch()
+	 */
+	void beginEventBatch();
+
+	/**
+	 * End a batch of modifications that has been started with {@link #beginEventBatch()}. If this is the outermost
+	 * batch, the listeners are notified about the modified content.
+	 */
+	void endEventBatch();
+
 }
\ No newline at end of file
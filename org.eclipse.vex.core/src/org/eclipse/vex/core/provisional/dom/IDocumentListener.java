@@ -8,6 +8,7 @@
  * Contributors:
  *     John Krasnay - initial API and implementation
  *     Florian Thienel - promoted to the public API
+ *     agent - content replaced by a batch of modifications
  *******************************************************************************/
 package org.eclipse.vex.core.provisional.dom;
 
@@ -64,4 +65,15 @@ public interface IDocumentListener extends java.util.EventListener {
 	 */
 	void contentInserted(ContentChangeEvent event);
 
+	/**
+	 * Called at the end of an event batch which modified the content of a document in more than one place. The event
+	 * reports the innermost common parent of all modifications and its whole range. Any content within this parent may
+	 * have been deleted, inserted or replaced, the parent itself may be the document.
+	 *
+	 * @param event
+	 *            the document event
+	 * @see IDocument#beginEventBatch()
+	 */
+	void contentReplaced(ContentChangeEvent event);
+
 }
@@ -277,6 +277,26 @@ public class FindReplaceTargetTest {
 		assertFalse(find());
 	}
 
+	@Test
+	public void testFindBackwardInLongContent() throws Exception {
+		final StringBuilder longContent = new StringBuilder("a");
+		for (int i = 0; i < 5000; i++) {
+			longContent.append("xyz");
+		}
+		longContent.append("a");
+		for (int i = 0; i < 100; i++) {
+			longContent.append("xyz");
+		}
+		setUp(longContent.toString(), longContent.length(), longContent.length());
+		setFindOptions("a", Direction.BACKWARD, Case.SENSITVE, WholeWord.OFF);
+
+		assertTrue(find());
+		assertEquals(15001, selectionStart);
+		assertTrue(find());
+		assertEquals(0, selectionStart);
+		assertFalse(find());
+	}
+
 	@Test
 	public void testReplace() throws Exception {
 		setUp("He__o W____!");
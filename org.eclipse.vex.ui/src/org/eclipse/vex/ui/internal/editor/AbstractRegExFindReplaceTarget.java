@@ -25,6 +25,8 @@ import org.eclipse.swt.graphics.Point;
  */
 public abstract class AbstractRegExFindReplaceTarget implements IFindReplaceTarget, IFindReplaceTargetExtension3 {
 
+	private static final int BACKWARD_SEARCH_WINDOW_SIZE = 1024;
+
 	private Matcher replacer;
 
 	/**
@@ -149,19 +151,28 @@ public abstract class AbstractRegExFindReplaceTarget implements IFindReplaceTarg
 		}
 
 		// b) backward
+		// Search for the last match before the offset within a window in front of the offset. The window is enlarged
+		// until a match is found or the window reaches the beginning of the document. This avoids to scan the whole
+		// document up to the offset for every single find.
 		boolean success = false;
 		int start = 0;
 		int end = 0;
-		for (int i = 0; i < correctedOffset;) {
-			final boolean currentFound = matcher.find(i);
-			if (!currentFound || matcher.end() > correctedOffset) {
-				break;
+		int windowSize = BACKWARD_SEARCH_WINDOW_SIZE;
+		int windowStart = correctedOffset;
+		while (!success && windowStart > 0) {
+			windowStart = Math.max(0, correctedOffset - windowSize);
+			for (int i = windowStart; i < correctedOffset;) {
+				final boolean currentFound = matcher.find(i);
+				if (!currentFound || matcher.end() > correctedOffset) {
+					break;
+				}
+
+				i = matcher.start() + 1;
+				success = true;
+				start = matcher.start();
+				end = matcher.end();
 			}
-
-			i = matcher.start() + 1;
-			success = true;
-			start = matcher.start();
-			end = matcher.end();
+			windowSize *= 2;
 		}
 		if (success) {
 			setSelection(start, end);
@@ -12,6 +12,7 @@
  *     Carsten Hiesserich - remove listeners on dispose (bug 413878)
  *     Carsten Hiesserich - use JFaceDocument as intermediate between VexDocument
  *                          and filesystem
+ *     agent - content replaced by a batch of modifications
  *******************************************************************************/
 package org.eclipse.vex.ui.internal.editor;
 
@@ -95,6 +96,7 @@ import org.eclipse.ui.views.properties.PropertySheetPage;
 import org.eclipse.vex.core.internal.core.ListenerList;
 import org.eclipse.vex.core.internal.core.Rectangle;
 import org.eclipse.vex.core.internal.css.CssWhitespacePolicy;
+import org.eclipse.vex.core.internal.dom.ContentCharSequence;
 import org.eclipse.vex.core.internal.dom.DocumentTextPosition;
 import org.eclipse.vex.core.internal.io.DocumentReader;
 import org.eclipse.vex.core.internal.io.DocumentWriter;
@@ -789,7 +791,7 @@ public class VexEditor extends EditorPart {
 				positionOfCurrentNode.computePosition(jFaceDoc);
 				reader.setCaretPosition(positionOfCurrentNode);
 			}
-			document = reader.read(is);
+			document = reader.read(is, jFaceDoc.getLength());
 			if (document == null) {
 				showLabel(MessageFormat.format(Messages.getString("VexEditor.noContent"), getEditorInput().getName()));
 				return;
@@ -1124,6 +1126,11 @@ public class VexEditor extends EditorPart {
 			setDirty();
 		}
 
+		@Override
+		public void contentReplaced(final ContentChangeEvent e) {
+			setDirty();
+		}
+
 	};
 
 	/**
@@ -1223,7 +1230,7 @@ public class VexEditor extends EditorPart {
 
 				@Override
 				protected CharSequence getDocument() {
-					return document.getContent();
+					return new ContentCharSequence(document.getContent());
 				}
 
 				@Override
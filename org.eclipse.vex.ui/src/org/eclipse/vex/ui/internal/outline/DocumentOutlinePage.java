@@ -12,6 +12,7 @@
  *     Carsten Hiesserich - Use EditorEventAdapter instead of IVexEditorListener
  *     Carsten Hiesserich - complete revision
  *                          Support for ToolBar and actions, performance optimization
+ *     agent - refresh the outline when the content of the document is replaced
  *******************************************************************************/
 package org.eclipse.vex.ui.internal.outline;
 
@@ -382,7 +383,7 @@ public class DocumentOutlinePage extends Page implements IContentOutlinePage {
 			// This cast is save because this event is only fired due to the attribute changes of elements.
 			final IElement parent = (IElement) event.getParent();
 			final IAttribute attr = parent.getAttribute(event.getAttributeName());
-			if (editorPart.getStyle().getStyleSheet().getStyles(parent).getOutlineContent() == attr) {
+			if (editorPart.getStyle().getStyleSheet().getStyles(parent).getOutlineContent(parent) == attr) {
 				// Parent has to be refreshed, since it uses this attribute as outline content
 				getTreeViewer().refresh(outlineProvider.getOutlineElement(parent));
 			}
@@ -412,13 +413,22 @@ public class DocumentOutlinePage extends Page implements IContentOutlinePage {
 			refreshOutlineElement(outlineElement);
 		}
 
+		@Override
+		public void contentReplaced(final ContentChangeEvent event) {
+			final IParent outlineElement = event.getParent();
+			refreshOutlineElement(outlineElement);
+		}
+
 		private void refreshOutlineElement(final IParent outlineElement) {
-			if (outlineElement.getDocument().getRootElement().equals(outlineElement)) {
+			if (outlineElement instanceof IDocument) {
+				// nodes around the root element may have changed
+				getTreeViewer().refresh();
+			} else if (outlineElement.getDocument().getRootElement().equals(outlineElement)) {
 				getTreeViewer().refresh();
 			} else if (outlineElement instanceof IElement) {
 				// This SHOULD always be the case
 				final IElement parent = ((IElement) outlineElement).getParentElement();
-				if (parent != null && editorPart.getStyle().getStyleSheet().getStyles(parent).getOutlineContent() == outlineElement) {
+				if (parent != null && editorPart.getStyle().getStyleSheet().getStyles(parent).getOutlineContent(parent) == outlineElement) {
 					// Parent has to be refreshed, since it uses this element as content
 					getTreeViewer().refresh(outlineProvider.getOutlineElement(parent));
 				} else {
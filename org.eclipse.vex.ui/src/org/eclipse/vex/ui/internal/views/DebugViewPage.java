@@ -38,11 +38,15 @@ import org.eclipse.ui.PartInitException;
 import org.eclipse.ui.part.IPageBookViewPage;
 import org.eclipse.ui.part.IPageSite;
 import org.eclipse.vex.core.internal.core.Rectangle;
+import org.eclipse.vex.core.internal.core.TextMeasurement;
 import org.eclipse.vex.core.internal.layout.Box;
 import org.eclipse.vex.core.internal.widget.swt.BaseXmlDocumentEditor;
+import org.eclipse.vex.core.internal.widget.swt.DoubleBufferedRenderer;
+import org.eclipse.vex.core.internal.widget.swt.XmlDocumentEditor;
 import org.eclipse.vex.core.provisional.dom.ContentPosition;
 import org.eclipse.vex.core.provisional.dom.ContentRange;
 import org.eclipse.vex.core.provisional.dom.IDocument;
+import org.eclipse.vex.ui.internal.config.Style;
 import org.eclipse.vex.ui.internal.editor.VexEditor;
 
 /**
@@ -152,6 +156,16 @@ class DebugViewPage implements IPageBookViewPage {
 	private TableItem caretRelItem;
 	private TableItem mouseAbsItem;
 	private TableItem mouseRelItem;
+	private TableItem rulesPerNodeItem;
+	private TableItem sharedStylesItem;
+	private TableItem glyphHitRateItem;
+	private TableItem runHitRateItem;
+	private TableItem fallbackRateItem;
+	private TableItem latencyItem;
+	private TableItem uiThreadTimeItem;
+	private TableItem replayTimeItem;
+	private TableItem repaintedTilesItem;
+	private TableItem cancelledFramesItem;
 
 	private void createDebugPanel() {
 
@@ -232,6 +246,26 @@ class DebugViewPage implements IPageBookViewPage {
 		boxItem.setText(0, "Current Box");
 		caretOffsetContentItem = new TableItem(textTable, SWT.NONE);
 		caretOffsetContentItem.setText(0, "Content at Caret");
+		rulesPerNodeItem = new TableItem(textTable, SWT.NONE);
+		rulesPerNodeItem.setText(0, "CSS Rules per Node");
+		sharedStylesItem = new TableItem(textTable, SWT.NONE);
+		sharedStylesItem.setText(0, "Shared Styles Hit Rate");
+		glyphHitRateItem = new TableItem(textTable, SWT.NONE);
+		glyphHitRateItem.setText(0, "Glyph Widths Hit Rate");
+		runHitRateItem = new TableItem(textTable, SWT.NONE);
+		runHitRateItem.setText(0, "Text Widths Hit Rate");
+		fallbackRateItem = new TableItem(textTable, SWT.NONE);
+		fallbackRateItem.setText(0, "Text Measured by Toolkit");
+		latencyItem = new TableItem(textTable, SWT.NONE);
+		latencyItem.setText(0, "Render Latency");
+		uiThreadTimeItem = new TableItem(textTable, SWT.NONE);
+		uiThreadTimeItem.setText(0, "Render UI Thread Time");
+		replayTimeItem = new TableItem(textTable, SWT.NONE);
+		replayTimeItem.setText(0, "Render Replay Time");
+		repaintedTilesItem = new TableItem(textTable, SWT.NONE);
+		repaintedTilesItem.setText(0, "Repainted Tiles");
+		cancelledFramesItem = new TableItem(textTable, SWT.NONE);
+		cancelledFramesItem.setText(0, "Cancelled Frames");
 
 		content.setSize(content.computeSize(SWT.DEFAULT, SWT.DEFAULT));
 		sc.setMinSize(content.computeSize(SWT.DEFAULT, SWT.DEFAULT));
@@ -339,6 +373,55 @@ class DebugViewPage implements IPageBookViewPage {
 		setItemFromRect(viewportItem, viewport);
 		setItemFromRect(caretAbsItem, getCaretBounds());
 		setItemRel(caretRelItem, viewport, getCaretBounds());
+		rulesPerNodeItem.setText(1, getRulesPerNode());
+		sharedStylesItem.setText(1, getSharedStylesHitRate());
+		glyphHitRateItem.setText(1, formatRate(TextMeasurement.getShared().getGlyphHitRate()));
+		runHitRateItem.setText(1, formatRate(TextMeasurement.getShared().getRunHitRate()));
+		fallbackRateItem.setText(1, formatRate(TextMeasurement.getShared().getFallbackRate()));
+		setFromRenderer(getRenderer());
+	}
+
+	private String getRulesPerNode() {
+		final Style style = editorPart.getStyle();
+		if (style == null) {
+			return "n/a";
+		}
+		return String.format("%.1f", style.getStyleSheet().getEvaluatedRulesPerNode());
+	}
+
+	private String getSharedStylesHitRate() {
+		final Style style = editorPart.getStyle();
+		if (style == null) {
+			return "n/a";
+		}
+		return formatRate(style.getStyleSheet().getInternedStylesHitRate());
+	}
+
+	private static String formatRate(final double rate) {
+		return String.format("%.1f%%", rate * 100);
+	}
+
+	private DoubleBufferedRenderer getRenderer() {
+		if (!(documentEditor instanceof XmlDocumentEditor)) {
+			return null;
+		}
+		return ((XmlDocumentEditor) documentEditor).getRenderer();
+	}
+
+	private void setFromRenderer(final DoubleBufferedRenderer renderer) {
+		if (renderer == null) {
+			latencyItem.setText(1, "n/a");
+			uiThreadTimeItem.setText(1, "n/a");
+			replayTimeItem.setText(1, "n/a");
+			repaintedTilesItem.setText(1, "n/a");
+			cancelledFramesItem.setText(1, "n/a");
+			return;
+		}
+		latencyItem.setText(1, String.format("%d ms (max. %d ms)", renderer.getLatestLatency(), renderer.getMaximumLatency()));
+		uiThreadTimeItem.setText(1, String.format("%.1f ms (max. %.1f ms)", renderer.getLatestUiThreadTime() / 1000.0, renderer.getMaximumUiThreadTime() / 1000.0));
+		replayTimeItem.setText(1, String.format("%.1f ms (max. %.1f ms)", renderer.getLatestReplayTime() / 1000.0, renderer.getMaximumReplayTime() / 1000.0));
+		repaintedTilesItem.setText(1, Long.toString(renderer.getRepaintedTileCount()));
+		cancelledFramesItem.setText(1, String.format("%d of %d", renderer.getCancelledFrameCount(), renderer.getCancelledFrameCount() + renderer.getVisibleFrameCount()));
 	}
 
 	private static void setFromInnermostBox(final TableItem item, final Box innermostBox) {